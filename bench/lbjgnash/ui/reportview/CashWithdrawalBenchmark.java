@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times a run of small cash withdrawals from a cash account with many lots, comparing
+ * {@link SecurityLotAction.SellWithinDateThenFIFOShares}, which removes the shares in a single pass,
+ * against the separate short term scan, LIFO removal, and FIFO removal it replaced.
+ * @author Albert Santos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashWithdrawalBenchmark {
+
+    @Param({"500", "5000"})
+    public int lotCount;
+
+    @Param({"200"})
+    public int withdrawalCount;
+
+    private static final int DAYS_BETWEEN_DEPOSITS = 3;
+    private static final BigDecimal DEPOSIT = new BigDecimal("100.00");
+    private static final BigDecimal WITHDRAWAL = new BigDecimal("37.25");
+
+    private SecurityLots securityLots;
+    private final List<LocalDate> withdrawalDates = new ArrayList<>();
+
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        List<SecurityLot> lots = new ArrayList<>();
+        LocalDate date = LocalDate.of(1990, 1, 1);
+        for (int i = 0; i < lotCount; ++i) {
+            lots.add(new SecurityLot(SecurityLot.makeLotNumber(), date, DEPOSIT, DEPOSIT, null, DEPOSIT));
+            date = date.plusDays(DAYS_BETWEEN_DEPOSITS);
+        }
+        securityLots = new SecurityLots(lots);
+
+        // Withdrawals every other day after the last deposit, the first ones come out of the
+        // recent lots, the later ones have to go to the oldest lots.
+        for (int i = 0; i < withdrawalCount; ++i) {
+            withdrawalDates.add(date.plusDays(i * 2));
+        }
+    }
+
+
+    @Benchmark
+    public SecurityLots singlePass() {
+        SecurityLots lots = securityLots;
+        for (LocalDate date : withdrawalDates) {
+            lots = new SecurityLotAction.SellWithinDateThenFIFOShares(date, WITHDRAWAL,
+                    SecurityTransactionTracker.CASH_WITHDRAWAL_LIFO_DAYS).applyAction(lots);
+        }
+        return lots;
+    }
+
+
+    @Benchmark
+    public SecurityLots separatePasses() {
+        SecurityLots lots = securityLots;
+        for (LocalDate date : withdrawalDates) {
+            lots = separatePassesWithdrawal(lots, date, WITHDRAWAL, SecurityTransactionTracker.CASH_WITHDRAWAL_LIFO_DAYS);
+        }
+        return lots;
+    }
+
+
+    // The original SellWithinDateThenFIFOShares.applyAction().
+    private static SecurityLots separatePassesWithdrawal(SecurityLots securityLots, LocalDate date, BigDecimal sharesSold, int daysBefore) {
+        LocalDate cutoffDate = date.minusDays(daysBefore);
+        BigDecimal shortTermShares = securityLots.getSharesAfterDate(cutoffDate);
+        if (shortTermShares.compareTo(sharesSold) >= 0) {
+            return securityLots.removeLIFOShares(date, sharesSold);
+        }
+
+        SecurityLots longTermLots = securityLots.removeLIFOShares(date, shortTermShares);
+        BigDecimal longTermSharesToSell = sharesSold.subtract(shortTermShares);
+        return longTermLots.removeFIFOShares(date, longTermSharesToSell);
+    }
+}
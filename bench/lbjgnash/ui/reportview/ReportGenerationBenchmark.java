@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import com.leeboardtools.time.DateOffset;
+import com.leeboardtools.time.PeriodicDateGenerator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+import lbjgnash.ui.ReportDefinition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times complete report generation, from the engine to a filled in {@link ReportOutput},
+ * for each of the standard report styles against a synthetic book.
+ * <p>
+ * Run with the bench target in build.xml, which adds the gc profiler for the allocation rates.
+ * @author Albert Santos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportGenerationBenchmark {
+
+    @Param({"NET_WORTH", "INCOME_EXPENSE", "PORTFOLIO", "SECURITIES"})
+    public String style;
+
+    @Param({"50"})
+    public int accountCount;
+
+    @Param({"10000"})
+    public int transactionCount;
+
+    @Param({"20"})
+    public int securityCount;
+
+    @Param({"1", "10"})
+    public int periodCount;
+
+    private File engineDirectory;
+    private String engineName;
+    private Engine engine;
+    private ReportGenerator reportGenerator;
+    private ReportDefinition definition;
+
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        engineDirectory = Files.createTempDirectory("lbjgnash-bench").toFile();
+        engineName = "bench-" + accountCount + "-" + transactionCount + "-" + securityCount;
+        engine = SyntheticBookGenerator.bootEngine(engineDirectory, engineName);
+
+        new SyntheticBookGenerator()
+                .setAccountCount(accountCount)
+                .setTransactionCount(transactionCount)
+                .setSecurityCount(securityCount)
+                .generate(engine);
+
+        reportGenerator = new ReportGenerator(engine);
+
+        definition = ReportDefinition.fromStyle(ReportDefinition.Style.valueOf(style));
+        definition.setDateGenerator(new PeriodicDateGenerator(DateOffset.SAME_DAY, DateOffset.END_OF_LAST_YEAR, periodCount - 1));
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        AccountSecuritiesTracker.invalidateAll();
+        SecurityPriceCache.invalidateAll();
+        EngineFactory.closeEngine(engineName);
+        File [] files = engineDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        engineDirectory.delete();
+    }
+
+
+    @Benchmark
+    public ReportOutput generateReport() {
+        // The securities trackers and prices are cached across reports, we want to time full report generation.
+        AccountSecuritiesTracker.invalidateAll();
+        SecurityPriceCache.invalidateAll();
+        return reportGenerator.generateReportOutput(definition);
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leeboardtools.util;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * An immutable sorted set backed by a persistent AVL tree. The 'modifying' methods
+ * {@link #with(java.lang.Object) } and {@link #without(java.lang.Object) } return a new set
+ * in O(log n) time, the new set shares all but O(log n) of its tree nodes with the original set.
+ * <p>
+ * As with {@link java.util.TreeSet}, elements are considered equal if they compare equal.
+ * The {@link java.util.Set} modification methods all throw {@link UnsupportedOperationException}.
+ * @author Albert Santos
+ * @param <E>   The element type.
+ */
+public class PersistentSortedSet <E> extends AbstractSet<E> implements SortedSet<E> {
+
+    static final class Node <E> {
+        final E value;
+        final Node<E> left;
+        final Node<E> right;
+        final int height;
+        final int size;
+
+        Node(E value, Node<E> left, Node<E> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private static final PersistentSortedSet<?> EMPTY = new PersistentSortedSet<>(null, null);
+
+    private final Comparator<? super E> comparator;
+    private final Node<E> root;
+
+
+    private PersistentSortedSet(Comparator<? super E> comparator, Node<E> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+
+    /**
+     * Retrieves an empty set using the natural ordering of the elements.
+     * @param <E>   The element type.
+     * @return The empty set.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> empty() {
+        return (PersistentSortedSet<E>)EMPTY;
+    }
+
+    /**
+     * Retrieves an empty set.
+     * @param <E>   The element type.
+     * @param comparator    The comparator, if <code>null</code> the natural ordering of the elements is used.
+     * @return The empty set.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentSortedSet<E> empty(Comparator<? super E> comparator) {
+        if (comparator == null) {
+            return (PersistentSortedSet<E>)EMPTY;
+        }
+        return new PersistentSortedSet<>(comparator, null);
+    }
+
+    /**
+     * Creates a set from the elements of a collection in O(n log n) time. If the collection has
+     * elements that compare equal, the first such element returned by the collection's iterator
+     * is the one in the set, as with {@link java.util.TreeSet#addAll(java.util.Collection) }.
+     * @param <E>   The element type.
+     * @param comparator    The comparator, if <code>null</code> the natural ordering of the elements is used.
+     * @param elements  The elements.
+     * @return The set.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentSortedSet<E> fromCollection(Comparator<? super E> comparator, Collection<? extends E> elements) {
+        E [] array = (E [])elements.toArray();
+        PersistentSortedSet<E> set = empty(comparator);
+
+        // Arrays.sort() is stable so the first of any equal elements stays first.
+        Arrays.sort(array, set::compare);
+
+        int count = 0;
+        for (int i = 0; i < array.length; ++i) {
+            if ((count == 0) || (set.compare(array[count - 1], array[i]) != 0)) {
+                array[count++] = array[i];
+            }
+        }
+
+        if (count == 0) {
+            return set;
+        }
+        return new PersistentSortedSet<>(comparator, buildBalanced(array, 0, count));
+    }
+
+    /**
+     * Creates a set using the natural ordering of the elements from the elements of a collection.
+     * @param <E>   The element type.
+     * @param elements  The elements.
+     * @return The set.
+     */
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> fromCollection(Collection<? extends E> elements) {
+        return fromCollection(null, elements);
+    }
+
+
+    private static <E> Node<E> buildBalanced(E [] array, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        int middle = (start + end) >>> 1;
+        return new Node<>(array[middle], buildBalanced(array, start, middle), buildBalanced(array, middle + 1, end));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    final int compare(Object a, Object b) {
+        if (comparator != null) {
+            return comparator.compare((E)a, (E)b);
+        }
+        return ((Comparable<Object>)a).compareTo(b);
+    }
+
+    static int height(Node<?> node) {
+        return (node == null) ? 0 : node.height;
+    }
+
+    static int size(Node<?> node) {
+        return (node == null) ? 0 : node.size;
+    }
+
+
+    /**
+     * Retrieves a set with an element added.
+     * @param element   The element to add.
+     * @return The new set, <code>this</code> if the set already contains an element that
+     * compares equal to element.
+     */
+    public PersistentSortedSet<E> with(E element) {
+        Node<E> newRoot = insert(root, element);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentSortedSet<>(comparator, newRoot);
+    }
+
+    /**
+     * Retrieves a set with an element removed.
+     * @param element   The element to remove.
+     * @return The new set, <code>this</code> if the set does not contain an element that
+     * compares equal to element.
+     */
+    public PersistentSortedSet<E> without(Object element) {
+        Node<E> newRoot = remove(root, element);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentSortedSet<>(comparator, newRoot);
+    }
+
+    /**
+     * Retrieves the element in the set that compares equal to a given element.
+     * @param element   The element to look for.
+     * @return The element in the set, <code>null</code> if there is none.
+     */
+    public E find(Object element) {
+        Node<E> node = root;
+        while (node != null) {
+            int result = compare(element, node.value);
+            if (result < 0) {
+                node = node.left;
+            }
+            else if (result > 0) {
+                node = node.right;
+            }
+            else {
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the smallest element in the set that is greater than or equal to a given element.
+     * @param element   The element.
+     * @return The smallest element greater than or equal to element, <code>null</code> if there is none.
+     */
+    public E ceiling(E element) {
+        E result = null;
+        Node<E> node = root;
+        while (node != null) {
+            int compare = compare(element, node.value);
+            if (compare < 0) {
+                result = node.value;
+                node = node.left;
+            }
+            else if (compare > 0) {
+                node = node.right;
+            }
+            else {
+                return node.value;
+            }
+        }
+        return result;
+    }
+
+
+    private Node<E> insert(Node<E> node, E element) {
+        if (node == null) {
+            return new Node<>(element, null, null);
+        }
+
+        int result = compare(element, node.value);
+        if (result < 0) {
+            Node<E> newLeft = insert(node.left, element);
+            return (newLeft == node.left) ? node : balance(node.value, newLeft, node.right);
+        }
+        else if (result > 0) {
+            Node<E> newRight = insert(node.right, element);
+            return (newRight == node.right) ? node : balance(node.value, node.left, newRight);
+        }
+        return node;
+    }
+
+    private Node<E> remove(Node<E> node, Object element) {
+        if (node == null) {
+            return null;
+        }
+
+        int result = compare(element, node.value);
+        if (result < 0) {
+            Node<E> newLeft = remove(node.left, element);
+            return (newLeft == node.left) ? node : balance(node.value, newLeft, node.right);
+        }
+        else if (result > 0) {
+            Node<E> newRight = remove(node.right, element);
+            return (newRight == node.right) ? node : balance(node.value, node.left, newRight);
+        }
+
+        if (node.left == null) {
+            return node.right;
+        }
+        else if (node.right == null) {
+            return node.left;
+        }
+
+        // Replace with the smallest element of the right sub-tree.
+        Node<E> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.value, node.left, removeFirst(node.right));
+    }
+
+    private static <E> Node<E> removeFirst(Node<E> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.value, removeFirst(node.left), node.right);
+    }
+
+    private static <E> Node<E> balance(E value, Node<E> left, Node<E> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+            }
+            Node<E> pivot = left.right;
+            return new Node<>(pivot.value, new Node<>(left.value, left.left, pivot.left), new Node<>(value, pivot.right, right));
+        }
+        else if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+            }
+            Node<E> pivot = right.left;
+            return new Node<>(pivot.value, new Node<>(value, left, pivot.left), new Node<>(right.value, pivot.right, right.right));
+        }
+        return new Node<>(value, left, right);
+    }
+
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return (o != null) && (find(o) != null);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new NodeIterator<>(root, false);
+    }
+
+    /**
+     * @return An iterator that returns the elements in descending order.
+     */
+    public Iterator<E> descendingIterator() {
+        return new NodeIterator<>(root, true);
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public E first() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<E> node = root;
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.value;
+    }
+
+    @Override
+    public E last() {
+        if (root == null) {
+            throw new NoSuchElementException();
+        }
+        Node<E> node = root;
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Unlike {@link java.util.TreeSet} this returns a copy, which takes O(n) time.
+     */
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return copyRange(fromElement, toElement);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Unlike {@link java.util.TreeSet} this returns a copy, which takes O(n) time.
+     */
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return copyRange(null, toElement);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Unlike {@link java.util.TreeSet} this returns a copy, which takes O(n) time.
+     */
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return copyRange(fromElement, null);
+    }
+
+    private PersistentSortedSet<E> copyRange(E fromElement, E toElement) {
+        List<E> elements = new ArrayList<>();
+        for (E element : this) {
+            if ((fromElement != null) && (compare(element, fromElement) < 0)) {
+                continue;
+            }
+            if ((toElement != null) && (compare(element, toElement) >= 0)) {
+                break;
+            }
+            elements.add(element);
+        }
+        return fromCollection(comparator, elements);
+    }
+
+
+    static final class NodeIterator <E> implements Iterator<E> {
+        private final boolean isDescending;
+        private final List<Node<E>> stack = new ArrayList<>();
+
+        NodeIterator(Node<E> root, boolean isDescending) {
+            this.isDescending = isDescending;
+            pushChain(root);
+        }
+
+        private void pushChain(Node<E> node) {
+            while (node != null) {
+                stack.add(node);
+                node = (isDescending) ? node.right : node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<E> node = stack.remove(stack.size() - 1);
+            pushChain((isDescending) ? node.left : node.right);
+            return node.value;
+        }
+    }
+}
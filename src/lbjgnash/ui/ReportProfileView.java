@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui;
+
+import com.leeboardtools.dialog.PromptDialog;
+import com.leeboardtools.util.ResourceSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.stage.FileChooser;
+import javafx.stage.FileChooser.ExtensionFilter;
+import javafx.stage.Stage;
+import lbjgnash.ui.reportview.ReportProfile;
+
+/**
+ * Simple window for displaying and exporting a {@link ReportProfile}.
+ * @author Albert Santos
+ */
+public class ReportProfileView {
+    public ReportProfileView() {}
+
+    public static void show(String reportName, ReportProfile profile, Stage primaryStage) {
+        final String profileText = profile.toText();
+
+        TextArea textArea = new TextArea(profileText);
+        textArea.setEditable(false);
+        textArea.setFont(Font.font("Monospaced", textArea.getFont().getSize()));
+        textArea.setPrefColumnCount(48);
+        textArea.setPrefRowCount(24);
+        VBox.setVgrow(textArea, Priority.ALWAYS);
+
+        Stage stage = new Stage();
+
+        Button exportButton = new Button(ResourceSource.getString("ReportView.Profile.Export"));
+        exportButton.setOnAction((event) -> {
+            exportProfile(reportName, profileText, stage);
+        });
+
+        Button closeButton = new Button(ResourceSource.getString("ReportView.Profile.Close"));
+        closeButton.setCancelButton(true);
+        closeButton.setOnAction((event) -> {
+            stage.close();
+        });
+
+        HBox buttonBox = new HBox(8, exportButton, closeButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+
+        VBox vBox = new VBox(8, textArea, buttonBox);
+        vBox.setPadding(new Insets(8));
+
+        stage.setScene(new Scene(vBox));
+        if (primaryStage != null) {
+            stage.initOwner(primaryStage);
+        }
+        stage.setTitle(ResourceSource.getString("ReportView.Profile.Title", reportName));
+        stage.show();
+    }
+
+
+    protected static void exportProfile(String reportName, String profileText, Stage stage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(ResourceSource.getString("ReportView.ExportFileChooser.Title"));
+        if (ReportView.exportInitialDirectory != null) {
+            fileChooser.setInitialDirectory(ReportView.exportInitialDirectory);
+        }
+        fileChooser.setInitialFileName(reportName + " Profile.txt");
+
+        ExtensionFilter textFilter = new ExtensionFilter(ResourceSource.getString("ReportView.Profile.TextFiles"), "*.txt");
+        fileChooser.getExtensionFilters().add(textFilter);
+
+        File selectedFile = fileChooser.showSaveDialog(stage);
+        if (selectedFile != null) {
+            ReportView.exportInitialDirectory = selectedFile.getParentFile();
+            try {
+                Files.write(selectedFile.toPath(), profileText.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                Logger.getLogger(ReportProfileView.class.getName()).log(Level.SEVERE, null, ex);
+                String title = ResourceSource.getString("ReportView.Export.ErrorTitle");
+                String message = ResourceSource.getString("ReportView.Profile.WriteError", selectedFile.getName(), ex.getLocalizedMessage());
+                PromptDialog.showOKDialog(message, title);
+            }
+        }
+    }
+}
@@ -17,7 +17,9 @@ package lbjgnash.ui;
 
 import com.leeboardtools.util.CSVUtil;
 import com.leeboardtools.util.ResourceSource;
+import lbjgnash.ui.reportview.EngineChanges;
 import lbjgnash.ui.reportview.ReportDataView;
+import lbjgnash.ui.reportview.ReportOutput;
 import com.leeboardtools.util.StringUtil;
 import java.io.File;
 import java.nio.file.FileSystems;
@@ -25,12 +27,17 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Worker;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.control.Button;
 import javafx.scene.control.Control;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -39,10 +46,13 @@ import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import jgnash.engine.Engine;
+import jgnash.engine.message.Message;
+import jgnash.engine.message.MessageBus;
+import jgnash.engine.message.MessageListener;
 
 /**
- * TODO Add message channel listeners.
  * TODO Add a menu for setup, updating.
  * @author Albert Santos
  */
@@ -61,9 +71,23 @@ public class ReportView {
     protected Label titleLabel;
     protected ReportDataView reportDataView;
     
+    protected HBox progressHBox;
+    protected ProgressBar progressBar;
+    protected Label progressLabel;
+    
+    protected MessageListener engineListener;
+    // Only accessed from the JavaFX application thread.
+    protected EngineChanges pendingEngineChanges = new EngineChanges();
+    protected PauseTransition engineChangesPause;
+    
+    // How long to wait after the last engine message before refreshing, this batches up bursts
+    // of messages such as from an import.
+    public static final double ENGINE_CHANGES_DELAY_MILLIS = 250;
+    
     
     public static final String CLASS_TITLE_LABEL = "report-title-label";
     public static final String CLASS_TITLE_LABEL_CONTAINER = "report-title-label-container";
+    public static final String CLASS_PROGRESS_CONTAINER = "report-progress-container";
     
     
     ReportView() {
@@ -113,10 +137,67 @@ public class ReportView {
     }
     
     protected void setupEngineListeners() {
+        this.engineChangesPause = new PauseTransition(Duration.millis(ENGINE_CHANGES_DELAY_MILLIS));
+        this.engineChangesPause.setOnFinished((event) -> {
+            processEngineChanges();
+        });
         
+        this.engineListener = (message) -> {
+            handleEngineMessage(message);
+        };
+        MessageBus.getInstance().registerListener(this.engineListener, EngineChanges.MESSAGE_CHANNELS);
+    }
+    
+    // Called from the message bus' thread.
+    protected void handleEngineMessage(Message message) {
+        EngineChanges changes = new EngineChanges();
+        if (!changes.addMessage(message)) {
+            return;
+        }
+        
+        Platform.runLater(() -> {
+            if (this.engineListener == null) {
+                return;
+            }
+            
+            this.pendingEngineChanges.addAll(changes);
+            if (changes.isFileClosing()) {
+                processEngineChanges();
+            }
+            else {
+                this.engineChangesPause.playFromStart();
+            }
+        });
+    }
+    
+    protected void processEngineChanges() {
+        this.engineChangesPause.stop();
+        
+        EngineChanges changes = this.pendingEngineChanges;
+        if (changes.isEmpty()) {
+            return;
+        }
+        this.pendingEngineChanges = new EngineChanges();
+        
+        if (this.reportDataView != null) {
+            this.reportDataView.refreshFromEngineChanges(changes);
+        }
+        
+        if (changes.isFileClosing()) {
+            // The engine is going away, and with it everything we're reporting on.
+            close();
+        }
     }
     
     protected void takeDownEngineListeners() {
+        if (this.engineListener != null) {
+            MessageBus.getInstance().unregisterListener(this.engineListener, EngineChanges.MESSAGE_CHANNELS);
+            this.engineListener = null;
+        }
+        if (this.engineChangesPause != null) {
+            this.engineChangesPause.stop();
+        }
+        
         if (this.reportDataView != null) {
             this.reportDataView.shutDownView();
         }
@@ -180,6 +261,11 @@ public class ReportView {
         });
         printItem.setDisable(true);
         
+        MenuItem profileItem = new MenuItem(ResourceSource.getString("ReportView.MenuItem.Profile"));
+        menuButton.getItems().add(profileItem);        
+        profileItem.setOnAction((event) -> {
+            onShowReportProfile();
+        });
         
     }
     
@@ -191,11 +277,51 @@ public class ReportView {
             
             VBox.setVgrow(control, Priority.ALWAYS);
             this.mainVBox.getChildren().add(control);
+            
+            setupProgressArea();
         }
         
         this.reportDataView.setupView(definition, engine);
     }
     
+    protected void setupProgressArea() {
+        this.progressHBox = new HBox();
+        this.progressHBox.setAlignment(Pos.CENTER_LEFT);
+        this.progressHBox.getStyleClass().add(CLASS_PROGRESS_CONTAINER);
+        
+        this.progressBar = new ProgressBar();
+        this.progressLabel = new Label();
+        HBox.setHgrow(this.progressLabel, Priority.ALWAYS);
+        this.progressLabel.setMaxWidth(Double.MAX_VALUE);
+        
+        Button cancelButton = new Button(ResourceSource.getString("ReportView.Progress.Cancel"));
+        cancelButton.setOnAction((event) -> {
+            this.reportDataView.cancelRefresh();
+        });
+        
+        this.progressHBox.getChildren().addAll(this.progressBar, this.progressLabel, cancelButton);
+        this.mainVBox.getChildren().add(this.progressHBox);
+        
+        this.reportDataView.updateWorkerProperty().addListener((observable, oldValue, newValue) -> {
+            updateProgressArea(newValue);
+        });
+        updateProgressArea(this.reportDataView.getUpdateWorker());
+    }
+    
+    protected void updateProgressArea(Worker<?> worker) {
+        this.progressBar.progressProperty().unbind();
+        this.progressLabel.textProperty().unbind();
+        
+        if (worker != null) {
+            this.progressBar.progressProperty().bind(worker.progressProperty());
+            this.progressLabel.textProperty().bind(worker.messageProperty());
+        }
+        
+        boolean isVisible = (worker != null);
+        this.progressHBox.setVisible(isVisible);
+        this.progressHBox.setManaged(isVisible);
+    }
+    
     protected ReportDataView createReportTableView() {
         return new ReportDataView();
     }
@@ -273,6 +399,13 @@ public class ReportView {
     protected void onPrintReport() {
     }
     
+    protected void onShowReportProfile() {
+        ReportOutput reportOutput = this.reportDataView.getReportOutput();
+        if (reportOutput != null) {
+            ReportProfileView.show(reportLabel, reportOutput.getProfile(), stage);
+        }
+    }
+    
     
     //
     // This is all report view manage stuff below...
@@ -35,6 +35,9 @@ public class AccountEntry {
     List<RowEntry> postChildAccountRowEntries;
     RowEntry postChildRowEntry;
     AccountSecuritiesTracker accountSecuritiesTracker;
+    // Cleared if neither the account nor any of its child accounts were affected by the engine
+    // changes of an update, see ReportOutput.markChangedAccountEntries().
+    boolean isChanged = true;
 
     public AccountEntry(Account account, boolean isIncluded, AccountEntry parentAccountEntry) {
         this.account = account;
@@ -116,7 +119,7 @@ public class AccountEntry {
     
     public final AccountSecuritiesTracker getAccountSecuritiesTracker() {
         if (accountSecuritiesTracker == null) {
-            accountSecuritiesTracker = AccountSecuritiesTracker.createForAccount(account);
+            accountSecuritiesTracker = AccountSecuritiesTracker.getForAccount(account);
         }
         return accountSecuritiesTracker;
     }
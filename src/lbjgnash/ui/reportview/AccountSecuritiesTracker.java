@@ -15,16 +15,20 @@
  */
 package lbjgnash.ui.reportview;
 
+import java.lang.ref.SoftReference;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
 import jgnash.engine.Account;
 import jgnash.engine.AccountGroup;
 import jgnash.engine.CurrencyNode;
-import jgnash.engine.InvestmentTransaction;
 import jgnash.engine.SecurityNode;
-import jgnash.engine.Transaction;
+import jgnash.engine.message.MessageBus;
+import jgnash.engine.message.MessageListener;
 
 /**
  *
@@ -33,6 +37,7 @@ import jgnash.engine.Transaction;
 public class AccountSecuritiesTracker {
     private final Account account;
     private final SortedMap<SecurityNode, SecurityTransactionTracker> transactionTrackers = new TreeMap<>();
+    private InvestmentTransactionStore transactionStore;
     private final SecurityNode cashSecurityNode = new SecurityNode() {
         @Override
         public BigDecimal getMarketPrice(LocalDate date, CurrencyNode node) {
@@ -40,6 +45,79 @@ public class AccountSecuritiesTracker {
         }
     };
     
+    
+    // Trackers are cached across reports, they're only rebuilt when the account's transactions change.
+    // The values are soft references since the trackers refer to their account (the key).
+    private static final Map<Account, SoftReference<CachedTracker>> CACHED_TRACKERS = new WeakHashMap<>();
+    
+    // Incremented by the invalidations. A tracker whose account, or any security, was invalidated
+    // while the tracker was being built may be stale, so it is not cached.
+    private static final Map<Account, Integer> ACCOUNT_GENERATIONS = new WeakHashMap<>();
+    private static int securitiesGeneration;
+    
+    private static class CachedTracker {
+        final AccountSecuritiesTracker tracker;
+        final int transactionCount;
+        
+        CachedTracker(AccountSecuritiesTracker tracker, int transactionCount) {
+            this.tracker = tracker;
+            this.transactionCount = transactionCount;
+        }
+    }
+    
+    // The cached trackers are invalidated straight from the engine's messages, whether or not
+    // a report is open at the time. The message bus only keeps weak references to its listeners.
+    private static MessageListener cacheListener;
+    
+    
+    /**
+     * The default checkpoint interval, this keeps the cost of rebuilding the security lots of
+     * a report date to a few dozen actions while only retaining a few percent of the security lots.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 32;
+    
+    private static volatile int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    
+    
+    /**
+     * @return The checkpoint interval passed to the {@link SecurityTransactionTracker}s of new trackers.
+     */
+    public static int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+    
+    /**
+     * Sets the checkpoint interval passed to the {@link SecurityTransactionTracker}s of trackers
+     * created after this call, see {@link SecurityTransactionTracker#setCheckpointInterval(int) }.
+     * @param interval  The number of actions between checkpoints, 0 to keep the security lots
+     * of every date entry.
+     */
+    public static void setCheckpointInterval(int interval) {
+        checkpointInterval = Math.max(interval, 0);
+    }
+    
+    
+    private static volatile int cashLotCompactionDays;
+    
+    
+    /**
+     * @return The cash lot compaction days passed to the cash {@link SecurityTransactionTracker}s of new trackers.
+     */
+    public static int getCashLotCompactionDays() {
+        return cashLotCompactionDays;
+    }
+    
+    /**
+     * Sets the cash lot compaction days passed to the cash {@link SecurityTransactionTracker}s of
+     * trackers created after this call, see {@link SecurityTransactionTracker#setCashLotCompactionDays(int) }.
+     * Merging is off by default since income distributed after a merge changes the year ago values.
+     * @param days  The age in days after which cash lots are merged, 0 to not merge cash lots.
+     */
+    public static void setCashLotCompactionDays(int days) {
+        cashLotCompactionDays = Math.max(days, 0);
+    }
+    
+    
     AccountSecuritiesTracker(Account account) {
         this.account = account;
         this.cashSecurityNode.setSymbol("Cash");
@@ -53,25 +131,166 @@ public class AccountSecuritiesTracker {
         return transactionTrackers;
     }
     
+    /**
+     * @return The store of the account's transactions the trackers were loaded from.
+     */
+    public final InvestmentTransactionStore getTransactionStore() {
+        return transactionStore;
+    }
+    
     public static AccountSecuritiesTracker createForAccount(Account account) {
+        if (!isTrackedAccount(account)) {
+            return null;
+        }
+        
+        AccountSecuritiesTracker tracker = new AccountSecuritiesTracker(account);
+        tracker.loadSecurities();
+        return tracker;
+    }
+    
+    
+    /**
+     * Retrieves the tracker for an account, using the cached tracker for the account if
+     * the account's transactions have not changed since the cached tracker was created.
+     * The returned tracker should not be modified.
+     * @param account   The account.
+     * @return The tracker, <code>null</code> if the account does not get a tracker.
+     */
+    public static AccountSecuritiesTracker getForAccount(Account account) {
+        if (!isTrackedAccount(account)) {
+            return null;
+        }
+        
+        installCacheListener();
+        
+        // The transaction count is only a cheap sanity check, the engine messages take care
+        // of the changes that don't change the count.
+        int transactionCount = account.getTransactionCount();
+        int accountGeneration;
+        int startSecuritiesGeneration;
+        synchronized (CACHED_TRACKERS) {
+            SoftReference<CachedTracker> reference = CACHED_TRACKERS.get(account);
+            CachedTracker cachedTracker = (reference != null) ? reference.get() : null;
+            if ((cachedTracker != null) && (cachedTracker.transactionCount == transactionCount)) {
+                return cachedTracker.tracker;
+            }
+            accountGeneration = ACCOUNT_GENERATIONS.getOrDefault(account, 0);
+            startSecuritiesGeneration = securitiesGeneration;
+        }
+        
+        AccountSecuritiesTracker tracker = new AccountSecuritiesTracker(account);
+        tracker.loadSecurities();
+        
+        synchronized (CACHED_TRACKERS) {
+            if ((accountGeneration == ACCOUNT_GENERATIONS.getOrDefault(account, 0)) 
+                    && (startSecuritiesGeneration == securitiesGeneration)) {
+                CACHED_TRACKERS.put(account, new SoftReference<>(new CachedTracker(tracker, transactionCount)));
+            }
+        }
+        return tracker;
+    }
+    
+    
+    private static void installCacheListener() {
+        synchronized (CACHED_TRACKERS) {
+            if (cacheListener != null) {
+                return;
+            }
+            cacheListener = (message) -> {
+                EngineChanges engineChanges = new EngineChanges();
+                if (engineChanges.addMessage(message)) {
+                    invalidateForEngineChanges(engineChanges);
+                }
+            };
+        }
+        MessageBus.getInstance().registerListener(cacheListener, EngineChanges.MESSAGE_CHANNELS);
+    }
+    
+    
+    /**
+     * Discards the cached trackers and security prices affected by changes in the engine. Only
+     * the trackers of the changed accounts and of the accounts holding the changed securities
+     * are discarded. This is normally called from the engine's message bus.
+     * @param engineChanges The changes.
+     */
+    public static void invalidateForEngineChanges(EngineChanges engineChanges) {
+        if (engineChanges.isFileClosing()) {
+            invalidateAll();
+            SecurityPriceCache.invalidateAll();
+            return;
+        }
+        
+        engineChanges.getChangedAccounts().forEach((account) -> {
+            invalidateAccount(account);
+        });
+        engineChanges.getChangedSecurities().forEach((securityNode) -> {
+            invalidateSecurity(securityNode);
+            SecurityPriceCache.invalidateSecurity(securityNode);
+        });
+        if (engineChanges.isExchangeRateChanged()) {
+            SecurityPriceCache.invalidateAll();
+        }
+    }
+    
+    
+    /**
+     * Removes the cached tracker of an account so it is rebuilt the next time it is requested.
+     * @param account   The account.
+     */
+    public static void invalidateAccount(Account account) {
+        synchronized (CACHED_TRACKERS) {
+            CACHED_TRACKERS.remove(account);
+            ACCOUNT_GENERATIONS.put(account, ACCOUNT_GENERATIONS.getOrDefault(account, 0) + 1);
+        }
+    }
+    
+    
+    /**
+     * Removes any cached trackers that are tracking a security.
+     * @param securityNode  The security.
+     */
+    public static void invalidateSecurity(SecurityNode securityNode) {
+        synchronized (CACHED_TRACKERS) {
+            ++securitiesGeneration;
+            Iterator<Map.Entry<Account, SoftReference<CachedTracker>>> iterator = CACHED_TRACKERS.entrySet().iterator();
+            while (iterator.hasNext()) {
+                CachedTracker cachedTracker = iterator.next().getValue().get();
+                if ((cachedTracker == null) || cachedTracker.tracker.transactionTrackers.containsKey(securityNode)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Removes all the cached trackers.
+     */
+    public static void invalidateAll() {
+        synchronized (CACHED_TRACKERS) {
+            CACHED_TRACKERS.clear();
+            ++securitiesGeneration;
+        }
+    }
+    
+    
+    /**
+     * Determines if an account is tracked by a tracker.
+     * @param account   The account.
+     * @return <code>true</code> if the account should have a tracker.
+     */
+    public static boolean isTrackedAccount(Account account) {
         switch (account.getAccountType().getAccountGroup()) {
             case INVEST:
             case SIMPLEINVEST:
-                break;
+                return true;
                 
             case ASSET:
-                if (isSecuritiesCashAccount(account)) {
-                    break;
-                }
-                return null;
+                return isSecuritiesCashAccount(account);
                 
             default :
-                return null;
+                return false;
         }
-        
-        AccountSecuritiesTracker tracker = new AccountSecuritiesTracker(account);
-        tracker.loadSecurities();
-        return tracker;
     }
     
     public static boolean isSecuritiesCashAccount(Account account) {
@@ -95,45 +314,38 @@ public class AccountSecuritiesTracker {
     
     protected void loadSecurities() {
         transactionTrackers.clear();
-        final boolean isCashOnly = account.getSecurities().isEmpty();
+        transactionStore = InvestmentTransactionStore.forAccount(account);
         
-        account.getSortedTransactionList().forEach((transaction) -> {
-            if (!isCashOnly && (transaction instanceof InvestmentTransaction)) {
-                addInvestmentTransaction((InvestmentTransaction)transaction);
+        int rowCount = transactionStore.getRowCount();
+        for (int row = 0; row < rowCount; ++row) {
+            SecurityNode securityNode = transactionStore.getSecurityNode(row);
+            if (securityNode == null) {
+                securityNode = cashSecurityNode;
             }
-            else {
-                addCashTransaction(transaction);
+            
+            SecurityTransactionTracker tracker = transactionTrackers.get(securityNode);
+            if (tracker == null) {
+                tracker = new SecurityTransactionTracker(securityNode);
+                tracker.setCheckpointInterval(checkpointInterval);
+                if (securityNode == cashSecurityNode) {
+                    tracker.setCashLotCompactionDays(cashLotCompactionDays);
+                }
+                transactionTrackers.put(securityNode, tracker);
             }
-        });
-        
-        transactionTrackers.forEach((securityNode, tracker) -> {
-            tracker.finalizeTransactions();
-        });
-    }
-    
-    protected void addInvestmentTransaction(InvestmentTransaction transaction) {
-        SecurityNode securityNode = transaction.getSecurityNode();
-        SecurityTransactionTracker tracker = transactionTrackers.get(securityNode);
-        if (tracker == null) {
-            tracker = new SecurityTransactionTracker(securityNode);
-            transactionTrackers.put(securityNode, tracker);
+            
+            tracker.recordTransaction(transactionStore, row);
         }
         
-        tracker.recordTransaction(transaction);
-    }
-    
-    protected void addCashTransaction(Transaction transaction) {
-        BigDecimal amount = transaction.getAmount(account);
-        if (amount.compareTo(BigDecimal.ZERO) == 0) {
-            return;
+        // The trackers are independent of each other, so they can be finalized in parallel.
+        if (transactionTrackers.size() > 1) {
+            transactionTrackers.values().parallelStream().forEach((tracker) -> {
+                tracker.finalizeTransactions();
+            });
         }
-        
-        SecurityTransactionTracker tracker = transactionTrackers.get(cashSecurityNode);
-        if (tracker == null) {
-            tracker = new SecurityTransactionTracker(cashSecurityNode);
-            transactionTrackers.put(cashSecurityNode, tracker);
+        else {
+            transactionTrackers.forEach((securityNode, tracker) -> {
+                tracker.finalizeTransactions();
+            });
         }
-        
-        tracker.recordCashTransaction(account, transaction, amount);
     }
 }
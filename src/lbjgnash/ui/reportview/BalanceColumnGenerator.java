@@ -17,10 +17,13 @@ package lbjgnash.ui.reportview;
 
 import com.leeboardtools.util.StringUtil;
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import javafx.scene.control.cell.TextFieldTreeTableCell;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Abstract class for the report columns that work off the standard account balance.
@@ -30,7 +33,6 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
     int maxIncludedAccountDepth;
     int minIncludedAccountDepth;
     final TreeMap<DateEntry, BalanceDateEntryInfo> dateEntryInfos = new TreeMap<>();
-    BigDecimal subTotal;
 
     
     protected static class BalanceAccountEntryInfo {
@@ -52,7 +54,7 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
      * Tracks the balance total for a date entry.
      */
     protected static class BalanceDateEntryInfo {
-        final Map<AccountEntry, BalanceAccountEntryInfo> accountEntryInfos = new HashMap<>();
+        final Map<AccountEntry, BalanceAccountEntryInfo> accountEntryInfos = new ConcurrentHashMap<>();
         BigDecimal totalBalance = BigDecimal.ZERO;
         final int columnIndexBase;
 
@@ -64,60 +66,30 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
     
     protected static class BalanceCellEntry extends CellEntry {
         final BalanceAccountEntryInfo accountEntryInfo;
-        String basicStyle = ReportDataView.STYLE_BALANCE_VALUE;
 
         protected BalanceCellEntry(BalanceAccountEntryInfo accountEntryInfo,
-            RowEntry rowEntry, String value) {
-            super(rowEntry, value);
+            RowEntry rowEntry, CellValue value) {
+            super(rowEntry, value, getCellStyle(accountEntryInfo, rowEntry));
             this.accountEntryInfo = accountEntryInfo;
         }
-    }
-    
-    
-    /**
-     * Used to set the CSS styles for the individual cells.
-     */
-    protected static class BalanceTreeCell extends TextFieldTreeTableCell<RowEntry, CellEntry> {
-        final BalanceColumnGenerator generator;
-        final BalanceDateEntryInfo dateEntryInfo;
         
-        BalanceTreeCell(BalanceColumnGenerator generator, BalanceDateEntryInfo dateEntryInfo) {
-            this.generator = generator;
-            this.dateEntryInfo = dateEntryInfo;
-        }
-
-        @Override
-        public void updateItem(CellEntry item, boolean empty) {
-            super.updateItem(item, empty);            
-            
-            if ((item instanceof BalanceCellEntry) && !empty) {
-                BalanceCellEntry balanceCellEntry = (BalanceCellEntry)item;
-                
-                getStyleClass().add(ReportDataView.STYLE_CELL);
-                getStyleClass().remove(ReportDataView.STYLE_SUBTOTAL);
-                getStyleClass().remove(ReportDataView.STYLE_SUMMARY);
-                getStyleClass().remove(ReportDataView.STYLE_GRAND_TOTAL);
-                
-                getStyleClass().add(balanceCellEntry.basicStyle);
-                
-                if (balanceCellEntry.accountEntryInfo != null) {
-                    if (balanceCellEntry.rowEntry == balanceCellEntry.accountEntryInfo.accountEntry.summaryRowEntry) {
-                        getStyleClass().add(ReportDataView.STYLE_SUMMARY);
-                    }
-                    else if (balanceCellEntry.rowEntry == balanceCellEntry.accountEntryInfo.rowEntry) {
-                        getStyleClass().add(ReportDataView.STYLE_SUBTOTAL);
-                    }
-                }
-                else {
-                    getStyleClass().add(ReportDataView.STYLE_GRAND_TOTAL);
-                }
+        protected static Style getCellStyle(BalanceAccountEntryInfo accountEntryInfo, RowEntry rowEntry) {
+            if (accountEntryInfo == null) {
+                return Style.GRAND_TOTAL;
+            }
+            else if (rowEntry == accountEntryInfo.accountEntry.summaryRowEntry) {
+                return Style.SUMMARY;
+            }
+            else if (rowEntry == accountEntryInfo.rowEntry) {
+                return Style.SUBTOTAL;
             }
+            return Style.VALUE;
         }
     }
     
     
     @Override
-    protected void setupAccountEntryRows(ReportDataView.ReportOutput reportOutput) {
+    protected void setupAccountEntryRows(ReportOutput reportOutput) {
         maxIncludedAccountDepth = 0;
         minIncludedAccountDepth = Integer.MAX_VALUE;
         super.setupAccountEntryRows(reportOutput);
@@ -125,7 +97,7 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
 
     
     @Override
-    protected void setupRowsForAccountEntry(AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput, AccountEntry parentAccountEntry) {
+    protected void setupRowsForAccountEntry(AccountEntry accountEntry, ReportOutput reportOutput, AccountEntry parentAccountEntry) {
         if (accountEntry.isIncluded) {
             accountEntry.useSummaryRowEntry();
             if (accountEntry.isAnyChildAccountIncluded()) {
@@ -144,55 +116,132 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
 
     
     @Override
-    protected void setupColumnsForDateEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput, int columnIndexBase) {
-        if (!accountEntry.isIncluded) {
-            super.setupColumnsForDateEntry(dateEntry, accountEntry, reportOutput, columnIndexBase);
+    protected boolean isParallelCapable() {
+        return true;
+    }
+
+    
+    @Override
+    protected void setupDateEntryColumns(ReportOutput reportOutput) {
+        final AccountEntry firstIncludedAccountEntry = getFirstIncludedAccountEntry(reportOutput.accountEntries);
+        if (firstIncludedAccountEntry == null) {
             return;
         }
         
-        
-        BigDecimal previousSubTotal = subTotal;
-        subTotal = BigDecimal.ZERO;
-        try {
+        reportOutput.dateEntries.forEach((dateEntry) -> {
+            reportOutput.checkCancelled();
+            
             //int columnOffset = maxIncludedAccountDepth - accountEntry.accountDepth;
-            int columnOffset = 0;
+            final int columnOffset = 0;
+            final int columnIndexBase = dateEntry.columnEntries.size();
             final ColumnEntry columnEntry = dateEntry.getColumnEntryAtIndex(columnOffset + columnIndexBase);
+
+            final BalanceDateEntryInfo dateEntryInfo = createDateEntryInfo(firstIncludedAccountEntry, dateEntry, columnEntry, columnIndexBase);
+            dateEntryInfos.put(dateEntry, dateEntryInfo);
+
+            columnEntry.setTitle(getColumnTitle(columnOffset, firstIncludedAccountEntry, dateEntry, reportOutput));
             
-            super.setupColumnsForDateEntry(dateEntry, accountEntry, reportOutput, columnIndexBase);
-            
-            RowEntry rowEntry = null;
-            if (accountEntry.isAnyChildAccountIncluded()) {
-                rowEntry = accountEntry.usePostChildRowEntry();
+            // The sub-totals of the top level accounts (or the first included accounts below them) make up the total.
+            dateEntryInfo.totalBalance = reportOutput.invokeUpdate(() -> {
+                return setupAccountEntriesBalances(reportOutput.accountEntries, dateEntry, dateEntryInfo, columnEntry, reportOutput);
+            });
+        });
+    }
+    
+    
+    protected static AccountEntry getFirstIncludedAccountEntry(List<AccountEntry> accountEntries) {
+        for (AccountEntry accountEntry : accountEntries) {
+            if (accountEntry.isIncluded) {
+                return accountEntry;
             }
-            
-            BigDecimal balance = getInternalAccountBalance(rowEntry, columnEntry, accountEntry, dateEntry, reportOutput);
-            subTotal = subTotal.add(balance);
-            
-            BalanceDateEntryInfo dateEntryInfo = dateEntryInfos.get(dateEntry);
-            if (dateEntryInfo == null) {
-                // First time, gotta set up the column entry.
-                dateEntryInfo = createDateEntryInfo(accountEntry, dateEntry, columnEntry, columnIndexBase);
-                dateEntryInfos.put(dateEntry, dateEntryInfo);
-                
-                columnEntry.treeTableColumn.setText(getColumnTitle(columnOffset, accountEntry, dateEntry, reportOutput));
-                
-                final BalanceDateEntryInfo cellDateEntryInfo = dateEntryInfo;
-                columnEntry.treeTableColumn.setCellFactory((javafx.scene.control.TreeTableColumn<lbjgnash.ui.reportview.RowEntry, lbjgnash.ui.reportview.CellEntry> column) -> {
-                    return new BalanceTreeCell(this, cellDateEntryInfo);
-                });
+            AccountEntry childAccountEntry = getFirstIncludedAccountEntry(accountEntry.childAccountEntries);
+            if (childAccountEntry != null) {
+                return childAccountEntry;
             }
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Fork/join task for {@link #setupAccountEntryBalances(lbjgnash.ui.reportview.AccountEntry, lbjgnash.ui.reportview.DateEntry, lbjgnash.ui.reportview.BalanceColumnGenerator.BalanceDateEntryInfo, lbjgnash.ui.reportview.ColumnEntry, lbjgnash.ui.reportview.ReportOutput) }.
+     */
+    protected class AccountEntryBalancesTask extends RecursiveTask<BigDecimal> {
+        private static final long serialVersionUID = 1L;
+
+        final AccountEntry accountEntry;
+        final DateEntry dateEntry;
+        final BalanceDateEntryInfo dateEntryInfo;
+        final ColumnEntry columnEntry;
+        final ReportOutput reportOutput;
+        
+        protected AccountEntryBalancesTask(AccountEntry accountEntry, DateEntry dateEntry, BalanceDateEntryInfo dateEntryInfo, 
+                ColumnEntry columnEntry, ReportOutput reportOutput) {
+            this.accountEntry = accountEntry;
+            this.dateEntry = dateEntry;
+            this.dateEntryInfo = dateEntryInfo;
+            this.columnEntry = columnEntry;
+            this.reportOutput = reportOutput;
+        }
+
+        @Override
+        protected BigDecimal compute() {
+            return setupAccountEntryBalances(accountEntry, dateEntry, dateEntryInfo, columnEntry, reportOutput);
+        }
+    }
+    
+    
+    /**
+     * Sets up the balances for a list of account entries and their children.
+     * @return The sum of the sub-totals of the account entries.
+     */
+    protected BigDecimal setupAccountEntriesBalances(List<AccountEntry> accountEntries, DateEntry dateEntry, BalanceDateEntryInfo dateEntryInfo, 
+            ColumnEntry columnEntry, ReportOutput reportOutput) {
+        BigDecimal subTotal = BigDecimal.ZERO;
+        if ((accountEntries.size() > 1) && reportOutput.isParallelUpdate() && ForkJoinTask.inForkJoinPool()) {
+            List<AccountEntryBalancesTask> tasks = new ArrayList<>(accountEntries.size());
+            accountEntries.forEach((accountEntry) -> {
+                tasks.add(new AccountEntryBalancesTask(accountEntry, dateEntry, dateEntryInfo, columnEntry, reportOutput));
+            });
+            ForkJoinTask.invokeAll(tasks);
             
-            BalanceAccountEntryInfo accountEntryInfo = createAccountEntryInfo(accountEntry, dateEntry, rowEntry, columnEntry, subTotal);
-            dateEntryInfo.accountEntryInfos.put(accountEntry, accountEntryInfo);
-            if (accountEntry.includeDepth == 1) {
-                dateEntryInfo.totalBalance = dateEntryInfo.totalBalance.add(subTotal);
+            for (AccountEntryBalancesTask task : tasks) {
+                subTotal = subTotal.add(task.join());
             }
-        } finally {
-            if (previousSubTotal != null) {
-                previousSubTotal = previousSubTotal.add(subTotal);
+        }
+        else {
+            for (AccountEntry accountEntry : accountEntries) {
+                subTotal = subTotal.add(setupAccountEntryBalances(accountEntry, dateEntry, dateEntryInfo, columnEntry, reportOutput));
             }
-            subTotal = previousSubTotal;
         }
+        return subTotal;
+    }
+    
+    
+    /**
+     * Sets up the balance information for an account entry and its children.
+     * @return The sub-total for the account entry, which is the balance of the account entry if it is included
+     * plus the sub-totals of all the child account entries.
+     */
+    protected BigDecimal setupAccountEntryBalances(AccountEntry accountEntry, DateEntry dateEntry, BalanceDateEntryInfo dateEntryInfo,
+            ColumnEntry columnEntry, ReportOutput reportOutput) {
+        BigDecimal subTotal = setupAccountEntriesBalances(accountEntry.childAccountEntries, dateEntry, dateEntryInfo, columnEntry, reportOutput);
+        if (!accountEntry.isIncluded) {
+            return subTotal;
+        }
+        
+        RowEntry rowEntry = null;
+        if (accountEntry.isAnyChildAccountIncluded()) {
+            rowEntry = accountEntry.usePostChildRowEntry();
+        }
+
+        BigDecimal balance = getInternalAccountBalance(rowEntry, columnEntry, accountEntry, dateEntry, reportOutput);
+        subTotal = subTotal.add(balance);
+
+        BalanceAccountEntryInfo accountEntryInfo = createAccountEntryInfo(accountEntry, dateEntry, rowEntry, columnEntry, subTotal);
+        dateEntryInfo.accountEntryInfos.put(accountEntry, accountEntryInfo);
+        
+        return subTotal;
     }
 
     
@@ -207,13 +256,13 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
 
     
     @Override
-    protected void updateCellValuesForDateEntryAccountEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void updateCellValuesForDateEntryAccountEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportOutput reportOutput) {
         if (accountEntry.isIncluded) {
             BalanceDateEntryInfo dateEntryInfo = dateEntryInfos.get(dateEntry);
             if (dateEntryInfo != null) {
                 
                 BalanceAccountEntryInfo accountEntryInfo = dateEntryInfo.accountEntryInfos.get(accountEntry);
-                String value = getAccountEntryCellValue(accountEntryInfo, dateEntry, reportOutput);
+                CellValue value = getAccountEntryCellValue(accountEntryInfo, dateEntry, reportOutput);
 
                 if (accountEntryInfo.rowEntry != null) {
                     CellEntry cellEntry = new BalanceCellEntry(accountEntryInfo, accountEntryInfo.rowEntry, value);
@@ -232,11 +281,11 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
 
     
     @Override
-    protected void updateGrandTotalCellValue(DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void updateGrandTotalCellValue(DateEntry dateEntry, ReportOutput reportOutput) {
         BalanceDateEntryInfo dateEntryInfo = dateEntryInfos.get(dateEntry);
         if (dateEntryInfo != null) {
-            String value = getGrandTotalCellValue(dateEntryInfo, dateEntry, reportOutput);
-            if (StringUtil.isNonEmpty(value)) {
+            CellValue value = getGrandTotalCellValue(dateEntryInfo, dateEntry, reportOutput);
+            if ((value != null) && StringUtil.isNonEmpty(value.getText())) {
                 ColumnEntry columnEntry = dateEntry.getColumnEntryAtIndex(dateEntryInfo.columnIndexBase);
                 CellEntry cellEntry = new BalanceCellEntry(null, reportOutput.grandTotalRowEntry, value);
                 reportOutput.grandTotalRowEntry.setNonExpandedColumnCellValue(columnEntry, cellEntry);
@@ -245,28 +294,23 @@ abstract class BalanceColumnGenerator extends ColumnGenerator {
     }
     
 
-    protected abstract String getColumnTitle(int columnOffset, AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput);
+    protected abstract String getColumnTitle(int columnOffset, AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput);
 
     
-    protected BigDecimal getInternalAccountBalance(RowEntry rowEntry, ColumnEntry columnEntry, AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
-        if (dateEntry.endDate.equals(dateEntry.startDate)) {
-            return accountEntry.account.getBalance(dateEntry.endDate);
-        }
-        else {
-            return accountEntry.account.getBalance(dateEntry.startDate, dateEntry.endDate);
-        }
+    protected BigDecimal getInternalAccountBalance(RowEntry rowEntry, ColumnEntry columnEntry, AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
+        return reportOutput.getBalanceMatrix().getBalance(accountEntry.account, dateEntry);
     }
 
     
-    protected abstract String getAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput);
+    protected abstract CellValue getAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportOutput reportOutput);
 
     
-    protected String getGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportOutput reportOutput) {
         return null;
     }
 
     
-    protected BalanceDateEntryInfo getReferenceDateEntryInfo(DateEntry dateEntry, ReportDataView.ReferencePeriodType periodType) {
+    protected BalanceDateEntryInfo getReferenceDateEntryInfo(DateEntry dateEntry, ReportGenerator.ReferencePeriodType periodType) {
         switch (periodType) {
             case PREVIOUS:
                 Map.Entry<DateEntry, BalanceDateEntryInfo> entry = dateEntryInfos.lowerEntry(dateEntry);
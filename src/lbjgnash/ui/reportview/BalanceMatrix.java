@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jgnash.engine.Account;
+
+/**
+ * Memoizes the account balances for the {@link DateEntry}s of a report, this way
+ * the balance of an account for a date entry is only retrieved from the account once
+ * no matter how many {@link BalanceColumnGenerator}s use it.
+ * <p>
+ * Where possible the balances are retrieved from a {@link CumulativeBalanceIndex} built
+ * for the account, so the account's transactions are only walked once for all the
+ * date entries.
+ * @author Albert Santos
+ */
+public class BalanceMatrix {
+    
+    protected static class AccountBalances {
+        final BigDecimal [] balances;
+        final CumulativeBalanceIndex balanceIndex;
+        
+        protected AccountBalances(Account account, int dateEntryCount) {
+            this.balances = new BigDecimal[dateEntryCount];
+            this.balanceIndex = CumulativeBalanceIndex.fromAccount(account);
+        }
+        
+        protected AccountBalances(AccountBalances source) {
+            this.balances = source.balances.clone();
+            this.balanceIndex = source.balanceIndex;
+        }
+    }
+    
+    // The balances of a given account are only requested from one thread at a time, 
+    // but different accounts may be requested from different threads.
+    private final Map<Account, AccountBalances> accountBalances = new ConcurrentHashMap<>();
+    private final int dateEntryCount;
+    private final LocalDate [] startDates;
+    private final LocalDate [] endDates;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param dateEntries   The date entries, the {@link DateEntry#index} of
+     * the date entries passed to {@link #getBalance(jgnash.engine.Account, lbjgnash.ui.reportview.DateEntry) }
+     * must be less than the number of date entries.
+     */
+    public BalanceMatrix(List<DateEntry> dateEntries) {
+        this.dateEntryCount = dateEntries.size();
+        this.startDates = new LocalDate[dateEntryCount];
+        this.endDates = new LocalDate[dateEntryCount];
+        dateEntries.forEach((dateEntry) -> {
+            startDates[dateEntry.index] = dateEntry.startDate;
+            endDates[dateEntry.index] = dateEntry.endDate;
+        });
+    }
+    
+    
+    /**
+     * Copies the balances of the accounts not affected by a set of engine changes from
+     * the balance matrix of a previous report update. Nothing is copied if the date entries of
+     * the previous matrix don't match ours.
+     * @param previousMatrix    The previous balance matrix.
+     * @param engineChanges The engine changes since the previous matrix was generated.
+     * @return <code>true</code> if the balances were copied.
+     */
+    public boolean copyUnchangedBalances(BalanceMatrix previousMatrix, EngineChanges engineChanges) {
+        if (!Arrays.equals(startDates, previousMatrix.startDates) || !Arrays.equals(endDates, previousMatrix.endDates)) {
+            return false;
+        }
+        
+        // Price changes affect the balances of all the investment accounts, which aren't indexed.
+        boolean isPriceChanged = !engineChanges.getChangedSecurities().isEmpty() || engineChanges.isExchangeRateChanged();
+        Set<Account> changedAccounts = engineChanges.getChangedAccounts();
+        previousMatrix.accountBalances.forEach((account, balances) -> {
+            if (changedAccounts.contains(account)) {
+                return;
+            }
+            if (isPriceChanged && (balances.balanceIndex == null)) {
+                return;
+            }
+            accountBalances.put(account, new AccountBalances(balances));
+        });
+        return true;
+    }
+
+
+    /**
+     * Retrieves the balance of an account for a date entry. If the start and end dates
+     * of the date entry are the same the balance is the balance as of the end date,
+     * otherwise it is the balance change over the range.
+     * @param account   The account.
+     * @param dateEntry The date entry.
+     * @return The balance.
+     */
+    public BigDecimal getBalance(Account account, DateEntry dateEntry) {
+        AccountBalances balances = accountBalances.computeIfAbsent(account, (key) -> {
+            return new AccountBalances(key, dateEntryCount);
+        });
+
+        BigDecimal balance = balances.balances[dateEntry.index];
+        if (balance == null) {
+            missCount.increment();
+            balance = retrieveBalance(account, balances.balanceIndex, dateEntry);
+            balances.balances[dateEntry.index] = balance;
+        }
+        else {
+            hitCount.increment();
+        }
+
+        return balance;
+    }
+
+
+    protected BigDecimal retrieveBalance(Account account, CumulativeBalanceIndex balanceIndex, DateEntry dateEntry) {
+        if (balanceIndex != null) {
+            if (dateEntry.endDate.equals(dateEntry.startDate)) {
+                return balanceIndex.getBalance(dateEntry.endDate);
+            }
+            else {
+                return balanceIndex.getBalance(dateEntry.startDate, dateEntry.endDate);
+            }
+        }
+        
+        ReportProfile.Counter.ACCOUNT_BALANCE_CALLS.increment();
+        if (dateEntry.endDate.equals(dateEntry.startDate)) {
+            return account.getBalance(dateEntry.endDate);
+        }
+        else {
+            return account.getBalance(dateEntry.startDate, dateEntry.endDate);
+        }
+    }
+
+
+    /**
+     * @return The number of calls to {@link #getBalance(jgnash.engine.Account, lbjgnash.ui.reportview.DateEntry) }
+     * that were satisfied with a previously retrieved balance.
+     */
+    public final long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return The number of calls to {@link #getBalance(jgnash.engine.Account, lbjgnash.ui.reportview.DateEntry) }
+     * that had to retrieve the balance from the account.
+     */
+    public final long getMissCount() {
+        return missCount.sum();
+    }
+}
@@ -17,6 +17,7 @@ package lbjgnash.ui.reportview;
 
 import com.leeboardtools.util.ResourceSource;
 import java.math.BigDecimal;
+import java.util.Set;
 
 /**
  *
@@ -25,30 +26,34 @@ import java.math.BigDecimal;
 public class CashInAnnualRateOfReturnColumnGenerator extends SecuritiesColumnGenerator {
 
     @Override
-    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void addRequiredPortfolioMetrics(Set<PortfolioMetrics.Metric> metrics) {
+        metrics.addAll(PortfolioMetrics.metrics(PortfolioMetrics.Metric.MARKET_VALUE, PortfolioMetrics.Metric.CASH_IN_YEAR_AGO_VALUE_SUM));
+    }
+
+    @Override
+    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         return ResourceSource.getString("Report.ColumnHeading.CashInAnnualRateOfReturn");
     }
 
     @Override
-    protected String getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
-        BigDecimal yearAgoValueSum = securityEntryInfo.getCashInYearAgoValueSum(
-                dateEntryInfo.dateEntry.endDate, reportOutput.getMinDaysForRateOfReturn());
-        BigDecimal totalValue = securityEntryInfo.trackerDateEntry.getMarketValue(dateEntryInfo.dateEntry.endDate);
+    protected CellValue getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
+        BigDecimal yearAgoValueSum = securityEntryInfo.getCashInYearAgoValueSum();
+        BigDecimal totalValue = securityEntryInfo.metrics.getMarketValue();
         BigDecimal numerator = totalValue.subtract(yearAgoValueSum);
-        return reportOutput.toPercentString(numerator, yearAgoValueSum);
+        return reportOutput.toPercentCellValue(numerator, yearAgoValueSum);
     }
 
     @Override
-    protected String getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal totalValue = datedAccountEntryInfo.totalMarketValue;
         BigDecimal numerator = totalValue.subtract(datedAccountEntryInfo.cashInYearAgoValueSum);
-        return reportOutput.toPercentString(numerator, datedAccountEntryInfo.cashInYearAgoValueSum);
+        return reportOutput.toPercentCellValue(numerator, datedAccountEntryInfo.cashInYearAgoValueSum);
     }
     
     @Override
-    protected String getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal totalValue = dateEntryInfo.totalMarketValue;
         BigDecimal numerator = totalValue.subtract(dateEntryInfo.cashInYearAgoValueSum);
-        return reportOutput.toPercentString(numerator, dateEntryInfo.cashInYearAgoValueSum);
+        return reportOutput.toPercentCellValue(numerator, dateEntryInfo.cashInYearAgoValueSum);
     }
 }
@@ -17,6 +17,7 @@ package lbjgnash.ui.reportview;
 
 import com.leeboardtools.util.ResourceSource;
 import java.math.BigDecimal;
+import java.util.Set;
 
 /**
  *
@@ -25,25 +26,30 @@ import java.math.BigDecimal;
 public class CashInColumnGenerator extends SecuritiesColumnGenerator {
 
     @Override
-    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void addRequiredPortfolioMetrics(Set<PortfolioMetrics.Metric> metrics) {
+        metrics.addAll(PortfolioMetrics.metrics(PortfolioMetrics.Metric.TOTAL_CASH_IN));
+    }
+
+    @Override
+    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         return ResourceSource.getString("Report.ColumnHeading.CashIn");
     }
 
     @Override
-    protected String getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = securityEntryInfo.getTotalCashIn();
-        return reportOutput.toMonetaryValueString(value, securityEntryInfo.securityRowEntry.accountEntry.account);
+        return reportOutput.toMonetaryCellValue(value, securityEntryInfo.securityRowEntry.accountEntry.account);
     }
 
     @Override
-    protected String getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = datedAccountEntryInfo.totalCashIn;
-        return reportOutput.toMonetaryValueString(value, datedAccountEntryInfo.reportingAccountEntryInfo.accountEntry.account);
+        return reportOutput.toMonetaryCellValue(value, datedAccountEntryInfo.reportingAccountEntryInfo.accountEntry.account);
     }
     
     @Override
-    protected String getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = dateEntryInfo.totalCashIn;
-        return reportOutput.toMonetaryValueString(value, null);
+        return reportOutput.toMonetaryCellValue(value, null);
     }
 }
@@ -15,23 +15,66 @@
  */
 package lbjgnash.ui.reportview;
 
+import java.math.BigDecimal;
+
 /**
- * Used as the class for the cells of the {@link TreeTableView} so we can
- * associate data accessible to individual {@link Cell}s.
+ * An individual cell of a {@link RowEntry}.
  */
 public class CellEntry {
 
+    /**
+     * The role of the cell within the report, used to determine how the cell is displayed.
+     */
+    public static enum Style {
+        VALUE,
+        SUBTOTAL,
+        SUMMARY,
+        GRAND_TOTAL,
+    }
+
     final RowEntry rowEntry;
     final String value;
+    final BigDecimal number;
+    final Style style;
 
-    public CellEntry(RowEntry rowEntry, String value) {
+    /**
+     * Constructor.
+     * @param rowEntry  The row entry the cell belongs to.
+     * @param cellValue The cell's value, may be <code>null</code> for a blank cell.
+     * @param style The cell's style.
+     */
+    public CellEntry(RowEntry rowEntry, CellValue cellValue, Style style) {
         this.rowEntry = rowEntry;
-        this.value = value;
+        this.value = (cellValue != null) ? cellValue.getText() : null;
+        this.number = (cellValue != null) ? cellValue.getNumber() : null;
+        this.style = style;
+    }
+
+    public final RowEntry getRowEntry() {
+        return rowEntry;
+    }
+
+    /**
+     * @return The text of the cell.
+     */
+    public final String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The number the cell represents, <code>null</code> if the cell is not numeric.
+     */
+    public final BigDecimal getNumber() {
+        return number;
+    }
+
+    public final Style getStyle() {
+        return style;
     }
 
     @Override
     public String toString() {
         return value;
     }
-    
+
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+
+/**
+ * The value of a report cell, this is the number the cell represents along with the
+ * text to display for it.
+ * @author Albert Santos
+ */
+public class CellValue {
+
+    /**
+     * Used for cells that can't be computed, such as a percent with a zero denominator.
+     */
+    public static final CellValue NOT_AVAILABLE = new CellValue(null, "-");
+
+    private final BigDecimal number;
+    private final String text;
+
+    /**
+     * Constructor.
+     * @param number    The number, may be <code>null</code> if there is no number.
+     * @param text  The text to display.
+     */
+    public CellValue(BigDecimal number, String text) {
+        this.number = number;
+        this.text = text;
+    }
+
+    /**
+     * @return The number as it is displayed, i.e. rounded and with the sign the report uses,
+     * <code>null</code> if the cell is not numeric.
+     */
+    public final BigDecimal getNumber() {
+        return number;
+    }
+
+    public final String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
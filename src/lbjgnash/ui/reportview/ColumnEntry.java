@@ -15,25 +15,29 @@
  */
 package lbjgnash.ui.reportview;
 
-import javafx.scene.control.TreeTableColumn;
-
 /**
- * This represents an individual {@link TreeTableColumn}.
+ * This represents an individual column of a report.
  */
 public class ColumnEntry {
 
-    protected TreeTableColumn<RowEntry, CellEntry> treeTableColumn = new TreeTableColumn<>();
+    String title;
     // This is set as the column entries of the DateEntries are added
     // to the ReportOutput's columnEntries list.
     int columnIndex;
 
     public ColumnEntry() {
-        treeTableColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<RowEntry, CellEntry> param) -> {
-            if (param.getValue().getValue() == null) {
-                return null;
-            }
-            return param.getValue().getValue().getColumnCellProperties(columnIndex, param.getValue());
-        });
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getColumnIndex() {
+        return columnIndex;
     }
 
     public void setExpandedRowValue(RowEntry rowEntry, CellEntry cellEntry) {
@@ -43,5 +47,5 @@ public class ColumnEntry {
     public void setNonExpandedRowValue(RowEntry rowEntry, CellEntry cellEntry) {
         rowEntry.setNonExpandedColumnCellValue(this, cellEntry);
     }
-    
+
 }
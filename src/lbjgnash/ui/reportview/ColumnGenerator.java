@@ -15,18 +15,65 @@
  */
 package lbjgnash.ui.reportview;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
 /**
  * The base abstract class for the objects responsible for generating {@link ColumnEntry}
  * objects.
  */
 public abstract class ColumnGenerator {
+    
+    /**
+     * Determines if {@link #setupColumnsForDateEntry(lbjgnash.ui.reportview.DateEntry, lbjgnash.ui.reportview.AccountEntry, lbjgnash.ui.reportview.ReportOutput, int) }
+     * and {@link #updateCellValuesForDateEntryAccountEntry(lbjgnash.ui.reportview.DateEntry, lbjgnash.ui.reportview.AccountEntry, lbjgnash.ui.reportview.ReportOutput) }
+     * may be called for different account entry subtrees at the same time from different threads.
+     * @return <code>true</code> if the account entries may be processed in parallel.
+     */
+    protected boolean isParallelCapable() {
+        return false;
+    }
+    
+    /**
+     * Adds the {@link PortfolioMetrics.Metric}s the generator uses to a set. This is
+     * used to plan which metrics need to be calculated for the report.
+     * @param metrics   The set to add to.
+     */
+    protected void addRequiredPortfolioMetrics(Set<PortfolioMetrics.Metric> metrics) {
+    }
+    
+    /**
+     * Calls an action for each account entry in a list, if both the generator and the report output support
+     * parallel processing the account entries are processed as separate fork/join tasks.
+     * @param accountEntries    The account entries to process.
+     * @param reportOutput  The report output.
+     * @param action    The action to call for each account entry.
+     */
+    protected void forEachAccountEntry(List<AccountEntry> accountEntries, ReportOutput reportOutput, Consumer<AccountEntry> action) {
+        if ((accountEntries.size() > 1) && isParallelCapable() && reportOutput.isParallelUpdate() && ForkJoinTask.inForkJoinPool()) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(accountEntries.size());
+            accountEntries.forEach((accountEntry) -> {
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    action.accept(accountEntry);
+                }));
+            });
+            ForkJoinTask.invokeAll(tasks);
+        }
+        else {
+            accountEntries.forEach(action);
+        }
+    }
 
     /**
-     * This is called from {@link ReportDataView}.
+     * This is called from {@link ReportGenerator}.
      * @param reportOutput 
      */
-    protected void setupAccountEntryRows(ReportDataView.ReportOutput reportOutput) {
+    protected void setupAccountEntryRows(ReportOutput reportOutput) {
         reportOutput.accountEntries.forEach((accountEntry) -> {
+            reportOutput.checkCancelled();
             setupRowsForAccountEntry(accountEntry, reportOutput, null);
         });
     }
@@ -39,21 +86,25 @@ public abstract class ColumnGenerator {
      * @param reportOutput The report output.
      * @param parentAccountEntry    The parent account entry, may be <code>null</code>.
      */
-    protected void setupRowsForAccountEntry(AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput, AccountEntry parentAccountEntry) {
+    protected void setupRowsForAccountEntry(AccountEntry accountEntry, ReportOutput reportOutput, AccountEntry parentAccountEntry) {
         accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
             setupRowsForAccountEntry(childAccountEntry, reportOutput, accountEntry);
         });
     }
 
     /**
-     * This is called from {@link ReportDataView}.
+     * This is called from {@link ReportGenerator}.
      * @param reportOutput 
      */
-    protected void setupDateEntryColumns(ReportDataView.ReportOutput reportOutput) {
+    protected void setupDateEntryColumns(ReportOutput reportOutput) {
         reportOutput.dateEntries.forEach((dateEntry) -> {
+            reportOutput.checkCancelled();
             final int columnIndexBase = dateEntry.columnEntries.size();
-            reportOutput.accountEntries.forEach((accountEntry) -> {
-                setupColumnsForDateEntry(dateEntry, accountEntry, reportOutput, columnIndexBase);
+            reportOutput.invokeUpdate(() -> {
+                forEachAccountEntry(reportOutput.accountEntries, reportOutput, (accountEntry) -> {
+                    setupColumnsForDateEntry(dateEntry, accountEntry, reportOutput, columnIndexBase);
+                });
+                return null;
             });
         });
     }
@@ -67,19 +118,20 @@ public abstract class ColumnGenerator {
      * @param reportOutput  The report output this is for.
      * @param columnIndexBase   The index to add to any column entry requests.
      */
-    protected void setupColumnsForDateEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput, int columnIndexBase) {
-        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
+    protected void setupColumnsForDateEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportOutput reportOutput, int columnIndexBase) {
+        forEachAccountEntry(accountEntry.childAccountEntries, reportOutput, (childAccountEntry) -> {
             setupColumnsForDateEntry(dateEntry, childAccountEntry, reportOutput, columnIndexBase);
         });
     }
 
     
     /**
-     * This is called from {@link ReportDataView}.
+     * This is called from {@link ReportGenerator}.
      * @param reportOutput 
      */
-    protected void updateCellValues(ReportDataView.ReportOutput reportOutput) {
+    protected void updateCellValues(ReportOutput reportOutput) {
         reportOutput.dateEntries.forEach((dateEntry) -> {
+            reportOutput.checkCancelled();
             if (reportOutput.grandTotalRowEntry != null) {
                 updateDateEntryCellValues(dateEntry, reportOutput);
                 updateGrandTotalCellValue(dateEntry, reportOutput);
@@ -87,9 +139,12 @@ public abstract class ColumnGenerator {
         });
     }
 
-    protected void updateDateEntryCellValues(DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
-        reportOutput.accountEntries.forEach((accountEntry) -> {
-            updateCellValuesForDateEntryAccountEntry(dateEntry, accountEntry, reportOutput);
+    protected void updateDateEntryCellValues(DateEntry dateEntry, ReportOutput reportOutput) {
+        reportOutput.invokeUpdate(() -> {
+            forEachAccountEntry(reportOutput.accountEntries, reportOutput, (accountEntry) -> {
+                updateCellValuesForDateEntryAccountEntry(dateEntry, accountEntry, reportOutput);
+            });
+            return null;
         });
     }
 
@@ -101,13 +156,13 @@ public abstract class ColumnGenerator {
      * @param accountEntry  The account entry this is for.
      * @param reportOutput The report output this is for.
      */
-    protected void updateCellValuesForDateEntryAccountEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput) {
-        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
+    protected void updateCellValuesForDateEntryAccountEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportOutput reportOutput) {
+        forEachAccountEntry(accountEntry.childAccountEntries, reportOutput, (childAccountEntry) -> {
             updateCellValuesForDateEntryAccountEntry(dateEntry, childAccountEntry, reportOutput);
         });
     }
 
-    protected void updateGrandTotalCellValue(DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void updateGrandTotalCellValue(DateEntry dateEntry, ReportOutput reportOutput) {
     }
     
 }
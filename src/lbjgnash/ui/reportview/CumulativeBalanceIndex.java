@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import jgnash.engine.Account;
+import jgnash.engine.AccountGroup;
+
+/**
+ * Index of the running balance of an account by date. The amounts are added in date
+ * order, after which the balance as of any date is a single binary search, and
+ * the balance change over a date range is the difference of two balances.
+ * @author Albert Santos
+ */
+public class CumulativeBalanceIndex {
+    private int [] epochDays = new int[16];
+    private BigDecimal [] balances = new BigDecimal[16];
+    private int count;
+
+
+    /**
+     * Creates an index for an account, the index contains all the account's transactions.
+     * @param account   The account.
+     * @return The index, <code>null</code> if the account's balance is not simply the
+     * sum of its transaction amounts (i.e. investment accounts, whose balance includes
+     * the market value of the securities).
+     */
+    public static CumulativeBalanceIndex fromAccount(Account account) {
+        if (!isIndexableAccount(account)) {
+            return null;
+        }
+
+        CumulativeBalanceIndex index = new CumulativeBalanceIndex();
+        account.getSortedTransactionList().forEach((transaction) -> {
+            index.addAmount(transaction.getLocalDate(), transaction.getAmount(account));
+        });
+        return index;
+    }
+
+
+    /**
+     * Determines if an account's balance can be tracked by an index.
+     * @param account   The account.
+     * @return <code>true</code> if it can.
+     */
+    public static boolean isIndexableAccount(Account account) {
+        AccountGroup accountGroup = account.getAccountType().getAccountGroup();
+        switch (accountGroup) {
+            case INVEST :
+            case SIMPLEINVEST :
+                return false;
+
+            default :
+                return true;
+        }
+    }
+
+
+    /**
+     * Adds an amount to the index. Amounts must be added in date order.
+     * @param date  The date of the amount, this must not be before the date of the
+     * last amount added.
+     * @param amount    The amount.
+     * @throws IllegalArgumentException if date is before the date of the last amount added.
+     */
+    public void addAmount(LocalDate date, BigDecimal amount) {
+        int epochDay = (int)date.toEpochDay();
+        if (count > 0) {
+            int lastEpochDay = epochDays[count - 1];
+            if (epochDay == lastEpochDay) {
+                balances[count - 1] = balances[count - 1].add(amount);
+                return;
+            }
+            else if (epochDay < lastEpochDay) {
+                throw new IllegalArgumentException("Amounts must be added in date order.");
+            }
+        }
+
+        if (count >= epochDays.length) {
+            epochDays = Arrays.copyOf(epochDays, count * 2);
+            balances = Arrays.copyOf(balances, count * 2);
+        }
+
+        BigDecimal balance = (count > 0) ? balances[count - 1].add(amount) : amount;
+        epochDays[count] = epochDay;
+        balances[count] = balance;
+        ++count;
+    }
+
+
+    /**
+     * Retrieves the balance as of the end of a date.
+     * @param date  The date.
+     * @return The sum of all the amounts added on or before date.
+     */
+    public BigDecimal getBalance(LocalDate date) {
+        return getBalanceForEpochDay((int)date.toEpochDay());
+    }
+
+
+    /**
+     * Retrieves the change in balance over a date range.
+     * @param startDate The first date of the range.
+     * @param endDate   The last date of the range.
+     * @return The sum of all the amounts added from startDate through endDate.
+     */
+    public BigDecimal getBalance(LocalDate startDate, LocalDate endDate) {
+        int startEpochDay = (int)startDate.toEpochDay();
+        int endEpochDay = (int)endDate.toEpochDay();
+        if (endEpochDay < startEpochDay) {
+            return BigDecimal.ZERO;
+        }
+        return getBalanceForEpochDay(endEpochDay).subtract(getBalanceForEpochDay(startEpochDay - 1));
+    }
+
+
+    protected BigDecimal getBalanceForEpochDay(int epochDay) {
+        int index = Arrays.binarySearch(epochDays, 0, count, epochDay);
+        if (index < 0) {
+            // Want the last entry before the insertion point.
+            index = -index - 2;
+            if (index < 0) {
+                return BigDecimal.ZERO;
+            }
+        }
+        return balances[index];
+    }
+
+
+    /**
+     * @return The number of distinct dates in the index.
+     */
+    public final int getDateCount() {
+        return count;
+    }
+}
@@ -23,14 +23,14 @@ import java.math.BigDecimal;
  */
 class DeltaPeriodColumnGenerator extends BalanceColumnGenerator {
 
-    protected final ReportDataView.ReferencePeriodType referencePeriodType;
+    protected final ReportGenerator.ReferencePeriodType referencePeriodType;
 
-    protected DeltaPeriodColumnGenerator(ReportDataView.ReferencePeriodType referencePeriodType) {
+    protected DeltaPeriodColumnGenerator(ReportGenerator.ReferencePeriodType referencePeriodType) {
         this.referencePeriodType = referencePeriodType;
     }
 
     @Override
-    protected String getColumnTitle(int columnOffset, AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected String getColumnTitle(int columnOffset, AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         if (columnOffset == 0) {
             return ResourceSource.getString("Report.ColumnHeading.DeltaPreviousPeriod");
         }
@@ -38,7 +38,7 @@ class DeltaPeriodColumnGenerator extends BalanceColumnGenerator {
     }
 
     @Override
-    protected String getAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportOutput reportOutput) {
         BalanceDateEntryInfo dateEntryInfo = dateEntryInfos.get(dateEntry);
         BalanceDateEntryInfo refDateEntryInfo = getReferenceDateEntryInfo(dateEntry, referencePeriodType);
         if (dateEntryInfo == refDateEntryInfo) {
@@ -50,11 +50,11 @@ class DeltaPeriodColumnGenerator extends BalanceColumnGenerator {
                 return getDeltaAccountEntryCellValue(accountInfo, refAccountInfo, dateEntryInfo, refDateEntryInfo, reportOutput);
             }
         }
-        return "-";
+        return CellValue.NOT_AVAILABLE;
     }
 
     @Override
-    protected String getGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportOutput reportOutput) {
         BalanceDateEntryInfo refDateEntryInfo = getReferenceDateEntryInfo(dateEntry, referencePeriodType);
         if (dateEntryInfo == refDateEntryInfo) {
             return getBaselineGrandTotalCellValue(dateEntryInfo, dateEntry, reportOutput);
@@ -65,28 +65,28 @@ class DeltaPeriodColumnGenerator extends BalanceColumnGenerator {
         return null;
     }
 
-    protected String getBaselineAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
-        return reportOutput.toMonetaryValueString(accountInfo.balance, accountInfo.accountEntry.account);
+    protected CellValue getBaselineAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportOutput reportOutput) {
+        return reportOutput.toMonetaryCellValue(accountInfo.balance, accountInfo.accountEntry.account);
     }
 
-    protected String getBaselineGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
-        return reportOutput.toMonetaryValueString(dateEntryInfo.totalBalance, null);
+    protected CellValue getBaselineGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportOutput reportOutput) {
+        return reportOutput.toMonetaryCellValue(dateEntryInfo.totalBalance, null);
     }
 
-    protected String getDeltaAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, BalanceAccountEntryInfo refAccountInfo, BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getDeltaAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, BalanceAccountEntryInfo refAccountInfo, BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportOutput reportOutput) {
         if (accountInfo == refAccountInfo) {
             return null;
         }
         BigDecimal balance = accountInfo.balance.subtract(refAccountInfo.balance);
-        return reportOutput.toMonetaryValueString(balance, accountInfo.accountEntry.account);
+        return reportOutput.toMonetaryCellValue(balance, accountInfo.accountEntry.account);
     }
 
-    protected String getDeltaGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getDeltaGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportOutput reportOutput) {
         if (dateEntryInfo == refDateEntryInfo) {
             return null;
         }
         BigDecimal totalBalance = dateEntryInfo.totalBalance.subtract(refDateEntryInfo.totalBalance);
-        return reportOutput.toMonetaryValueString(totalBalance, null);
+        return reportOutput.toMonetaryCellValue(totalBalance, null);
     }
     
 }
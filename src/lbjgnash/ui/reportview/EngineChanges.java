@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import jgnash.engine.Account;
+import jgnash.engine.SecurityNode;
+import jgnash.engine.Transaction;
+import jgnash.engine.message.Message;
+import jgnash.engine.message.MessageChannel;
+import jgnash.engine.message.MessageProperty;
+
+/**
+ * Collects the accounts and securities affected by a batch of engine messages.
+ * @author Albert Santos
+ */
+public class EngineChanges {
+
+    /**
+     * The message channels the messages handled by {@link #addMessage(jgnash.engine.message.Message) } are posted to.
+     */
+    public static final MessageChannel [] MESSAGE_CHANNELS = {
+        MessageChannel.ACCOUNT,
+        MessageChannel.COMMODITY,
+        MessageChannel.SYSTEM,
+        MessageChannel.TRANSACTION,
+    };
+
+    private final Set<Account> changedAccounts = new HashSet<>();
+    private final Set<SecurityNode> changedSecurities = new HashSet<>();
+    private boolean isAccountStructureChanged;
+    private boolean isExchangeRateChanged;
+    private boolean isFileClosing;
+
+
+    /**
+     * Adds the changes represented by an engine message.
+     * @param message   The message.
+     * @return <code>true</code> if the message affects reports.
+     */
+    public boolean addMessage(Message message) {
+        switch (message.getEvent()) {
+            case TRANSACTION_ADD :
+            case TRANSACTION_REMOVE :
+                Transaction transaction = message.getObject(MessageProperty.TRANSACTION);
+                if (transaction != null) {
+                    changedAccounts.addAll(transaction.getAccounts());
+                }
+                addAccountFromMessage(message);
+                return true;
+
+            case ACCOUNT_ADD :
+            case ACCOUNT_MODIFY :
+            case ACCOUNT_REMOVE :
+                isAccountStructureChanged = true;
+                addAccountFromMessage(message);
+                return true;
+                
+            case ACCOUNT_SECURITY_ADD :
+            case ACCOUNT_SECURITY_REMOVE :
+                addAccountFromMessage(message);
+                return true;
+
+            case SECURITY_MODIFY :
+            case SECURITY_HISTORY_ADD :
+            case SECURITY_HISTORY_REMOVE :
+                Object commodity = message.getObject(MessageProperty.COMMODITY);
+                if (commodity instanceof SecurityNode) {
+                    changedSecurities.add((SecurityNode)commodity);
+                }
+                return true;
+
+            case EXCHANGE_RATE_ADD :
+            case EXCHANGE_RATE_REMOVE :
+                isExchangeRateChanged = true;
+                return true;
+
+            case FILE_CLOSING :
+                isFileClosing = true;
+                return true;
+
+            default :
+                return false;
+        }
+    }
+
+    protected void addAccountFromMessage(Message message) {
+        Account account = message.getObject(MessageProperty.ACCOUNT);
+        if (account != null) {
+            changedAccounts.add(account);
+        }
+    }
+
+
+    /**
+     * Adds all the changes from another changes object.
+     * @param other The changes to add.
+     */
+    public void addAll(EngineChanges other) {
+        changedAccounts.addAll(other.changedAccounts);
+        changedSecurities.addAll(other.changedSecurities);
+        isAccountStructureChanged |= other.isAccountStructureChanged;
+        isExchangeRateChanged |= other.isExchangeRateChanged;
+        isFileClosing |= other.isFileClosing;
+    }
+
+
+    public void clear() {
+        changedAccounts.clear();
+        changedSecurities.clear();
+        isAccountStructureChanged = false;
+        isExchangeRateChanged = false;
+        isFileClosing = false;
+    }
+
+
+    public final boolean isEmpty() {
+        return changedAccounts.isEmpty() && changedSecurities.isEmpty() && !isExchangeRateChanged && !isFileClosing;
+    }
+
+    public final Set<Account> getChangedAccounts() {
+        return Collections.unmodifiableSet(changedAccounts);
+    }
+
+    public final Set<SecurityNode> getChangedSecurities() {
+        return Collections.unmodifiableSet(changedSecurities);
+    }
+
+    /**
+     * @return <code>true</code> if accounts have been added, removed, or modified, in which
+     * case the account hierarchy may have changed.
+     */
+    public final boolean isAccountStructureChanged() {
+        return isAccountStructureChanged;
+    }
+
+    /**
+     * @return <code>true</code> if exchange rates have been added or removed, which affects
+     * the prices of all securities.
+     */
+    public final boolean isExchangeRateChanged() {
+        return isExchangeRateChanged;
+    }
+
+    public final boolean isFileClosing() {
+        return isFileClosing;
+    }
+}
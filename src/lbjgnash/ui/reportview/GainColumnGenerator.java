@@ -17,6 +17,7 @@ package lbjgnash.ui.reportview;
 
 import com.leeboardtools.util.ResourceSource;
 import java.math.BigDecimal;
+import java.util.Set;
 
 /**
  *
@@ -25,27 +26,32 @@ import java.math.BigDecimal;
 public class GainColumnGenerator extends SecuritiesColumnGenerator {
 
     @Override
-    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void addRequiredPortfolioMetrics(Set<PortfolioMetrics.Metric> metrics) {
+        metrics.addAll(PortfolioMetrics.metrics(PortfolioMetrics.Metric.MARKET_VALUE, PortfolioMetrics.Metric.COST_BASIS));
+    }
+
+    @Override
+    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         return ResourceSource.getString("Report.ColumnHeading.Gain");
     }
 
     @Override
-    protected String getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
-        BigDecimal value = securityEntryInfo.trackerDateEntry.getMarketValue(dateEntryInfo.dateEntry.endDate);
-        BigDecimal costBasis = securityEntryInfo.trackerDateEntry.getCostBasis();
+    protected CellValue getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
+        BigDecimal value = securityEntryInfo.metrics.getMarketValue();
+        BigDecimal costBasis = securityEntryInfo.metrics.getCostBasis();
         value = value.subtract(costBasis);
-        return reportOutput.toMonetaryValueString(value, securityEntryInfo.securityRowEntry.accountEntry.account);
+        return reportOutput.toMonetaryCellValue(value, securityEntryInfo.securityRowEntry.accountEntry.account);
     }
 
     @Override
-    protected String getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = datedAccountEntryInfo.totalMarketValue.subtract(datedAccountEntryInfo.totalCostBasis);
-        return reportOutput.toMonetaryValueString(value, datedAccountEntryInfo.reportingAccountEntryInfo.accountEntry.account);
+        return reportOutput.toMonetaryCellValue(value, datedAccountEntryInfo.reportingAccountEntryInfo.accountEntry.account);
     }
     
     @Override
-    protected String getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = dateEntryInfo.totalMarketValue.subtract(dateEntryInfo.totalCostBasis);
-        return reportOutput.toMonetaryValueString(value, null);
+        return reportOutput.toMonetaryCellValue(value, null);
     }
 }
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import jgnash.engine.Account;
+import jgnash.engine.AccountGroup;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.InvestmentTransaction;
+import jgnash.engine.MathConstants;
+import jgnash.engine.SecurityNode;
+import jgnash.engine.Transaction;
+import jgnash.engine.TransactionEntry;
+import org.hsqldb.lib.StringUtil;
+
+/**
+ * Column oriented store of the transactions of an account that affect security lots.
+ * Everything the security transaction trackers need from a transaction is extracted once
+ * when the store is built, the trackers then work off the columns without going back to the
+ * engine's transaction objects.
+ * <p>
+ * The rows are sorted by date, and then for a given date by priority:
+ * <ul>
+ * <li>cash in
+ * <li>sell security
+ * <li>buy security
+ * <li>cash out
+ * </ul>
+ * Transactions with the same date and priority retain the order in which they were added.
+ * @author Albert Santos
+ */
+public class InvestmentTransactionStore {
+
+    public static final byte TYPE_CASH_IN = 0;
+    public static final byte TYPE_SELL_SHARE = 1;
+    public static final byte TYPE_SPLIT_SHARE = 2;
+    public static final byte TYPE_MERGE_SHARE = 3;
+    public static final byte TYPE_ADD_SHARE = 4;
+    public static final byte TYPE_BUY_SHARE = 5;
+    public static final byte TYPE_REINVEST_DIVIDEND = 6;
+    public static final byte TYPE_CASH_OUT = 7;
+
+    public static final int PRIORITY_CASH_IN = 0;
+    public static final int PRIORITY_SELL = 1;
+    public static final int PRIORITY_BUY = 2;
+    public static final int PRIORITY_CASH_OUT = 3;
+
+    protected static final String LOT_TAG = "LOT:";
+    protected static final String LOT_SEPARATOR_TAG = ";";
+    protected static final String [] NO_LOT_NAMES = new String [0];
+
+    private final int [] epochDays;
+    private final byte [] typeCodes;
+    private final SecurityNode [] securityNodes;
+    private final CurrencyNode [] currencyNodes;
+    private final BigDecimal [] quantities;
+    private final BigDecimal [] cashValues;
+    private final boolean [] cashInFlags;
+    private final String [][] lotNames;
+    private final Transaction [] transactions;
+
+
+    /**
+     * Used to build up a store.
+     */
+    public static class Builder {
+        private final List<Row> rows = new ArrayList<>();
+
+        private static class Row {
+            final int epochDay;
+            final byte typeCode;
+            final SecurityNode securityNode;
+            final CurrencyNode currencyNode;
+            final BigDecimal quantity;
+            final BigDecimal cashValue;
+            final boolean isCashIn;
+            final String [] lotNames;
+            final Transaction transaction;
+
+            Row(int epochDay, Transaction transaction, byte typeCode, SecurityNode securityNode, CurrencyNode currencyNode,
+                    BigDecimal quantity, BigDecimal cashValue, boolean isCashIn, String [] lotNames) {
+                this.epochDay = epochDay;
+                this.typeCode = typeCode;
+                this.securityNode = securityNode;
+                this.currencyNode = currencyNode;
+                this.quantity = quantity;
+                this.cashValue = cashValue;
+                this.isCashIn = isCashIn;
+                this.lotNames = lotNames;
+                this.transaction = transaction;
+            }
+        }
+
+        /**
+         * Adds an investment transaction. Investment transactions that don't affect
+         * the security lots, such as dividends, are ignored.
+         * @param transaction   The transaction.
+         * @return this.
+         */
+        public Builder addInvestmentTransaction(InvestmentTransaction transaction) {
+            byte typeCode;
+            switch (transaction.getTransactionType()){
+                case ADDSHARE:
+                    typeCode = TYPE_ADD_SHARE;
+                    break;
+
+                case BUYSHARE:
+                    typeCode = TYPE_BUY_SHARE;
+                    break;
+
+                case DIVIDEND:
+                    return this;
+
+                case REINVESTDIV:
+                    typeCode = TYPE_REINVEST_DIVIDEND;
+                    break;
+
+                case REMOVESHARE:
+                    return this;
+
+                case RETURNOFCAPITAL:
+                    return this;
+
+                case SELLSHARE:
+                    typeCode = TYPE_SELL_SHARE;
+                    break;
+
+                case SPLITSHARE:
+                    typeCode = TYPE_SPLIT_SHARE;
+                    break;
+
+                case MERGESHARE:
+                    typeCode = TYPE_MERGE_SHARE;
+                    break;
+
+                default:
+                    throw new AssertionError(transaction.getTransactionType().name());
+            }
+
+            SecurityNode securityNode = transaction.getSecurityNode();
+            BigDecimal cashValue = transaction.getNetCashValue().setScale(securityNode.getScale(), MathConstants.roundingMode);
+            String memo = transaction.getMemo();
+
+            boolean isCashIn;
+            switch (typeCode) {
+                case TYPE_ADD_SHARE:
+                    isCashIn = true;
+                    break;
+
+                case TYPE_BUY_SHARE:
+                    isCashIn = ((memo == null) || !memo.toLowerCase().contains("reinvested"))
+                            && (cashValue.compareTo(BigDecimal.ZERO) > 0);
+                    break;
+
+                default :
+                    isCashIn = false;
+                    break;
+            }
+
+            rows.add(new Row(getEpochDay(transaction), transaction, typeCode, securityNode, transaction.getInvestmentAccount().getCurrencyNode(),
+                    transaction.getQuantity(), cashValue, isCashIn, lotNamesFromString(memo)));
+            return this;
+        }
+
+        /**
+         * Adds a cash transaction. Transactions with a zero amount are ignored.
+         * @param cashAccount   The cash account.
+         * @param transaction   The transaction.
+         * @param amount    The amount of the transaction in the cash account.
+         * @return this.
+         */
+        public Builder addCashTransaction(Account cashAccount, Transaction transaction, BigDecimal amount) {
+            int sign = amount.compareTo(BigDecimal.ZERO);
+            if (sign == 0) {
+                return this;
+            }
+
+            if (sign < 0) {
+                rows.add(new Row(getEpochDay(transaction), transaction, TYPE_CASH_OUT, null, null, amount, amount, false, NO_LOT_NAMES));
+            }
+            else {
+                rows.add(new Row(getEpochDay(transaction), transaction, TYPE_CASH_IN, null, null, amount, amount,
+                        isCashInflow(cashAccount, transaction), NO_LOT_NAMES));
+            }
+            return this;
+        }
+
+        /**
+         * Adds a row that is not backed by a transaction, package visibility for testing.
+         * @param date  The date.
+         * @param typeCode  The type code, one of the TYPE_xxx values.
+         * @param securityNode  The security, <code>null</code> for cash.
+         * @param quantity  The number of shares or the cash amount.
+         * @param cashValue The net cash value.
+         * @param isCashIn  <code>true</code> if the shares or cash have a cash-in basis.
+         * @param lotNames  The lot names.
+         * @return this.
+         */
+        Builder addRow(LocalDate date, byte typeCode, SecurityNode securityNode, BigDecimal quantity, BigDecimal cashValue,
+                boolean isCashIn, String... lotNames) {
+            rows.add(new Row((int)date.toEpochDay(), null, typeCode, securityNode, null, quantity, cashValue, isCashIn, lotNames));
+            return this;
+        }
+
+        private static int getEpochDay(Transaction transaction) {
+            return (int)transaction.getLocalDate().toEpochDay();
+        }
+
+        /**
+         * @return The store.
+         */
+        public InvestmentTransactionStore build() {
+            // The sort is stable, which retains the order of rows with the same date and priority.
+            rows.sort((row1, row2) -> {
+                if (row1.epochDay != row2.epochDay) {
+                    return Integer.compare(row1.epochDay, row2.epochDay);
+                }
+                return Integer.compare(getPriority(row1.typeCode), getPriority(row2.typeCode));
+            });
+            return new InvestmentTransactionStore(rows);
+        }
+    }
+
+
+    private InvestmentTransactionStore(List<Builder.Row> rows) {
+        int count = rows.size();
+        epochDays = new int [count];
+        typeCodes = new byte [count];
+        securityNodes = new SecurityNode [count];
+        currencyNodes = new CurrencyNode [count];
+        quantities = new BigDecimal [count];
+        cashValues = new BigDecimal [count];
+        cashInFlags = new boolean [count];
+        lotNames = new String [count][];
+        transactions = new Transaction [count];
+
+        for (int i = 0; i < count; ++i) {
+            Builder.Row row = rows.get(i);
+            epochDays[i] = row.epochDay;
+            typeCodes[i] = row.typeCode;
+            securityNodes[i] = row.securityNode;
+            currencyNodes[i] = row.currencyNode;
+            quantities[i] = row.quantity;
+            cashValues[i] = row.cashValue;
+            cashInFlags[i] = row.isCashIn;
+            lotNames[i] = row.lotNames;
+            transactions[i] = row.transaction;
+        }
+    }
+
+
+    /**
+     * Builds the store for an account. If the account does not have any securities all the
+     * transactions are treated as cash transactions, otherwise the investment transactions
+     * are treated as investment transactions and all other transactions as cash transactions.
+     * @param account   The account.
+     * @return The store.
+     */
+    public static InvestmentTransactionStore forAccount(Account account) {
+        final boolean isCashOnly = account.getSecurities().isEmpty();
+        Builder builder = new Builder();
+        account.getSortedTransactionList().forEach((transaction) -> {
+            if (!isCashOnly && (transaction instanceof InvestmentTransaction)) {
+                builder.addInvestmentTransaction((InvestmentTransaction)transaction);
+            }
+            else {
+                builder.addCashTransaction(account, transaction, transaction.getAmount(account));
+            }
+        });
+        return builder.build();
+    }
+
+
+    /**
+     * Retrieves the processing priority of a type code, for a given date lower priorities
+     * are processed first.
+     * @param typeCode  The type code.
+     * @return The priority, one of the PRIORITY_xxx values.
+     */
+    public static int getPriority(byte typeCode) {
+        switch (typeCode) {
+            case TYPE_CASH_IN:
+                return PRIORITY_CASH_IN;
+
+            case TYPE_SELL_SHARE:
+            case TYPE_SPLIT_SHARE:
+            case TYPE_MERGE_SHARE:
+                return PRIORITY_SELL;
+
+            case TYPE_ADD_SHARE:
+            case TYPE_BUY_SHARE:
+            case TYPE_REINVEST_DIVIDEND:
+                return PRIORITY_BUY;
+
+            case TYPE_CASH_OUT:
+                return PRIORITY_CASH_OUT;
+
+            default :
+                throw new IllegalArgumentException("Unknown type code: " + typeCode);
+        }
+    }
+
+
+    /**
+     * Determines if a string marks cash as a cash inflow.
+     * @param text  The text to check.
+     * @return <code>true</code> if text contains the cash-in tag.
+     */
+    public static boolean isCashInString(String text) {
+        text = text.toLowerCase();
+        return text.contains("[cash-in]");
+    }
+
+
+    /**
+     * Determines if a cash transaction adding cash to a cash account is a cash inflow,
+     * which has a cost basis, as opposed to income, which does not.
+     * @param cashAccount   The cash account.
+     * @param transaction   The transaction.
+     * @return <code>true</code> if the transaction is a cash inflow.
+     */
+    protected static boolean isCashInflow(Account cashAccount, Transaction transaction) {
+        if (isCashInString(transaction.getMemo())) {
+            return true;
+        }
+
+        for (TransactionEntry entry : transaction.getTransactionEntries()) {
+            if (entry.getCreditAccount() != cashAccount) {
+                continue;
+            }
+
+            Account debitAccount = entry.getDebitAccount();
+            if ((debitAccount.getAccountType().getAccountGroup() == AccountGroup.INCOME)
+              && !isCashInString(debitAccount.getDescription())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Extracts the lot names from a string, the lot names are tagged with {@link #LOT_TAG}.
+     * @param text  The text.
+     * @return An array containing the lot names, empty if there are none.
+     */
+    protected static String [] lotNamesFromString(String text) {
+        if (StringUtil.isEmpty(text)) {
+            return NO_LOT_NAMES;
+        }
+        text = text.trim();
+
+        int startIndex = text.indexOf(LOT_TAG);
+        if (startIndex < 0) {
+            return NO_LOT_NAMES;
+        }
+
+        List<String> names = new ArrayList<>();
+
+        while (true) {
+            startIndex += LOT_TAG.length();
+            int endIndex = text.indexOf(LOT_TAG, startIndex);
+
+            if (endIndex < 0) {
+                names.add(cleanupLotName(text.substring(startIndex)));
+                break;
+            }
+
+            names.add(cleanupLotName(text.substring(startIndex, endIndex)));
+
+            startIndex = endIndex;
+        }
+
+        return names.toArray(new String [names.size()]);
+    }
+
+    protected static String cleanupLotName(String lotName) {
+        lotName = lotName.trim();
+        if (lotName.endsWith(LOT_SEPARATOR_TAG)) {
+            lotName = lotName.substring(0, lotName.length() - LOT_SEPARATOR_TAG.length()).trim();
+        }
+        return lotName;
+    }
+
+
+    /**
+     * @return The number of rows in the store.
+     */
+    public final int getRowCount() {
+        return epochDays.length;
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The epoch day of the transaction's date.
+     */
+    public final int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The transaction's date.
+     */
+    public final LocalDate getDate(int row) {
+        return LocalDate.ofEpochDay(epochDays[row]);
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The type code, one of the TYPE_xxx values.
+     */
+    public final byte getTypeCode(int row) {
+        return typeCodes[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The security of an investment transaction, <code>null</code> for cash transactions.
+     */
+    public final SecurityNode getSecurityNode(int row) {
+        return securityNodes[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The currency of the investment account of an investment transaction, <code>null</code>
+     * for cash transactions.
+     */
+    public final CurrencyNode getCurrencyNode(int row) {
+        return currencyNodes[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The number of shares of an investment transaction, the amount of a cash transaction.
+     */
+    public final BigDecimal getQuantity(int row) {
+        return quantities[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The net cash value of an investment transaction, set to the scale of the security,
+     * the amount of a cash transaction.
+     */
+    public final BigDecimal getCashValue(int row) {
+        return cashValues[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return <code>true</code> if the shares or cash added by the transaction have a cash-in basis.
+     */
+    public final boolean isCashIn(int row) {
+        return cashInFlags[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The lot names tagged in the transaction's memo, the array is empty if there
+     * are none. The array should not be modified.
+     */
+    public final String [] getLotNames(int row) {
+        return lotNames[row];
+    }
+
+    /**
+     * @param row   The row index.
+     * @return The transaction the row was built from, this is normally only used for diagnostics.
+     */
+    public final Transaction getTransaction(int row) {
+        return transactions[row];
+    }
+}
@@ -17,6 +17,7 @@ package lbjgnash.ui.reportview;
 
 import com.leeboardtools.util.ResourceSource;
 import java.math.BigDecimal;
+import java.util.Set;
 
 /**
  *
@@ -25,26 +26,31 @@ import java.math.BigDecimal;
 public class PercentCashInGainColumnGenerator extends SecuritiesColumnGenerator {
 
     @Override
-    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void addRequiredPortfolioMetrics(Set<PortfolioMetrics.Metric> metrics) {
+        metrics.addAll(PortfolioMetrics.metrics(PortfolioMetrics.Metric.MARKET_VALUE, PortfolioMetrics.Metric.TOTAL_CASH_IN));
+    }
+
+    @Override
+    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         return ResourceSource.getString("Report.ColumnHeading.PercentCashInGain");
     }
 
     @Override
-    protected String getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal costBasis = securityEntryInfo.getTotalCashIn();
-        BigDecimal value = securityEntryInfo.getNetGain(dateEntryInfo.dateEntry.endDate);
-        return reportOutput.toPercentString(value, costBasis);
+        BigDecimal value = securityEntryInfo.getNetGain();
+        return reportOutput.toPercentCellValue(value, costBasis);
     }
 
     @Override
-    protected String getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = datedAccountEntryInfo.getNetGain();
-        return reportOutput.toPercentString(value, datedAccountEntryInfo.totalCashIn);
+        return reportOutput.toPercentCellValue(value, datedAccountEntryInfo.totalCashIn);
     }
     
     @Override
-    protected String getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = dateEntryInfo.getNetGain();
-        return reportOutput.toPercentString(value, dateEntryInfo.totalCashIn);
+        return reportOutput.toPercentCellValue(value, dateEntryInfo.totalCashIn);
     }
 }
@@ -23,26 +23,26 @@ import java.math.BigDecimal;
  */
 class PercentDeltaPeriodColumnGenerator extends DeltaPeriodColumnGenerator {
     
-    public PercentDeltaPeriodColumnGenerator(ReportDataView.ReferencePeriodType referencePeriodType) {
+    public PercentDeltaPeriodColumnGenerator(ReportGenerator.ReferencePeriodType referencePeriodType) {
         super(referencePeriodType);
     }
 
     @Override
-    protected String getDeltaAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, BalanceAccountEntryInfo refAccountInfo, BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getDeltaAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, BalanceAccountEntryInfo refAccountInfo, BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportOutput reportOutput) {
         if (accountInfo == refAccountInfo) {
             return null;
         }
         BigDecimal balance = accountInfo.balance.subtract(refAccountInfo.balance);
-        return reportOutput.toPercentString(balance, refAccountInfo.balance);
+        return reportOutput.toPercentCellValue(balance, refAccountInfo.balance);
     }
 
     @Override
-    protected String getDeltaGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getDeltaGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, BalanceDateEntryInfo refDateEntryInfo, ReportOutput reportOutput) {
         if (dateEntryInfo == refDateEntryInfo) {
             return null;
         }
         BigDecimal totalBalance = dateEntryInfo.totalBalance.subtract(refDateEntryInfo.totalBalance);
-        return reportOutput.toPercentString(totalBalance, refDateEntryInfo.totalBalance);
+        return reportOutput.toPercentCellValue(totalBalance, refDateEntryInfo.totalBalance);
     }
     
 }
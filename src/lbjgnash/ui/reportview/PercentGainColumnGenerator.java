@@ -17,6 +17,7 @@ package lbjgnash.ui.reportview;
 
 import com.leeboardtools.util.ResourceSource;
 import java.math.BigDecimal;
+import java.util.Set;
 
 /**
  *
@@ -25,27 +26,32 @@ import java.math.BigDecimal;
 public class PercentGainColumnGenerator extends SecuritiesColumnGenerator {
 
     @Override
-    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void addRequiredPortfolioMetrics(Set<PortfolioMetrics.Metric> metrics) {
+        metrics.addAll(PortfolioMetrics.metrics(PortfolioMetrics.Metric.MARKET_VALUE, PortfolioMetrics.Metric.COST_BASIS));
+    }
+
+    @Override
+    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         return ResourceSource.getString("Report.ColumnHeading.PercentGain");
     }
 
     @Override
-    protected String getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
-        BigDecimal costBasis = securityEntryInfo.trackerDateEntry.getCostBasis();
-        BigDecimal value = securityEntryInfo.trackerDateEntry.getMarketValue(dateEntryInfo.dateEntry.endDate);
+    protected CellValue getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
+        BigDecimal costBasis = securityEntryInfo.metrics.getCostBasis();
+        BigDecimal value = securityEntryInfo.metrics.getMarketValue();
         value = value.subtract(costBasis);
-        return reportOutput.toPercentString(value, costBasis);
+        return reportOutput.toPercentCellValue(value, costBasis);
     }
 
     @Override
-    protected String getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = datedAccountEntryInfo.totalMarketValue.subtract(datedAccountEntryInfo.totalCostBasis);
-        return reportOutput.toPercentString(value, datedAccountEntryInfo.totalCostBasis);
+        return reportOutput.toPercentCellValue(value, datedAccountEntryInfo.totalCostBasis);
     }
     
     @Override
-    protected String getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         BigDecimal value = dateEntryInfo.totalMarketValue.subtract(dateEntryInfo.totalCostBasis);
-        return reportOutput.toPercentString(value, dateEntryInfo.totalCostBasis);
+        return reportOutput.toPercentCellValue(value, dateEntryInfo.totalCostBasis);
     }
 }
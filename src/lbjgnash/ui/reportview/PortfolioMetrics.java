@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Snapshot of the values of a {@link SecurityTransactionTracker.DateEntry} as of a report date.
+ * One of these is shared by all the {@link SecuritiesColumnGenerator}s of a report for each
+ * tracker date entry/report date pair, each value is computed the first time it is requested.
+ * <p>
+ * This is not thread safe.
+ * @author Albert Santos
+ */
+public class PortfolioMetrics {
+    
+    /**
+     * The individual metrics, used to determine which metrics a report needs.
+     */
+    public static enum Metric {
+        COST_BASIS,
+        MARKET_VALUE,
+        TOTAL_CASH_IN,
+        QUANTITY,
+        PRICE,
+        YEAR_AGO_VALUE_SUM,
+        CASH_IN_YEAR_AGO_VALUE_SUM,
+    }
+    
+    /**
+     * Convenience method for creating a metrics set.
+     * @param first The first metric.
+     * @param rest  The remaining metrics.
+     * @return The set.
+     */
+    public static Set<Metric> metrics(Metric first, Metric ... rest) {
+        return EnumSet.of(first, rest);
+    }
+    
+    private final SecurityTransactionTracker.DateEntry trackerDateEntry;
+    private final LocalDate date;
+    private final int minDaysForRateOfReturn;
+
+    private BigDecimal marketPrice;
+    private BigDecimal marketValue;
+    private BigDecimal yearAgoValueSum;
+    private BigDecimal cashInYearAgoValueSum;
+
+    /**
+     * Constructor.
+     * @param trackerDateEntry  The tracker date entry.
+     * @param date  The report date.
+     * @param minDaysForRateOfReturn    The minimum days argument passed to the year ago value sum methods of the
+     * tracker date entry.
+     */
+    public PortfolioMetrics(SecurityTransactionTracker.DateEntry trackerDateEntry, LocalDate date, int minDaysForRateOfReturn) {
+        this.trackerDateEntry = trackerDateEntry;
+        this.date = date;
+        this.minDaysForRateOfReturn = minDaysForRateOfReturn;
+    }
+
+    public final SecurityTransactionTracker.DateEntry getTrackerDateEntry() {
+        return trackerDateEntry;
+    }
+
+    public final LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * @return The total shares.
+     */
+    public final BigDecimal getTotalShares() {
+        return trackerDateEntry.getTotalShares();
+    }
+
+    /**
+     * @return The cost basis of the total shares.
+     */
+    public final BigDecimal getCostBasis() {
+        return trackerDateEntry.getCostBasis();
+    }
+
+    /**
+     * @return The total cash used to make direct purchases.
+     */
+    public final BigDecimal getTotalCashIn() {
+        return trackerDateEntry.getTotalCashIn();
+    }
+
+    /**
+     * @return The security price as of the date.
+     */
+    public final BigDecimal getMarketPrice() {
+        if (marketPrice == null) {
+            marketPrice = trackerDateEntry.getMarketPrice(date);
+        }
+        return marketPrice;
+    }
+
+    /**
+     * @return The market value of the shares as of the date, this has not been rounded.
+     */
+    public final BigDecimal getMarketValue() {
+        if (marketValue == null) {
+            marketValue = getMarketPrice().multiply(trackerDateEntry.getTotalShares());
+        }
+        return marketValue;
+    }
+
+    /**
+     * @return The market value less the total cash-in.
+     */
+    public final BigDecimal getNetGain() {
+        return getMarketValue().subtract(getTotalCashIn());
+    }
+
+    /**
+     * @return The result of {@link SecurityTransactionTracker.DateEntry#getYearAgoValueSum(java.time.LocalDate, int) }.
+     */
+    public final BigDecimal getYearAgoValueSum() {
+        if (yearAgoValueSum == null) {
+            yearAgoValueSum = trackerDateEntry.getYearAgoValueSum(date, minDaysForRateOfReturn);
+        }
+        return yearAgoValueSum;
+    }
+
+    /**
+     * @return The result of {@link SecurityTransactionTracker.DateEntry#getCashInYearAgoValueSum(java.time.LocalDate, int) }.
+     */
+    public final BigDecimal getCashInYearAgoValueSum() {
+        if (cashInYearAgoValueSum == null) {
+            cashInYearAgoValueSum = trackerDateEntry.getCashInYearAgoValueSum(date, minDaysForRateOfReturn);
+        }
+        return cashInYearAgoValueSum;
+    }
+    
+    /**
+     * Calculates the year ago value sums of a number of metrics that share a tracker date entry
+     * in one pass per sum, see {@link YearAgoValueCalculator#calcYearAgoValueSums(java.time.LocalDate[], int, java.math.BigDecimal[]) }.
+     * This is normally used when a tracker date entry covers several report dates.
+     * @param metricsList   The metrics, they must all have the same tracker date entry and minimum days.
+     * @param requiredMetrics   The metrics required by the report, only the year ago value sums in here are calculated.
+     */
+    static void calcYearAgoValueSums(List<PortfolioMetrics> metricsList, Set<Metric> requiredMetrics) {
+        if (metricsList.isEmpty()) {
+            return;
+        }
+        
+        final int count = metricsList.size();
+        final SecurityTransactionTracker.DateEntry trackerDateEntry = metricsList.get(0).trackerDateEntry;
+        final int minDays = metricsList.get(0).minDaysForRateOfReturn;
+        LocalDate [] dates = new LocalDate [count];
+        BigDecimal [] prices = new BigDecimal [count];
+        for (int i = 0; i < count; ++i) {
+            PortfolioMetrics metrics = metricsList.get(i);
+            dates[i] = metrics.date;
+            prices[i] = metrics.getMarketPrice();
+        }
+        
+        if (requiredMetrics.contains(Metric.YEAR_AGO_VALUE_SUM)) {
+            BigDecimal [] sums = trackerDateEntry.getYearAgoValueCalculator().calcYearAgoValueSums(dates, minDays, prices);
+            for (int i = 0; i < count; ++i) {
+                metricsList.get(i).yearAgoValueSum = sums[i];
+            }
+        }
+        
+        if (requiredMetrics.contains(Metric.CASH_IN_YEAR_AGO_VALUE_SUM)) {
+            BigDecimal [] sums = trackerDateEntry.getCashInAllocation().getYearAgoValueCalculator().calcYearAgoValueSums(dates, minDays, prices);
+            for (int i = 0; i < count; ++i) {
+                metricsList.get(i).cashInYearAgoValueSum = sums[i];
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ package lbjgnash.ui.reportview;
 
 import com.leeboardtools.util.ResourceSource;
 import java.math.BigDecimal;
+import java.util.Set;
 
 /**
  *
@@ -25,22 +26,27 @@ import java.math.BigDecimal;
 public class QuantityColumnGenerator extends SecuritiesColumnGenerator {
 
     @Override
-    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void addRequiredPortfolioMetrics(Set<PortfolioMetrics.Metric> metrics) {
+        metrics.addAll(PortfolioMetrics.metrics(PortfolioMetrics.Metric.QUANTITY));
+    }
+
+    @Override
+    protected String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         return ResourceSource.getString("Report.ColumnHeading.Quantity");
     }
 
     @Override
-    protected String getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, 
-            ReportDataView.ReportOutput reportOutput) {
-        BigDecimal totalShares = securityEntryInfo.trackerDateEntry.getTotalShares();
-        return reportOutput.toSharesQuantity(totalShares);
+    protected CellValue getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, 
+            ReportOutput reportOutput) {
+        BigDecimal totalShares = securityEntryInfo.metrics.getTotalShares();
+        return reportOutput.toSharesQuantityCellValue(totalShares);
     }
     
 
     @Override
-    protected String getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSummaryEntryCellValue(DatedSummaryEntryInfo datedAccountEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         if (datedAccountEntryInfo.totalQuantity != null) {
-            return reportOutput.toSharesQuantity(datedAccountEntryInfo.totalQuantity);
+            return reportOutput.toSharesQuantityCellValue(datedAccountEntryInfo.totalQuantity);
         }
         return null;
     }
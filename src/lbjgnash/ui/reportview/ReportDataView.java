@@ -18,147 +18,97 @@ package lbjgnash.ui.reportview;
 import com.leeboardtools.dialog.PromptDialog;
 import com.leeboardtools.util.CSVUtil;
 import com.leeboardtools.util.ResourceSource;
-import com.leeboardtools.util.StringUtil;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.scene.control.Control;
-import javafx.scene.control.TreeItem;
-import javafx.scene.control.TreeTableColumn;
-import javafx.scene.control.TreeTableView;
-import jgnash.engine.Account;
-import jgnash.engine.AccountGroup;
 import jgnash.engine.Engine;
-import jgnash.engine.MathConstants;
-import jgnash.engine.SecurityNode;
-import lbjgnash.ui.AccountFilter;
 import lbjgnash.ui.ReportDefinition;
 
 /**
- * This is the guts of the control used to display the report's data.
+ * This is the guts of the control used to display the report's data. The report output
+ * is generated in the background by a {@link ReportGenerator} and displayed with a
+ * {@link ReportTreeTableAdapter}.
  * @author Albert Santos
  */
 public class ReportDataView {
-    private final TreeTableView<RowEntry> treeTableView;
+    private final ReportTreeTableAdapter treeTableAdapter;
     private ReportDefinition definition;
     private Engine engine;
     
-    // TODO: Move this to ReportDefinition.
-    protected DateTimeFormatter columnDateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT);
-    protected String percentSuffix = "%";
+    // The output of the last completed update, used to avoid re-retrieving the balances and
+    // re-calculating the portfolio metrics of accounts that haven't changed when refreshing 
+    // from engine changes.
+    protected ReportOutput lastReportOutput;
     
-    protected TreeTableColumn<RowEntry, String> headingColumn;
+    // If true the column generators that support it process the account entries in parallel.
+    protected boolean isParallelUpdate = true;
     
-    public static final BigDecimal ONE_HUNDRED = new BigDecimal(100);
-
-    protected ReportOutput currentReportOutput;
+    private final ReadOnlyObjectWrapper<Worker<?>> updateWorker = new ReadOnlyObjectWrapper<>(this, "updateWorker", null);
     
-    public static final String STYLE_CELL       = "report-cell";
-    public static final String STYLE_SUBTOTAL   = "report-cell-subtotal";
-    public static final String STYLE_SUMMARY    = "report-cell-summary";
-    public static final String STYLE_BALANCE_VALUE      = "report-cell-balance-value";
-    public static final String STYLE_GRAND_TOTAL    = "report-cell-grand-total";
+    // All report updates are run on the one background thread, this way a superseded
+    // update doesn't compete with its replacement, and the engine only sees one report reader.
+    private static final ExecutorService UPDATE_EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "LBjGnash Report Update");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     
     /**
-     * This represents the full output of one report.
+     * The task used to generate a {@link ReportOutput} off the JavaFX application thread.
      */
-    protected class ReportOutput {
-        // Primarily for use by the securities style report.
-        final SortedMap<String, RowEntry> namedRowEntries = new TreeMap<>();
-        
-        final List<AccountEntry> accountEntries = new ArrayList<>();
-        final List<DateEntry> dateEntries = new ArrayList<>();
-        final List<ColumnGenerator> columnGenerators = new ArrayList<>();
+    protected class ReportUpdateTask extends Task<ReportOutput> implements ReportOutput.UpdateMonitor {
+        final ReportGenerator generator;
+        final ReportOutput reportOutput;
+        ReportOutput.UpdatePhase currentPhase = ReportOutput.UpdatePhase.CREATE_ACCOUNT_ENTRIES;
         
-        // This list is built up from the column entries of the dateEntries.
-        final List<ColumnEntry> columnEntries = new ArrayList<>();
-
-        RowEntry grandTotalRowEntry;
-        
-        public ReportDefinition getDefinition() {
-            return definition;
-        }
-        
-        public BigDecimal toMonetaryValue(BigDecimal value, Account account) {
-            return value.setScale(2, MathConstants.roundingMode);
-        }
-
-        public String toMonetaryValueString(BigDecimal value, Account account) {
-            if (definition.getStyle() == ReportDefinition.Style.INCOME_EXPENSE) {
-                if (account == null) {
-                    // Presume this is a sub-total...
-                    value = value.negate();
-                }
-                else {
-                    AccountGroup accountGroup = account.getAccountType().getAccountGroup();
-                    if ((accountGroup == AccountGroup.INCOME) || (accountGroup == AccountGroup.EXPENSE)) {
-                        value = value.negate();
-                    }
-                }
-            }
-            return value.setScale(2, MathConstants.roundingMode).toPlainString();
+        protected ReportUpdateTask(ReportGenerator generator, ReportOutput reportOutput) {
+            this.generator = generator;
+            this.reportOutput = reportOutput;
+            reportOutput.setUpdateMonitor(this);
         }
 
-        public String toPercentString(BigDecimal numerator, BigDecimal denominator) {
-            numerator = numerator.multiply(ReportDataView.ONE_HUNDRED).setScale(1, MathConstants.roundingMode);
-            try {
-                BigDecimal value = numerator.divide(denominator, MathConstants.roundingMode);
-                return value.toPlainString() + percentSuffix;
-            } catch (ArithmeticException ex) {
-                return "-";
-            }
-        }
-        
-        public String toSharesQuantity(BigDecimal value) {
-            return value.setScale(4, MathConstants.roundingMode).toPlainString();
+        @Override
+        protected ReportOutput call() throws Exception {
+            generator.updateReportOutput(reportOutput);
+            
+            // The tree table view is updated from the JavaFX application thread once we've succeeded.
+            reportOutput.startPhase(ReportOutput.UpdatePhase.UPDATE_TREE_TABLE_VIEW);
+            reportOutput.setUpdateMonitor(null);
+            return reportOutput;
         }
         
-        public String toSecurityPrice(BigDecimal value, SecurityNode securityNode) {
-            return value.setScale(2, MathConstants.roundingMode).toPlainString();
+        @Override
+        public void startPhase(ReportOutput.UpdatePhase phase) {
+            currentPhase = phase;
+            updateMessage(ResourceSource.getString(phase.getStringResourceId()));
+            updatePhaseProgress(0, 1);
         }
         
-        public int getMinDaysForRateOfReturn() {
-            return 5;
+        @Override
+        public void updatePhaseProgress(long workDone, long totalWork) {
+            double phaseProgress = currentPhase.ordinal();
+            if (totalWork > 0) {
+                phaseProgress += (double)Math.min(workDone, totalWork) / totalWork;
+            }
+            updateProgress(phaseProgress, ReportOutput.UpdatePhase.values().length);
         }
     }
     
-    
-
-    public static enum ReferencePeriodType {
-        PREVIOUS,
-        OLDEST,
-        NEWEST,
-    }
-    
 
     
     public ReportDataView() {
-        treeTableView = new TreeTableView<>();
-        treeTableView.setShowRoot(false);
-        
-        headingColumn = new TreeTableColumn<>();
-        headingColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<RowEntry, String> param) -> {
-            if (param.getValue().getValue() == null) {
-                return null;
-            }
-            return param.getValue().getValue().getRowTitle();
-        });
+        treeTableAdapter = new ReportTreeTableAdapter();
     }
     
 
@@ -169,323 +119,167 @@ public class ReportDataView {
     
 
     public void shutDownView() {
-        this.treeTableView.getRoot().getChildren().clear();
-        this.treeTableView.getColumns().clear();
+        cancelRefresh();
+        
+        this.treeTableAdapter.clear();
         
         this.definition = null;
         this.engine = null;
+        this.lastReportOutput = null;
     }
     
 
     public final Control getControl() {
-        return treeTableView;
+        return treeTableAdapter.getTreeTableView();
     }
     
     
-
-    public void refreshFromReportDefinition() {
-        refreshFromEngine();
+    /**
+     * @return The report output currently being displayed, <code>null</code> if none.
+     */
+    public final ReportOutput getReportOutput() {
+        return treeTableAdapter.getReportOutput();
     }
     
-
-    public void refreshFromEngine() {
-        ReportOutput updatedReportOutput = new ReportOutput();
-        updateReportOutput(updatedReportOutput);
-        
-        updateTreeTableView(updatedReportOutput);
+    
+    /**
+     * @return The property holding the {@link Worker} of the report update currently in progress,
+     * the property's value is <code>null</code> if there is no update in progress.
+     */
+    public final ReadOnlyObjectProperty<Worker<?>> updateWorkerProperty() {
+        return updateWorker.getReadOnlyProperty();
     }
     
+    public final Worker<?> getUpdateWorker() {
+        return updateWorker.get();
+    }
     
     
-    protected void updateTreeTableView(ReportOutput reportOutput) {
-        TreeItem<RowEntry> root = new TreeItem<>(new RowEntry());
-        
-        treeTableView.setRoot(root);
-        treeTableView.getColumns().clear();
-        
-        
-        treeTableView.getColumns().add(headingColumn);
-        
-        List<TreeTableColumn<RowEntry, CellEntry>> columnGroup = new ArrayList<>();
-        reportOutput.dateEntries.forEach((dateEntry) -> {
-            columnGroup.clear();
-            dateEntry.columnEntries.forEach((columnEntry) -> {
-                if (columnEntry.treeTableColumn != null) {
-                    columnGroup.add(columnEntry.treeTableColumn);
-                }
-            });
-            
-            TreeTableColumn<RowEntry, CellEntry> dateColumn;
-            if (columnGroup.size() == 1) {
-                // Single column, it's going to be the date column.
-                dateColumn = columnGroup.get(0);
-            }
-            else {
-                dateColumn = new TreeTableColumn<>();
-                dateColumn.getColumns().addAll(columnGroup);
-            }
-            
-            dateColumn.setText(getDateColumnLabel(dateEntry));
-            
-            treeTableView.getColumns().add(dateColumn);
-        });
-        
-        
-        // Add the rows...
-        reportOutput.accountEntries.forEach((accountEntry) -> {
-            addRowsForAccountEntry(root, accountEntry);
-        });
-        
-        reportOutput.namedRowEntries.forEach((name, rowEntry) -> {
-            TreeItem<RowEntry> treeItem = new TreeItem<>(rowEntry);
-            root.getChildren().add(treeItem);
-        });
-        
-        if (reportOutput.grandTotalRowEntry != null) {
-            TreeItem<RowEntry> treeItem = new TreeItem<>(reportOutput.grandTotalRowEntry);
-            root.getChildren().add(treeItem);
-        }
-        
-        this.currentReportOutput = reportOutput;
+
+    public void refreshFromReportDefinition() {
+        refreshFromEngine();
     }
     
-    protected void addRowsForAccountEntry(TreeItem<RowEntry> parent, AccountEntry accountEntry) {
-        if (accountEntry.summaryRowEntry != null) {
-            TreeItem<RowEntry> treeItem = new TreeItem<>(accountEntry.summaryRowEntry);
-            parent.getChildren().add(treeItem);
-            parent = treeItem;
-        }
-        
-        final TreeItem<RowEntry> itemForChildren = parent;
-        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
-            addRowsForAccountEntry(itemForChildren, childAccountEntry);
-        });
-        
-        if (accountEntry.postChildAccountRowEntries != null) {
-            final TreeItem<RowEntry> finalParent = parent;
-            accountEntry.postChildAccountRowEntries.forEach((rowEntry) -> {
-                finalParent.getChildren().add(new TreeItem<>(rowEntry));
-            });
-        }
 
-        addRowEntryIfNotNull(parent, accountEntry, accountEntry.postChildRowEntry);
+    /**
+     * Starts regenerating the report in the background. Any update currently in progress
+     * is cancelled. The tree table view is updated once the new report has been generated.
+     */
+    public void refreshFromEngine() {
+        startRefresh(null);
     }
     
-    protected void addRowEntryIfNotNull(TreeItem<RowEntry> parent, AccountEntry accountEntry, RowEntry rowEntry) {
-        if (rowEntry != null) {
-            parent.getChildren().add(new TreeItem<>(rowEntry));
-        }
-    }
     
-    protected String getDateColumnLabel(DateEntry dateEntry) {
-        String endDateString = dateEntry.endDate.format(columnDateTimeFormatter);
-        if (dateEntry.startDate.equals(dateEntry.endDate)) {
-            return endDateString;
+    /**
+     * Starts regenerating the report in the background in response to changes in the engine.
+     * Only the cached securities trackers of the changed accounts and securities are discarded, 
+     * the other trackers are reused. The account entries affected by the changes are marked, the 
+     * balances and the portfolio metrics of the unchanged account entries are carried over from 
+     * the last update, and if the new report has the same rows and columns as the report 
+     * being displayed only the cells whose values changed are updated.
+     * <p>
+     * Note that the cells of the unchanged account entries are still regenerated, but from
+     * the carried over results, it is the expensive parts, the trackers, the account balances and
+     * the year ago value sums, that are limited to the changed account entries.
+     * @param engineChanges The changes.
+     */
+    public void refreshFromEngineChanges(EngineChanges engineChanges) {
+        // The caches normally have already been invalidated from the message bus, this just makes
+        // sure they have been before we start the update.
+        AccountSecuritiesTracker.invalidateForEngineChanges(engineChanges);
+        
+        if (engineChanges.isFileClosing()) {
+            return;
         }
-
-        String startDateString = dateEntry.startDate.format(columnDateTimeFormatter);
-        return ResourceSource.getString("Report.ColumnHeading.StartEndDate", startDateString, endDateString);
-    }
-
-    
-    protected void updateReportOutput(ReportOutput reportOutput) {
-        createAccountEntries(reportOutput);
-        createDateEntries(reportOutput);
-        createColumnGenerators(reportOutput);
         
-        processAccountEntries(reportOutput);
-        processDateEntries(reportOutput);
+        startRefresh(engineChanges);
     }
     
     
-    protected void createAccountEntries(ReportOutput reportOutput) {
-        final AccountFilter filter = (this.definition.getAccountFilter() != null) ? this.definition.getAccountFilter() : new AccountFilter();
-        
-        Map<AccountGroup, SortedSet<Account>> accountsByGroup = new HashMap<>();
-        engine.getRootAccount().getChildren().forEach((account) -> {
-            AccountGroup accountGroup = account.getAccountType().getAccountGroup();
-            SortedSet<Account> accounts = accountsByGroup.get(accountGroup);
-            if (accounts == null) {
-                accounts = new TreeSet<>((Account o1, Account o2) -> o1.getPathName().compareTo(o2.getPathName()));
-                accountsByGroup.put(accountGroup, accounts);
-            }
-            accounts.add(account);
-        });
+    protected void startRefresh(EngineChanges engineChanges) {
+        // A superseded update may have been for other changes, in which case we
+        // can't use the incremental path.
+        if (getUpdateWorker() != null) {
+            engineChanges = null;
+        }
         
-        processAccountEntries(AccountGroup.ASSET, accountsByGroup, filter, reportOutput);
-        processAccountEntries(AccountGroup.INVEST, accountsByGroup, filter, reportOutput);
-        processAccountEntries(AccountGroup.SIMPLEINVEST, accountsByGroup, filter, reportOutput);
-        processAccountEntries(AccountGroup.LIABILITY, accountsByGroup, filter, reportOutput);
-        processAccountEntries(AccountGroup.INCOME, accountsByGroup, filter, reportOutput);
-        processAccountEntries(AccountGroup.EXPENSE, accountsByGroup, filter, reportOutput);
+        cancelRefresh();
         
-        // Just in case new account groups have been added.
-        while (!accountsByGroup.isEmpty()) {
-            AccountGroup accountGroup = accountsByGroup.keySet().iterator().next();
-            processAccountEntries(accountGroup, accountsByGroup, filter, reportOutput);
+        if ((this.definition == null) || (this.engine == null)) {
+            return;
         }
         
-        String grandTotalText = this.definition.getGrandTotalText();
-        if (StringUtil.isNonEmpty(grandTotalText)) {
-            reportOutput.grandTotalRowEntry = new RowEntry();
-            reportOutput.grandTotalRowEntry.setRowTitle(grandTotalText);
+        // The update works off a copy of the definition so the definition can be edited
+        // while the update is in progress.
+        ReportDefinition definitionCopy = new ReportDefinition();
+        definitionCopy.copyFrom(this.definition);
+        
+        ReportOutput reportOutput = new ReportOutput(definitionCopy);
+        if (isParallelUpdate) {
+            reportOutput.setForkJoinPool(ForkJoinPool.commonPool());
         }
-    }
-    
-    
-    protected void processAccountEntries(AccountGroup accountGroup, Map<AccountGroup, SortedSet<Account>> accountsByGroup, 
-            AccountFilter filter, ReportOutput reportOutput) {
-        SortedSet<Account> accounts = accountsByGroup.get(accountGroup);
-        if (accounts == null) {
-            return;
+        if (engineChanges != null) {
+            reportOutput.setPreviousUpdate(lastReportOutput, engineChanges);
         }
-        accountsByGroup.remove(accountGroup);
         
-        accounts.forEach((account) -> {
-            boolean isIncluded = filter.isIncludeAccount(account);
-            AccountEntry accountEntry = new AccountEntry(account, isIncluded, null);
-            reportOutput.accountEntries.add(accountEntry);
-            
-            addChildAccountEntries(accountEntry, filter, reportOutput);
-        });
-    }
-    
-    
-    protected void addChildAccountEntries(AccountEntry accountEntry, AccountFilter filter, ReportOutput reportOutput) {
-        accountEntry.account.getChildren().forEach((account) -> {
-            boolean isIncluded = filter.isIncludeAccount(account);
-            AccountEntry childAccountEntry = new AccountEntry(account, isIncluded, accountEntry);
-            accountEntry.childAccountEntries.add(childAccountEntry);
-            
-            addChildAccountEntries(childAccountEntry, filter, reportOutput);
-        });
-    }
-    
-    protected void createDateEntries(ReportOutput reportOutput) {
-        TreeSet<LocalDate> sortedDates = new TreeSet<>();
-        this.definition.getDateGenerator().getPeriodicDates(LocalDate.now(), sortedDates);
-        Iterator<LocalDate> dateIterator = sortedDates.iterator();
-        while (dateIterator.hasNext()) {
-            LocalDate endDate = dateIterator.next();
-            LocalDate startDate = endDate;
-            if (this.definition.getRangeDateOffset() != null) {
-                startDate = this.definition.getRangeDateOffset().getOffsetDate(endDate);
-                if (startDate.isBefore(endDate)) {
-                    startDate = startDate.plusDays(1);
+        final ReportUpdateTask updateTask = new ReportUpdateTask(new ReportGenerator(this.engine), reportOutput);
+        updateTask.setOnSucceeded((event) -> {
+            if (updateWorker.get() == updateTask) {
+                updateWorker.set(null);
+                
+                ReportOutput newReportOutput = updateTask.getValue();
+                lastReportOutput = newReportOutput;
+                
+                long startNanos = System.nanoTime();
+                EngineChanges outputEngineChanges = newReportOutput.getEngineChanges();
+                if ((outputEngineChanges == null) || outputEngineChanges.isAccountStructureChanged() 
+                        || !treeTableAdapter.updateCellsInPlace(newReportOutput)) {
+                    treeTableAdapter.setReportOutput(newReportOutput);
                 }
+                newReportOutput.getProfile().addPhaseNanos(ReportOutput.UpdatePhase.UPDATE_TREE_TABLE_VIEW, 
+                        System.nanoTime() - startNanos);
             }
-            
-            DateEntry dateEntry = new DateEntry(startDate, endDate, reportOutput.dateEntries.size());
-            reportOutput.dateEntries.add(dateEntry);
-        }
-    }
-    
-    
-    protected void createColumnGenerators(ReportOutput reportOutput) {
-        this.definition.getColumnTypes().forEach((columnType) -> {
-            ColumnGenerator generator = columnGeneratorFromColumnType(columnType);
-            if (generator != null) {
-                reportOutput.columnGenerators.add(generator);
+        });
+        updateTask.setOnFailed((event) -> {
+            if (updateWorker.get() == updateTask) {
+                updateWorker.set(null);
+                lastReportOutput = null;
+                handleUpdateFailure(updateTask.getException());
             }
         });
+        updateTask.setOnCancelled((event) -> {
+            if (updateWorker.get() == updateTask) {
+                updateWorker.set(null);
+                lastReportOutput = null;
+            }
+        });
+        
+        updateWorker.set(updateTask);
+        UPDATE_EXECUTOR.execute(updateTask);
     }
     
-
-    protected ColumnGenerator columnGeneratorFromColumnType(ReportDefinition.ColumnType columnType) {
-        switch (columnType) {
-            case VALUE:
-                return new ValueColumnGenerator();
-                
-            case DELTA_PREVIOUS_PERIOD:
-                return new DeltaPeriodColumnGenerator(ReferencePeriodType.PREVIOUS);
-                
-            case DELTA_OLDEST_PERIOD:
-                return new DeltaPeriodColumnGenerator(ReferencePeriodType.OLDEST);
-                
-            case PERCENT_DELTA_PREVIOUS_PERIOD:
-                return new PercentDeltaPeriodColumnGenerator(ReferencePeriodType.PREVIOUS);
-                
-            case PERCENT_DELTA_OLDEST_PERIOD:
-                return new PercentDeltaPeriodColumnGenerator(ReferencePeriodType.OLDEST);
-                
-            case COST_BASIS:
-                return new CostBasisColumnGenerator();
-                
-            case GAIN:
-                return new GainColumnGenerator();
-                
-            case PERCENT_GAIN :
-                return new PercentGainColumnGenerator();
-                
-            case QUANTITY:
-                return new QuantityColumnGenerator();
-                
-            case PRICE:
-                return new PriceColumnGenerator();
-                
-            case PERCENT_PORTFOLIO :
-                return new PercentPortfolioColumnGenerator();
-                
-            case ANNUAL_RATE_OF_RETURN :
-                return new AnnualRateOfReturnColumnGenerator();
-                
-            case MARKET_VALUE :
-                return new MarketValueColumnGenerator();
-                
-            case CASH_IN_GAIN :
-                return new CashInGainColumnGenerator();
-                
-            case PERCENT_CASH_IN_GAIN :
-                return new PercentCashInGainColumnGenerator();
-                
-            case CASH_IN :
-                return new CashInColumnGenerator();
-                
-            case CASH_IN_ANNUAL_RATE_OF_RETURN :
-                return new CashInAnnualRateOfReturnColumnGenerator();
-                
-            default:
-                throw new AssertionError(columnType.name());
+    
+    /**
+     * Cancels any report update that's in progress.
+     */
+    public void cancelRefresh() {
+        Worker<?> worker = updateWorker.get();
+        if (worker != null) {
+            updateWorker.set(null);
+            worker.cancel();
             
+            // The cancelled update's engine changes are dropped, so the results of the last
+            // update can't be carried over to the next one.
+            lastReportOutput = null;
         }
     }
-
-    //
-    // COST_BASIS:
-    // GAIN:
-    // QUANTITY:
-    // PRICE:
-    //
-    // They are all based upon an investment account.
-    // For each investement account they will have rows listing
-    // the individual securities.
-    // At the end, have sub-totals for the different columns.
-    //
     
-    private void processAccountEntries(ReportOutput reportOutput) {
-        reportOutput.columnGenerators.forEach((generator) -> {
-            generator.setupAccountEntryRows(reportOutput);
-        });
-    }
-
     
-    private void processDateEntries(ReportOutput reportOutput) {
-        reportOutput.columnEntries.clear();
-
-        reportOutput.columnGenerators.forEach((generator) -> {
-            generator.setupDateEntryColumns(reportOutput);
-        });
-        
-        reportOutput.dateEntries.forEach((dateEntry)-> {
-            dateEntry.columnEntries.forEach((columnEntry) -> {
-                columnEntry.columnIndex = reportOutput.columnEntries.size();
-                reportOutput.columnEntries.add(columnEntry);
-            });
-        });
-        
-        reportOutput.columnGenerators.forEach((generator) -> {
-            generator.updateCellValues(reportOutput);
-        });
+    void handleUpdateFailure(Throwable ex) {
+        Logger.getLogger(ReportDataView.class.getName()).log(Level.SEVERE, null, ex);
+        String title = ResourceSource.getString("ReportView.Update.ErrorTitle");
+        String message = ResourceSource.getString("ReportView.Update.Error", (ex != null) ? ex.getLocalizedMessage() : "");
+        PromptDialog.showOKDialog(message, title);
     }
     
     
@@ -506,7 +300,7 @@ public class ReportDataView {
         }
         
         try {
-            CSVUtil.treeTableViewToCSV(treeTableView, writer);
+            CSVUtil.treeTableViewToCSV(treeTableAdapter.getTreeTableView(), writer);
         } catch (IOException ex) {
             Logger.getLogger(ReportDataView.class.getName()).log(Level.SEVERE, null, ex);
             handleExportFailure("ReportView.ExportCSV.WriteError", file, ex);
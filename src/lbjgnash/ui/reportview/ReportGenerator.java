@@ -0,0 +1,311 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import com.leeboardtools.util.StringUtil;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jgnash.engine.Account;
+import jgnash.engine.AccountGroup;
+import jgnash.engine.Engine;
+import lbjgnash.ui.AccountFilter;
+import lbjgnash.ui.ReportDefinition;
+
+/**
+ * Generates {@link ReportOutput}s from an engine. This does not use JavaFX, so reports
+ * may be generated from any thread, including from tests and batch jobs.
+ * @author Albert Santos
+ */
+public class ReportGenerator {
+    private final Engine engine;
+
+    public static enum ReferencePeriodType {
+        PREVIOUS,
+        OLDEST,
+        NEWEST,
+    }
+
+
+    /**
+     * Constructor.
+     * @param engine    The engine the reports are generated from.
+     */
+    public ReportGenerator(Engine engine) {
+        this.engine = engine;
+    }
+
+    public final Engine getEngine() {
+        return engine;
+    }
+
+
+    /**
+     * Generates the report output for a report definition on the calling thread.
+     * @param definition    The report definition.
+     * @return The report output.
+     */
+    public ReportOutput generateReportOutput(ReportDefinition definition) {
+        ReportOutput reportOutput = new ReportOutput(definition);
+        updateReportOutput(reportOutput);
+        return reportOutput;
+    }
+
+
+    /**
+     * Fills in a report output.
+     * @param reportOutput  The report output, this should be newly constructed.
+     * @throws java.util.concurrent.CancellationException if the report output's update
+     * monitor cancelled the update.
+     */
+    public void updateReportOutput(ReportOutput reportOutput) {
+        createAccountEntries(reportOutput);
+        reportOutput.markChangedAccountEntries();
+        createDateEntries(reportOutput);
+        reportOutput.createBalanceMatrix();
+        createColumnGenerators(reportOutput);
+
+        processAccountEntries(reportOutput);
+        int unchangedTrackerCount = reportOutput.copyUnchangedPortfolioMetrics();
+        processDateEntries(reportOutput);
+
+        // Otherwise each output would keep all the earlier outputs around.
+        reportOutput.previousOutput = null;
+
+        if (reportOutput.balanceMatrix != null) {
+            Logger.getLogger(ReportGenerator.class.getName()).log(Level.FINE, "Balance matrix hits: {0} misses: {1} unchanged trackers: {2}",
+                    new Object[] { reportOutput.balanceMatrix.getHitCount(), reportOutput.balanceMatrix.getMissCount(), unchangedTrackerCount });
+        }
+
+        reportOutput.profile.finish(reportOutput);
+    }
+
+
+    protected void createAccountEntries(ReportOutput reportOutput) {
+        reportOutput.startPhase(ReportOutput.UpdatePhase.CREATE_ACCOUNT_ENTRIES);
+
+        final ReportDefinition definition = reportOutput.getDefinition();
+        final AccountFilter filter = (definition.getAccountFilter() != null) ? definition.getAccountFilter() : new AccountFilter();
+
+        Map<AccountGroup, SortedSet<Account>> accountsByGroup = new HashMap<>();
+        engine.getRootAccount().getChildren().forEach((account) -> {
+            AccountGroup accountGroup = account.getAccountType().getAccountGroup();
+            SortedSet<Account> accounts = accountsByGroup.get(accountGroup);
+            if (accounts == null) {
+                accounts = new TreeSet<>((Account o1, Account o2) -> o1.getPathName().compareTo(o2.getPathName()));
+                accountsByGroup.put(accountGroup, accounts);
+            }
+            accounts.add(account);
+        });
+
+        processAccountEntries(AccountGroup.ASSET, accountsByGroup, filter, reportOutput);
+        processAccountEntries(AccountGroup.INVEST, accountsByGroup, filter, reportOutput);
+        processAccountEntries(AccountGroup.SIMPLEINVEST, accountsByGroup, filter, reportOutput);
+        processAccountEntries(AccountGroup.LIABILITY, accountsByGroup, filter, reportOutput);
+        processAccountEntries(AccountGroup.INCOME, accountsByGroup, filter, reportOutput);
+        processAccountEntries(AccountGroup.EXPENSE, accountsByGroup, filter, reportOutput);
+
+        // Just in case new account groups have been added.
+        while (!accountsByGroup.isEmpty()) {
+            AccountGroup accountGroup = accountsByGroup.keySet().iterator().next();
+            processAccountEntries(accountGroup, accountsByGroup, filter, reportOutput);
+        }
+
+        String grandTotalText = definition.getGrandTotalText();
+        if (StringUtil.isNonEmpty(grandTotalText)) {
+            reportOutput.grandTotalRowEntry = new RowEntry();
+            reportOutput.grandTotalRowEntry.setRowTitle(grandTotalText);
+        }
+    }
+
+
+    protected void processAccountEntries(AccountGroup accountGroup, Map<AccountGroup, SortedSet<Account>> accountsByGroup,
+            AccountFilter filter, ReportOutput reportOutput) {
+        SortedSet<Account> accounts = accountsByGroup.get(accountGroup);
+        if (accounts == null) {
+            return;
+        }
+        accountsByGroup.remove(accountGroup);
+
+        accounts.forEach((account) -> {
+            reportOutput.checkCancelled();
+
+            boolean isIncluded = filter.isIncludeAccount(account);
+            AccountEntry accountEntry = new AccountEntry(account, isIncluded, null);
+            reportOutput.accountEntries.add(accountEntry);
+
+            addChildAccountEntries(accountEntry, filter, reportOutput);
+        });
+    }
+
+
+    protected void addChildAccountEntries(AccountEntry accountEntry, AccountFilter filter, ReportOutput reportOutput) {
+        accountEntry.account.getChildren().forEach((account) -> {
+            boolean isIncluded = filter.isIncludeAccount(account);
+            AccountEntry childAccountEntry = new AccountEntry(account, isIncluded, accountEntry);
+            accountEntry.childAccountEntries.add(childAccountEntry);
+
+            addChildAccountEntries(childAccountEntry, filter, reportOutput);
+        });
+    }
+
+    protected void createDateEntries(ReportOutput reportOutput) {
+        reportOutput.startPhase(ReportOutput.UpdatePhase.CREATE_DATE_ENTRIES);
+
+        final ReportDefinition definition = reportOutput.getDefinition();
+        TreeSet<LocalDate> sortedDates = new TreeSet<>();
+        definition.getDateGenerator().getPeriodicDates(LocalDate.now(), sortedDates);
+        Iterator<LocalDate> dateIterator = sortedDates.iterator();
+        while (dateIterator.hasNext()) {
+            LocalDate endDate = dateIterator.next();
+            LocalDate startDate = endDate;
+            if (definition.getRangeDateOffset() != null) {
+                startDate = definition.getRangeDateOffset().getOffsetDate(endDate);
+                if (startDate.isBefore(endDate)) {
+                    startDate = startDate.plusDays(1);
+                }
+            }
+
+            DateEntry dateEntry = new DateEntry(startDate, endDate, reportOutput.dateEntries.size());
+            reportOutput.dateEntries.add(dateEntry);
+        }
+    }
+
+
+    protected void createColumnGenerators(ReportOutput reportOutput) {
+        reportOutput.getDefinition().getColumnTypes().forEach((columnType) -> {
+            ColumnGenerator generator = columnGeneratorFromColumnType(columnType);
+            if (generator != null) {
+                reportOutput.columnGenerators.add(generator);
+                generator.addRequiredPortfolioMetrics(reportOutput.requiredPortfolioMetrics);
+            }
+        });
+    }
+
+
+    protected ColumnGenerator columnGeneratorFromColumnType(ReportDefinition.ColumnType columnType) {
+        switch (columnType) {
+            case VALUE:
+                return new ValueColumnGenerator();
+
+            case DELTA_PREVIOUS_PERIOD:
+                return new DeltaPeriodColumnGenerator(ReferencePeriodType.PREVIOUS);
+
+            case DELTA_OLDEST_PERIOD:
+                return new DeltaPeriodColumnGenerator(ReferencePeriodType.OLDEST);
+
+            case PERCENT_DELTA_PREVIOUS_PERIOD:
+                return new PercentDeltaPeriodColumnGenerator(ReferencePeriodType.PREVIOUS);
+
+            case PERCENT_DELTA_OLDEST_PERIOD:
+                return new PercentDeltaPeriodColumnGenerator(ReferencePeriodType.OLDEST);
+
+            case COST_BASIS:
+                return new CostBasisColumnGenerator();
+
+            case GAIN:
+                return new GainColumnGenerator();
+
+            case PERCENT_GAIN :
+                return new PercentGainColumnGenerator();
+
+            case QUANTITY:
+                return new QuantityColumnGenerator();
+
+            case PRICE:
+                return new PriceColumnGenerator();
+
+            case PERCENT_PORTFOLIO :
+                return new PercentPortfolioColumnGenerator();
+
+            case ANNUAL_RATE_OF_RETURN :
+                return new AnnualRateOfReturnColumnGenerator();
+
+            case MARKET_VALUE :
+                return new MarketValueColumnGenerator();
+
+            case CASH_IN_GAIN :
+                return new CashInGainColumnGenerator();
+
+            case PERCENT_CASH_IN_GAIN :
+                return new PercentCashInGainColumnGenerator();
+
+            case CASH_IN :
+                return new CashInColumnGenerator();
+
+            case CASH_IN_ANNUAL_RATE_OF_RETURN :
+                return new CashInAnnualRateOfReturnColumnGenerator();
+
+            default:
+                throw new AssertionError(columnType.name());
+
+        }
+    }
+
+    //
+    // COST_BASIS:
+    // GAIN:
+    // QUANTITY:
+    // PRICE:
+    //
+    // They are all based upon an investment account.
+    // For each investement account they will have rows listing
+    // the individual securities.
+    // At the end, have sub-totals for the different columns.
+    //
+
+    private void processAccountEntries(ReportOutput reportOutput) {
+        reportOutput.startPhase(ReportOutput.UpdatePhase.SETUP_ACCOUNT_ENTRY_ROWS);
+
+        final int generatorCount = reportOutput.columnGenerators.size();
+        for (int i = 0; i < generatorCount; ++i) {
+            reportOutput.updatePhaseProgress(i, generatorCount);
+            reportOutput.columnGenerators.get(i).setupAccountEntryRows(reportOutput);
+        }
+    }
+
+
+    private void processDateEntries(ReportOutput reportOutput) {
+        reportOutput.startPhase(ReportOutput.UpdatePhase.SETUP_DATE_ENTRY_COLUMNS);
+
+        reportOutput.columnEntries.clear();
+
+        final int generatorCount = reportOutput.columnGenerators.size();
+        for (int i = 0; i < generatorCount; ++i) {
+            reportOutput.updatePhaseProgress(i, generatorCount);
+            reportOutput.columnGenerators.get(i).setupDateEntryColumns(reportOutput);
+        }
+
+        reportOutput.dateEntries.forEach((dateEntry)-> {
+            dateEntry.columnEntries.forEach((columnEntry) -> {
+                columnEntry.columnIndex = reportOutput.columnEntries.size();
+                reportOutput.columnEntries.add(columnEntry);
+            });
+        });
+
+        reportOutput.startPhase(ReportOutput.UpdatePhase.UPDATE_CELL_VALUES);
+
+        for (int i = 0; i < generatorCount; ++i) {
+            reportOutput.updatePhaseProgress(i, generatorCount);
+            reportOutput.columnGenerators.get(i).updateCellValues(reportOutput);
+        }
+    }
+}
@@ -0,0 +1,575 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import jgnash.engine.Account;
+import jgnash.engine.AccountGroup;
+import jgnash.engine.MathConstants;
+import jgnash.engine.SecurityNode;
+import lbjgnash.ui.ReportDefinition;
+
+/**
+ * This represents the full output of one report. The output is generated by
+ * {@link ReportGenerator} and does not depend on JavaFX, {@link ReportTreeTableAdapter}
+ * is used to display it.
+ * @author Albert Santos
+ */
+public class ReportOutput {
+
+    public static final BigDecimal ONE_HUNDRED = new BigDecimal(100);
+
+    /**
+     * The phases of a report update, in the order they are performed.
+     */
+    public static enum UpdatePhase {
+        CREATE_ACCOUNT_ENTRIES("ReportView.UpdatePhase.CreateAccountEntries"),
+        CREATE_DATE_ENTRIES("ReportView.UpdatePhase.CreateDateEntries"),
+        SETUP_ACCOUNT_ENTRY_ROWS("ReportView.UpdatePhase.SetupAccountEntryRows"),
+        SETUP_DATE_ENTRY_COLUMNS("ReportView.UpdatePhase.SetupDateEntryColumns"),
+        UPDATE_CELL_VALUES("ReportView.UpdatePhase.UpdateCellValues"),
+        UPDATE_TREE_TABLE_VIEW("ReportView.UpdatePhase.UpdateTreeTableView"),
+        ;
+
+        private final String stringResourceId;
+        private UpdatePhase(String stringResourceId) {
+            this.stringResourceId = stringResourceId;
+        }
+        public final String getStringResourceId() {
+            return this.stringResourceId;
+        }
+    }
+
+
+    /**
+     * Interface used to monitor and cancel the generation of a report output.
+     */
+    public static interface UpdateMonitor {
+        /**
+         * Called at the start of each of the update phases.
+         * @param phase The phase being started.
+         */
+        public void startPhase(UpdatePhase phase);
+
+        /**
+         * Called to update the progress within the current phase.
+         * @param workDone  The amount of work done so far within the phase.
+         * @param totalWork The total amount of work for the phase.
+         */
+        public void updatePhaseProgress(long workDone, long totalWork);
+
+        /**
+         * @return <code>true</code> if the update should be cancelled.
+         */
+        public boolean isCancelled();
+    }
+
+
+    final ReportDefinition definition;
+
+    // Primarily for use by the securities style report.
+    final SortedMap<String, RowEntry> namedRowEntries = new TreeMap<>();
+
+    final List<AccountEntry> accountEntries = new ArrayList<>();
+    final List<DateEntry> dateEntries = new ArrayList<>();
+    final List<ColumnGenerator> columnGenerators = new ArrayList<>();
+
+    // This list is built up from the column entries of the dateEntries.
+    final List<ColumnEntry> columnEntries = new ArrayList<>();
+
+    RowEntry grandTotalRowEntry;
+
+    // Shared by all the balance column generators.
+    BalanceMatrix balanceMatrix;
+
+    // If not null the output of the previous update, the results of the account entries
+    // not affected by engineChanges are carried over from it.
+    ReportOutput previousOutput;
+
+    // If not null the engine changes that triggered the update.
+    EngineChanges engineChanges;
+
+    // Shared by all the securities column generators.
+    final Map<SecurityTransactionTracker.DateEntry, Map<LocalDate, PortfolioMetrics>> portfolioMetrics = new HashMap<>();
+
+    // Shared by all the securities column generators, used by the securities style report.
+    final SecurityIndex securityIndex = new SecurityIndex();
+
+    // The metrics used by the column generators, metrics not in here are not calculated.
+    final Set<PortfolioMetrics.Metric> requiredPortfolioMetrics = EnumSet.noneOf(PortfolioMetrics.Metric.class);
+
+    // Optional, set while the output is being generated.
+    UpdateMonitor updateMonitor;
+
+    // If not null the pool used for parallel processing.
+    ForkJoinPool forkJoinPool;
+
+    // Records the time spent in each phase and the operation counts.
+    final ReportProfile profile = new ReportProfile();
+
+    // TODO: Move this to ReportDefinition.
+    protected String percentSuffix = "%";
+
+
+    /**
+     * Constructor.
+     * @param definition    The report definition, this should not be modified while the
+     * output is being generated.
+     */
+    public ReportOutput(ReportDefinition definition) {
+        this.definition = definition;
+    }
+
+    public ReportDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Sets the fork/join pool used to process the account entries in parallel.
+     * @param forkJoinPool  The pool, if <code>null</code> the report is generated
+     * serially.
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public void setUpdateMonitor(UpdateMonitor updateMonitor) {
+        this.updateMonitor = updateMonitor;
+    }
+
+    /**
+     * Sets up the output to carry over the account balances and the portfolio metrics of the 
+     * account entries not affected by a set of engine changes from the output of a previous update.
+     * @param previousOutput The output of the previous update, may be <code>null</code>.
+     * @param engineChanges The engine changes since the previous update.
+     */
+    public void setPreviousUpdate(ReportOutput previousOutput, EngineChanges engineChanges) {
+        this.previousOutput = previousOutput;
+        this.engineChanges = engineChanges;
+    }
+
+    /**
+     * @return The engine changes passed to {@link #setPreviousUpdate(lbjgnash.ui.reportview.ReportOutput, lbjgnash.ui.reportview.EngineChanges) },
+     * <code>null</code> if this is not an update from engine changes.
+     */
+    public EngineChanges getEngineChanges() {
+        return engineChanges;
+    }
+
+    /**
+     * @return The date entries, in the order of their columns.
+     */
+    public List<DateEntry> getDateEntries() {
+        return Collections.unmodifiableList(dateEntries);
+    }
+
+    /**
+     * @return All the column entries, the index of a column entry in this list is its
+     * {@link ColumnEntry#columnIndex}.
+     */
+    public List<ColumnEntry> getColumnEntries() {
+        return Collections.unmodifiableList(columnEntries);
+    }
+
+    public RowEntry getGrandTotalRowEntry() {
+        return grandTotalRowEntry;
+    }
+
+    /**
+     * @return The profile of the generation of the report output.
+     */
+    public ReportProfile getProfile() {
+        return profile;
+    }
+
+
+    /**
+     * Retrieves all the row entries of the report, in the order they are displayed.
+     * The list may contain <code>null</code> entries for empty rows.
+     * @return The list of row entries.
+     */
+    public List<RowEntry> getRowEntries() {
+        List<RowEntry> rowEntries = new ArrayList<>();
+        accountEntries.forEach((accountEntry) -> {
+            collectRowEntriesForAccountEntry(accountEntry, rowEntries);
+        });
+        rowEntries.addAll(namedRowEntries.values());
+        if (grandTotalRowEntry != null) {
+            rowEntries.add(grandTotalRowEntry);
+        }
+        return rowEntries;
+    }
+
+    protected static void collectRowEntriesForAccountEntry(AccountEntry accountEntry, List<RowEntry> rowEntries) {
+        if (accountEntry.summaryRowEntry != null) {
+            rowEntries.add(accountEntry.summaryRowEntry);
+        }
+
+        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
+            collectRowEntriesForAccountEntry(childAccountEntry, rowEntries);
+        });
+
+        if (accountEntry.postChildAccountRowEntries != null) {
+            rowEntries.addAll(accountEntry.postChildAccountRowEntries);
+        }
+
+        if (accountEntry.postChildRowEntry != null) {
+            rowEntries.add(accountEntry.postChildRowEntry);
+        }
+    }
+
+
+    /**
+     * Marks the account entries affected by the engine changes, an account entry is changed if
+     * its account, or the account of any of its child account entries, was changed or holds a
+     * changed security. All the account entries are marked changed if there is no previous update,
+     * or if the account structure or the exchange rates changed. This is called by the report 
+     * generator once the account entries have been created.
+     */
+    void markChangedAccountEntries() {
+        final boolean isAllChanged = (previousOutput == null) || (engineChanges == null)
+                || engineChanges.isAccountStructureChanged() || engineChanges.isExchangeRateChanged();
+        accountEntries.forEach((accountEntry) -> {
+            markChangedAccountEntry(accountEntry, isAllChanged);
+        });
+    }
+
+    protected boolean markChangedAccountEntry(AccountEntry accountEntry, boolean isAllChanged) {
+        boolean isChanged = isAllChanged || engineChanges.getChangedAccounts().contains(accountEntry.account)
+                || isHoldingChangedSecurity(accountEntry.account);
+        for (AccountEntry childAccountEntry : accountEntry.childAccountEntries) {
+            if (markChangedAccountEntry(childAccountEntry, isAllChanged)) {
+                isChanged = true;
+            }
+        }
+        accountEntry.isChanged = isChanged;
+        return isChanged;
+    }
+
+    protected boolean isHoldingChangedSecurity(Account account) {
+        Set<SecurityNode> changedSecurities = engineChanges.getChangedSecurities();
+        if (changedSecurities.isEmpty()) {
+            return false;
+        }
+        return !Collections.disjoint(account.getSecurities(), changedSecurities);
+    }
+
+
+    /**
+     * Creates the balance matrix shared by all the column generators. This is called
+     * by the report generator once the date entries have been created, before any of the
+     * column generators run, so the column generators can use the matrix from multiple
+     * threads without having to synchronize its creation.
+     */
+    void createBalanceMatrix() {
+        balanceMatrix = new BalanceMatrix(dateEntries);
+        if ((previousOutput != null) && (previousOutput.balanceMatrix != null) && (engineChanges != null)) {
+            balanceMatrix.copyUnchangedBalances(previousOutput.balanceMatrix, engineChanges);
+        }
+    }
+
+    /**
+     * Carries over the portfolio metrics of the securities trackers of the unchanged account entries
+     * from the previous update, the metrics hold the year ago value sums, which are the expensive
+     * part of the securities columns. The metrics of a tracker are only carried over if the account
+     * entry is still using the same account tracker as in the previous update. This is called by the
+     * report generator once the column generators have set up the rows, which is when the account
+     * entries pick up their trackers.
+     * @return The number of securities trackers whose metrics were carried over.
+     */
+    int copyUnchangedPortfolioMetrics() {
+        if ((previousOutput == null) || (engineChanges == null) 
+                || (previousOutput.getMinDaysForRateOfReturn() != getMinDaysForRateOfReturn())) {
+            return 0;
+        }
+
+        Map<Account, AccountEntry> previousAccountEntries = new HashMap<>();
+        previousOutput.accountEntries.forEach((accountEntry) -> {
+            collectAccountEntries(accountEntry, previousAccountEntries);
+        });
+
+        Set<SecurityTransactionTracker> unchangedTrackers = Collections.newSetFromMap(new IdentityHashMap<>());
+        accountEntries.forEach((accountEntry) -> {
+            collectUnchangedTrackers(accountEntry, previousAccountEntries, unchangedTrackers);
+        });
+        if (unchangedTrackers.isEmpty()) {
+            return 0;
+        }
+
+        previousOutput.portfolioMetrics.forEach((trackerDateEntry, metricsByDate) -> {
+            if (unchangedTrackers.contains(trackerDateEntry.getTransactionTracker())) {
+                portfolioMetrics.put(trackerDateEntry, new HashMap<>(metricsByDate));
+            }
+        });
+        return unchangedTrackers.size();
+    }
+
+    protected static void collectAccountEntries(AccountEntry accountEntry, Map<Account, AccountEntry> accountEntriesByAccount) {
+        accountEntriesByAccount.put(accountEntry.account, accountEntry);
+        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
+            collectAccountEntries(childAccountEntry, accountEntriesByAccount);
+        });
+    }
+
+    protected static void collectUnchangedTrackers(AccountEntry accountEntry, Map<Account, AccountEntry> previousAccountEntries,
+            Set<SecurityTransactionTracker> unchangedTrackers) {
+        if (!accountEntry.isChanged && (accountEntry.accountSecuritiesTracker != null)) {
+            AccountEntry previousAccountEntry = previousAccountEntries.get(accountEntry.account);
+            if ((previousAccountEntry != null) && (previousAccountEntry.accountSecuritiesTracker == accountEntry.accountSecuritiesTracker)) {
+                unchangedTrackers.addAll(accountEntry.accountSecuritiesTracker.getTransactionTrackers().values());
+            }
+        }
+
+        // A changed account entry may still have unchanged child account entries.
+        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
+            collectUnchangedTrackers(childAccountEntry, previousAccountEntries, unchangedTrackers);
+        });
+    }
+
+    /**
+     * @return The balance matrix shared by all the column generators, <code>null</code>
+     * until the date entries have been created.
+     */
+    public BalanceMatrix getBalanceMatrix() {
+        return balanceMatrix;
+    }
+
+    /**
+     * @param metric    The metric of interest.
+     * @return <code>true</code> if any of the column generators uses metric.
+     */
+    public boolean isPortfolioMetricRequired(PortfolioMetrics.Metric metric) {
+        return requiredPortfolioMetrics.contains(metric);
+    }
+
+    /**
+     * Retrieves the portfolio metrics shared by all the column generators for a security tracker
+     * date entry and a report date.
+     * @param trackerDateEntry  The tracker date entry.
+     * @param date  The report date.
+     * @return The metrics.
+     */
+    public PortfolioMetrics getPortfolioMetrics(SecurityTransactionTracker.DateEntry trackerDateEntry, LocalDate date) {
+        Map<LocalDate, PortfolioMetrics> metricsByDate = portfolioMetrics.get(trackerDateEntry);
+        if (metricsByDate == null) {
+            metricsByDate = new HashMap<>();
+            portfolioMetrics.put(trackerDateEntry, metricsByDate);
+        }
+
+        PortfolioMetrics metrics = metricsByDate.get(date);
+        if (metrics == null) {
+            metrics = new PortfolioMetrics(trackerDateEntry, date, getMinDaysForRateOfReturn());
+            metricsByDate.put(date, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Creates the portfolio metrics of a number of securities trackers for all the report dates
+     * ahead of the column generators. The year ago value sums required by the report are calculated
+     * together for all the report dates covered by the same tracker date entry. Metrics that already
+     * exist are left alone.
+     * @param transactionTrackers   The securities trackers.
+     */
+    public void preparePortfolioMetrics(Collection<SecurityTransactionTracker> transactionTrackers) {
+        final boolean isYearAgoValueSumRequired = isPortfolioMetricRequired(PortfolioMetrics.Metric.YEAR_AGO_VALUE_SUM)
+                || isPortfolioMetricRequired(PortfolioMetrics.Metric.CASH_IN_YEAR_AGO_VALUE_SUM);
+        
+        transactionTrackers.forEach((transactionTracker) -> {
+            Map<SecurityTransactionTracker.DateEntry, List<PortfolioMetrics>> newMetrics = new HashMap<>();
+            dateEntries.forEach((dateEntry) -> {
+                LocalDate date = dateEntry.endDate;
+                SecurityTransactionTracker.DateEntry trackerDateEntry = transactionTracker.getDateEntry(date);
+                if (trackerDateEntry == null) {
+                    return;
+                }
+                
+                Map<LocalDate, PortfolioMetrics> metricsByDate = portfolioMetrics.get(trackerDateEntry);
+                if ((metricsByDate != null) && metricsByDate.containsKey(date)) {
+                    return;
+                }
+                
+                PortfolioMetrics metrics = getPortfolioMetrics(trackerDateEntry, date);
+                List<PortfolioMetrics> metricsList = newMetrics.get(trackerDateEntry);
+                if (metricsList == null) {
+                    metricsList = new ArrayList<>();
+                    newMetrics.put(trackerDateEntry, metricsList);
+                }
+                metricsList.add(metrics);
+            });
+            
+            if (isYearAgoValueSumRequired) {
+                newMetrics.values().forEach((metricsList) -> {
+                    PortfolioMetrics.calcYearAgoValueSums(metricsList, requiredPortfolioMetrics);
+                });
+            }
+        });
+    }
+
+    /**
+     * @return <code>true</code> if parallel processing is enabled.
+     */
+    public boolean isParallelUpdate() {
+        return forkJoinPool != null;
+    }
+
+    /**
+     * Calls a callable, if parallel processing is enabled the callable is called from
+     * within the fork/join pool so it may fork sub-tasks.
+     * @param <T>   The type returned by the callable.
+     * @param callable  The callable.
+     * @return The value returned by the callable.
+     */
+    public <T> T invokeUpdate(Callable<T> callable) {
+        if ((forkJoinPool != null) && !ForkJoinTask.inForkJoinPool()) {
+            return forkJoinPool.invoke(ForkJoinTask.adapt(callable));
+        }
+        try {
+            return callable.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Called at the start of each of the update phases.
+     * @param phase The phase being started.
+     * @throws CancellationException if the update has been cancelled.
+     */
+    public void startPhase(UpdatePhase phase) {
+        checkCancelled();
+        profile.startPhase(phase);
+        if (updateMonitor != null) {
+            updateMonitor.startPhase(phase);
+        }
+    }
+
+    /**
+     * Updates the progress within the current update phase.
+     * @param workDone  The amount of work done so far within the phase.
+     * @param totalWork The total amount of work for the phase.
+     * @throws CancellationException if the update has been cancelled.
+     */
+    public void updatePhaseProgress(long workDone, long totalWork) {
+        checkCancelled();
+        if (updateMonitor != null) {
+            updateMonitor.updatePhaseProgress(workDone, totalWork);
+        }
+    }
+
+    /**
+     * Should be called periodically by any of the longer running parts of the
+     * update so the update can be cancelled.
+     * @throws CancellationException if the update has been cancelled.
+     */
+    public void checkCancelled() {
+        if ((updateMonitor != null) && updateMonitor.isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    public BigDecimal toMonetaryValue(BigDecimal value, Account account) {
+        return value.setScale(2, MathConstants.roundingMode);
+    }
+
+    /**
+     * Converts a monetary value to the value displayed in a cell, for income/expense reports
+     * the sign of income and expense values and sub-totals is flipped.
+     * @param value The value.
+     * @param account   The account the value is for, <code>null</code> for sub-totals.
+     * @return The cell value.
+     */
+    public CellValue toMonetaryCellValue(BigDecimal value, Account account) {
+        if (definition.getStyle() == ReportDefinition.Style.INCOME_EXPENSE) {
+            if (account == null) {
+                // Presume this is a sub-total...
+                value = value.negate();
+            }
+            else {
+                AccountGroup accountGroup = account.getAccountType().getAccountGroup();
+                if ((accountGroup == AccountGroup.INCOME) || (accountGroup == AccountGroup.EXPENSE)) {
+                    value = value.negate();
+                }
+            }
+        }
+        value = value.setScale(2, MathConstants.roundingMode);
+        return new CellValue(value, value.toPlainString());
+    }
+
+    public String toMonetaryValueString(BigDecimal value, Account account) {
+        return toMonetaryCellValue(value, account).getText();
+    }
+
+    /**
+     * Converts a ratio to a percent cell value.
+     * @param numerator The numerator.
+     * @param denominator   The denominator.
+     * @return The cell value, {@link CellValue#NOT_AVAILABLE} if denominator is zero.
+     */
+    public CellValue toPercentCellValue(BigDecimal numerator, BigDecimal denominator) {
+        numerator = numerator.multiply(ONE_HUNDRED).setScale(1, MathConstants.roundingMode);
+        try {
+            BigDecimal value = numerator.divide(denominator, MathConstants.roundingMode);
+            return new CellValue(value, value.toPlainString() + percentSuffix);
+        } catch (ArithmeticException ex) {
+            return CellValue.NOT_AVAILABLE;
+        }
+    }
+
+    public String toPercentString(BigDecimal numerator, BigDecimal denominator) {
+        return toPercentCellValue(numerator, denominator).getText();
+    }
+
+    public CellValue toSharesQuantityCellValue(BigDecimal value) {
+        value = value.setScale(4, MathConstants.roundingMode);
+        return new CellValue(value, value.toPlainString());
+    }
+
+    public String toSharesQuantity(BigDecimal value) {
+        return toSharesQuantityCellValue(value).getText();
+    }
+
+    public CellValue toSecurityPriceCellValue(BigDecimal value, SecurityNode securityNode) {
+        value = value.setScale(2, MathConstants.roundingMode);
+        return new CellValue(value, value.toPlainString());
+    }
+
+    public String toSecurityPrice(BigDecimal value, SecurityNode securityNode) {
+        return toSecurityPriceCellValue(value, securityNode).getText();
+    }
+
+    public int getMinDaysForRateOfReturn() {
+        return 5;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing and operation counts for the generation of one {@link ReportOutput}.
+ * <p>
+ * The operation counters are global, the profile records how much each counter
+ * changed over the update. Report updates are normally run one at a time, if
+ * not the counts will include the operations of the other updates.
+ * @author Albert Santos
+ */
+public class ReportProfile {
+
+    /**
+     * The operations that are counted.
+     */
+    public static enum Counter {
+        /**
+         * Calls to Account.getBalance().
+         */
+        ACCOUNT_BALANCE_CALLS,
+
+        /**
+         * Calls to SecurityNode.getMarketPrice().
+         */
+        PRICE_LOOKUPS,
+
+        /**
+         * Calls to {@link SecurityLotAction#applyAction(lbjgnash.ui.reportview.SecurityLots) }
+         * made while tracking security transactions.
+         */
+        LOT_ACTIONS_APPLIED,
+
+        /**
+         * {@link SecurityLots} created from a collection of lots.
+         */
+        SECURITY_LOTS_COPIES,
+        ;
+
+        private final LongAdder count = new LongAdder();
+
+        public final void increment() {
+            count.increment();
+        }
+
+        public final long getCount() {
+            return count.sum();
+        }
+    }
+
+
+    private final LocalDateTime startDateTime = LocalDateTime.now();
+    private final Map<ReportOutput.UpdatePhase, Long> phaseNanos = new EnumMap<>(ReportOutput.UpdatePhase.class);
+    private final long [] startCounts = new long[Counter.values().length];
+    private final long [] counts = new long[Counter.values().length];
+
+    private ReportOutput.UpdatePhase currentPhase;
+    private long currentPhaseStartNanos;
+
+    private long balanceMatrixHits;
+    private long balanceMatrixMisses;
+    private int accountEntryCount;
+    private int dateEntryCount;
+    private int columnCount;
+    private int rowCount;
+
+
+    public ReportProfile() {
+        for (Counter counter : Counter.values()) {
+            startCounts[counter.ordinal()] = counter.getCount();
+        }
+    }
+
+
+    /**
+     * Starts timing a phase, the phase currently being timed is ended.
+     * @param phase The phase.
+     */
+    public void startPhase(ReportOutput.UpdatePhase phase) {
+        endPhase();
+        currentPhase = phase;
+        currentPhaseStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends timing the current phase, if any.
+     */
+    public void endPhase() {
+        if (currentPhase != null) {
+            addPhaseNanos(currentPhase, System.nanoTime() - currentPhaseStartNanos);
+            currentPhase = null;
+        }
+    }
+
+    /**
+     * Adds time to a phase.
+     * @param phase The phase.
+     * @param nanos The time in nanoseconds.
+     */
+    public void addPhaseNanos(ReportOutput.UpdatePhase phase, long nanos) {
+        Long currentNanos = phaseNanos.get(phase);
+        phaseNanos.put(phase, (currentNanos != null) ? currentNanos + nanos : nanos);
+    }
+
+    /**
+     * Ends the current phase and records the counters and the statistics of the report output.
+     * @param reportOutput  The report output.
+     */
+    public void finish(ReportOutput reportOutput) {
+        endPhase();
+
+        for (Counter counter : Counter.values()) {
+            counts[counter.ordinal()] = counter.getCount() - startCounts[counter.ordinal()];
+        }
+
+        if (reportOutput.balanceMatrix != null) {
+            balanceMatrixHits = reportOutput.balanceMatrix.getHitCount();
+            balanceMatrixMisses = reportOutput.balanceMatrix.getMissCount();
+        }
+
+        accountEntryCount = 0;
+        reportOutput.accountEntries.forEach((accountEntry) -> {
+            countAccountEntries(accountEntry);
+        });
+        dateEntryCount = reportOutput.dateEntries.size();
+        columnCount = reportOutput.columnEntries.size();
+        rowCount = reportOutput.getRowEntries().size();
+    }
+
+    private void countAccountEntries(AccountEntry accountEntry) {
+        ++accountEntryCount;
+        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
+            countAccountEntries(childAccountEntry);
+        });
+    }
+
+
+    /**
+     * @param phase The phase of interest.
+     * @return The time spent in the phase in nanoseconds.
+     */
+    public final long getPhaseNanos(ReportOutput.UpdatePhase phase) {
+        Long nanos = phaseNanos.get(phase);
+        return (nanos != null) ? nanos : 0;
+    }
+
+    /**
+     * @return The total time of all the phases in nanoseconds.
+     */
+    public final long getTotalNanos() {
+        long total = 0;
+        for (Long nanos : phaseNanos.values()) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * @param counter   The counter of interest.
+     * @return The change in the counter's count over the update, this is only valid
+     * after {@link #finish(lbjgnash.ui.reportview.ReportOutput) } has been called.
+     */
+    public final long getCount(Counter counter) {
+        return counts[counter.ordinal()];
+    }
+
+
+    /**
+     * Generates a plain text version of the profile suitable for attaching to bug reports.
+     * @return The text.
+     */
+    public String toText() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Report profile ").append(startDateTime).append('\n');
+        builder.append('\n');
+
+        for (ReportOutput.UpdatePhase phase : ReportOutput.UpdatePhase.values()) {
+            appendLine(builder, phase.name(), formatMillis(getPhaseNanos(phase)));
+        }
+        appendLine(builder, "TOTAL", formatMillis(getTotalNanos()));
+        builder.append('\n');
+
+        for (Counter counter : Counter.values()) {
+            appendLine(builder, counter.name(), Long.toString(getCount(counter)));
+        }
+        appendLine(builder, "BALANCE_MATRIX_HITS", Long.toString(balanceMatrixHits));
+        appendLine(builder, "BALANCE_MATRIX_MISSES", Long.toString(balanceMatrixMisses));
+        builder.append('\n');
+
+        appendLine(builder, "ACCOUNT_ENTRIES", Integer.toString(accountEntryCount));
+        appendLine(builder, "DATE_ENTRIES", Integer.toString(dateEntryCount));
+        appendLine(builder, "COLUMNS", Integer.toString(columnCount));
+        appendLine(builder, "ROWS", Integer.toString(rowCount));
+
+        return builder.toString();
+    }
+
+    protected static void appendLine(StringBuilder builder, String label, String value) {
+        builder.append(label);
+        for (int i = label.length(); i < 28; ++i) {
+            builder.append(' ');
+        }
+        builder.append(value).append('\n');
+    }
+
+    protected static String formatMillis(long nanos) {
+        return String.format("%.3f ms", nanos / 1000000.);
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import com.leeboardtools.util.ResourceSource;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeTableColumn;
+import javafx.scene.control.TreeTableView;
+import javafx.scene.control.cell.TextFieldTreeTableCell;
+
+/**
+ * Displays a {@link ReportOutput} in a {@link TreeTableView}.
+ * @author Albert Santos
+ */
+public class ReportTreeTableAdapter {
+    private final TreeTableView<RowItem> treeTableView;
+    protected TreeTableColumn<RowItem, String> headingColumn;
+
+    // TODO: Move this to ReportDefinition.
+    protected DateTimeFormatter columnDateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT);
+
+    protected ReportOutput currentReportOutput;
+    protected final List<RowItem> currentRowItems = new ArrayList<>();
+
+    public static final String STYLE_CELL       = "report-cell";
+    public static final String STYLE_SUBTOTAL   = "report-cell-subtotal";
+    public static final String STYLE_SUMMARY    = "report-cell-summary";
+    public static final String STYLE_BALANCE_VALUE      = "report-cell-balance-value";
+    public static final String STYLE_GRAND_TOTAL    = "report-cell-grand-total";
+
+
+    /**
+     * The observable version of a {@link RowEntry}, these are the items of the tree table view.
+     */
+    public static class RowItem {
+        final RowEntry rowEntry;
+        final StringProperty rowTitle = new SimpleStringProperty(this, "rowTitle", null);
+        final List<ObjectProperty<CellEntry>> expandedCellProperties = new ArrayList<>();
+        final List<ObjectProperty<CellEntry>> nonExpandedCellProperties = new ArrayList<>();
+
+        protected RowItem(RowEntry rowEntry) {
+            this.rowEntry = rowEntry;
+            if (rowEntry != null) {
+                this.rowTitle.set(rowEntry.getRowTitle());
+                addCellProperties(expandedCellProperties, rowEntry.expandedCellEntries);
+                addCellProperties(nonExpandedCellProperties, rowEntry.nonExpandedCellEntries);
+            }
+        }
+
+        protected static void addCellProperties(List<ObjectProperty<CellEntry>> properties, List<CellEntry> cellEntries) {
+            cellEntries.forEach((cellEntry) -> {
+                properties.add((cellEntry != null) ? new SimpleObjectProperty<>(cellEntry) : null);
+            });
+        }
+
+        public final RowEntry getRowEntry() {
+            return rowEntry;
+        }
+
+        public StringProperty rowTitleProperty() {
+            return rowTitle;
+        }
+
+        public ObjectProperty<CellEntry> getColumnCellProperty(int index, boolean isExpanded) {
+            List<ObjectProperty<CellEntry>> properties = (isExpanded) ? expandedCellProperties : nonExpandedCellProperties;
+            if (index >= properties.size()) {
+                return null;
+            }
+            return properties.get(index);
+        }
+    }
+
+
+    /**
+     * Used to set the CSS styles for the individual cells.
+     */
+    protected static class ReportTreeCell extends TextFieldTreeTableCell<RowItem, CellEntry> {
+        @Override
+        public void updateItem(CellEntry item, boolean empty) {
+            super.updateItem(item, empty);
+
+            getStyleClass().remove(STYLE_SUBTOTAL);
+            getStyleClass().remove(STYLE_SUMMARY);
+            getStyleClass().remove(STYLE_GRAND_TOTAL);
+
+            if ((item != null) && !empty) {
+                getStyleClass().add(STYLE_CELL);
+                getStyleClass().add(STYLE_BALANCE_VALUE);
+
+                switch (item.getStyle()) {
+                    case SUBTOTAL :
+                        getStyleClass().add(STYLE_SUBTOTAL);
+                        break;
+                    case SUMMARY :
+                        getStyleClass().add(STYLE_SUMMARY);
+                        break;
+                    case GRAND_TOTAL :
+                        getStyleClass().add(STYLE_GRAND_TOTAL);
+                        break;
+                    default :
+                        break;
+                }
+            }
+        }
+    }
+
+
+    public ReportTreeTableAdapter() {
+        treeTableView = new TreeTableView<>();
+        treeTableView.setShowRoot(false);
+
+        headingColumn = new TreeTableColumn<>();
+        headingColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<RowItem, String> param) -> {
+            if (param.getValue().getValue() == null) {
+                return null;
+            }
+            return param.getValue().getValue().rowTitleProperty();
+        });
+    }
+
+
+    public final TreeTableView<RowItem> getTreeTableView() {
+        return treeTableView;
+    }
+
+    public final ReportOutput getReportOutput() {
+        return currentReportOutput;
+    }
+
+
+    /**
+     * Clears out the tree table view.
+     */
+    public void clear() {
+        if (this.treeTableView.getRoot() != null) {
+            this.treeTableView.getRoot().getChildren().clear();
+        }
+        this.treeTableView.getColumns().clear();
+        this.currentReportOutput = null;
+        this.currentRowItems.clear();
+    }
+
+
+    /**
+     * Rebuilds the tree table view to display a report output.
+     * @param reportOutput  The report output.
+     */
+    public void setReportOutput(ReportOutput reportOutput) {
+        TreeItem<RowItem> root = new TreeItem<>(new RowItem(new RowEntry()));
+        currentRowItems.clear();
+
+        treeTableView.setRoot(root);
+        treeTableView.getColumns().clear();
+
+
+        treeTableView.getColumns().add(headingColumn);
+
+        List<TreeTableColumn<RowItem, CellEntry>> columnGroup = new ArrayList<>();
+        reportOutput.dateEntries.forEach((dateEntry) -> {
+            columnGroup.clear();
+            dateEntry.columnEntries.forEach((columnEntry) -> {
+                columnGroup.add(createTreeTableColumn(columnEntry));
+            });
+
+            TreeTableColumn<RowItem, CellEntry> dateColumn;
+            if (columnGroup.size() == 1) {
+                // Single column, it's going to be the date column.
+                dateColumn = columnGroup.get(0);
+            }
+            else {
+                dateColumn = new TreeTableColumn<>();
+                dateColumn.getColumns().addAll(columnGroup);
+            }
+
+            dateColumn.setText(getDateColumnLabel(dateEntry));
+
+            treeTableView.getColumns().add(dateColumn);
+        });
+
+
+        // Add the rows...
+        reportOutput.accountEntries.forEach((accountEntry) -> {
+            addRowsForAccountEntry(root, accountEntry);
+        });
+
+        reportOutput.namedRowEntries.forEach((name, rowEntry) -> {
+            addRowItem(root, rowEntry);
+        });
+
+        if (reportOutput.grandTotalRowEntry != null) {
+            addRowItem(root, reportOutput.grandTotalRowEntry);
+        }
+
+        this.currentReportOutput = reportOutput;
+    }
+
+
+    protected TreeTableColumn<RowItem, CellEntry> createTreeTableColumn(ColumnEntry columnEntry) {
+        TreeTableColumn<RowItem, CellEntry> treeTableColumn = new TreeTableColumn<>();
+        treeTableColumn.setText(columnEntry.getTitle());
+
+        final int columnIndex = columnEntry.columnIndex;
+        treeTableColumn.setCellValueFactory((TreeTableColumn.CellDataFeatures<RowItem, CellEntry> param) -> {
+            if (param.getValue().getValue() == null) {
+                return null;
+            }
+            return param.getValue().getValue().getColumnCellProperty(columnIndex, param.getValue().isExpanded());
+        });
+        treeTableColumn.setCellFactory((TreeTableColumn<RowItem, CellEntry> column) -> {
+            return new ReportTreeCell();
+        });
+        return treeTableColumn;
+    }
+
+
+    protected TreeItem<RowItem> addRowItem(TreeItem<RowItem> parent, RowEntry rowEntry) {
+        // The row items must be added in the order of ReportOutput.getRowEntries().
+        RowItem rowItem = (rowEntry != null) ? new RowItem(rowEntry) : null;
+        currentRowItems.add(rowItem);
+
+        TreeItem<RowItem> treeItem = new TreeItem<>(rowItem);
+        parent.getChildren().add(treeItem);
+        return treeItem;
+    }
+
+    protected void addRowsForAccountEntry(TreeItem<RowItem> parent, AccountEntry accountEntry) {
+        if (accountEntry.summaryRowEntry != null) {
+            parent = addRowItem(parent, accountEntry.summaryRowEntry);
+        }
+
+        final TreeItem<RowItem> itemForChildren = parent;
+        accountEntry.childAccountEntries.forEach((childAccountEntry) -> {
+            addRowsForAccountEntry(itemForChildren, childAccountEntry);
+        });
+
+        if (accountEntry.postChildAccountRowEntries != null) {
+            final TreeItem<RowItem> finalParent = parent;
+            accountEntry.postChildAccountRowEntries.forEach((rowEntry) -> {
+                addRowItem(finalParent, rowEntry);
+            });
+        }
+
+        if (accountEntry.postChildRowEntry != null) {
+            addRowItem(parent, accountEntry.postChildRowEntry);
+        }
+    }
+
+    protected String getDateColumnLabel(DateEntry dateEntry) {
+        String endDateString = dateEntry.endDate.format(columnDateTimeFormatter);
+        if (dateEntry.startDate.equals(dateEntry.endDate)) {
+            return endDateString;
+        }
+
+        String startDateString = dateEntry.startDate.format(columnDateTimeFormatter);
+        return ResourceSource.getString("Report.ColumnHeading.StartEndDate", startDateString, endDateString);
+    }
+
+
+    /**
+     * Updates the cells of the report currently being displayed from a newly generated report
+     * if the new report has the same layout.
+     * @param reportOutput  The newly generated report.
+     * @return <code>true</code> if the cells were updated, <code>false</code> if the layouts
+     * differ and {@link #setReportOutput(lbjgnash.ui.reportview.ReportOutput) } needs to be called.
+     */
+    public boolean updateCellsInPlace(ReportOutput reportOutput) {
+        if ((currentReportOutput == null) || !isSameColumnLayout(currentReportOutput, reportOutput)) {
+            return false;
+        }
+
+        List<RowEntry> newRowEntries = reportOutput.getRowEntries();
+        final int rowCount = currentRowItems.size();
+        if (rowCount != newRowEntries.size()) {
+            return false;
+        }
+        for (int i = 0; i < rowCount; ++i) {
+            if (!isSameRowLayout(currentRowItems.get(i), newRowEntries.get(i))) {
+                return false;
+            }
+        }
+
+        // The tree items still refer to the current row items, so we update their cells.
+        for (int i = 0; i < rowCount; ++i) {
+            RowItem rowItem = currentRowItems.get(i);
+            RowEntry newRowEntry = newRowEntries.get(i);
+            if (rowItem != null) {
+                updateChangedCells(rowItem.expandedCellProperties, newRowEntry.expandedCellEntries);
+                updateChangedCells(rowItem.nonExpandedCellProperties, newRowEntry.nonExpandedCellEntries);
+            }
+        }
+
+        this.currentReportOutput = reportOutput;
+        return true;
+    }
+
+    protected static boolean isSameColumnLayout(ReportOutput a, ReportOutput b) {
+        if ((a.dateEntries.size() != b.dateEntries.size()) || (a.columnEntries.size() != b.columnEntries.size())) {
+            return false;
+        }
+
+        final int dateEntryCount = a.dateEntries.size();
+        for (int i = 0; i < dateEntryCount; ++i) {
+            DateEntry dateEntryA = a.dateEntries.get(i);
+            DateEntry dateEntryB = b.dateEntries.get(i);
+            if (!dateEntryA.startDate.equals(dateEntryB.startDate) || !dateEntryA.endDate.equals(dateEntryB.endDate)
+                    || (dateEntryA.columnEntries.size() != dateEntryB.columnEntries.size())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static boolean isSameRowLayout(RowItem rowItem, RowEntry rowEntry) {
+        if ((rowItem == null) || (rowEntry == null)) {
+            return (rowItem == null) && (rowEntry == null);
+        }
+
+        if (!Objects.equals(rowItem.rowTitle.get(), rowEntry.getRowTitle())) {
+            return false;
+        }
+
+        // The cell value factories have already handed out the current properties, so the new
+        // cells have to go into existing properties.
+        return isSamePropertyLayout(rowItem.expandedCellProperties, rowEntry.expandedCellEntries)
+                && isSamePropertyLayout(rowItem.nonExpandedCellProperties, rowEntry.nonExpandedCellEntries);
+    }
+
+    protected static boolean isSamePropertyLayout(List<ObjectProperty<CellEntry>> properties, List<CellEntry> cellEntries) {
+        if (properties.size() != cellEntries.size()) {
+            return false;
+        }
+        final int count = properties.size();
+        for (int i = 0; i < count; ++i) {
+            if ((properties.get(i) == null) != (cellEntries.get(i) == null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static void updateChangedCells(List<ObjectProperty<CellEntry>> properties, List<CellEntry> cellEntries) {
+        final int count = properties.size();
+        for (int i = 0; i < count; ++i) {
+            ObjectProperty<CellEntry> property = properties.get(i);
+            if (property == null) {
+                continue;
+            }
+
+            CellEntry currentCellEntry = property.get();
+            CellEntry newCellEntry = cellEntries.get(i);
+            if (!Objects.equals(currentCellEntry.value, newCellEntry.value)
+                    || (currentCellEntry.style != newCellEntry.style)) {
+                property.set(newCellEntry);
+            }
+        }
+    }
+}
@@ -16,57 +16,64 @@
 package lbjgnash.ui.reportview;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
-import javafx.scene.control.TreeItem;
 
 /**
- * This an individual row for the {@link TreeTableView}.
+ * This an individual row of a report. A row has separate cells for when the row
+ * is expanded and when it is collapsed, the index of a cell is the {@link ColumnEntry#columnIndex}
+ * of its column.
  */
 public class RowEntry {
 
-    final StringProperty rowTitle = new SimpleStringProperty(this, "rowTitle", null);
-    final List<ObjectProperty<CellEntry>> expandedColumnCellProperties = new ArrayList<>();
-    final List<ObjectProperty<CellEntry>> nonExpandedColumnCellProperties = new ArrayList<>();
+    String rowTitle;
+    final List<CellEntry> expandedCellEntries = new ArrayList<>();
+    final List<CellEntry> nonExpandedCellEntries = new ArrayList<>();
 
     public void setRowTitle(String title) {
-        this.rowTitle.set(title);
+        this.rowTitle = title;
     }
 
-    public StringProperty getRowTitle() {
+    public String getRowTitle() {
         return this.rowTitle;
     }
 
-    public ObjectProperty<CellEntry> getColumnCellProperties(int index, TreeItem<RowEntry> entry) {
-        List<ObjectProperty<CellEntry>> propertiesList = (entry.isExpanded()) ? expandedColumnCellProperties : nonExpandedColumnCellProperties;
-        if (index >= propertiesList.size()) {
+    /**
+     * Retrieves a cell.
+     * @param index The column index of the cell.
+     * @param isExpanded    If <code>true</code> the cell for the row being expanded is
+     * retrieved, otherwise the cell for the row being collapsed.
+     * @return The cell entry, <code>null</code> if there is none.
+     */
+    public CellEntry getCellEntry(int index, boolean isExpanded) {
+        List<CellEntry> cellEntries = (isExpanded) ? expandedCellEntries : nonExpandedCellEntries;
+        if (index >= cellEntries.size()) {
             return null;
         }
-        return propertiesList.get(index);
+        return cellEntries.get(index);
+    }
+
+    public List<CellEntry> getExpandedCellEntries() {
+        return Collections.unmodifiableList(expandedCellEntries);
+    }
+
+    public List<CellEntry> getNonExpandedCellEntries() {
+        return Collections.unmodifiableList(nonExpandedCellEntries);
     }
 
     public void setExpandedColumnCellValue(ColumnEntry columnEntry, CellEntry cellEntry) {
-        setColumnCellValue(expandedColumnCellProperties, columnEntry.columnIndex, cellEntry);
+        setColumnCellValue(expandedCellEntries, columnEntry.columnIndex, cellEntry);
     }
 
     public void setNonExpandedColumnCellValue(ColumnEntry columnEntry, CellEntry cellEntry) {
-        setColumnCellValue(nonExpandedColumnCellProperties, columnEntry.columnIndex, cellEntry);
+        setColumnCellValue(nonExpandedCellEntries, columnEntry.columnIndex, cellEntry);
     }
 
-    public void setColumnCellValue(List<ObjectProperty<CellEntry>> properties, int index, CellEntry cellEntry) {
-        while (index >= properties.size()) {
-            properties.add(null);
-        }
-        
-        ObjectProperty<CellEntry> property = properties.get(index);
-        if (property == null) {
-            property = new SimpleObjectProperty();
-            properties.set(index, property);
+    protected static void setColumnCellValue(List<CellEntry> cellEntries, int index, CellEntry cellEntry) {
+        while (index >= cellEntries.size()) {
+            cellEntries.add(null);
         }
-        property.set(cellEntry);
+        cellEntries.set(index, cellEntry);
     }
-    
+
 }
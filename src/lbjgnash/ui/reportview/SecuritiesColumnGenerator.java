@@ -22,8 +22,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import javafx.scene.control.TreeTableColumn;
-import javafx.scene.control.cell.TextFieldTreeTableCell;
 import jgnash.engine.Account;
 import jgnash.engine.AccountGroup;
 import jgnash.engine.SecurityNode;
@@ -44,11 +42,19 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
         final SecurityTransactionTracker transactionTracker;
         final AccountEntry accountEntry;
         final RowEntry rowEntry;
+        // Only used by the securities style report, null for cash entries.
+        final SecurityIndex.Entry indexEntry;
         
         protected SecurityRowEntry(SecurityTransactionTracker transactionTracker, AccountEntry accountEntry, RowEntry rowEntry) {
+            this(transactionTracker, accountEntry, rowEntry, null);
+        }
+        
+        protected SecurityRowEntry(SecurityTransactionTracker transactionTracker, AccountEntry accountEntry, RowEntry rowEntry, 
+                SecurityIndex.Entry indexEntry) {
             this.transactionTracker = transactionTracker;
             this.accountEntry = accountEntry;
             this.rowEntry = rowEntry;
+            this.indexEntry = indexEntry;
         }
     }
     
@@ -91,22 +97,25 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
         protected final SecurityRowEntry securityRowEntry;
         protected final SecurityTransactionTracker.DateEntry trackerDateEntry;
         protected final ColumnEntry columnEntry;
+        // This is shared with the other column generators, it is null for cash entries.
+        protected final PortfolioMetrics metrics;
         
         protected DatedSecurityEntryInfo(SecurityRowEntry securityRowEntry, SecurityTransactionTracker.DateEntry trackerDateEntry,
-                ColumnEntry columnEntry) {
+                ColumnEntry columnEntry, PortfolioMetrics metrics) {
             this.securityRowEntry = securityRowEntry;
             this.trackerDateEntry = trackerDateEntry;
             this.columnEntry = columnEntry;
+            this.metrics = metrics;
         }
         
-        protected BigDecimal getNetGain(LocalDate endDate) {
-            return trackerDateEntry.getMarketValue(endDate).subtract(trackerDateEntry.getTotalCashIn());
+        protected BigDecimal getNetGain() {
+            return metrics.getNetGain();
         }
         protected BigDecimal getTotalCashIn() {
-            return trackerDateEntry.getTotalCashIn();
+            return metrics.getTotalCashIn();
         }
-        protected BigDecimal getCashInYearAgoValueSum(LocalDate endDate, int minDays) {
-            return trackerDateEntry.getCashInYearAgoValueSum(endDate, minDays);
+        protected BigDecimal getCashInYearAgoValueSum() {
+            return metrics.getCashInYearAgoValueSum();
         }
     }
     
@@ -115,7 +124,7 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
         protected final DateEntry dateEntry;
         protected final Map<SecurityRowEntry, DatedSecurityEntryInfo> datedSecurityEntryInfos = new HashMap<>();
         protected final Map<AccountEntry, DatedSummaryEntryInfo> accountDatedSummaryEntryInfos = new HashMap<>();
-        protected final Map<String, DatedSummaryEntryInfo> securityDatedSummaryEntryInfos = new HashMap<>();
+        protected final Map<SecurityIndex.Entry, DatedSummaryEntryInfo> securityDatedSummaryEntryInfos = new HashMap<>();
         protected final ColumnEntry columnEntry;
         
         protected BigDecimal totalCashIn = BigDecimal.ZERO;
@@ -140,78 +149,35 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
     protected static class SecurityCellEntry extends CellEntry {
         protected final DatedSecurityEntryInfo datedSecurityEntryInfo;
         protected final DatedSummaryEntryInfo datedSummaryEntryInfo;
-        String basicStyle = ReportDataView.STYLE_BALANCE_VALUE;
         
-        protected SecurityCellEntry(DatedSecurityEntryInfo datedSecurityEntryInfo, RowEntry rowEntry, String value) {
-            super(rowEntry, value);
+        protected SecurityCellEntry(DatedSecurityEntryInfo datedSecurityEntryInfo, RowEntry rowEntry, CellValue value) {
+            super(rowEntry, value, Style.VALUE);
             this.datedSecurityEntryInfo = datedSecurityEntryInfo;
             this.datedSummaryEntryInfo = null;
         }
         
-        protected SecurityCellEntry(DatedSummaryEntryInfo datedSummaryEntryInfo, RowEntry rowEntry, String value) {
-            super(rowEntry, value);
+        protected SecurityCellEntry(DatedSummaryEntryInfo datedSummaryEntryInfo, RowEntry rowEntry, CellValue value) {
+            super(rowEntry, value, Style.VALUE);
             this.datedSecurityEntryInfo = null;
             this.datedSummaryEntryInfo = datedSummaryEntryInfo;
         }
         
-        protected SecurityCellEntry(RowEntry rowEntry, String value) {
-            super(rowEntry, value);
+        protected SecurityCellEntry(RowEntry rowEntry, CellValue value) {
+            super(rowEntry, value, Style.VALUE);
             this.datedSecurityEntryInfo = null;
             this.datedSummaryEntryInfo = null;
         }
     }
     
     
-    /**
-     * Used to set the CSS styles for the individual cells.
-     */
-    protected static class SecurityTreeCell extends TextFieldTreeTableCell<RowEntry, CellEntry> {
-        final SecuritiesColumnGenerator generator;
-        final DateEntryInfo dateEntryInfo;
-        
-        SecurityTreeCell(SecuritiesColumnGenerator generator, DateEntryInfo dateEntryInfo) {
-            this.generator = generator;
-            this.dateEntryInfo = dateEntryInfo;
-        }
-
-        @Override
-        public void updateItem(CellEntry item, boolean empty) {
-            super.updateItem(item, empty);            
-            
-            if ((item instanceof SecurityCellEntry) && !empty) {
-                SecurityCellEntry securityCellEntry = (SecurityCellEntry)item;
-                
-                getStyleClass().add(ReportDataView.STYLE_CELL);
-                getStyleClass().remove(ReportDataView.STYLE_SUBTOTAL);
-                getStyleClass().remove(ReportDataView.STYLE_SUMMARY);
-                getStyleClass().remove(ReportDataView.STYLE_GRAND_TOTAL);
-                
-                getStyleClass().add(securityCellEntry.basicStyle);
-                
-/*                if (securityCellEntry.accountEntryInfo != null) {
-                    if (securityCellEntry.rowEntry == securityCellEntry.accountEntryInfo.accountEntry.summaryRowEntry) {
-                        getStyleClass().add(ReportDataView.STYLE_SUMMARY);
-                    }
-                    else if (securityCellEntry.rowEntry == securityCellEntry.accountEntryInfo.rowEntry) {
-                        getStyleClass().add(ReportDataView.STYLE_SUBTOTAL);
-                    }
-                }
-                else {
-                    getStyleClass().add(ReportDataView.STYLE_GRAND_TOTAL);
-                }
-*/
-            }
-        }
-    }
-    
-    boolean usesNamedRowEntries(ReportDataView.ReportOutput reportOutput) {
+    boolean usesNamedRowEntries(ReportOutput reportOutput) {
         return reportOutput.getDefinition().getStyle() == ReportDefinition.Style.SECURITIES;
     }
     
     
 
     @Override
-    protected void setupRowsForAccountEntry(AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput, AccountEntry parentAccountEntry) {
+    protected void setupRowsForAccountEntry(AccountEntry accountEntry, ReportOutput reportOutput, AccountEntry parentAccountEntry) {
         
         boolean isPossibleCashRow = true;
         
@@ -274,19 +240,36 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
         }
     }
     
-    protected void addSecurityRowEntry(ReportDataView.ReportOutput reportOutput, 
+    protected void addSecurityRowEntry(ReportOutput reportOutput, 
             SecurityTransactionTracker transactionTracker, AccountEntryInfo accountEntryInfo) {
         SecurityNode securityNode = transactionTracker.getSecurityNode();
-        String symbol = getNameForSecurity(reportOutput, securityNode);
-        RowEntry rowEntry = useRowEntry(reportOutput, accountEntryInfo, symbol);
-
-        rowEntry.setRowTitle(symbol);
         AccountEntry accountEntry = accountEntryInfo.accountEntry;
-        SecurityRowEntry securityRowEntry = new SecurityRowEntry(transactionTracker, accountEntry, rowEntry);
+        
+        SecurityRowEntry securityRowEntry;
+        if (usesNamedRowEntries(reportOutput)) {
+            // All the accounts holding the security share the index entry, and therefore the row.
+            SecurityIndex.Entry indexEntry = reportOutput.securityIndex.getEntry(securityNode);
+            if (indexEntry == null) {
+                String name = getNameForSecurity(reportOutput, securityNode);
+                RowEntry rowEntry = useRowEntry(reportOutput, accountEntryInfo, name);
+                rowEntry.setRowTitle(name);
+                indexEntry = reportOutput.securityIndex.useEntry(securityNode, name, rowEntry);
+            }
+            
+            indexEntry.addTransactionTracker(transactionTracker, accountEntry);
+            securityRowEntry = new SecurityRowEntry(transactionTracker, accountEntry, indexEntry.getRowEntry(), indexEntry);
+        }
+        else {
+            String symbol = getNameForSecurity(reportOutput, securityNode);
+            RowEntry rowEntry = useRowEntry(reportOutput, accountEntryInfo, symbol);
+
+            rowEntry.setRowTitle(symbol);
+            securityRowEntry = new SecurityRowEntry(transactionTracker, accountEntry, rowEntry);
+        }
         accountEntryInfo.securityRowEntries.add(securityRowEntry);
     }
     
-    protected void addCashRowEntry(ReportDataView.ReportOutput reportOutput, AccountEntryInfo accountEntryInfo) {
+    protected void addCashRowEntry(ReportOutput reportOutput, AccountEntryInfo accountEntryInfo) {
         RowEntry rowEntry = useRowEntry(reportOutput, accountEntryInfo, CASH_SYMBOL);
         
         rowEntry.setRowTitle(ResourceSource.getString("Report.CashRow"));
@@ -294,15 +277,14 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
         accountEntryInfo.securityRowEntries.add(cashRowEntry);
     }
     
-    protected String getNameForSecurity(ReportDataView.ReportOutput reportOutput, SecurityNode securityNode) {
-        String cusId = securityNode.getISIN();
-        if ("Cash".equals(cusId)) {
-            return "Cash";
+    protected String getNameForSecurity(ReportOutput reportOutput, SecurityNode securityNode) {
+        if (SecurityIndex.isCashSecurity(securityNode)) {
+            return SecurityIndex.CASH_ISIN;
         }
         return securityNode.getSymbol();
     }
     
-    protected RowEntry useRowEntry(ReportDataView.ReportOutput reportOutput, AccountEntryInfo accountEntryInfo, String name) {
+    protected RowEntry useRowEntry(ReportOutput reportOutput, AccountEntryInfo accountEntryInfo, String name) {
         if (usesNamedRowEntries(reportOutput)) {
             RowEntry rowEntry = reportOutput.namedRowEntries.get(name);
             if (rowEntry == null) {
@@ -320,7 +302,25 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
     
 
     @Override
-    protected void setupColumnsForDateEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput, 
+    protected void setupDateEntryColumns(ReportOutput reportOutput) {
+        // Let the report output calculate the year ago value sums of each tracker date entry
+        // for all the report dates at once.
+        Set<SecurityTransactionTracker> transactionTrackers = new HashSet<>();
+        accountEntryInfos.values().forEach((accountEntryInfo) -> {
+            accountEntryInfo.securityRowEntries.forEach((securityRowEntry) -> {
+                if (securityRowEntry.transactionTracker != null) {
+                    transactionTrackers.add(securityRowEntry.transactionTracker);
+                }
+            });
+        });
+        reportOutput.preparePortfolioMetrics(transactionTrackers);
+        
+        super.setupDateEntryColumns(reportOutput);
+    }
+    
+
+    @Override
+    protected void setupColumnsForDateEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportOutput reportOutput, 
             int columnIndexBase) {
         AccountEntryInfo accountEntryInfo = accountEntryInfos.get(accountEntry);
         if (accountEntryInfo != null) {
@@ -331,11 +331,7 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
                 dateEntryInfo = createDateEntryInfo(accountEntryInfo, dateEntry, columnEntry, reportOutput, columnIndexBase);
                 dateEntryInfos.put(dateEntry, dateEntryInfo);
                 
-                columnEntry.treeTableColumn.setText(getColumnTitle(accountEntry, dateEntry, reportOutput));
-                final DateEntryInfo finalDateEntryInfo = dateEntryInfo;
-                columnEntry.treeTableColumn.setCellFactory((TreeTableColumn<RowEntry, CellEntry> column) -> {
-                    return new SecurityTreeCell(this, finalDateEntryInfo);
-                });
+                columnEntry.setTitle(getColumnTitle(accountEntry, dateEntry, reportOutput));
             }
             
             // Summary...
@@ -350,13 +346,13 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
                 DatedSecurityEntryInfo securityEntryInfo = createDatedSecurityEntryInfo(securityRowEntry, dateEntryInfo, columnEntry, 
                     reportOutput, columnIndexBase);
                 if ((securityEntryInfo != null) && (securityRowEntry.transactionTracker != null)) {
-                    if (usesNamedRowEntries(reportOutput)) {
-                        String securityName = getNameForSecurity(reportOutput, securityRowEntry.transactionTracker.getSecurityNode());
-                        datedSummaryEntryInfo = dateEntryInfo.securityDatedSummaryEntryInfos.get(securityName);
+                    SecurityIndex.Entry indexEntry = securityRowEntry.indexEntry;
+                    if (indexEntry != null) {
+                        datedSummaryEntryInfo = dateEntryInfo.securityDatedSummaryEntryInfos.get(indexEntry);
                         if (datedSummaryEntryInfo == null) {
-                            datedSummaryEntryInfo = createDatedSummaryEntryInfo(securityName, accountEntryInfo, dateEntryInfo, columnEntry, 
+                            datedSummaryEntryInfo = createDatedSummaryEntryInfo(indexEntry.getName(), accountEntryInfo, dateEntryInfo, columnEntry, 
                                 reportOutput, columnIndexBase);
-                            dateEntryInfo.securityDatedSummaryEntryInfos.put(securityName, datedSummaryEntryInfo);
+                            dateEntryInfo.securityDatedSummaryEntryInfos.put(indexEntry, datedSummaryEntryInfo);
                         }
                     }
                     dateEntryInfo.datedSecurityEntryInfos.put(securityRowEntry, securityEntryInfo);
@@ -377,90 +373,106 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
 
     
     protected DateEntryInfo createDateEntryInfo(AccountEntryInfo accountEntryInfo, DateEntry dateEntry, 
-            ColumnEntry columnEntry, ReportDataView.ReportOutput reportOutput, int columnIndexBase) {
+            ColumnEntry columnEntry, ReportOutput reportOutput, int columnIndexBase) {
         return new DateEntryInfo(dateEntry, columnEntry);
     }
     
     
     protected DatedSecurityEntryInfo createDatedSecurityEntryInfo(SecurityRowEntry securityRowEntry, DateEntryInfo dateEntryInfo,
-            ColumnEntry columnEntry, ReportDataView.ReportOutput reportOutput, int columnIndexBase) {
+            ColumnEntry columnEntry, ReportOutput reportOutput, int columnIndexBase) {
         if (securityRowEntry.transactionTracker != null) {
-            SecurityTransactionTracker.DateEntry trackerDateEntry = securityRowEntry.transactionTracker.getDateEntry(dateEntryInfo.dateEntry.endDate);
+            LocalDate date = dateEntryInfo.dateEntry.endDate;
+            SecurityTransactionTracker.DateEntry trackerDateEntry = securityRowEntry.transactionTracker.getDateEntry(date);
             if (trackerDateEntry == null) {
                 return null;
             }
-            return new DatedSecurityEntryInfo(securityRowEntry, trackerDateEntry, columnEntry);
+            PortfolioMetrics metrics = reportOutput.getPortfolioMetrics(trackerDateEntry, date);
+            return new DatedSecurityEntryInfo(securityRowEntry, trackerDateEntry, columnEntry, metrics);
         }
         else {
             // TODO: Treat cash as a security in the security tracking stuff!
             // Cash entry...
-            return new DatedSecurityEntryInfo(securityRowEntry, null, columnEntry);
+            return new DatedSecurityEntryInfo(securityRowEntry, null, columnEntry, null);
         }
     }
     
     
     protected DatedSummaryEntryInfo createDatedSummaryEntryInfo(AccountEntryInfo accountEntryInfo, DateEntryInfo dateEntryInfo,
-            ColumnEntry columnEntry, ReportDataView.ReportOutput reportOutput, int columnIndexBase) {
+            ColumnEntry columnEntry, ReportOutput reportOutput, int columnIndexBase) {
         DatedSummaryEntryInfo datedSummaryEntryInfo = new DatedSummaryEntryInfo(columnEntry, accountEntryInfo);
         return datedSummaryEntryInfo;
     }
     
     protected DatedSummaryEntryInfo createDatedSummaryEntryInfo(String securityName, AccountEntryInfo accountEntryInfo, 
-            DateEntryInfo dateEntryInfo, ColumnEntry columnEntry, ReportDataView.ReportOutput reportOutput, int columnIndexBase) {
+            DateEntryInfo dateEntryInfo, ColumnEntry columnEntry, ReportOutput reportOutput, int columnIndexBase) {
         DatedSummaryEntryInfo datedSummaryEntryInfo = new DatedSummaryEntryInfo(columnEntry, accountEntryInfo);
         return datedSummaryEntryInfo;
     }
     
     
     protected void updateDatedSummaryEntryInfo(DatedSummaryEntryInfo datedSummaryEntryInfo, DatedSecurityEntryInfo datedSecurityEntryInfo,
-            DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
-        LocalDate date = dateEntryInfo.dateEntry.endDate;
+            DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
+        PortfolioMetrics metrics = datedSecurityEntryInfo.metrics;
         
         Account account = datedSecurityEntryInfo.securityRowEntry.accountEntry.account;
 
-        BigDecimal costBasis = datedSecurityEntryInfo.trackerDateEntry.getCostBasis();
-        datedSummaryEntryInfo.totalCostBasis = datedSummaryEntryInfo.totalCostBasis.add(costBasis);
-        dateEntryInfo.totalCostBasis = dateEntryInfo.totalCostBasis.add(costBasis);
-        
-        BigDecimal marketValue = datedSecurityEntryInfo.trackerDateEntry.getMarketValue(date);
-        marketValue = reportOutput.toMonetaryValue(marketValue, account);
+        // Only the metrics the report actually uses are calculated, in particular the
+        // year ago value sums are expensive.
+        if (reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.COST_BASIS)) {
+            BigDecimal costBasis = metrics.getCostBasis();
+            datedSummaryEntryInfo.totalCostBasis = datedSummaryEntryInfo.totalCostBasis.add(costBasis);
+            dateEntryInfo.totalCostBasis = dateEntryInfo.totalCostBasis.add(costBasis);
+        }
         
-        datedSummaryEntryInfo.totalMarketValue = datedSummaryEntryInfo.totalMarketValue.add(marketValue);
-        dateEntryInfo.totalMarketValue = dateEntryInfo.totalMarketValue.add(marketValue);
+        if (reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.MARKET_VALUE)) {
+            BigDecimal marketValue = metrics.getMarketValue();
+            marketValue = reportOutput.toMonetaryValue(marketValue, account);
+
+            datedSummaryEntryInfo.totalMarketValue = datedSummaryEntryInfo.totalMarketValue.add(marketValue);
+            dateEntryInfo.totalMarketValue = dateEntryInfo.totalMarketValue.add(marketValue);
+        }
         
-        BigDecimal yearAgoValueSum = datedSecurityEntryInfo.trackerDateEntry.getYearAgoValueSum(date, 
-                reportOutput.getMinDaysForRateOfReturn());
-        datedSummaryEntryInfo.yearAgoValueSum = datedSummaryEntryInfo.yearAgoValueSum.add(yearAgoValueSum);
-        dateEntryInfo.yearAgoValueSum = dateEntryInfo.yearAgoValueSum.add(yearAgoValueSum);
+        if (reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.YEAR_AGO_VALUE_SUM)) {
+            BigDecimal yearAgoValueSum = metrics.getYearAgoValueSum();
+            datedSummaryEntryInfo.yearAgoValueSum = datedSummaryEntryInfo.yearAgoValueSum.add(yearAgoValueSum);
+            dateEntryInfo.yearAgoValueSum = dateEntryInfo.yearAgoValueSum.add(yearAgoValueSum);
+        }
         
-        BigDecimal totalCashIn = datedSecurityEntryInfo.trackerDateEntry.getTotalCashIn();
-        datedSummaryEntryInfo.totalCashIn = datedSummaryEntryInfo.totalCashIn.add(totalCashIn);
-        dateEntryInfo.totalCashIn = dateEntryInfo.totalCashIn.add(totalCashIn);
+        if (reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.TOTAL_CASH_IN)) {
+            BigDecimal totalCashIn = metrics.getTotalCashIn();
+            datedSummaryEntryInfo.totalCashIn = datedSummaryEntryInfo.totalCashIn.add(totalCashIn);
+            dateEntryInfo.totalCashIn = dateEntryInfo.totalCashIn.add(totalCashIn);
+        }
         
-        BigDecimal cashInYearAgoValueSum = datedSecurityEntryInfo.getCashInYearAgoValueSum(date, 
-                reportOutput.getMinDaysForRateOfReturn());
-        datedSummaryEntryInfo.cashInYearAgoValueSum = datedSummaryEntryInfo.cashInYearAgoValueSum.add(cashInYearAgoValueSum);
-        dateEntryInfo.cashInYearAgoValueSum = dateEntryInfo.cashInYearAgoValueSum.add(cashInYearAgoValueSum);
+        if (reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.CASH_IN_YEAR_AGO_VALUE_SUM)) {
+            BigDecimal cashInYearAgoValueSum = metrics.getCashInYearAgoValueSum();
+            datedSummaryEntryInfo.cashInYearAgoValueSum = datedSummaryEntryInfo.cashInYearAgoValueSum.add(cashInYearAgoValueSum);
+            dateEntryInfo.cashInYearAgoValueSum = dateEntryInfo.cashInYearAgoValueSum.add(cashInYearAgoValueSum);
+        }
         
-        if (usesNamedRowEntries(reportOutput)) {
-            
-            BigDecimal quantity = datedSecurityEntryInfo.trackerDateEntry.getTotalShares();
-            if (datedSummaryEntryInfo.totalQuantity == null) {
-                datedSummaryEntryInfo.totalQuantity = quantity;
-            }
-            else {
-                datedSummaryEntryInfo.totalQuantity = datedSummaryEntryInfo.totalQuantity.add(quantity);
+        SecurityIndex.Entry indexEntry = datedSecurityEntryInfo.securityRowEntry.indexEntry;
+        if (indexEntry != null) {
+            if (reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.QUANTITY)) {
+                // The index entry has the total across all the accounts.
+                datedSummaryEntryInfo.totalQuantity = indexEntry.getTotalShares(dateEntryInfo.dateEntry.endDate);
             }
             
-            datedSummaryEntryInfo.price =  datedSecurityEntryInfo.trackerDateEntry.getMarketPrice(date);
+            if (reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.PRICE)) {
+                datedSummaryEntryInfo.price = metrics.getMarketPrice();
+            }
         }
     }
 
     
     protected void updateDatedSummaryEntryInfoFromCash(DatedSummaryEntryInfo datedSummaryEntryInfo, DatedSecurityEntryInfo datedSecurityEntryInfo,
-            DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+            DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
+        if (!reportOutput.isPortfolioMetricRequired(PortfolioMetrics.Metric.MARKET_VALUE)) {
+            return;
+        }
+        
         Account account = datedSecurityEntryInfo.securityRowEntry.accountEntry.account;
 
+        ReportProfile.Counter.ACCOUNT_BALANCE_CALLS.increment();
         BigDecimal marketValue = account.getBalance(dateEntryInfo.dateEntry.endDate);
         marketValue = reportOutput.toMonetaryValue(marketValue, account);
 
@@ -470,15 +482,15 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
     
     
     @Override
-    protected void updateCellValuesForDateEntryAccountEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void updateCellValuesForDateEntryAccountEntry(DateEntry dateEntry, AccountEntry accountEntry, ReportOutput reportOutput) {
         DateEntryInfo dateEntryInfo = dateEntryInfos.get(dateEntry);
         if (dateEntryInfo != null) {
             if (!dateEntryInfo.securityDatedSummaryEntryInfos.isEmpty()) {
-                dateEntryInfo.securityDatedSummaryEntryInfos.forEach((securityName, datedSummaryEntryInfo) -> {
+                dateEntryInfo.securityDatedSummaryEntryInfos.forEach((indexEntry, datedSummaryEntryInfo) -> {
                     // We're just summarizing all the accounts...
-                    RowEntry rowEntry = reportOutput.namedRowEntries.get(securityName);
+                    RowEntry rowEntry = indexEntry.getRowEntry();
                     if (rowEntry != null) {
-                        String cellValue = getSummaryEntryCellValue(datedSummaryEntryInfo, dateEntryInfo, reportOutput);
+                        CellValue cellValue = getSummaryEntryCellValue(datedSummaryEntryInfo, dateEntryInfo, reportOutput);
                         if (cellValue != null) {
                             ColumnEntry columnEntry = datedSummaryEntryInfo.columnEntry;
                             SecurityCellEntry cellEntry = new SecurityCellEntry(datedSummaryEntryInfo, rowEntry, cellValue);
@@ -494,7 +506,7 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
                     DatedSummaryEntryInfo datedSummaryEntryInfo = dateEntryInfo.accountDatedSummaryEntryInfos.get(accountEntry);
                     if (datedSummaryEntryInfo != null) {
                         // Summary...
-                        String cellValue = getSummaryEntryCellValue(datedSummaryEntryInfo, dateEntryInfo, reportOutput);
+                        CellValue cellValue = getSummaryEntryCellValue(datedSummaryEntryInfo, dateEntryInfo, reportOutput);
                         if (cellValue != null) {
                             ColumnEntry columnEntry = datedSummaryEntryInfo.columnEntry;
                             if (accountEntry.summaryRowEntry != null) {
@@ -510,7 +522,7 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
                         DatedSecurityEntryInfo datedSecurityEntryInfo = dateEntryInfo.datedSecurityEntryInfos.get(securityRowEntry);
                         if (datedSecurityEntryInfo != null) {
                             ColumnEntry columnEntry = datedSecurityEntryInfo.columnEntry;
-                            String cellValue;
+                            CellValue cellValue;
                             if (datedSecurityEntryInfo.trackerDateEntry == null) {
                                 cellValue = getCashEntryCellValue(datedSecurityEntryInfo, finalDatedSummaryEntryInfo, dateEntryInfo, reportOutput);
                             }
@@ -534,11 +546,11 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
     
 
     @Override
-    protected void updateGrandTotalCellValue(DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected void updateGrandTotalCellValue(DateEntry dateEntry, ReportOutput reportOutput) {
         DateEntryInfo dateEntryInfo = dateEntryInfos.get(dateEntry);
         if (dateEntryInfo != null) {
-            String value = getGrandTotalCellValue(dateEntryInfo, reportOutput);
-            if (!StringUtil.isEmpty(value)) {
+            CellValue value = getGrandTotalCellValue(dateEntryInfo, reportOutput);
+            if ((value != null) && !StringUtil.isEmpty(value.getText())) {
                 ColumnEntry columnEntry = dateEntryInfo.columnEntry;
                 CellEntry cellEntry = new SecurityCellEntry(reportOutput.grandTotalRowEntry, value);
                 reportOutput.grandTotalRowEntry.setNonExpandedColumnCellValue(columnEntry, cellEntry);
@@ -548,24 +560,24 @@ abstract class SecuritiesColumnGenerator extends ColumnGenerator {
     }
 
     
-    protected abstract String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput);
+    protected abstract String getColumnTitle(AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput);
 
     
-    protected String getCashEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DatedSummaryEntryInfo datedSummaryEntryInfo, 
-            DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getCashEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DatedSummaryEntryInfo datedSummaryEntryInfo, 
+            DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         return null;
     }
 
     
-    protected abstract String getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, 
-            ReportDataView.ReportOutput reportOutput);
+    protected abstract CellValue getSecurityEntryCellValue(DatedSecurityEntryInfo securityEntryInfo, DateEntryInfo dateEntryInfo, 
+            ReportOutput reportOutput);
     
     
-    protected String getSummaryEntryCellValue(DatedSummaryEntryInfo datedSummaryEntryInfo, DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getSummaryEntryCellValue(DatedSummaryEntryInfo datedSummaryEntryInfo, DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         return null;
     }
     
-    protected String getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportDataView.ReportOutput reportOutput) {
+    protected CellValue getGrandTotalCellValue(DateEntryInfo dateEntryInfo, ReportOutput reportOutput) {
         return null;
     }
 }
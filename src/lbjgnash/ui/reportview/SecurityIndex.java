@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import jgnash.engine.SecurityNode;
+
+/**
+ * Index of the securities of a report across all the report's accounts, keyed by
+ * {@link SecurityNode}. This is used by the securities style report to combine the holdings
+ * of a security in the different accounts into a single row.
+ * <p>
+ * Securities whose ISIN is "Cash" are all folded into a single entry, as are securities
+ * that have the same name.
+ * @author Albert Santos
+ */
+class SecurityIndex {
+    static final String CASH_ISIN = "Cash";
+
+    private final Map<SecurityNode, Entry> entriesBySecurityNode = new HashMap<>();
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private Entry cashEntry;
+
+
+    /**
+     * An entry in the index, each entry represents one row of the report.
+     */
+    static class Entry {
+        private final int index;
+        private final String name;
+        private final RowEntry rowEntry;
+
+        // An identity map so a tracker is only added once no matter how many column
+        // generators add it.
+        private final Map<SecurityTransactionTracker, AccountEntry> transactionTrackers = new IdentityHashMap<>();
+        private final Map<LocalDate, BigDecimal> totalSharesByDate = new HashMap<>();
+
+        private Entry(int index, String name, RowEntry rowEntry) {
+            this.index = index;
+            this.name = name;
+            this.rowEntry = rowEntry;
+        }
+
+        /**
+         * @return The index of the entry within its {@link SecurityIndex}, the indices
+         * run from 0 to {@link SecurityIndex#getEntryCount() } - 1.
+         */
+        public final int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return The name of the entry, this is the row title.
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * @return The row entry of the entry.
+         */
+        public final RowEntry getRowEntry() {
+            return rowEntry;
+        }
+
+        /**
+         * @return A read-only map of the transaction trackers of the entry, the values
+         * are the account entries of the accounts holding the securities.
+         */
+        public final Map<SecurityTransactionTracker, AccountEntry> getTransactionTrackers() {
+            return Collections.unmodifiableMap(transactionTrackers);
+        }
+
+        /**
+         * Adds a transaction tracker to the entry, does nothing if the tracker has already
+         * been added.
+         * @param transactionTracker    The transaction tracker.
+         * @param accountEntry  The account entry of the account holding the security.
+         */
+        public void addTransactionTracker(SecurityTransactionTracker transactionTracker, AccountEntry accountEntry) {
+            if (transactionTrackers.putIfAbsent(transactionTracker, accountEntry) == null) {
+                totalSharesByDate.clear();
+            }
+        }
+
+        /**
+         * Retrieves the total number of shares held across all the accounts as of a date.
+         * The totals are cached by date.
+         * @param date  The date of interest.
+         * @return The total number of shares, <code>null</code> if none of the trackers
+         * have any transactions on or before date.
+         */
+        public BigDecimal getTotalShares(LocalDate date) {
+            if (totalSharesByDate.containsKey(date)) {
+                return totalSharesByDate.get(date);
+            }
+
+            BigDecimal totalShares = null;
+            for (SecurityTransactionTracker transactionTracker : transactionTrackers.keySet()) {
+                SecurityTransactionTracker.DateEntry trackerDateEntry = transactionTracker.getDateEntry(date);
+                if (trackerDateEntry != null) {
+                    BigDecimal shares = trackerDateEntry.getTotalShares();
+                    totalShares = (totalShares == null) ? shares : totalShares.add(shares);
+                }
+            }
+
+            totalSharesByDate.put(date, totalShares);
+            return totalShares;
+        }
+    }
+
+
+    /**
+     * Determines if a security is to be treated as cash.
+     * @param securityNode  The security.
+     * @return <code>true</code> if the security's ISIN is "Cash".
+     */
+    static boolean isCashSecurity(SecurityNode securityNode) {
+        return CASH_ISIN.equals(securityNode.getISIN());
+    }
+
+
+    /**
+     * Retrieves the entry for a security.
+     * @param securityNode  The security.
+     * @return The entry, <code>null</code> if there is none.
+     */
+    public Entry getEntry(SecurityNode securityNode) {
+        Entry entry = entriesBySecurityNode.get(securityNode);
+        if ((entry == null) && isCashSecurity(securityNode)) {
+            entry = cashEntry;
+        }
+        return entry;
+    }
+
+
+    /**
+     * Retrieves the entry for a security, adding it if necessary. If there is no entry for the
+     * security but there is an entry with the given name, the security is added to that entry.
+     * @param securityNode  The security.
+     * @param name  The name for the entry if it is added.
+     * @param rowEntry  The row entry for the entry if it is added.
+     * @return The entry.
+     */
+    public Entry useEntry(SecurityNode securityNode, String name, RowEntry rowEntry) {
+        Entry entry = getEntry(securityNode);
+        if (entry == null) {
+            entry = entriesByName.get(name);
+        }
+        if (entry == null) {
+            entry = new Entry(entries.size(), name, rowEntry);
+            entries.add(entry);
+            entriesByName.put(name, entry);
+            if (isCashSecurity(securityNode)) {
+                cashEntry = entry;
+            }
+        }
+        entriesBySecurityNode.put(securityNode, entry);
+        return entry;
+    }
+
+
+    /**
+     * @return The number of entries in the index.
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+
+    /**
+     * @return A read-only list of the entries, in the order they were added.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+}
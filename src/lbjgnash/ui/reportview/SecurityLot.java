@@ -28,7 +28,13 @@ import java.util.Objects;
 public class SecurityLot implements Comparable<SecurityLot> {
     // package visibility for testing...
     static long nextLotId = 1;
-    private final String lotId;
+    
+    // Lot ids that are the decimal form of a non-negative long are stored as lotNumber,
+    // the String form is only created when asked for. Any other lot id is stored as lotName
+    // with lotNumber set to NO_LOT_NUMBER.
+    static final long NO_LOT_NUMBER = -1;
+    private final long lotNumber;
+    private final String lotName;
     private final LocalDate date;
     private final LocalDate costBasisDate;
     private final BigDecimal shares;
@@ -41,7 +47,94 @@ public class SecurityLot implements Comparable<SecurityLot> {
      * by this.
      */
     public static String makeLotId() {
-        return Long.toString(nextLotId++);
+        return Long.toString(makeLotNumber());
+    }
+    
+    /**
+     * Same as {@link #makeLotId() } except the lot id is returned in its numeric form,
+     * which can be passed to {@link #SecurityLot(long, java.time.LocalDate, java.math.BigDecimal, java.math.BigDecimal, java.time.LocalDate, java.math.BigDecimal) }.
+     * @return The lot number.
+     */
+    public static long makeLotNumber() {
+        long [] lotIdSequence = LOT_ID_SEQUENCE.get();
+        if (lotIdSequence != null) {
+            return lotIdSequence[0]++;
+        }
+        synchronized (SecurityLot.class) {
+            return nextLotId++;
+        }
+    }
+    
+    // The active lot id sequence of the thread, if any.
+    private static final ThreadLocal<long []> LOT_ID_SEQUENCE = new ThreadLocal<>();
+    
+    /**
+     * The number of lot ids in a block reserved by {@link #reserveLotIdBlock() }. This is a power
+     * of ten so all the lot ids of a block have the same number of digits, their String forms then
+     * sort the same as they were made no matter which block is used.
+     */
+    static final long LOT_ID_BLOCK_SIZE = 1000000000L;
+    
+    // The index of the next block, block 0 is left to nextLotId.
+    private static long nextLotIdBlock = 1;
+    
+    /**
+     * Reserves a block of {@link #LOT_ID_BLOCK_SIZE} lot ids for use with {@link #beginLotIdSequence(long) }.
+     * The lot ids of a block are not returned by any other block, nor by {@link #makeLotNumber() } outside
+     * of a lot id sequence. They're also well clear of the small numbers users tend to name lots with.
+     * @return The first lot id of the block.
+     */
+    static long reserveLotIdBlock() {
+        synchronized (SecurityLot.class) {
+            return (nextLotIdBlock++) * LOT_ID_BLOCK_SIZE;
+        }
+    }
+    
+    /**
+     * @return The lot id value the next call to {@link #makeLotNumber() } will use on the calling
+     * thread, this can be passed to {@link #beginLotIdSequence(long) } to reproduce the lot ids.
+     * Only meaningful within a lot id sequence, outside of one other threads may be making lot ids.
+     */
+    static long peekNextLotId() {
+        long [] lotIdSequence = LOT_ID_SEQUENCE.get();
+        if (lotIdSequence != null) {
+            return lotIdSequence[0];
+        }
+        synchronized (SecurityLot.class) {
+            return nextLotId;
+        }
+    }
+    
+    /**
+     * Has {@link #makeLotNumber() } and {@link #makeLotId() } return lot ids from a sequence starting
+     * with a given value on the calling thread until {@link #endLotIdSequence(long[]) } is called.
+     * This is used to give each {@link SecurityTransactionTracker} its own lot ids from a block reserved
+     * by {@link #reserveLotIdBlock() }, which keeps them independent of any other trackers being loaded on 
+     * other threads, and to reproduce the lot ids of previously applied actions. Sequences may be nested.
+     * @param firstLotId    The first lot id value to return.
+     * @return The sequence that was active, to be passed to {@link #endLotIdSequence(long[]) }.
+     */
+    static long [] beginLotIdSequence(long firstLotId) {
+        long [] previousSequence = LOT_ID_SEQUENCE.get();
+        LOT_ID_SEQUENCE.set(new long [] { firstLotId });
+        return previousSequence;
+    }
+    
+    /**
+     * Ends a {@link #beginLotIdSequence(long) }.
+     * @param previousSequence  The value returned by the matching call to {@link #beginLotIdSequence(long) }.
+     * @return The lot id value the next call to {@link #makeLotNumber() } would have used from
+     * the sequence being ended.
+     */
+    static long endLotIdSequence(long [] previousSequence) {
+        long nextLotIdInSequence = LOT_ID_SEQUENCE.get()[0];
+        if (previousSequence != null) {
+            LOT_ID_SEQUENCE.set(previousSequence);
+        }
+        else {
+            LOT_ID_SEQUENCE.remove();
+        }
+        return nextLotIdInSequence;
     }
     
     /**
@@ -57,7 +150,29 @@ public class SecurityLot implements Comparable<SecurityLot> {
      * have a non-zero cash-in basis.
      */
     public SecurityLot(String lotId, LocalDate date, BigDecimal shares, BigDecimal costBasis, LocalDate costBasisDate, BigDecimal cashInBasis) {
-        this.lotId = lotId;
+        this(lotNumberFromLotId(lotId), lotId, date, shares, costBasis, costBasisDate, cashInBasis);
+    }
+    
+    /**
+     * Constructor for lots whose lot id is numeric, such as those from {@link #makeLotNumber() }.
+     * @param lotNumber The lot number, must be &ge; 0.
+     * @param date  The date of the lot purchase.
+     * @param shares    The number of shares.
+     * @param costBasis The cost-basis.
+     * @param costBasisDate The date associated with the cost-basis, used when a lot is adjusted. If
+     * <code>null</code> the date will be used.
+     * @param cashInBasis   The cash-in basis of the lot.
+     */
+    public SecurityLot(long lotNumber, LocalDate date, BigDecimal shares, BigDecimal costBasis, LocalDate costBasisDate, BigDecimal cashInBasis) {
+        this(lotNumber, null, date, shares, costBasis, costBasisDate, cashInBasis);
+        if (lotNumber < 0) {
+            throw new IllegalArgumentException("Lot numbers cannot be negative!");
+        }
+    }
+    
+    private SecurityLot(long lotNumber, String lotName, LocalDate date, BigDecimal shares, BigDecimal costBasis, LocalDate costBasisDate, BigDecimal cashInBasis) {
+        this.lotNumber = lotNumber;
+        this.lotName = (lotNumber == NO_LOT_NUMBER) ? lotName : null;
         this.date = date;
         this.shares = shares;
         this.costBasis = costBasis;
@@ -70,7 +185,98 @@ public class SecurityLot implements Comparable<SecurityLot> {
      * identical lots on the same date.
      */
     public final String getLotId() {
-        return lotId;
+        return (lotNumber == NO_LOT_NUMBER) ? lotName : Long.toString(lotNumber);
+    }
+    
+    /**
+     * @return The numeric form of the lot id, {@link #NO_LOT_NUMBER} if the lot id is not
+     * numeric.
+     */
+    public final long getLotNumber() {
+        return lotNumber;
+    }
+    
+    
+    /**
+     * Determines the lot number equivalent of a lot id.
+     * @param lotId The lot id.
+     * @return The lot number, {@link #NO_LOT_NUMBER} if the lot id is not the
+     * decimal form of a non-negative long.
+     */
+    static long lotNumberFromLotId(String lotId) {
+        if ((lotId == null) || lotId.isEmpty() || (lotId.length() > 18)) {
+            return NO_LOT_NUMBER;
+        }
+        if ((lotId.charAt(0) == '0') && (lotId.length() > 1)) {
+            // Leading zeros would not survive the round trip.
+            return NO_LOT_NUMBER;
+        }
+        
+        long lotNumber = 0;
+        for (int i = 0; i < lotId.length(); ++i) {
+            char ch = lotId.charAt(i);
+            if ((ch < '0') || (ch > '9')) {
+                return NO_LOT_NUMBER;
+            }
+            lotNumber = lotNumber * 10 + (ch - '0');
+        }
+        return lotNumber;
+    }
+    
+    
+    /**
+     * Compares the lot ids of two lots the same way the String lot ids compare.
+     * @param a The first lot.
+     * @param b The second lot.
+     * @return The comparison result.
+     */
+    static int compareLotIds(SecurityLot a, SecurityLot b) {
+        if ((a.lotNumber == NO_LOT_NUMBER) && (b.lotNumber == NO_LOT_NUMBER)) {
+            return Comparators.compare(a.lotName, b.lotName);
+        }
+        else if ((a.lotNumber == NO_LOT_NUMBER) || (b.lotNumber == NO_LOT_NUMBER)) {
+            return Comparators.compare(a.getLotId(), b.getLotId());
+        }
+        return compareDecimalStrings(a.lotNumber, b.lotNumber);
+    }
+    
+    private static final long [] POWERS_OF_TEN = new long [19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+    
+    private static int decimalDigits(long value) {
+        int digits = 1;
+        while ((digits < POWERS_OF_TEN.length) && (value >= POWERS_OF_TEN[digits])) {
+            ++digits;
+        }
+        return digits;
+    }
+    
+    /**
+     * Compares the decimal strings of two non-negative longs without creating the strings.
+     */
+    static int compareDecimalStrings(long a, long b) {
+        if (a == b) {
+            return 0;
+        }
+        int aDigits = decimalDigits(a);
+        int bDigits = decimalDigits(b);
+        if (aDigits == bDigits) {
+            return Long.compare(a, b);
+        }
+        else if (aDigits < bDigits) {
+            // Compare a to the leading digits of b, if they match a is a prefix of b.
+            long bPrefix = b / POWERS_OF_TEN[bDigits - aDigits];
+            return (a == bPrefix) ? -1 : Long.compare(a, bPrefix);
+        }
+        else {
+            long aPrefix = a / POWERS_OF_TEN[aDigits - bDigits];
+            return (aPrefix == b) ? 1 : Long.compare(aPrefix, b);
+        }
     }
     
     /**
@@ -138,10 +344,20 @@ public class SecurityLot implements Comparable<SecurityLot> {
         else {
             remainingCashInBasis = null;
         }
-        return new SecurityLot(SecurityLot.makeLotId(), date, 
+        return new SecurityLot(SecurityLot.makeLotNumber(), date, 
             remainingShares, remainingCostBasis, this.costBasisDate, remainingCashInBasis);
     }
     
+    /**
+     * Retrieves a copy of this lot, including the lot id, with a different number of shares.
+     * The cost basis is not changed.
+     * @param shares    The number of shares.
+     * @return The new lot.
+     */
+    public final SecurityLot withShares(BigDecimal shares) {
+        return new SecurityLot(lotNumber, lotName, date, shares, costBasis, costBasisDate, cashInBasis);
+    }
+    
     /**
      * Adjusts the shares by a ratio of shares in to shares out.
      * @param date  The date to assign to the lot.
@@ -155,7 +371,7 @@ public class SecurityLot implements Comparable<SecurityLot> {
         }
         
         BigDecimal newShares = this.shares.multiply(sharesOut).divide(sharesIn, this.shares.scale(), RoundingMode.HALF_UP);
-        return new SecurityLot(SecurityLot.makeLotId(), date, newShares, this.costBasis, this.costBasisDate, this.cashInBasis);
+        return new SecurityLot(SecurityLot.makeLotNumber(), date, newShares, this.costBasis, this.costBasisDate, this.cashInBasis);
     }
     
     
@@ -166,7 +382,7 @@ public class SecurityLot implements Comparable<SecurityLot> {
             return result;
         }
         
-        result = Comparators.compare(lotId, o.lotId);
+        result = compareLotIds(this, o);
         if (result != 0) {
             return result;
         }
@@ -188,7 +404,7 @@ public class SecurityLot implements Comparable<SecurityLot> {
     @Override
     public int hashCode() {
         int hash = 5;
-        hash = 67 * hash + Objects.hashCode(this.lotId);
+        hash = 67 * hash + ((lotNumber == NO_LOT_NUMBER) ? Objects.hashCode(this.lotName) : Long.hashCode(lotNumber));
         hash = 67 * hash + Objects.hashCode(this.date);
         hash = 67 * hash + Objects.hashCode(this.costBasisDate);
         hash = 67 * hash + Objects.hashCode(this.shares);
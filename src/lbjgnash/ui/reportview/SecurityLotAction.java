@@ -35,6 +35,10 @@ public interface SecurityLotAction {
         public AddLot(SecurityLot newLot) {
             this.newLot = newLot;
         }
+        
+        public final SecurityLot getNewLot() {
+            return newLot;
+        }
 
         @Override
         public SecurityLots applyAction(SecurityLots securityLots) {
@@ -85,15 +89,7 @@ public interface SecurityLotAction {
 
         @Override
         public SecurityLots applyAction(SecurityLots securityLots) {
-            LocalDate cutoffDate = date.minusDays(daysBefore);
-            BigDecimal shortTermShares = securityLots.getSharesAfterDate(cutoffDate);
-            if (shortTermShares.compareTo(sharesSold) >= 0) {
-                return securityLots.removeLIFOShares(date, sharesSold);
-            }
-
-            SecurityLots longTermLots = securityLots.removeLIFOShares(date, shortTermShares);
-            BigDecimal longTermSharesToSell = sharesSold.subtract(shortTermShares);
-            return longTermLots.removeFIFOShares(date, longTermSharesToSell);
+            return securityLots.removeWithinDateThenFIFOShares(date, sharesSold, date.minusDays(daysBefore));
         }       
     } 
 
@@ -129,6 +125,30 @@ public interface SecurityLotAction {
             return securityLots.scaleShares(date, sharesIn, sharesOut);
         }
     }
+    
+    
+    public static class MergeLotsAfter implements SecurityLotAction {
+        private final SecurityLotAction action;
+        private final LocalDate date;
+        private final LocalDate cutoffDate;
+        private final long firstLotNumber;
+        
+        public MergeLotsAfter(SecurityLotAction action, LocalDate date, LocalDate cutoffDate, long firstLotNumber) {
+            this.action = action;
+            this.date = date;
+            this.cutoffDate = cutoffDate;
+            this.firstLotNumber = firstLotNumber;
+        }
+        
+        public final SecurityLotAction getAction() {
+            return action;
+        }
+
+        @Override
+        public SecurityLots applyAction(SecurityLots securityLots) {
+            return action.applyAction(securityLots).mergeLotsBefore(date, cutoffDate, firstLotNumber);
+        }
+    }
 
     
     public static class DistributeCash implements SecurityLotAction {
@@ -15,30 +15,45 @@
  */
 package lbjgnash.ui.reportview;
 
+import com.leeboardtools.util.PersistentSortedSet;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Map;
-import java.util.Objects;
 import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * An immutable collection of {@link SecurityLot}s.
+ * <p>
+ * The lots are held in a {@link PersistentSortedSet}, so the security lots derived from
+ * another security lots by adding a lot or removing some lots share most of their storage
+ * with the original. This matters because every date entry of a {@link SecurityTransactionTracker}
+ * holds on to its own security lots.
  * @author Albert Santos
  */
 public class SecurityLots {
     private final int cashScale = 2;
-    private final TreeSet<SecurityLot> securityLots;
+    private final PersistentSortedSet<SecurityLot> securityLots;
     private final SortedSet<SecurityLot> readOnlySecurityLots;
+    
+    // The lots ordered by lot id, used by getSecurityLotWithId(). This is only created when
+    // first needed, security lots derived from a security lots with the index have their index
+    // updated incrementally.
+    private volatile PersistentSortedSet<SecurityLot> lotsById;
+    
+    private static final Comparator<SecurityLot> LOT_ID_COMPARATOR = (a, b) -> {
+        int result = SecurityLot.compareLotIds(a, b);
+        if (result != 0) {
+            return result;
+        }
+        return a.compareTo(b);
+    };
     private BigDecimal totalShares;
     private BigDecimal totalCostBasis;
     private BigDecimal totalCashIn;
@@ -50,9 +65,8 @@ public class SecurityLots {
      * from this.
      */
     public SecurityLots(Collection<SecurityLot> securityLots) {
-        this.securityLots = new TreeSet<>();
-        this.securityLots.addAll(securityLots);
-        this.readOnlySecurityLots = Collections.unmodifiableSortedSet(this.securityLots);
+        this(PersistentSortedSet.fromCollection(securityLots));
+        ReportProfile.Counter.SECURITY_LOTS_COPIES.increment();
     }
     
     
@@ -61,11 +75,7 @@ public class SecurityLots {
      * @param securityLot The security lot.
      */
     public SecurityLots(SecurityLot securityLot) {
-        this.securityLots = new TreeSet<>();
-        if (securityLot != null) {
-            this.securityLots.add(securityLot);
-        }
-        this.readOnlySecurityLots = Collections.unmodifiableSortedSet(this.securityLots);
+        this((securityLot != null) ? PersistentSortedSet.<SecurityLot>empty().with(securityLot) : PersistentSortedSet.<SecurityLot>empty());
     }
     
     
@@ -77,6 +87,54 @@ public class SecurityLots {
     }
     
     
+    private SecurityLots(PersistentSortedSet<SecurityLot> securityLots) {
+        this.securityLots = securityLots;
+        this.readOnlySecurityLots = Collections.unmodifiableSortedSet(this.securityLots);
+    }
+    
+    
+    /**
+     * Creates the security lots for a modified version of the lots of this security lots.
+     * The totals are carried over incrementally if they've already been computed for this.
+     */
+    private SecurityLots deriveSecurityLots(PersistentSortedSet<SecurityLot> newSecurityLots, 
+            Collection<SecurityLot> removedLots, Collection<SecurityLot> addedLots) {
+        if (newSecurityLots == securityLots) {
+            return this;
+        }
+        
+        SecurityLots newLots = new SecurityLots(newSecurityLots);
+        
+        PersistentSortedSet<SecurityLot> newLotsById = lotsById;
+        if (newLotsById != null) {
+            for (SecurityLot lot : removedLots) {
+                newLotsById = newLotsById.without(lot);
+            }
+            for (SecurityLot lot : addedLots) {
+                newLotsById = newLotsById.with(lot);
+            }
+            newLots.lotsById = newLotsById;
+        }
+        
+        if (totalShares != null) {
+            newLots.totalShares = totalShares;
+            newLots.totalCostBasis = totalCostBasis;
+            newLots.totalCashIn = totalCashIn;
+            removedLots.forEach((lot) -> {
+                newLots.totalShares = newLots.totalShares.subtract(lot.getShares());
+                newLots.totalCostBasis = newLots.totalCostBasis.subtract(lot.getCostBasis());
+                newLots.totalCashIn = newLots.totalCashIn.subtract(lot.getCashInBasis());
+            });
+            addedLots.forEach((lot) -> {
+                newLots.totalShares = newLots.totalShares.add(lot.getShares());
+                newLots.totalCostBasis = newLots.totalCostBasis.add(lot.getCostBasis());
+                newLots.totalCashIn = newLots.totalCashIn.add(lot.getCashInBasis());
+            });
+        }
+        return newLots;
+    }
+    
+    
     /**
      * @return An un-modifiable sorted set containing the security lots.
      */
@@ -90,10 +148,18 @@ public class SecurityLots {
      * @return The security lot, <code>null</code> if none found.
      */
     public final SecurityLot getSecurityLotWithId(String lotId) {
-        for (SecurityLot lot : securityLots) {
-            if (Objects.equals(lotId, lot.getLotId())) {
-                return lot;
-            }
+        PersistentSortedSet<SecurityLot> byId = lotsById;
+        if (byId == null) {
+            byId = PersistentSortedSet.fromCollection(LOT_ID_COMPARATOR, securityLots);
+            lotsById = byId;
+        }
+        
+        // The probe lot sorts before any real lot with the same lot id, we want the first
+        // lot with the lot id in lot order.
+        SecurityLot probe = new SecurityLot(lotId, LocalDate.MIN, null, null, null, null);
+        SecurityLot lot = byId.ceiling(probe);
+        if ((lot != null) && (SecurityLot.compareLotIds(lot, probe) == 0)) {
+            return lot;
         }
         
         return null;
@@ -165,9 +231,8 @@ public class SecurityLots {
      * @return The new security lots.
      */
     public SecurityLots addLot(SecurityLot lot) {
-        SortedSet<SecurityLot> lots = new TreeSet<>(getSecurityLots());
-        lots.add(lot);
-        return new SecurityLots(lots);
+        PersistentSortedSet<SecurityLot> newSecurityLots = securityLots.with(lot);
+        return deriveSecurityLots(newSecurityLots, Collections.emptyList(), Collections.singletonList(lot));
     }
     
     
@@ -181,8 +246,7 @@ public class SecurityLots {
      * the lots of this security lots.
      */
     public SecurityLots removeFIFOShares(LocalDate date, BigDecimal shares) {
-        Iterator<SecurityLot> iterator = securityLots.iterator();
-        return removeShares(date, shares, iterator);
+        return removeSharesInOrder(date, shares, securityLots.iterator());
     }
         
     /**
@@ -195,8 +259,123 @@ public class SecurityLots {
      * the lots of this security lots.
      */
     public SecurityLots removeLIFOShares(LocalDate date, BigDecimal shares) {
+        return removeSharesInOrder(date, shares, securityLots.descendingIterator());
+    }
+    
+    
+    /**
+     * Retrieves a new {@link SecurityLots} that has a given number of shares removed, first
+     * from the lots whose cost basis dates are on or after a cutoff date starting from the
+     * newest lots, and then from the remaining lots starting from the oldest lots.
+     * <p>
+     * This is done in one pass over the lots that are removed or changed.
+     * @param date  The date the action is being applied.
+     * @param shares    The number of shares to be removed.
+     * @param cutoffDate    The cutoff date.
+     * @return The new security lots.
+     * @throws IllegalArgumentException if shares is greater than the total number of shares in
+     * the lots of this security lots.
+     */
+    public SecurityLots removeWithinDateThenFIFOShares(LocalDate date, BigDecimal shares, LocalDate cutoffDate) {
+        SharesRemover remover = new SharesRemover(date, shares);
+        
+        boolean isDone = false;
         Iterator<SecurityLot> iterator = securityLots.descendingIterator();
-        return removeShares(date, shares, iterator);
+        while (iterator.hasNext()) {
+            SecurityLot lot = iterator.next();
+            if (lot.getCostBasisDate().isBefore(cutoffDate)) {
+                break;
+            }
+            if (remover.removeFromLot(lot)) {
+                isDone = true;
+                break;
+            }
+        }
+        
+        if (!isDone) {
+            // All the lots on or after the cutoff date have been removed, what's left comes
+            // out of the older lots.
+            iterator = securityLots.iterator();
+            while (iterator.hasNext()) {
+                SecurityLot lot = iterator.next();
+                if (!lot.getCostBasisDate().isBefore(cutoffDate)) {
+                    break;
+                }
+                if (remover.removeFromLot(lot)) {
+                    break;
+                }
+            }
+        }
+        
+        return remover.deriveSecurityLots();
+    }
+    
+    
+    /**
+     * Same as {@link #removeShares(java.time.LocalDate, java.math.BigDecimal, java.util.Iterator) }
+     * except the iterator is over the lots of this, only the lots that are removed or
+     * changed are touched.
+     */
+    protected SecurityLots removeSharesInOrder(LocalDate date, BigDecimal shares, Iterator<SecurityLot> iterator) {
+        SharesRemover remover = new SharesRemover(date, shares);
+        while (iterator.hasNext()) {
+            if (remover.removeFromLot(iterator.next())) {
+                break;
+            }
+        }
+        
+        return remover.deriveSecurityLots();
+    }
+    
+    
+    /**
+     * Removes shares from lots of this one lot at a time, keeping track of the lots that
+     * have been removed and added.
+     */
+    private class SharesRemover {
+        private final LocalDate date;
+        private BigDecimal shares;
+        private PersistentSortedSet<SecurityLot> newSecurityLots = securityLots;
+        private final List<SecurityLot> removedLots = new ArrayList<>();
+        private final List<SecurityLot> addedLots = new ArrayList<>();
+        
+        SharesRemover(LocalDate date, BigDecimal shares) {
+            this.date = date;
+            this.shares = shares;
+        }
+        
+        /**
+         * Removes shares from a lot.
+         * @param lot   The lot.
+         * @return <code>true</code> if all the shares have been removed.
+         */
+        boolean removeFromLot(SecurityLot lot) {
+            newSecurityLots = newSecurityLots.without(lot);
+            removedLots.add(lot);
+
+            int compareResult = shares.compareTo(lot.getShares());
+            if (compareResult >= 0) {
+                shares = shares.subtract(lot.getShares());
+                return compareResult == 0;
+            }
+            
+            // A partial result, gotta remove the shares from the lot.
+            lot = lot.removeShares(date, shares);
+            newSecurityLots = newSecurityLots.with(lot);
+            addedLots.add(lot);
+
+            shares = BigDecimal.ZERO;
+            return true;
+        }
+        
+        SecurityLots deriveSecurityLots() {
+            if (shares.compareTo(BigDecimal.ZERO) != 0) {
+                // We've gone negative...
+                throw new IllegalArgumentException("More shares were requested than are in the set of lots!");
+            }
+
+            return SecurityLots.this.deriveSecurityLots(newSecurityLots, removedLots, addedLots);
+        }
     }
     
     
@@ -290,43 +469,45 @@ public class SecurityLots {
      * part of this security lots.
      */
     public SecurityLots removeLotShares(LocalDate date, Collection<LotShares> lotSharesCollection) {
-        Iterator<SecurityLot> iterator = securityLots.iterator();
-        
-        List<SecurityLot> newLots = new ArrayList<>();
-        
+        // The lots are processed in lot order, which is the order the lots were processed
+        // when the entire set of lots was copied, so the new lots get the same lot ids.
         // lotShares will typically be only a few entries, so we'll stick to a simple
-        // linked list.
-        LinkedList<LotShares> remainingLotShares = new LinkedList<>(lotSharesCollection);
-        while (iterator.hasNext()) {
-            SecurityLot securityLot = iterator.next();
-            SecurityLot originalLot = securityLot;
-            
-            ListIterator<LotShares> sharesIterator = remainingLotShares.listIterator();
-            while (sharesIterator.hasNext()) {
-                LotShares lotShares = sharesIterator.next();
+        // list.
+        List<SecurityLot> originalLots = new ArrayList<>();
+        for (LotShares lotShares : lotSharesCollection) {
+            SecurityLot originalLot = lotShares.getLot();
+            if (securityLots.find(originalLot) != originalLot) {
+                throw new IllegalArgumentException("One or more lot shares were not removed!");
+            }
+            if (!originalLots.contains(originalLot)) {
+                originalLots.add(originalLot);
+            }
+        }
+        originalLots.sort(securityLots.comparator());
+        
+        PersistentSortedSet<SecurityLot> newSecurityLots = securityLots;
+        List<SecurityLot> addedLots = new ArrayList<>();
+        for (SecurityLot originalLot : originalLots) {
+            SecurityLot securityLot = originalLot;
+            for (LotShares lotShares : lotSharesCollection) {
                 if (lotShares.getLot() == originalLot) {
-                    securityLot = securityLot.removeShares(date, lotShares.getShares());
-                    
-                    // It's possible to have multiple entries for the same lot, so we need
-                    // to keep searching the list...
-                    sharesIterator.remove();
-                    
                     if (securityLot == null) {
-                        break;
+                        // It's possible to have multiple entries for the same lot, but not
+                        // more than the lot holds...
+                        throw new IllegalArgumentException("One or more lot shares were not removed!");
                     }
+                    securityLot = securityLot.removeShares(date, lotShares.getShares());
                 }
             }
             
+            newSecurityLots = newSecurityLots.without(originalLot);
             if (securityLot != null) {
-                newLots.add(securityLot);
+                newSecurityLots = newSecurityLots.with(securityLot);
+                addedLots.add(securityLot);
             }
         }
         
-        if (!remainingLotShares.isEmpty()) {
-            throw new IllegalArgumentException("One or more lot shares were not removed!");
-        }
-        
-        return new SecurityLots(newLots);
+        return deriveSecurityLots(newSecurityLots, originalLots, addedLots);
     }
     
     
@@ -355,6 +536,80 @@ public class SecurityLots {
     }
     
     
+    /**
+     * Merges the oldest lots, those whose cost basis dates are before a cutoff date, into a single lot.
+     * This is meant for cash, where the individual lots are interchangeable once they're old enough.
+     * <p>
+     * The merge is exact, only the leading run of lots that were numbered from a block of lot ids
+     * and whose shares, cost basis, and cash-in basis are all the same is merged. Named lots, even
+     * those with numeric names, may be referred to by later transactions and are never merged.
+     * Removing shares from the merged lot gives the same cost basis and cash-in basis as removing
+     * them from the individual lots in order, and at a price of one the year ago value of each of
+     * the lots is its cost basis, whatever its cost basis date.
+     * <p>
+     * The merged lot takes the latest cost basis date of the merged lots. Lots sharing their cost
+     * basis date with the first lot that isn't merged are not merged, so the merged lot stays ahead
+     * of all the other lots.
+     * @param date  The date to apply to the new security lots.
+     * @param cutoffDate    The cutoff date.
+     * @param firstLotNumber    The first lot number of the block of lot ids whose lots may be merged,
+     * see {@link SecurityLot#LOT_ID_BLOCK_SIZE}.
+     * @return The new security lots, <code>this</code> if there are fewer than two lots to merge.
+     */
+    public SecurityLots mergeLotsBefore(LocalDate date, LocalDate cutoffDate, long firstLotNumber) {
+        List<SecurityLot> mergedLots = new ArrayList<>();
+        SecurityLot nextLot = null;
+        for (SecurityLot lot : securityLots) {
+            if (!lot.getCostBasisDate().isBefore(cutoffDate) || !isExactlyMergeable(lot, firstLotNumber)) {
+                nextLot = lot;
+                break;
+            }
+            mergedLots.add(lot);
+        }
+        
+        if (nextLot != null) {
+            while (!mergedLots.isEmpty() 
+                    && mergedLots.get(mergedLots.size() - 1).getCostBasisDate().equals(nextLot.getCostBasisDate())) {
+                mergedLots.remove(mergedLots.size() - 1);
+            }
+        }
+        
+        if (mergedLots.size() < 2) {
+            return this;
+        }
+        
+        BigDecimal shares = BigDecimal.ZERO;
+        BigDecimal costBasis = BigDecimal.ZERO;
+        BigDecimal cashInBasis = BigDecimal.ZERO;
+        LocalDate costBasisDate = null;
+        PersistentSortedSet<SecurityLot> newSecurityLots = securityLots;
+        for (SecurityLot lot : mergedLots) {
+            shares = shares.add(lot.getShares());
+            costBasis = costBasis.add(lot.getCostBasis());
+            cashInBasis = cashInBasis.add(lot.getCashInBasis());
+            costBasisDate = lot.getCostBasisDate();
+            newSecurityLots = newSecurityLots.without(lot);
+        }
+        
+        SecurityLot mergedLot = new SecurityLot(SecurityLot.makeLotNumber(), date, shares, costBasis, costBasisDate, cashInBasis);
+        newSecurityLots = newSecurityLots.with(mergedLot);
+        return deriveSecurityLots(newSecurityLots, mergedLots, Collections.singletonList(mergedLot));
+    }
+    
+    private static boolean isExactlyMergeable(SecurityLot lot, long firstLotNumber) {
+        long lotNumber = lot.getLotNumber();
+        if ((lotNumber < firstLotNumber) || (lotNumber - firstLotNumber >= SecurityLot.LOT_ID_BLOCK_SIZE)) {
+            return false;
+        }
+        
+        BigDecimal shares = lot.getShares();
+        return (shares.compareTo(BigDecimal.ZERO) > 0)
+                && (shares.compareTo(lot.getCostBasis()) == 0)
+                && (lot.getCashInBasis() != null)
+                && (shares.compareTo(lot.getCashInBasis()) == 0);
+    }
+    
+    
     /**
      * Distributes cash amongst all the lots.
      * @param date  The date to apply to the new security lots.
@@ -372,7 +627,7 @@ public class SecurityLots {
         
         if (securityLots.isEmpty() || (totalShares.compareTo(BigDecimal.ZERO) == 0)) {
             // No shares, have to add the shares as a lot.
-            SecurityLot newLot = new SecurityLot(SecurityLot.makeLotId(), date, cash, cash, null, cash);
+            SecurityLot newLot = new SecurityLot(SecurityLot.makeLotNumber(), date, cash, cash, null, cash);
             newLots.add(newLot);
             return new SecurityLots(newLots);
         }
@@ -420,9 +675,9 @@ public class SecurityLots {
             
             for (SecurityLot lot : lotsList) {
                 if (toDistribute != null) {
-                    String lotId = SecurityLot.makeLotId();
+                    long lotNumber = SecurityLot.makeLotNumber();
                     BigDecimal newShares = lot.getShares().add(toDistribute);
-                    SecurityLot newLot = new SecurityLot(lotId, date, newShares, lot.getCostBasis(), lot.getCostBasisDate(), lot.getCashInBasis());
+                    SecurityLot newLot = new SecurityLot(lotNumber, date, newShares, lot.getCostBasis(), lot.getCostBasisDate(), lot.getCashInBasis());
                     newLots.add(newLot);
                     
                     cashRemaining = cashRemaining.subtract(toDistribute);
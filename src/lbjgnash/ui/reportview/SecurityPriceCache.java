@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.SecurityHistoryNode;
+import jgnash.engine.SecurityNode;
+
+/**
+ * Caches the market prices of securities as price series, one per security and currency.
+ * A series is built from the security's price history the first time a price of the security
+ * is requested, after that prices are looked up with a binary search over the epoch days of
+ * the history.
+ * <p>
+ * The series are cached across reports, they need to be invalidated via {@link #invalidateSecurity(jgnash.engine.SecurityNode) }
+ * when the price history of a security changes.
+ * @author Albert Santos
+ */
+public class SecurityPriceCache {
+
+    // The values are soft references so the series can be reclaimed if memory gets tight.
+    private static final Map<SecurityNode, SoftReference<Map<CurrencyNode, PriceSeries>>> CACHED_SERIES = new WeakHashMap<>();
+
+    /**
+     * The prices of a security in a currency. SecurityNode.getMarketPrice() returns the price
+     * of the history entry on or before the date, so the prices only change on the dates of the
+     * history entries. The series therefore holds the price as of each history date, plus
+     * the price before the first history date.
+     */
+    static class PriceSeries {
+        final int [] epochDays;
+        final BigDecimal [] prices;
+        final BigDecimal priceBeforeFirst;
+
+        PriceSeries(SecurityNode securityNode, CurrencyNode currencyNode) {
+            List<SecurityHistoryNode> historyNodes = securityNode.getHistoryNodes();
+            int count = (historyNodes != null) ? historyNodes.size() : 0;
+            int [] days = new int [count];
+            for (int i = 0; i < count; ++i) {
+                days[i] = (int)historyNodes.get(i).getLocalDate().toEpochDay();
+            }
+            Arrays.sort(days);
+
+            // Drop any duplicate dates.
+            int uniqueCount = 0;
+            for (int i = 0; i < count; ++i) {
+                if ((uniqueCount == 0) || (days[uniqueCount - 1] != days[i])) {
+                    days[uniqueCount++] = days[i];
+                }
+            }
+
+            this.epochDays = Arrays.copyOf(days, uniqueCount);
+            this.prices = new BigDecimal [uniqueCount];
+            for (int i = 0; i < uniqueCount; ++i) {
+                ReportProfile.Counter.PRICE_LOOKUPS.increment();
+                this.prices[i] = securityNode.getMarketPrice(LocalDate.ofEpochDay(this.epochDays[i]), currencyNode);
+            }
+
+            LocalDate dateBeforeFirst = (uniqueCount > 0) ? LocalDate.ofEpochDay(this.epochDays[0] - 1) : LocalDate.now();
+            ReportProfile.Counter.PRICE_LOOKUPS.increment();
+            this.priceBeforeFirst = securityNode.getMarketPrice(dateBeforeFirst, currencyNode);
+        }
+
+        /**
+         * Retrieves the price as of a date.
+         * @param date  The date.
+         * @return The price.
+         */
+        BigDecimal getPrice(LocalDate date) {
+            int index = Arrays.binarySearch(epochDays, (int)date.toEpochDay());
+            if (index < 0) {
+                // Not an exact match, binarySearch() returned -(insertion point) - 1.
+                index = -index - 2;
+            }
+            return (index >= 0) ? prices[index] : priceBeforeFirst;
+        }
+    }
+
+
+    /**
+     * Retrieves the market price of a security as of a given date, this is equivalent to
+     * SecurityNode.getMarketPrice(date, currencyNode).
+     * @param securityNode  The security.
+     * @param date  The date.
+     * @param currencyNode  The currency for the price.
+     * @return The market price.
+     */
+    public static BigDecimal getMarketPrice(SecurityNode securityNode, LocalDate date, CurrencyNode currencyNode) {
+        return getPriceSeries(securityNode, currencyNode).getPrice(date);
+    }
+
+
+    static PriceSeries getPriceSeries(SecurityNode securityNode, CurrencyNode currencyNode) {
+        synchronized (CACHED_SERIES) {
+            SoftReference<Map<CurrencyNode, PriceSeries>> reference = CACHED_SERIES.get(securityNode);
+            Map<CurrencyNode, PriceSeries> seriesByCurrency = (reference != null) ? reference.get() : null;
+            if (seriesByCurrency != null) {
+                PriceSeries priceSeries = seriesByCurrency.get(currencyNode);
+                if (priceSeries != null) {
+                    return priceSeries;
+                }
+            }
+        }
+
+        // Build outside the lock, if two threads get here at the same time the last one wins.
+        PriceSeries priceSeries = new PriceSeries(securityNode, currencyNode);
+
+        synchronized (CACHED_SERIES) {
+            SoftReference<Map<CurrencyNode, PriceSeries>> reference = CACHED_SERIES.get(securityNode);
+            Map<CurrencyNode, PriceSeries> seriesByCurrency = (reference != null) ? reference.get() : null;
+            if (seriesByCurrency == null) {
+                seriesByCurrency = new HashMap<>();
+                CACHED_SERIES.put(securityNode, new SoftReference<>(seriesByCurrency));
+            }
+            seriesByCurrency.put(currencyNode, priceSeries);
+        }
+        return priceSeries;
+    }
+
+
+    /**
+     * Removes the cached prices of a security.
+     * @param securityNode  The security.
+     */
+    public static void invalidateSecurity(SecurityNode securityNode) {
+        synchronized (CACHED_SERIES) {
+            CACHED_SERIES.remove(securityNode);
+        }
+    }
+
+
+    /**
+     * Removes all the cached prices.
+     */
+    public static void invalidateAll() {
+        synchronized (CACHED_SERIES) {
+            CACHED_SERIES.clear();
+        }
+    }
+}
@@ -15,23 +15,20 @@
  */
 package lbjgnash.ui.reportview;
 
-import com.leeboardtools.time.DateUtil;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Logger;
-import jgnash.engine.Account;
-import jgnash.engine.AccountGroup;
-import jgnash.engine.InvestmentTransaction;
 import jgnash.engine.MathConstants;
 import jgnash.engine.SecurityNode;
-import jgnash.engine.Transaction;
-import jgnash.engine.TransactionEntry;
 import org.hsqldb.lib.StringUtil;
 
 /**
@@ -44,7 +41,71 @@ public class SecurityTransactionTracker {
     
     private final SecurityNode securityNode;
     private final TreeSet<DateEntry> dateEntries = new TreeSet<>();
-    private final TreeMap<LocalDate, TransactionsForDate> dateTransactionsToProcess = new TreeMap<>();
+    
+    // The transactions recorded but not yet processed, see recordTransaction().
+    private long [] eventKeys = new long [16];
+    private InvestmentTransactionStore [] eventStores = new InvestmentTransactionStore [16];
+    private int [] eventRows = new int [16];
+    private int eventCount;
+    private boolean areEventsSorted = true;
+    
+    // The lot ids of the lots created by the tracker come from the tracker's own block of lot ids, 
+    // lots are never shared between trackers. This lets trackers be finalized on different threads.
+    private final long firstLotId;
+    private long nextLotId;
+    
+    // Once the transactions are finalized the date entries are frozen into arrays so
+    // date lookups are a binary search over primitives. Any change to dateEntries discards
+    // the frozen entries.
+    private volatile FrozenDateEntries frozenDateEntries;
+    
+    private static class FrozenDateEntries {
+        final int [] epochDays;
+        final DateEntry [] dateEntries;
+        
+        FrozenDateEntries(Collection<DateEntry> dateEntries) {
+            this.dateEntries = dateEntries.toArray(new DateEntry [dateEntries.size()]);
+            this.epochDays = new int [this.dateEntries.length];
+            for (int i = 0; i < this.epochDays.length; ++i) {
+                this.epochDays[i] = (int)this.dateEntries[i].date.toEpochDay();
+            }
+        }
+        
+        /**
+         * @return The index of the last date entry on or before date, -1 if date is before
+         * the first date entry.
+         */
+        int floorIndex(LocalDate date) {
+            int index = Arrays.binarySearch(epochDays, (int)date.toEpochDay());
+            if (index < 0) {
+                // Not an exact match, binarySearch() returned -(insertion point) - 1.
+                index = -index - 2;
+            }
+            return index;
+        }
+    }
+    
+    // Compact history support: when checkpointInterval is > 0 only every checkpointInterval'th
+    // action's date entry keeps its security lots, the security lots of the other date entries
+    // are rebuilt as needed by replaying the actions from the nearest prior checkpoint.
+    private int checkpointInterval;
+    private static final int REBUILT_SECURITY_LOTS_CACHE_SIZE = 8;
+    
+    // The most date entries a cash-in allocation is extended over.
+    static final int MAX_CASH_IN_ALLOCATION_EXTENSION = 16;
+    
+    // Cash withdrawals first come out of the lots added within this many days, LIFO.
+    static final int CASH_WITHDRAWAL_LIFO_DAYS = 90;
+    
+    // When > 0 the lots older than this many days are merged after each action.
+    private int cashLotCompactionDays;
+    private final Map<DateEntry, SecurityLots> rebuiltSecurityLots 
+            = new LinkedHashMap<DateEntry, SecurityLots>(REBUILT_SECURITY_LOTS_CACHE_SIZE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DateEntry, SecurityLots> eldest) {
+            return size() > REBUILT_SECURITY_LOTS_CACHE_SIZE;
+        }
+    };
 
 
     // We want to track cost-basis.
@@ -87,12 +148,154 @@ public class SecurityTransactionTracker {
         }
     }
     
+    /**
+     * The security lots with cash-in basis of a security lots, with the shares of lots that don't
+     * have cash-in basis (i.e. reinvested dividends) proportionally allocated to the prior lots with cash-in
+     * basis at the time.
+     */
+    static class CashInAllocation {
+        final SecurityLots securityLots;
+        
+        // The total shares of all the original lots, accumulated in lot order.
+        final BigDecimal totalShares;
+        
+        private volatile YearAgoValueCalculator yearAgoValueCalculator;
+        
+        CashInAllocation(SecurityLots securityLots, BigDecimal totalShares) {
+            this.securityLots = securityLots;
+            this.totalShares = totalShares;
+        }
+        
+        YearAgoValueCalculator getYearAgoValueCalculator() {
+            YearAgoValueCalculator calculator = yearAgoValueCalculator;
+            if (calculator == null) {
+                calculator = new YearAgoValueCalculator(securityLots);
+                yearAgoValueCalculator = calculator;
+            }
+            return calculator;
+        }
+        
+        /**
+         * Builds the allocation from scratch.
+         * @param securityLots  The security lots.
+         * @return The allocation.
+         */
+        static CashInAllocation fromSecurityLots(SecurityLots securityLots) {
+            boolean isDebug = false;
+            
+            List<CashInLotEntry> cashInEntries = new ArrayList<>();
+            BigDecimal currentTotalShares = BigDecimal.ZERO;
+            for (SecurityLot securityLot : securityLots.getSecurityLots()) {
+                currentTotalShares = addLot(cashInEntries, currentTotalShares, securityLot, isDebug);
+            }
+            
+            return fromEntries(cashInEntries, currentTotalShares, isDebug);
+        }
+        
+        /**
+         * Retrieves the allocation for the security lots with additional lots that are all
+         * after the lots of this allocation in lot order.
+         * @param lots  The lots to add, in lot order.
+         * @return The allocation.
+         */
+        CashInAllocation withLots(Collection<SecurityLot> lots) {
+            List<CashInLotEntry> cashInEntries = new ArrayList<>();
+            for (SecurityLot securityLot : securityLots.getSecurityLots()) {
+                cashInEntries.add(new CashInLotEntry(securityLot));
+            }
+            
+            BigDecimal currentTotalShares = totalShares;
+            for (SecurityLot securityLot : lots) {
+                currentTotalShares = addLot(cashInEntries, currentTotalShares, securityLot, false);
+            }
+            
+            return fromEntries(cashInEntries, currentTotalShares, false);
+        }
+        
+        private static BigDecimal addLot(List<CashInLotEntry> cashInEntries, BigDecimal currentTotalShares, 
+                SecurityLot securityLot, boolean isDebug) {
+            BigDecimal cashInBasis = securityLot.getCashInBasis();
+            if (cashInBasis.compareTo(BigDecimal.ZERO) <= 0) {                    
+                if (isDebug) {
+                    System.out.println("Distributing:\t" + securityLot.getDate() + "\t" + securityLot.getShares() + "\t" + securityLot.getCostBasis());
+                }
+
+                // Need to allocate the shares to all previous cash-in securities based upon
+                // the proportion of shares to the total shares.
+                // We need to be exact, so the last lot allocated to must be a remainder operation.
+                BigDecimal sharesRemaining = securityLot.getShares();
+                int lotCount = cashInEntries.size();
+                if (lotCount > 0) {
+                    int end = lotCount - 1;
+                    for (int i = 0; i < end; ++i) {
+                        CashInLotEntry cashInEntry = cashInEntries.get(i);
+                        BigDecimal sharesToAllocate = sharesRemaining
+                                .multiply(cashInEntry.totalShares)
+                                .divide(currentTotalShares, currentTotalShares.scale(), MathConstants.roundingMode);
+                        cashInEntry.totalShares = cashInEntry.totalShares.add(sharesToAllocate);
+                        sharesRemaining = sharesRemaining.subtract(sharesToAllocate);
+                    }
+
+                    cashInEntries.get(end).totalShares = cashInEntries.get(end).totalShares.add(sharesRemaining);
+                }
+            }
+            else {
+                // Just add to the list.
+                cashInEntries.add(new CashInLotEntry(securityLot));
+
+                if (isDebug) {
+                    System.out.println("Added:\t" + securityLot.getDate() + "\t" + securityLot.getShares() + "\t" + securityLot.getCostBasis());
+                }
+            }
+
+            return currentTotalShares.add(securityLot.getShares());
+        }
+        
+        private static CashInAllocation fromEntries(List<CashInLotEntry> cashInEntries, BigDecimal currentTotalShares, boolean isDebug) {
+            if (isDebug) {
+                System.out.println("New Lots:");
+            }
+            
+            // Create the new security lots.
+            List<SecurityLot> newLots = new ArrayList<>();
+            for (CashInLotEntry cashInEntry : cashInEntries) {
+                SecurityLot oldLot = cashInEntry.originalLot;
+                SecurityLot newLot = (cashInEntry.totalShares == oldLot.getShares()) ? oldLot : oldLot.withShares(cashInEntry.totalShares);
+                newLots.add(newLot);
+                
+                if (isDebug) {
+                    System.out.println("New Lot:\t" + newLot.getDate() + "\t" + newLot.getShares() + "\t" + newLot.getCostBasis());
+                }
+            }
+            
+            if (isDebug) {
+                System.out.println();
+            }
+
+            return new CashInAllocation(new SecurityLots(newLots), currentTotalShares);
+        }
+    }
+    
     public class DateEntry implements Comparable<DateEntry> {
         private final LocalDate date;
-        private final SecurityLots securityLots;
+        private SecurityLots securityLots;
         private final BigDecimal transactionPrice;
         private final List<SecurityLotAction> securityLotActions = new ArrayList<>();
         
+        // Set if the security lots cannot be rebuilt from the prior date entry's security lots,
+        // the entry then always keeps its security lots.
+        private boolean isCheckpoint;
+        
+        // The first lot id used by each of the security lot actions, used to reproduce
+        // the lots when replaying the actions.
+        private long [] firstLotIds;
+        
+        // Created as needed by getCashInAllocation().
+        private volatile CashInAllocation cashInAllocation;
+        
+        // Created as needed by getYearAgoValueCalculator().
+        private volatile YearAgoValueCalculator yearAgoValueCalculator;
+        
         /**
          * Constructor.
          * @param date  The date.
@@ -132,11 +335,22 @@ public class SecurityTransactionTracker {
             return securityNode;
         }
         
+        /**
+         * @return The tracker this entry belongs to.
+         */
+        public final SecurityTransactionTracker getTransactionTracker() {
+            return SecurityTransactionTracker.this;
+        }
+        
         /**
          * @return The security lots of this entry.
          */
         public final SecurityLots getSecurityLots() {
-            return securityLots;
+            SecurityLots lots = securityLots;
+            if (lots == null) {
+                lots = rebuildSecurityLots(this);
+            }
+            return lots;
         }
         
         /**
@@ -157,14 +371,14 @@ public class SecurityTransactionTracker {
          * @return The total shares owned as of the date.
          */
         public final BigDecimal getTotalShares() {
-            return securityLots.getTotalShares();
+            return getSecurityLots().getTotalShares();
         }
         
         /**
          * @return The cost basis of the total shares.
          */
         public final BigDecimal getCostBasis() {
-            return securityLots.getTotalCostBasis();
+            return getSecurityLots().getTotalCostBasis();
         }
         
         /**
@@ -174,7 +388,7 @@ public class SecurityTransactionTracker {
          */
         public final BigDecimal getMarketValue(LocalDate date) {
             BigDecimal currentPrice = getMarketPrice(date);
-            BigDecimal value = currentPrice.multiply(securityLots.getTotalShares());
+            BigDecimal value = currentPrice.multiply(getSecurityLots().getTotalShares());
             return value;
         }
         
@@ -184,7 +398,7 @@ public class SecurityTransactionTracker {
          * @return The market value.
          */
         public final BigDecimal getMarketPrice(LocalDate date) {
-            BigDecimal currentPrice = securityNode.getMarketPrice(date, securityNode.getReportedCurrencyNode());
+            BigDecimal currentPrice = SecurityPriceCache.getMarketPrice(securityNode, date, securityNode.getReportedCurrencyNode());
             return currentPrice;
         }
         
@@ -201,7 +415,19 @@ public class SecurityTransactionTracker {
          */
         public final BigDecimal getYearAgoValueSum(LocalDate date, int minDays) {
             BigDecimal currentPrice = getMarketPrice(date);
-            return calcYearAgoValueSum(date, minDays, securityLots, currentPrice);
+            return getYearAgoValueCalculator().calcYearAgoValueSum(date, minDays, currentPrice);
+        }
+        
+        /**
+         * @return The year ago value calculator of the security lots, this is only created once per entry.
+         */
+        final YearAgoValueCalculator getYearAgoValueCalculator() {
+            YearAgoValueCalculator calculator = yearAgoValueCalculator;
+            if (calculator == null) {
+                calculator = new YearAgoValueCalculator(getSecurityLots());
+                yearAgoValueCalculator = calculator;
+            }
+            return calculator;
         }
 
 
@@ -209,7 +435,7 @@ public class SecurityTransactionTracker {
          * @return The total cash used to make direct purchases (excludes reinvested dividends)
          */
         public final BigDecimal getTotalCashIn() {
-            return securityLots.getTotalCashIn();
+            return getSecurityLots().getTotalCashIn();
         }
 
 
@@ -223,79 +449,25 @@ public class SecurityTransactionTracker {
          * @return The sum of the year ago values.
          */
         public final BigDecimal getCashInYearAgoValueSum(LocalDate date, int minDays) {
-            boolean isDebug = false;
-            if (isDebug) {
-                System.out.println("\nCashInYearAgoValueSum:\t" + getSecurityNode().getSymbol());
-            }
-            
-            // Build a new security lots whose security lots are the security lots with
-            // cash-in basis, and whose shares represent the original shares plus any
-            // shares from future lots without cash-in basis (i.e. reinvested dividends)
-            // proportionally allocated to existing shares at the time.
-            List<CashInLotEntry> cashInEntries = new ArrayList<>();
-            BigDecimal currentTotalShares = BigDecimal.ZERO;
-            for (SecurityLot securityLot : securityLots.getSecurityLots()) {
-                BigDecimal cashInBasis = securityLot.getCashInBasis();
-                if (cashInBasis.compareTo(BigDecimal.ZERO) <= 0) {                    
-                    if (isDebug) {
-                        System.out.println("Distributing:\t" + securityLot.getDate() + "\t" + securityLot.getShares() + "\t" + securityLot.getCostBasis());
-                    }
-
-                    // Need to allocate the shares to all previous cash-in securities based upon
-                    // the proportion of shares to the total shares.
-                    // We need to be exact, so the last lot allocated to must be a remainder operation.
-                    BigDecimal sharesRemaining = securityLot.getShares();
-                    int lotCount = cashInEntries.size();
-                    if (lotCount > 0) {
-                        int end = lotCount - 1;
-                        for (int i = 0; i < end; ++i) {
-                            CashInLotEntry cashInEntry = cashInEntries.get(i);
-                            BigDecimal sharesToAllocate = sharesRemaining
-                                    .multiply(cashInEntry.totalShares)
-                                    .divide(currentTotalShares, currentTotalShares.scale(), MathConstants.roundingMode);
-                            cashInEntry.totalShares = cashInEntry.totalShares.add(sharesToAllocate);
-                            sharesRemaining = sharesRemaining.subtract(sharesToAllocate);
-                        }
-
-                        cashInEntries.get(end).totalShares = cashInEntries.get(end).totalShares.add(sharesRemaining);
-                    }
-                }
-                else {
-                    // Just add to the list.
-                    cashInEntries.add(new CashInLotEntry(securityLot));
-                    
-                    if (isDebug) {
-                        System.out.println("Added:\t" + securityLot.getDate() + "\t" + securityLot.getShares() + "\t" + securityLot.getCostBasis());
-                    }
-                }
-                
-                currentTotalShares = currentTotalShares.add(securityLot.getShares());
-            }
-    
-            if (isDebug) {
-                System.out.println("New Lots:");
-            }
-            
-            // Create the new security lots.
-            List<SecurityLot> newLots = new ArrayList<>();
-            for (CashInLotEntry cashInEntry : cashInEntries) {
-                SecurityLot oldLot = cashInEntry.originalLot;
-                SecurityLot newLot = new SecurityLot(oldLot.getLotId(), oldLot.getDate(), cashInEntry.totalShares,
-                    oldLot.getCostBasis(), oldLot.getCostBasisDate(), oldLot.getCashInBasis());
-                newLots.add(newLot);
-                
-                if (isDebug) {
-                    System.out.println("New Lot:\t" + newLot.getDate() + "\t" + newLot.getShares() + "\t" + newLot.getCostBasis());
+            BigDecimal currentPrice = getMarketPrice(date);
+            return getCashInAllocation().getYearAgoValueCalculator().calcYearAgoValueSum(date, minDays, currentPrice);
+        }
+        
+        
+        /**
+         * @return The cash-in allocation of the security lots, this is only computed once per entry,
+         * and is extended from a prior entry's allocation when possible.
+         */
+        final CashInAllocation getCashInAllocation() {
+            CashInAllocation allocation = cashInAllocation;
+            if (allocation == null) {
+                allocation = extendCashInAllocation(this);
+                if (allocation == null) {
+                    allocation = CashInAllocation.fromSecurityLots(getSecurityLots());
                 }
+                cashInAllocation = allocation;
             }
-            
-            if (isDebug) {
-                System.out.println();
-            }
-
-            SecurityLots newSecurityLots = new SecurityLots(newLots);            
-            BigDecimal currentPrice = getMarketPrice(date);
-            return calcYearAgoValueSum(date, minDays, newSecurityLots, currentPrice);
+            return allocation;
         }
 
         
@@ -308,7 +480,18 @@ public class SecurityTransactionTracker {
     
     
     public SecurityTransactionTracker(SecurityNode securityNode) {
+        this(securityNode, SecurityLot.reserveLotIdBlock());
+    }
+    
+    /**
+     * Constructor, package visibility for testing.
+     * @param securityNode  The security.
+     * @param firstLotId    The first lot id of the tracker's block of lot ids.
+     */
+    SecurityTransactionTracker(SecurityNode securityNode, long firstLotId) {
         this.securityNode = securityNode;
+        this.firstLotId = firstLotId;
+        this.nextLotId = firstLotId;
     }
     
     public final SecurityNode getSecurityNode() {
@@ -316,7 +499,15 @@ public class SecurityTransactionTracker {
     }
     
     public final DateEntry getDateEntry(LocalDate date) {
-        DateEntry dateEntry = dateEntries.floor(new DateEntry(date));
+        FrozenDateEntries frozen = frozenDateEntries;
+        if (frozen != null) {
+            if (frozen.dateEntries.length == 0) {
+                return null;
+            }
+            return frozen.dateEntries[Math.max(frozen.floorIndex(date), 0)];
+        }
+        
+        DateEntry dateEntry = floorDateEntry(date);
         if (dateEntry == null) {
             if (dateEntries.isEmpty()) {
                 return null;
@@ -326,8 +517,203 @@ public class SecurityTransactionTracker {
         return dateEntry;
     }
     
+    
+    /**
+     * Retrieves the last date entry on or before a date.
+     * @param date  The date.
+     * @return The date entry, <code>null</code> if there are no date entries on or before date.
+     */
+    protected final DateEntry floorDateEntry(LocalDate date) {
+        FrozenDateEntries frozen = frozenDateEntries;
+        if (frozen != null) {
+            int index = frozen.floorIndex(date);
+            return (index >= 0) ? frozen.dateEntries[index] : null;
+        }
+        
+        if (dateEntries.isEmpty()) {
+            return null;
+        }
+        
+        // The transactions are normally recorded in date order, which makes the last entry the floor.
+        DateEntry lastDateEntry = dateEntries.last();
+        if (!date.isBefore(lastDateEntry.date)) {
+            return lastDateEntry;
+        }
+        return dateEntries.floor(new DateEntry(date));
+    }
+    
+    
+    /**
+     * Freezes the date entries into arrays for faster date lookups, normally called from
+     * {@link #finalizeTransactions() }. Adding date entries un-freezes them.
+     */
+    protected void freezeDateEntries() {
+        frozenDateEntries = new FrozenDateEntries(dateEntries);
+    }
+    
     public final void clearAll() {
+        frozenDateEntries = null;
         dateEntries.clear();
+        synchronized (rebuiltSecurityLots) {
+            rebuiltSecurityLots.clear();
+        }
+    }
+    
+    
+    /**
+     * @return The number of actions between the date entries that keep their security lots,
+     * 0 if all the date entries keep their security lots.
+     */
+    public final int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+    
+    /**
+     * Sets the number of actions between the date entries that keep their security lots
+     * once the transactions have been finalized. The security lots of the other date entries
+     * are rebuilt from the nearest prior checkpoint when requested, a few of the most recently
+     * rebuilt security lots are cached. This trades report time for memory with
+     * long transaction histories.
+     * @param checkpointInterval    The number of actions between checkpoints, 0 to have all the
+     * date entries keep their security lots.
+     */
+    public final void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = Math.max(checkpointInterval, 0);
+    }
+    
+    
+    /**
+     * @return The age in days after which lots are merged, 0 if lots are not merged.
+     */
+    public final int getCashLotCompactionDays() {
+        return cashLotCompactionDays;
+    }
+    
+    /**
+     * Sets the age in days after which the lots are merged into a single lot, see
+     * {@link SecurityLots#mergeLotsBefore(java.time.LocalDate, java.time.LocalDate, long) }.
+     * This is intended for cash with a price of one, whose lots are otherwise only ever added to,
+     * it should not be used for securities whose lots are sold individually.
+     * <p>
+     * The merge itself is exact. Income distributed after a merge is spread over the merged lot
+     * rather than over the lots it replaced though, so from then on the year ago value sums and
+     * the rounding of the withdrawals differ from those of the unmerged lots. The age is never less
+     * than the window within which cash withdrawals are taken from the newest lots.
+     * @param days  The age in days, 0 to not merge lots.
+     */
+    public final void setCashLotCompactionDays(int days) {
+        this.cashLotCompactionDays = (days > 0) ? Math.max(days, CASH_WITHDRAWAL_LIFO_DAYS) : 0;
+    }
+    
+    /**
+     * Merges the lots that have aged past the cash lot compaction days, if enabled.
+     * @param date  The date of the action that produced the lots.
+     * @param securityLots  The lots.
+     * @return The merged lots, securityLots if nothing was merged.
+     */
+    protected SecurityLots mergeAgedLots(LocalDate date, SecurityLots securityLots) {
+        if (cashLotCompactionDays <= 0) {
+            return securityLots;
+        }
+        return securityLots.mergeLotsBefore(date, date.minusDays(cashLotCompactionDays), firstLotId);
+    }
+    
+    
+    /**
+     * Releases the security lots of the date entries that are not checkpoints.
+     * Normally called from {@link #finalizeTransactions() }.
+     */
+    protected void compactHistory() {
+        synchronized (rebuiltSecurityLots) {
+            rebuiltSecurityLots.clear();
+        }
+        if (checkpointInterval <= 0) {
+            return;
+        }
+        
+        DateEntry lastDateEntry = dateEntries.isEmpty() ? null : dateEntries.last();
+        int actionCount = 0;
+        for (DateEntry dateEntry : dateEntries) {
+            actionCount += dateEntry.securityLotActions.size();
+            if (dateEntry.isCheckpoint || (actionCount >= checkpointInterval) || (dateEntry == lastDateEntry)) {
+                // If we've been compacted before the checkpoint may not have its lots.
+                dateEntry.securityLots = dateEntry.getSecurityLots();
+                actionCount = 0;
+            }
+            else {
+                dateEntry.securityLots = null;
+            }
+        }
+    }
+    
+    
+    /**
+     * Rebuilds the security lots of a date entry whose security lots have been released
+     * by {@link #compactHistory() }.
+     * @param dateEntry The date entry.
+     * @return The security lots.
+     */
+    SecurityLots rebuildSecurityLots(DateEntry dateEntry) {
+        synchronized (rebuiltSecurityLots) {
+            SecurityLots securityLots = rebuiltSecurityLots.get(dateEntry);
+            if (securityLots != null) {
+                return securityLots;
+            }
+            
+            // Back up to the nearest date entry that has security lots, either as a checkpoint
+            // or a recently rebuilt one.
+            List<DateEntry> dateEntriesToReplay = new ArrayList<>();
+            dateEntriesToReplay.add(dateEntry);
+            FrozenDateEntries frozen = frozenDateEntries;
+            Iterator<DateEntry> priorIterator = (frozen == null) ? dateEntries.headSet(dateEntry, false).descendingIterator() : null;
+            int index = (frozen != null) ? frozen.floorIndex(dateEntry.date) : 0;
+            while (true) {
+                DateEntry priorDateEntry;
+                if (frozen != null) {
+                    if (--index < 0) {
+                        break;
+                    }
+                    priorDateEntry = frozen.dateEntries[index];
+                }
+                else {
+                    if (!priorIterator.hasNext()) {
+                        break;
+                    }
+                    priorDateEntry = priorIterator.next();
+                }
+                
+                securityLots = priorDateEntry.securityLots;
+                if (securityLots == null) {
+                    securityLots = rebuiltSecurityLots.get(priorDateEntry);
+                }
+                if (securityLots != null) {
+                    break;
+                }
+                dateEntriesToReplay.add(priorDateEntry);
+            }
+            
+            if (securityLots == null) {
+                securityLots = new SecurityLots();
+            }
+            
+            for (int i = dateEntriesToReplay.size() - 1; i >= 0; --i) {
+                DateEntry replayDateEntry = dateEntriesToReplay.get(i);
+                int actionCount = replayDateEntry.securityLotActions.size();
+                for (int a = 0; a < actionCount; ++a) {
+                    ReportProfile.Counter.LOT_ACTIONS_APPLIED.increment();
+                    long [] previousSequence = SecurityLot.beginLotIdSequence(replayDateEntry.firstLotIds[a]);
+                    try {
+                        securityLots = replayDateEntry.securityLotActions.get(a).applyAction(securityLots);
+                    }
+                    finally {
+                        SecurityLot.endLotIdSequence(previousSequence);
+                    }
+                }
+            }
+            
+            rebuiltSecurityLots.put(dateEntry, securityLots);
+            return securityLots;
+        }
     }
     
     
@@ -346,44 +732,111 @@ public class SecurityTransactionTracker {
      * @return The sum of the year ago values.
      */
     public final BigDecimal calcYearAgoValueSum(LocalDate date, int minDays, SecurityLots securityLots, BigDecimal currentPrice) {
-        LocalDate cutoffDate = date.minusDays(minDays);
-        if (currentPrice.compareTo(BigDecimal.ZERO) == 0) {
-            return BigDecimal.ZERO;
+        return new YearAgoValueCalculator(securityLots).calcYearAgoValueSum(date, minDays, currentPrice);
+    }
+    
+    /**
+     * Builds the cash-in allocation of a date entry from the allocation of the nearest prior date 
+     * entry that has its allocation. This is only possible if all the actions of the date entries in
+     * between add lots after all the lots of the date entry before them, which is normally the case
+     * for buys and reinvested dividends. The allocations are only computed for the date entries that
+     * are asked for, normally those of report dates, so this extends the allocation of one report date
+     * to the next.
+     * <p>
+     * Checking the lots of the date entries in between may rebuild their security lots, so this only
+     * looks back {@link #MAX_CASH_IN_ALLOCATION_EXTENSION} date entries, and only checks the lots once
+     * a prior allocation has been found.
+     * @param dateEntry The date entry.
+     * @return The allocation, <code>null</code> if it could not be built from a prior entry's.
+     */
+    CashInAllocation extendCashInAllocation(DateEntry dateEntry) {
+        FrozenDateEntries frozen = frozenDateEntries;
+        if (frozen == null) {
+            return null;
         }
-
-        BigDecimal yearAgoValueSum = BigDecimal.ZERO;
-
-        for (SecurityLot securityLot : securityLots.getSecurityLots()) {
-            BigDecimal costBasis = securityLot.getCostBasis();
-            if (costBasis.compareTo(BigDecimal.ZERO) <= 0) {
-                continue;
+        
+        int index = frozen.floorIndex(dateEntry.date);
+        int allocationIndex = index - 1;
+        int endIndex = Math.max(index - MAX_CASH_IN_ALLOCATION_EXTENSION, 0);
+        while (true) {
+            if ((allocationIndex < endIndex) || !isAddLotsOnly(frozen.dateEntries[allocationIndex + 1])) {
+                return null;
             }
-
-            BigDecimal yearAgoValue;
-            if (securityLot.getCostBasisDate().isBefore(cutoffDate)) {
-                BigDecimal value = securityLot.getShares().multiply(currentPrice);
-                double doubleValue = value.doubleValue();
-                
-                // (Ending/Begining)^(1/time) - 1
-                double time = DateUtil.getYearsUntil(securityLot.getCostBasisDate(), date);
-                double rateOfReturn = Math.pow(doubleValue / costBasis.doubleValue(), 1./time) - 1.;
-
-                if (rateOfReturn == -1.) {
-                    yearAgoValue = costBasis;
-                }
-                else {
-                    double doubleYearAgoValue = doubleValue / (1. + rateOfReturn);
-                    yearAgoValue = BigDecimal.valueOf(doubleYearAgoValue).setScale(costBasis.scale(), MathConstants.roundingMode);
-                }
+            if (frozen.dateEntries[allocationIndex].cashInAllocation != null) {
+                break;
             }
-            else {
-                yearAgoValue = costBasis;
+            --allocationIndex;
+        }
+        
+        // The lots added by each of the date entries walked, latest date entry first.
+        List<List<SecurityLot>> addedLotsByDateEntry = new ArrayList<>();
+        DateEntry currentDateEntry = dateEntry;
+        while (index > allocationIndex) {
+            DateEntry previousDateEntry = frozen.dateEntries[index - 1];
+            List<SecurityLot> addedLots = getLotsAddedAfter(currentDateEntry, previousDateEntry);
+            if (addedLots == null) {
+                return null;
             }
+            addedLotsByDateEntry.add(addedLots);
             
-            yearAgoValueSum = yearAgoValueSum.add(yearAgoValue);
+            CashInAllocation previousAllocation = previousDateEntry.cashInAllocation;
+            if (previousAllocation != null) {
+                // Adding the lots of several date entries in one go is the same as adding
+                // them one date entry at a time since they're in lot order.
+                List<SecurityLot> lots = new ArrayList<>();
+                for (int i = addedLotsByDateEntry.size() - 1; i >= 0; --i) {
+                    lots.addAll(addedLotsByDateEntry.get(i));
+                }
+                return previousAllocation.withLots(lots);
+            }
+            
+            currentDateEntry = previousDateEntry;
+            --index;
         }
-
-        return yearAgoValueSum;
+        
+        return null;
+    }
+    
+    private static boolean isAddLotsOnly(DateEntry dateEntry) {
+        if (dateEntry.isCheckpoint) {
+            return false;
+        }
+        for (SecurityLotAction action : dateEntry.securityLotActions) {
+            if (!(action instanceof SecurityLotAction.AddLot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Retrieves the lots added by the actions of a date entry if all its actions add lots and the lots
+     * are all after the lots of the previous date entry.
+     * @param dateEntry The date entry.
+     * @param previousDateEntry The date entry before dateEntry.
+     * @return The lots added, in lot order, <code>null</code> if the actions of the date entry
+     * do anything other than add lots after the previous date entry's lots.
+     */
+    protected List<SecurityLot> getLotsAddedAfter(DateEntry dateEntry, DateEntry previousDateEntry) {
+        if (dateEntry.isCheckpoint) {
+            return null;
+        }
+        
+        List<SecurityLot> addedLots = new ArrayList<>();
+        for (SecurityLotAction action : dateEntry.securityLotActions) {
+            if (!(action instanceof SecurityLotAction.AddLot)) {
+                return null;
+            }
+            addedLots.add(((SecurityLotAction.AddLot)action).getNewLot());
+        }
+        addedLots.sort(null);
+        
+        SortedSet<SecurityLot> previousLots = previousDateEntry.getSecurityLots().getSecurityLots();
+        if (!previousLots.isEmpty() && !addedLots.isEmpty() && (previousLots.last().compareTo(addedLots.get(0)) >= 0)) {
+            return null;
+        }
+        
+        return addedLots;
     }
     
     // We want to sort transactions by date,
@@ -392,126 +845,108 @@ public class SecurityTransactionTracker {
     //      - sell security
     //      - buy security
     //      - cash out
-    static class CashTransactionToRecord {
-        final Account cashAccount;
-        final Transaction transaction;
-        final BigDecimal amount;
-        
-        CashTransactionToRecord(Account cashAccount, Transaction transaction, BigDecimal amount) {
-            this.cashAccount = cashAccount;
-            this.transaction = transaction;
-            this.amount = amount;
-        }
-    }
+    // The transactions are staged in an event log, each event's sort key packs the
+    // epoch day in the upper 32 bits, the priority in the next 4 bits, and the event's
+    // sequence number, which is also its index in the event arrays, in the lower 28 bits.
+    // Sorting the keys therefore sorts the events by date, priority and recording order.
+    static final int EVENT_PRIORITY_SHIFT = 28;
+    static final long EVENT_SEQUENCE_MASK = (1L << EVENT_PRIORITY_SHIFT) - 1;
     
-    static class TransactionsForDate {
-        final List<CashTransactionToRecord> cashInTransactions = new ArrayList();
-        final List<InvestmentTransaction> sellTransactions = new ArrayList<>();
-        final List<InvestmentTransaction> buyTransactions = new ArrayList<>();
-        final List<CashTransactionToRecord> cashOutTransactions = new ArrayList();
+    static long makeEventKey(int epochDay, int priority, int sequence) {
+        return ((long)epochDay << 32) | ((long)priority << EVENT_PRIORITY_SHIFT) | sequence;
     }
     
-    TransactionsForDate accessTransactionsForDate(LocalDate date) {
-        TransactionsForDate transactions = dateTransactionsToProcess.get(date);
-        if (transactions == null) {
-            transactions = new TransactionsForDate();
-            dateTransactionsToProcess.put(date, transactions);
-        }
-        return transactions;
+    static int getEventSequence(long eventKey) {
+        return (int)(eventKey & EVENT_SEQUENCE_MASK);
     }
     
-    public final void recordTransaction(InvestmentTransaction transaction) {
-        LocalDate date = transaction.getLocalDate();
-        
-        switch (transaction.getTransactionType()){
-            case ADDSHARE:
-                accessTransactionsForDate(date).buyTransactions.add(transaction);
-                break;
-                
-            case BUYSHARE:
-                accessTransactionsForDate(date).buyTransactions.add(transaction);
-                break;
-                
-            case DIVIDEND:
-                break;
-                
-            case REINVESTDIV:
-                accessTransactionsForDate(date).buyTransactions.add(transaction);
-                break;
-                
-            case REMOVESHARE:
-                break;
-                
-            case RETURNOFCAPITAL:
-                break;
-                
-            case SELLSHARE:
-                accessTransactionsForDate(date).sellTransactions.add(transaction);
-                break;
-                
-            case SPLITSHARE:
-                accessTransactionsForDate(date).sellTransactions.add(transaction);
-                break;
-                
-            case MERGESHARE:
-                accessTransactionsForDate(date).sellTransactions.add(transaction);
-                break;
-                
-            default:
-                throw new AssertionError(transaction.getTransactionType().name());
-            
+    /**
+     * Records a transaction from a transaction store, the transaction is not processed
+     * until {@link #finalizeTransactions() } is called.
+     * @param store The transaction store.
+     * @param row   The row of the transaction in the store.
+     */
+    public final void recordTransaction(InvestmentTransactionStore store, int row) {
+        if (eventCount > EVENT_SEQUENCE_MASK) {
+            throw new IllegalStateException("Too many transactions recorded!");
         }
         
-    }
-    
-    public final void recordCashTransaction(Account cashAccount, Transaction transaction, BigDecimal amount) {
-        LocalDate date = transaction.getLocalDate();
-        if (amount.compareTo(BigDecimal.ZERO) < 0) {
-            // Cash out
-            accessTransactionsForDate(date).cashOutTransactions.add(new CashTransactionToRecord(cashAccount, transaction, amount));
+        if (eventCount == eventKeys.length) {
+            int newLength = eventCount * 2;
+            eventKeys = Arrays.copyOf(eventKeys, newLength);
+            eventStores = Arrays.copyOf(eventStores, newLength);
+            eventRows = Arrays.copyOf(eventRows, newLength);
         }
-        else {
-            accessTransactionsForDate(date).cashInTransactions.add(new CashTransactionToRecord(cashAccount, transaction, amount));
+        
+        int priority = InvestmentTransactionStore.getPriority(store.getTypeCode(row));
+        long eventKey = makeEventKey(store.getEpochDay(row), priority, eventCount);
+        
+        // Rows normally come from a store in store order, which is already sorted.
+        if ((eventCount > 0) && (eventKey < eventKeys[eventCount - 1])) {
+            areEventsSorted = false;
         }
+        
+        eventKeys[eventCount] = eventKey;
+        eventStores[eventCount] = store;
+        eventRows[eventCount] = row;
+        ++eventCount;
     }
     
     public final void finalizeTransactions() {
-        dateTransactionsToProcess.forEach((date, transactions) -> {
-            transactions.cashInTransactions.forEach((entry) -> {
-                recordCashTransactionImpl(entry.cashAccount, entry.transaction, entry.amount);
-            });
-            
-            transactions.sellTransactions.forEach((entry) -> {
-                recordTransactionImpl(entry);
-            });
-            
-            transactions.buyTransactions.forEach((entry) -> {
-                recordTransactionImpl(entry);
-            });
-
-            transactions.cashOutTransactions.forEach((entry) -> {
-                recordCashTransactionImpl(entry.cashAccount, entry.transaction, entry.amount);
-            });
-        });
+        long [] previousSequence = SecurityLot.beginLotIdSequence(nextLotId);
+        try {
+            recordTransactionsToProcess();
+        }
+        finally {
+            nextLotId = SecurityLot.endLotIdSequence(previousSequence);
+        }
+        if (nextLotId - firstLotId > SecurityLot.LOT_ID_BLOCK_SIZE) {
+            throw new IllegalStateException("Too many lots created!");
+        }
         
-        dateTransactionsToProcess.clear();
+        freezeDateEntries();
+        compactHistory();
     }
     
-    public boolean isCashInString(String text) {
-        text = text.toLowerCase();
-        return text.contains("[cash-in]");
+    
+    protected void recordTransactionsToProcess() {
+        if (!areEventsSorted) {
+            Arrays.sort(eventKeys, 0, eventCount);
+        }
+        
+        for (int i = 0; i < eventCount; ++i) {
+            int sequence = getEventSequence(eventKeys[i]);
+            InvestmentTransactionStore store = eventStores[sequence];
+            int row = eventRows[sequence];
+            switch (store.getTypeCode(row)) {
+                case InvestmentTransactionStore.TYPE_CASH_IN:
+                case InvestmentTransactionStore.TYPE_CASH_OUT:
+                    recordCashTransactionImpl(store, row);
+                    break;
+                    
+                default :
+                    recordTransactionImpl(store, row);
+                    break;
+            }
+        }
+        
+        Arrays.fill(eventStores, 0, eventCount, null);
+        eventCount = 0;
+        areEventsSorted = true;
     }
     
-    public final void recordCashTransactionImpl(Account cashAccount, Transaction transaction, BigDecimal amount) {
-        LocalDate date = transaction.getLocalDate();
+    public final void recordCashTransactionImpl(InvestmentTransactionStore store, int row) {
+        LocalDate date = store.getDate(row);
+        BigDecimal amount = store.getQuantity(row);
 
-        String lotId = SecurityLot.makeLotId();
+        long lotNumber = SecurityLot.makeLotNumber();
         SecurityLotAction action;
 
         SecurityLots previousLots;
         List<SecurityLotAction> otherActions;
+        boolean isCheckpoint = false;
 
-        DateEntry previousDateEntry = dateEntries.floor(new DateEntry(date));
+        DateEntry previousDateEntry = floorDateEntry(date);
         if (previousDateEntry == null) {
             previousLots = new SecurityLots();
             otherActions = null;
@@ -525,29 +960,13 @@ public class SecurityTransactionTracker {
         if (amount.compareTo(BigDecimal.ZERO) > 0) {
             // Is it income, or cash inflow?
             // Cash inflow has cost basis, income does not.
-            boolean isIncome = !isCashInString(transaction.getMemo());
-            
-            if (isIncome) {
-                isIncome = false;
-                for (TransactionEntry entry : transaction.getTransactionEntries()) {
-                    if (entry.getCreditAccount() != cashAccount) {
-                        continue;
-                    }
-
-                    Account debitAccount = entry.getDebitAccount();
-                    if ((debitAccount.getAccountType().getAccountGroup() == AccountGroup.INCOME)
-                      && !isCashInString(debitAccount.getDescription())) {
-                        isIncome = true;
-                        break;
-                    }
-                }
-            }
+            boolean isIncome = !store.isCashIn(row);
             
             if (isIncome) {
                 action = new SecurityLotAction.DistributeCash(date, amount);
             }
             else {
-                SecurityLot newLot = new SecurityLot(lotId, date, amount, amount, null, amount);
+                SecurityLot newLot = new SecurityLot(lotNumber, date, amount, amount, null, amount);
                 action = new SecurityLotAction.AddLot(newLot);
             }
         }
@@ -555,7 +974,7 @@ public class SecurityTransactionTracker {
             BigDecimal sharesToRemove = amount.negate();
             BigDecimal currentShares = previousLots.getTotalShares();
             if (sharesToRemove.compareTo(currentShares) <= 0) {
-                action = new SecurityLotAction.SellWithinDateThenFIFOShares(date, amount.negate(), 90);
+                action = new SecurityLotAction.SellWithinDateThenFIFOShares(date, amount.negate(), CASH_WITHDRAWAL_LIFO_DAYS);
                 //action = new SecurityLotAction.SellFIFOShares(date, amount.negate());
             }
             else {
@@ -563,12 +982,23 @@ public class SecurityTransactionTracker {
                 // we'll just go negative shares.
                 BigDecimal negativeShares = currentShares.subtract(sharesToRemove);
                 previousLots = new SecurityLots();
-                SecurityLot newLot = new SecurityLot(lotId, date, negativeShares, negativeShares, null, BigDecimal.ZERO);
+                SecurityLot newLot = new SecurityLot(lotNumber, date, negativeShares, negativeShares, null, BigDecimal.ZERO);
                 action = new SecurityLotAction.AddLot(newLot);
+                
+                // The actions can't be replayed since we've replaced the lots.
+                isCheckpoint = true;
             }
         }
 
+        ReportProfile.Counter.LOT_ACTIONS_APPLIED.increment();
+        long firstLotId = SecurityLot.peekNextLotId();
         SecurityLots newLots = action.applyAction(previousLots);
+        SecurityLots mergedLots = mergeAgedLots(date, newLots);
+        if (mergedLots != newLots) {
+            // The merge has to be part of the action so replaying the action reproduces the lots.
+            action = new SecurityLotAction.MergeLotsAfter(action, date, date.minusDays(cashLotCompactionDays), this.firstLotId);
+            newLots = mergedLots;
+        }
         BigDecimal marketPrice = BigDecimal.ONE;
 
         
@@ -576,7 +1006,7 @@ public class SecurityTransactionTracker {
         boolean isDebug = false;
         //isDebug = true;
         if (isDebug) {
-            System.out.println("\n" + date + "\t" + transaction.getTransactionMemo() + "\t" + amount);
+            System.out.println("\n" + date + "\t" + store.getTransaction(row).getTransactionMemo() + "\t" + amount);
             System.out.println("Old Lots:\t" + "\t" + previousLots.getTotalShares() + "\t" + previousLots.getTotalCostBasis() + "\t" + previousLots.getTotalCashIn());
             for (SecurityLot lot : previousLots.getSecurityLots()) {
                 System.out.println("\t" + lot.getCostBasisDate() + "\t" + lot.getShares() + "\t" + lot.getCostBasis() + "\t" + lot.getCashInBasis());
@@ -590,9 +1020,36 @@ public class SecurityTransactionTracker {
         
         
         DateEntry dateEntry = new DateEntry(date, marketPrice, action, otherActions, newLots);
+        addDateEntry(dateEntry, previousDateEntry, otherActions, firstLotId, isCheckpoint);
+    }
+    
+    
+    /**
+     * Adds a new date entry, replacing the previous date entry if the new entry is for
+     * the same date.
+     * @param dateEntry The date entry to add.
+     * @param previousDateEntry The date entry preceding the new date entry, may be <code>null</code>.
+     * @param otherActions  If not <code>null</code> the actions of previousDateEntry, which is
+     * being replaced.
+     * @param firstLotId    The value of {@link SecurityLot#peekNextLotId() } before the date entry's
+     * action was applied.
+     * @param isCheckpoint  If <code>true</code> the date entry's security lots cannot be rebuilt
+     * by replaying its actions so it must always keep its security lots.
+     */
+    protected void addDateEntry(DateEntry dateEntry, DateEntry previousDateEntry, List<SecurityLotAction> otherActions, 
+            long firstLotId, boolean isCheckpoint) {
+        frozenDateEntries = null;
+        
+        dateEntry.isCheckpoint = isCheckpoint;
         if (otherActions != null) {
+            dateEntry.isCheckpoint |= previousDateEntry.isCheckpoint;
+            dateEntry.firstLotIds = Arrays.copyOf(previousDateEntry.firstLotIds, previousDateEntry.firstLotIds.length + 1);
             dateEntries.remove(previousDateEntry);
         }
+        else {
+            dateEntry.firstLotIds = new long [1];
+        }
+        dateEntry.firstLotIds[dateEntry.firstLotIds.length - 1] = firstLotId;
         dateEntries.add(dateEntry);
     }
     
@@ -600,45 +1057,25 @@ public class SecurityTransactionTracker {
         System.out.println(title + "\t" + date + "\t" + quantity + "\t" + cashValue);
     }
     
-    public final void recordTransactionImpl(InvestmentTransaction transaction) {
-        LocalDate date = transaction.getLocalDate();
-        BigDecimal quantity = transaction.getQuantity();
-        BigDecimal cashValue = getTransactionCashValue(transaction);
+    public final void recordTransactionImpl(InvestmentTransactionStore store, int row) {
+        LocalDate date = store.getDate(row);
+        BigDecimal quantity = store.getQuantity(row);
         Collection<SecurityLots.LotShares> lotShares = null;
 
-        //dumpTransaction(transaction.getTransactionType().toString(), date, quantity, cashValue);
+        //dumpTransaction(store.getTransaction(row).getTransactionType().toString(), date, quantity, store.getCashValue(row));
         
         SecurityLotAction action = null;
         SecurityLot newLot;
-        switch (transaction.getTransactionType()){
-            case ADDSHARE:
-                newLot = newLotForTransaction(transaction, true);
-                action = new SecurityLotAction.AddLot(newLot);
-                break;
-                
-            case BUYSHARE:
-                String memo = transaction.getMemo().toLowerCase();
-                boolean isCashIn = !memo.contains("reinvested") && (cashValue.compareTo(BigDecimal.ZERO) > 0);
-                newLot = newLotForTransaction(transaction, isCashIn);
+        switch (store.getTypeCode(row)) {
+            case InvestmentTransactionStore.TYPE_ADD_SHARE:
+            case InvestmentTransactionStore.TYPE_BUY_SHARE:
+            case InvestmentTransactionStore.TYPE_REINVEST_DIVIDEND:
+                newLot = newLotForTransaction(store, row);
                 action = new SecurityLotAction.AddLot(newLot);
                 break;
                 
-            case DIVIDEND:
-                break;
-                
-            case REINVESTDIV:
-                newLot = newLotForTransaction(transaction, false);
-                action = new SecurityLotAction.AddLot(newLot);
-                break;
-                
-            case REMOVESHARE:
-                break;
-                
-            case RETURNOFCAPITAL:
-                break;
-                
-            case SELLSHARE:
-                lotShares = getLotSharesFromTransaction(transaction);
+            case InvestmentTransactionStore.TYPE_SELL_SHARE:
+                lotShares = getLotSharesFromTransaction(store, row);
                 if (lotShares == null) {
                     action = new SecurityLotAction.SellFIFOShares(date, quantity);
                 }
@@ -647,16 +1084,16 @@ public class SecurityTransactionTracker {
                 }
                 break;
                 
-            case SPLITSHARE:
-                action = createScaleSharesAction(transaction, quantity);
+            case InvestmentTransactionStore.TYPE_SPLIT_SHARE:
+                action = createScaleSharesAction(date, quantity);
                 break;
                 
-            case MERGESHARE:
-                action = createScaleSharesAction(transaction, quantity.negate());
+            case InvestmentTransactionStore.TYPE_MERGE_SHARE:
+                action = createScaleSharesAction(date, quantity.negate());
                 break;
                 
             default:
-                throw new AssertionError(transaction.getTransactionType().name());
+                throw new AssertionError("Not an investment transaction type: " + store.getTypeCode(row));
             
         }
         
@@ -664,7 +1101,7 @@ public class SecurityTransactionTracker {
             return;
         }
         
-        DateEntry previousDateEntry = dateEntries.floor(new DateEntry(date));
+        DateEntry previousDateEntry = floorDateEntry(date);
         SecurityLots previousLots;
         List<SecurityLotAction> otherActions;
         if (previousDateEntry == null) {
@@ -679,24 +1116,32 @@ public class SecurityTransactionTracker {
             otherActions = (previousDateEntry.getDate().equals(date)) ? previousDateEntry.getSecurityLotActions() : null;
         }
         
+        ReportProfile.Counter.LOT_ACTIONS_APPLIED.increment();
+        long firstLotId = SecurityLot.peekNextLotId();
         SecurityLots newLots = action.applyAction(previousLots);
-        BigDecimal marketPrice = transaction.getSecurityNode().getMarketPrice(date, transaction.getInvestmentAccount().getCurrencyNode());
+        BigDecimal marketPrice = SecurityPriceCache.getMarketPrice(store.getSecurityNode(row), date, store.getCurrencyNode(row));
         
-        DateEntry dateEntry = new DateEntry(transaction.getLocalDate(), marketPrice, action, otherActions, newLots);
-        if (otherActions != null) {
-            dateEntries.remove(previousDateEntry);
+        // Specific lot sales refer to the lots being sold, which won't be the lots
+        // produced by replaying the actions.
+        boolean isCheckpoint = (action instanceof SecurityLotAction.SellSpecificLots);
+        
+        SecurityLots mergedLots = mergeAgedLots(date, newLots);
+        if (mergedLots != newLots) {
+            action = new SecurityLotAction.MergeLotsAfter(action, date, date.minusDays(cashLotCompactionDays), this.firstLotId);
+            newLots = mergedLots;
         }
-        dateEntries.add(dateEntry);
+        
+        DateEntry dateEntry = new DateEntry(date, marketPrice, action, otherActions, newLots);
+        addDateEntry(dateEntry, previousDateEntry, otherActions, firstLotId, isCheckpoint);
     }
     
     
-    protected SecurityLotAction.ScaleShares createScaleSharesAction(InvestmentTransaction transaction, BigDecimal sharesAdded) {
+    protected SecurityLotAction.ScaleShares createScaleSharesAction(LocalDate date, BigDecimal sharesAdded) {
         if (sharesAdded.compareTo(BigDecimal.ZERO) == 0) {
             return null;
         }
         
-        LocalDate date = transaction.getLocalDate();
-        DateEntry previousDateEntry = dateEntries.floor(new DateEntry(date));
+        DateEntry previousDateEntry = floorDateEntry(date);
         if (previousDateEntry == null) {
             return null;
         }
@@ -708,41 +1153,31 @@ public class SecurityTransactionTracker {
     }
 
     
-    protected SecurityLot newLotForTransaction(InvestmentTransaction transaction, boolean isCashIn) {
-        String lotId = null;
-        Collection<String> lotNames = lotNamesFromString(transaction.getMemo());
-        if ((lotNames != null) && !lotNames.isEmpty()) {
-            Iterator<String> iterator = lotNames.iterator();
-            if (iterator.hasNext()) {
-                lotId = iterator.next();
-            }
-        }
+    protected SecurityLot newLotForTransaction(InvestmentTransactionStore store, int row) {
+        String [] lotNames = store.getLotNames(row);
+        String lotId = (lotNames.length > 0) ? lotNames[0] : null;
+        
+        LocalDate date = store.getDate(row);
+        BigDecimal shares = store.getQuantity(row);
+        BigDecimal costBasis = store.getCashValue(row);
+        BigDecimal cashInBasis = (store.isCashIn(row)) ? costBasis : BigDecimal.ZERO;
         if (StringUtil.isEmpty(lotId)) {
-            lotId = SecurityLot.makeLotId();
+            return new SecurityLot(SecurityLot.makeLotNumber(), date, shares, costBasis, null, cashInBasis);
         }
-        
-        LocalDate date = transaction.getLocalDate();
-        BigDecimal shares = transaction.getQuantity();
-        BigDecimal costBasis = getTransactionCashValue(transaction);
-        BigDecimal cashInBasis = (isCashIn) ? costBasis : BigDecimal.ZERO;
         return new SecurityLot(lotId, date, shares, costBasis, null, cashInBasis);
     }
     
-    protected BigDecimal getTransactionCashValue(InvestmentTransaction transaction) {
-        BigDecimal cashValue = transaction.getNetCashValue().setScale(securityNode.getScale(), MathConstants.roundingMode);
-        return cashValue;
-    }
-    
     
-    protected Collection<SecurityLots.LotShares> getQuickTradeMatchingLotSharesFromTransaction(InvestmentTransaction transaction) {
-        DateEntry dateEntry = getDateEntry(transaction.getLocalDate());
+    protected Collection<SecurityLots.LotShares> getQuickTradeMatchingLotSharesFromTransaction(InvestmentTransactionStore store, int row) {
+        LocalDate date = store.getDate(row);
+        DateEntry dateEntry = getDateEntry(date);
         if (dateEntry == null) {
             return null;
         }
         
-        LocalDate cutoffDate = transaction.getLocalDate().minusDays(365);
+        LocalDate cutoffDate = date.minusDays(365);
 
-        BigDecimal transactionShares = transaction.getQuantity();
+        BigDecimal transactionShares = store.getQuantity(row);
         
         SecurityLots securityLots = dateEntry.getSecurityLots();
         for (SecurityLot securityLot : securityLots.getSecurityLots()) {
@@ -760,14 +1195,14 @@ public class SecurityTransactionTracker {
     }
 
     
-    protected Collection<SecurityLots.LotShares> getLotSharesFromTransaction(InvestmentTransaction transaction) {
-        String memo = transaction.getMemo();
-        Collection<String> lotNames = lotNamesFromString(memo);
-        if ((lotNames == null) || (lotNames.isEmpty())) {
-            return getQuickTradeMatchingLotSharesFromTransaction(transaction);
+    protected Collection<SecurityLots.LotShares> getLotSharesFromTransaction(InvestmentTransactionStore store, int row) {
+        String [] lotNames = store.getLotNames(row);
+        if (lotNames.length == 0) {
+            return getQuickTradeMatchingLotSharesFromTransaction(store, row);
         }
         
-        DateEntry dateEntry = getDateEntry(transaction.getLocalDate());
+        LocalDate date = store.getDate(row);
+        DateEntry dateEntry = getDateEntry(date);
         if (dateEntry == null) {
             return null;
         }
@@ -779,7 +1214,7 @@ public class SecurityTransactionTracker {
             SecurityLot lot = securityLots.getSecurityLotWithId(lotName);
             if (lot == null) {
                 // All or nothing...
-                LOG.warning("Lot not found, ignoring all lots:\t" + transaction.getLocalDate() + "\t" + lotName);
+                LOG.warning("Lot not found, ignoring all lots:\t" + date + "\t" + lotName);
                 return null;
             }
             
@@ -788,9 +1223,9 @@ public class SecurityTransactionTracker {
             totalShares = totalShares.add(lot.getShares());
         }
         
-        BigDecimal transactionShares = transaction.getQuantity();
+        BigDecimal transactionShares = store.getQuantity(row);
         if (totalShares.compareTo(transactionShares) != 0) {
-            LOG.warning("Lot shares do not match transaction shares, ignoring all lots:\t" + transaction.getLocalDate()
+            LOG.warning("Lot shares do not match transaction shares, ignoring all lots:\t" + date
                 + "\tTransaction Shares:\t" + transactionShares
                 + "\tLot Shares:\t" + totalShares);
             return null;
@@ -798,50 +1233,4 @@ public class SecurityTransactionTracker {
         
         return lotShares;
     }
-    
-    protected static final String LOT_TAG = "LOT:";
-    protected static final String LOT_SEPARATOR_TAG = ";";
-    
-    protected Collection<String> lotNamesFromString(String text) {
-        if (StringUtil.isEmpty(text)) {
-            return null;
-        }
-        text = text.trim();
-        
-        int startIndex = text.indexOf(LOT_TAG);
-        if (startIndex < 0) {
-            return null;
-        }
-        
-        Collection<String> lotNames = new ArrayList<>();
-        
-        while (true) {
-            startIndex += LOT_TAG.length();
-            int endIndex = text.indexOf(LOT_TAG, startIndex);
-
-            String lotName;
-            if (endIndex < 0) {
-                lotName = text.substring(startIndex);
-                lotName = cleanupLotName(lotName);
-                lotNames.add(lotName);
-                break;
-            }
-            
-            lotName = text.substring(startIndex, endIndex);
-            lotName = cleanupLotName(lotName);
-            lotNames.add(lotName);
-            
-            startIndex = endIndex;
-        }
-
-        return lotNames;
-    }
-    
-    protected String cleanupLotName(String lotName) {
-        lotName = lotName.trim();
-        if (lotName.endsWith(LOT_SEPARATOR_TAG)) {
-            lotName = lotName.substring(0, lotName.length() - LOT_SEPARATOR_TAG.length()).trim();
-        }
-        return lotName;
-    }
 }
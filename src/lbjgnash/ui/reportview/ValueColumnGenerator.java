@@ -23,7 +23,7 @@ import com.leeboardtools.util.ResourceSource;
 class ValueColumnGenerator extends BalanceColumnGenerator {
 
     @Override
-    protected String getColumnTitle(int columnOffset, AccountEntry accountEntry, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
+    protected String getColumnTitle(int columnOffset, AccountEntry accountEntry, DateEntry dateEntry, ReportOutput reportOutput) {
         if (columnOffset == 0) {
             return ResourceSource.getString("Report.ColumnHeading.Value");
         }
@@ -31,13 +31,13 @@ class ValueColumnGenerator extends BalanceColumnGenerator {
     }
 
     @Override
-    protected String getAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
-        return reportOutput.toMonetaryValueString(accountInfo.balance, accountInfo.accountEntry.account);
+    protected CellValue getAccountEntryCellValue(BalanceAccountEntryInfo accountInfo, DateEntry dateEntry, ReportOutput reportOutput) {
+        return reportOutput.toMonetaryCellValue(accountInfo.balance, accountInfo.accountEntry.account);
     }
 
     @Override
-    protected String getGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportDataView.ReportOutput reportOutput) {
-        return reportOutput.toMonetaryValueString(dateEntryInfo.totalBalance, null);
+    protected CellValue getGrandTotalCellValue(BalanceDateEntryInfo dateEntryInfo, DateEntry dateEntry, ReportOutput reportOutput) {
+        return reportOutput.toMonetaryCellValue(dateEntryInfo.totalBalance, null);
     }
     
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import jgnash.engine.MathConstants;
+
+/**
+ * Computes the compound annual growth rate based 'year ago' value sums of a set of security
+ * lots, see {@link SecurityTransactionTracker#calcYearAgoValueSum(java.time.LocalDate, int, lbjgnash.ui.reportview.SecurityLots, java.math.BigDecimal) }.
+ * <p>
+ * The lots are copied into primitive arrays when the calculator is created, the sums are then
+ * computed entirely with doubles, only the final sum is converted back to a {@link BigDecimal}.
+ * A calculator can be reused for any number of dates and prices.
+ * @author Albert Santos
+ */
+public class YearAgoValueCalculator {
+    private final double [] shares;
+    private final double [] costBases;
+    private final int [] costBasisEpochDays;
+    private final int scale;
+
+    /**
+     * Constructor.
+     * @param securityLots  The security lots.
+     */
+    public YearAgoValueCalculator(SecurityLots securityLots) {
+        int count = 0;
+        for (SecurityLot securityLot : securityLots.getSecurityLots()) {
+            if (securityLot.getCostBasis().compareTo(BigDecimal.ZERO) > 0) {
+                ++count;
+            }
+        }
+
+        shares = new double [count];
+        costBases = new double [count];
+        costBasisEpochDays = new int [count];
+
+        int lotScale = 0;
+        int index = 0;
+        for (SecurityLot securityLot : securityLots.getSecurityLots()) {
+            BigDecimal costBasis = securityLot.getCostBasis();
+            if (costBasis.compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+
+            shares[index] = securityLot.getShares().doubleValue();
+            costBases[index] = costBasis.doubleValue();
+            costBasisEpochDays[index] = (int)securityLot.getCostBasisDate().toEpochDay();
+            lotScale = Math.max(lotScale, costBasis.scale());
+            ++index;
+        }
+
+        scale = lotScale;
+    }
+
+
+    /**
+     * Calculates the year ago value sum for a date.
+     * @param date  The date of interest.
+     * @param minDays   The minimum number of days before a rate of return is computed for a lot.
+     * If the lot is too new, the lot's cost basis is used as-is (i.e. 0% return)
+     * @param currentPrice  The price of the security as of date.
+     * @return The sum of the year ago values.
+     */
+    public BigDecimal calcYearAgoValueSum(LocalDate date, int minDays, BigDecimal currentPrice) {
+        if (currentPrice.compareTo(BigDecimal.ZERO) == 0) {
+            return BigDecimal.ZERO;
+        }
+
+        int epochDay = (int)date.toEpochDay();
+        double sum = sumForDay(epochDay, epochDay - minDays, currentPrice.doubleValue());
+        return toBigDecimal(sum);
+    }
+
+
+    /**
+     * Calculates the year ago value sums for a number of dates.
+     * @param dates The dates of interest.
+     * @param minDays   The minimum number of days before a rate of return is computed for a lot.
+     * @param prices    The prices of the security, one for each date.
+     * @return An array containing the sums, one for each date.
+     */
+    public BigDecimal [] calcYearAgoValueSums(LocalDate [] dates, int minDays, BigDecimal [] prices) {
+        BigDecimal [] sums = new BigDecimal [dates.length];
+        for (int i = 0; i < dates.length; ++i) {
+            double price = prices[i].doubleValue();
+            if (price == 0.) {
+                sums[i] = BigDecimal.ZERO;
+            }
+            else {
+                int epochDay = (int)dates[i].toEpochDay();
+                sums[i] = toBigDecimal(sumForDay(epochDay, epochDay - minDays, price));
+            }
+        }
+        return sums;
+    }
+
+
+    private double sumForDay(int epochDay, int cutoffEpochDay, double price) {
+        double sum = 0;
+        int count = shares.length;
+        for (int i = 0; i < count; ++i) {
+            double costBasis = costBases[i];
+            int costBasisEpochDay = costBasisEpochDays[i];
+            if (costBasisEpochDay >= cutoffEpochDay) {
+                sum += costBasis;
+                continue;
+            }
+
+            double value = shares[i] * price;
+
+            // (Ending/Begining)^(1/time) - 1
+            double time = (epochDay - costBasisEpochDay) / 365.25;
+            double rateOfReturn = Math.pow(value / costBasis, 1. / time) - 1.;
+            if (rateOfReturn == -1.) {
+                sum += costBasis;
+            }
+            else {
+                sum += value / (1. + rateOfReturn);
+            }
+        }
+        return sum;
+    }
+
+
+    private BigDecimal toBigDecimal(double sum) {
+        return BigDecimal.valueOf(sum).setScale(scale, MathConstants.roundingMode);
+    }
+}
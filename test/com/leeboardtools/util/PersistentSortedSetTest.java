@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.leeboardtools.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class PersistentSortedSetTest {
+
+    public PersistentSortedSetTest() {
+    }
+
+    void checkSet(TreeSet<Integer> refSet, PersistentSortedSet<Integer> set) {
+        assertEquals(refSet.size(), set.size());
+        assertEquals(new ArrayList<>(refSet), new ArrayList<>(set));
+
+        List<Integer> descending = new ArrayList<>();
+        Iterator<Integer> iterator = set.descendingIterator();
+        while (iterator.hasNext()) {
+            descending.add(iterator.next());
+        }
+        assertEquals(new ArrayList<>(refSet.descendingSet()), descending);
+
+        if (!refSet.isEmpty()) {
+            assertEquals(refSet.first(), set.first());
+            assertEquals(refSet.last(), set.last());
+        }
+    }
+
+    @Test
+    public void testWithWithout() {
+        System.out.println("withWithout");
+
+        Random random = new Random(1234);
+        TreeSet<Integer> refSet = new TreeSet<>();
+        PersistentSortedSet<Integer> set = PersistentSortedSet.empty();
+
+        List<PersistentSortedSet<Integer>> history = new ArrayList<>();
+        List<List<Integer>> refHistory = new ArrayList<>();
+
+        for (int i = 0; i < 2000; ++i) {
+            Integer value = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                refSet.remove(value);
+                set = set.without(value);
+            }
+            else {
+                refSet.add(value);
+                set = set.with(value);
+            }
+
+            if ((i % 100) == 0) {
+                history.add(set);
+                refHistory.add(new ArrayList<>(refSet));
+            }
+        }
+
+        checkSet(refSet, set);
+
+        // The earlier sets are unaffected.
+        for (int i = 0; i < history.size(); ++i) {
+            assertEquals(refHistory.get(i), new ArrayList<>(history.get(i)));
+        }
+
+        // Adding an existing element or removing a missing element returns the same set.
+        assertSame(set, set.with(set.first()));
+        assertSame(set, set.without(-1));
+    }
+
+    @Test
+    public void testFromCollection() {
+        System.out.println("fromCollection");
+
+        PersistentSortedSet<Integer> set = PersistentSortedSet.fromCollection(Arrays.asList(5, 3, 9, 3, 1, 5));
+        checkSet(new TreeSet<>(Arrays.asList(1, 3, 5, 9)), set);
+        assertTrue(set.contains(9));
+        assertFalse(set.contains(4));
+        assertEquals(Integer.valueOf(5), set.ceiling(4));
+        assertEquals(Integer.valueOf(5), set.ceiling(5));
+        assertEquals(Integer.valueOf(1), set.ceiling(0));
+        assertNull(set.ceiling(10));
+
+        // The first of equal elements wins.
+        Comparator<String> ignoreCase = String.CASE_INSENSITIVE_ORDER;
+        PersistentSortedSet<String> strings = PersistentSortedSet.fromCollection(ignoreCase, Arrays.asList("b", "A", "a", "B"));
+        assertEquals(Arrays.asList("A", "b"), new ArrayList<>(strings));
+        assertEquals("A", strings.find("a"));
+
+        assertEquals(Arrays.asList(3, 5), new ArrayList<>(set.subSet(2, 9)));
+        assertEquals(Arrays.asList(1, 3), new ArrayList<>(set.headSet(5)));
+        assertEquals(Arrays.asList(5, 9), new ArrayList<>(set.tailSet(5)));
+    }
+}
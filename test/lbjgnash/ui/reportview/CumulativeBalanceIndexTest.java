@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class CumulativeBalanceIndexTest {
+
+    public CumulativeBalanceIndexTest() {
+    }
+
+    @Test
+    public void testGetBalance() {
+        System.out.println("getBalance");
+
+        CumulativeBalanceIndex index = new CumulativeBalanceIndex();
+        assertEquals(BigDecimal.ZERO, index.getBalance(LocalDate.of(2018, 1, 1)));
+
+        index.addAmount(LocalDate.of(2018, 1, 10), new BigDecimal("100.00"));
+        index.addAmount(LocalDate.of(2018, 1, 10), new BigDecimal("-25.50"));
+        index.addAmount(LocalDate.of(2018, 2, 1), new BigDecimal("10.25"));
+        index.addAmount(LocalDate.of(2018, 3, 15), new BigDecimal("-4.75"));
+        assertEquals(3, index.getDateCount());
+
+        assertEquals(BigDecimal.ZERO, index.getBalance(LocalDate.of(2018, 1, 9)));
+        assertEquals(new BigDecimal("74.50"), index.getBalance(LocalDate.of(2018, 1, 10)));
+        assertEquals(new BigDecimal("74.50"), index.getBalance(LocalDate.of(2018, 1, 31)));
+        assertEquals(new BigDecimal("84.75"), index.getBalance(LocalDate.of(2018, 2, 1)));
+        assertEquals(new BigDecimal("80.00"), index.getBalance(LocalDate.of(2018, 3, 15)));
+        assertEquals(new BigDecimal("80.00"), index.getBalance(LocalDate.of(2025, 1, 1)));
+
+        // Ranges are inclusive.
+        assertEquals(new BigDecimal("84.75"), index.getBalance(LocalDate.of(2018, 1, 10), LocalDate.of(2018, 2, 1)));
+        assertEquals(new BigDecimal("10.25"), index.getBalance(LocalDate.of(2018, 1, 11), LocalDate.of(2018, 2, 1)));
+        assertEquals(new BigDecimal("5.50"), index.getBalance(LocalDate.of(2018, 2, 1), LocalDate.of(2018, 12, 31)));
+        assertEquals(0, BigDecimal.ZERO.compareTo(index.getBalance(LocalDate.of(2018, 2, 2), LocalDate.of(2018, 3, 14))));
+        assertEquals(BigDecimal.ZERO, index.getBalance(LocalDate.of(2018, 3, 14), LocalDate.of(2018, 2, 2)));
+
+        // Lots of dates to force growth.
+        index = new CumulativeBalanceIndex();
+        LocalDate date = LocalDate.of(2000, 1, 1);
+        for (int i = 0; i < 1000; ++i) {
+            index.addAmount(date.plusDays(i), BigDecimal.ONE);
+        }
+        assertEquals(new BigDecimal(1000), index.getBalance(date.plusDays(2000)));
+        assertEquals(new BigDecimal(500), index.getBalance(date.plusDays(499)));
+        assertEquals(new BigDecimal(100), index.getBalance(date.plusDays(100), date.plusDays(199)));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddAmountOutOfOrder() {
+        System.out.println("addAmountOutOfOrder");
+
+        CumulativeBalanceIndex index = new CumulativeBalanceIndex();
+        index.addAmount(LocalDate.of(2018, 1, 10), BigDecimal.ONE);
+        index.addAmount(LocalDate.of(2018, 1, 9), BigDecimal.ONE);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import jgnash.engine.Account;
+import jgnash.engine.AccountType;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.InvestmentTransaction;
+import jgnash.engine.SecurityNode;
+import jgnash.engine.Transaction;
+import jgnash.engine.TransactionFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class InvestmentTransactionStoreTest {
+
+    public InvestmentTransactionStoreTest() {
+    }
+
+    @Test
+    public void testLotNamesFromString() {
+        System.out.println("lotNamesFromString");
+
+        assertEquals(0, InvestmentTransactionStore.lotNamesFromString(null).length);
+        assertEquals(0, InvestmentTransactionStore.lotNamesFromString("").length);
+        assertEquals(0, InvestmentTransactionStore.lotNamesFromString("Bought some shares").length);
+
+        assertArrayEquals(new String [] { "ABC" }, InvestmentTransactionStore.lotNamesFromString("LOT:ABC"));
+        assertArrayEquals(new String [] { "ABC", "123" }, InvestmentTransactionStore.lotNamesFromString(" Sold LOT: ABC; LOT:123 "));
+    }
+
+    @Test
+    public void testGetPriority() {
+        System.out.println("getPriority");
+
+        assertEquals(InvestmentTransactionStore.PRIORITY_CASH_IN, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_CASH_IN));
+        assertEquals(InvestmentTransactionStore.PRIORITY_SELL, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_SELL_SHARE));
+        assertEquals(InvestmentTransactionStore.PRIORITY_SELL, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_SPLIT_SHARE));
+        assertEquals(InvestmentTransactionStore.PRIORITY_SELL, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_MERGE_SHARE));
+        assertEquals(InvestmentTransactionStore.PRIORITY_BUY, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_ADD_SHARE));
+        assertEquals(InvestmentTransactionStore.PRIORITY_BUY, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_BUY_SHARE));
+        assertEquals(InvestmentTransactionStore.PRIORITY_BUY, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_REINVEST_DIVIDEND));
+        assertEquals(InvestmentTransactionStore.PRIORITY_CASH_OUT, InvestmentTransactionStore.getPriority(InvestmentTransactionStore.TYPE_CASH_OUT));
+    }
+
+    @Test
+    public void testBuildSortOrder() {
+        System.out.println("buildSortOrder");
+
+        // Within a date the rows are ordered cash in, sells, buys, cash out, otherwise the order they were added.
+        LocalDate date = LocalDate.of(2018, 3, 1);
+        InvestmentTransactionStore store = new InvestmentTransactionStore.Builder()
+                .addRow(date, InvestmentTransactionStore.TYPE_CASH_OUT, null, BigDecimal.valueOf(1), BigDecimal.valueOf(1), false)
+                .addRow(date, InvestmentTransactionStore.TYPE_BUY_SHARE, null, BigDecimal.valueOf(2), BigDecimal.valueOf(2), true)
+                .addRow(date, InvestmentTransactionStore.TYPE_SELL_SHARE, null, BigDecimal.valueOf(3), BigDecimal.valueOf(3), false)
+                .addRow(date, InvestmentTransactionStore.TYPE_CASH_IN, null, BigDecimal.valueOf(4), BigDecimal.valueOf(4), true)
+                .addRow(date, InvestmentTransactionStore.TYPE_ADD_SHARE, null, BigDecimal.valueOf(5), BigDecimal.valueOf(5), true)
+                .addRow(date, InvestmentTransactionStore.TYPE_CASH_IN, null, BigDecimal.valueOf(6), BigDecimal.valueOf(6), false)
+                .addRow(date, InvestmentTransactionStore.TYPE_SPLIT_SHARE, null, BigDecimal.valueOf(7), BigDecimal.valueOf(7), false)
+                .addRow(date.minusDays(1), InvestmentTransactionStore.TYPE_CASH_OUT, null, BigDecimal.valueOf(8), BigDecimal.valueOf(8), false)
+                .build();
+
+        int [] expectedQuantities = { 8, 4, 6, 3, 7, 2, 5, 1 };
+        assertEquals(expectedQuantities.length, store.getRowCount());
+        for (int row = 0; row < expectedQuantities.length; ++row) {
+            assertEquals("Row " + row, BigDecimal.valueOf(expectedQuantities[row]), store.getQuantity(row));
+        }
+        assertEquals(date.minusDays(1), store.getDate(0));
+        assertEquals(date, store.getDate(1));
+        assertEquals(InvestmentTransactionStore.TYPE_CASH_IN, store.getTypeCode(1));
+        assertEquals(InvestmentTransactionStore.TYPE_CASH_OUT, store.getTypeCode(7));
+    }
+
+    @Test
+    public void testAddCashTransaction() {
+        System.out.println("addCashTransaction");
+
+        CurrencyNode currency = new CurrencyNode();
+        Account bankAccount = new Account(AccountType.BANK, currency);
+        Account equityAccount = new Account(AccountType.EQUITY, currency);
+        LocalDate date = LocalDate.of(2018, 3, 1);
+
+        Transaction transaction = TransactionFactory.generateDoubleEntryTransaction(bankAccount, equityAccount, 
+                BigDecimal.TEN, date, "Deposit", "", "");
+
+        InvestmentTransactionStore store = new InvestmentTransactionStore.Builder()
+                .addCashTransaction(bankAccount, transaction, BigDecimal.ZERO)
+                .build();
+        assertEquals(0, store.getRowCount());
+
+        store = new InvestmentTransactionStore.Builder()
+                .addCashTransaction(bankAccount, transaction, BigDecimal.TEN)
+                .addCashTransaction(bankAccount, transaction, BigDecimal.ZERO)
+                .addCashTransaction(bankAccount, transaction, BigDecimal.TEN.negate())
+                .build();
+        assertEquals(2, store.getRowCount());
+        assertEquals(InvestmentTransactionStore.TYPE_CASH_IN, store.getTypeCode(0));
+        assertTrue(store.isCashIn(0));
+        assertEquals(InvestmentTransactionStore.TYPE_CASH_OUT, store.getTypeCode(1));
+        assertFalse(store.isCashIn(1));
+        assertEquals(date, store.getDate(1));
+    }
+
+    @Test
+    public void testIsCashInflow() {
+        System.out.println("isCashInflow");
+
+        CurrencyNode currency = new CurrencyNode();
+        Account bankAccount = new Account(AccountType.BANK, currency);
+        Account equityAccount = new Account(AccountType.EQUITY, currency);
+        Account salaryAccount = new Account(AccountType.INCOME, currency);
+        salaryAccount.setDescription("Salary");
+        Account giftAccount = new Account(AccountType.INCOME, currency);
+        giftAccount.setDescription("Gifts [Cash-In]");
+        LocalDate date = LocalDate.of(2018, 3, 1);
+
+        // Income is not a cash inflow...
+        assertFalse(InvestmentTransactionStore.isCashInflow(bankAccount, 
+                TransactionFactory.generateDoubleEntryTransaction(bankAccount, salaryAccount, BigDecimal.TEN, date, "Pay", "", "")));
+
+        // ...unless the memo or the income account says it is.
+        assertTrue(InvestmentTransactionStore.isCashInflow(bankAccount, 
+                TransactionFactory.generateDoubleEntryTransaction(bankAccount, salaryAccount, BigDecimal.TEN, date, "Bonus [cash-in]", "", "")));
+        assertTrue(InvestmentTransactionStore.isCashInflow(bankAccount, 
+                TransactionFactory.generateDoubleEntryTransaction(bankAccount, giftAccount, BigDecimal.TEN, date, "Birthday", "", "")));
+
+        // Everything else is.
+        assertTrue(InvestmentTransactionStore.isCashInflow(bankAccount, 
+                TransactionFactory.generateDoubleEntryTransaction(bankAccount, equityAccount, BigDecimal.TEN, date, "Opening", "", "")));
+    }
+
+    @Test
+    public void testAddInvestmentTransaction() {
+        System.out.println("addInvestmentTransaction");
+
+        CurrencyNode currency = new CurrencyNode();
+        Account bankAccount = new Account(AccountType.BANK, currency);
+        Account investmentAccount = new Account(AccountType.INVEST, currency);
+        SecurityNode securityNode = new SecurityNode(currency);
+        securityNode.setSymbol("SEC");
+        LocalDate date = LocalDate.of(2018, 3, 1);
+
+        InvestmentTransaction bought = TransactionFactory.generateBuyXTransaction(bankAccount, investmentAccount, securityNode, 
+                BigDecimal.TEN, BigDecimal.ONE, BigDecimal.ONE, date, "Bought LOT:A", Collections.emptyList());
+        InvestmentTransaction reinvested = TransactionFactory.generateBuyXTransaction(investmentAccount, investmentAccount, securityNode, 
+                BigDecimal.TEN, BigDecimal.ONE, BigDecimal.ONE, date, "Dividend Reinvested", Collections.emptyList());
+        InvestmentTransaction free = TransactionFactory.generateBuyXTransaction(bankAccount, investmentAccount, securityNode, 
+                BigDecimal.ZERO, BigDecimal.ONE, BigDecimal.ONE, date, "Bought", Collections.emptyList());
+        InvestmentTransaction added = TransactionFactory.generateAddXTransaction(investmentAccount, securityNode, 
+                BigDecimal.TEN, BigDecimal.ONE, date, "Reinvested");
+
+        InvestmentTransactionStore store = new InvestmentTransactionStore.Builder()
+                .addInvestmentTransaction(bought)
+                .addInvestmentTransaction(reinvested)
+                .addInvestmentTransaction(free)
+                .addInvestmentTransaction(added)
+                .build();
+
+        assertEquals(4, store.getRowCount());
+        assertEquals(InvestmentTransactionStore.TYPE_BUY_SHARE, store.getTypeCode(0));
+        assertTrue(store.isCashIn(0));
+        assertArrayEquals(new String [] { "A" }, store.getLotNames(0));
+        assertSame(bought, store.getTransaction(0));
+
+        // Reinvested dividends and shares bought for nothing don't bring in cash.
+        assertEquals(InvestmentTransactionStore.TYPE_BUY_SHARE, store.getTypeCode(1));
+        assertFalse(store.isCashIn(1));
+        assertEquals(InvestmentTransactionStore.TYPE_BUY_SHARE, store.getTypeCode(2));
+        assertFalse(store.isCashIn(2));
+
+        // Added shares always do.
+        assertEquals(InvestmentTransactionStore.TYPE_ADD_SHARE, store.getTypeCode(3));
+        assertTrue(store.isCashIn(3));
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import jgnash.engine.Account;
+import jgnash.engine.AccountType;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.SecurityNode;
+import jgnash.engine.StoredObject;
+import jgnash.engine.message.ChannelEvent;
+import jgnash.engine.message.Message;
+import jgnash.engine.message.MessageChannel;
+import jgnash.engine.message.MessageProperty;
+import lbjgnash.ui.ReportDefinition;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class ReportOutputTest {
+
+    public ReportOutputTest() {
+    }
+
+    @Test
+    public void testCellValues() {
+        System.out.println("cellValues");
+
+        ReportOutput reportOutput = new ReportOutput(ReportDefinition.fromStyle(ReportDefinition.Style.NET_WORTH));
+        CellValue cellValue = reportOutput.toMonetaryCellValue(new BigDecimal("12.345"), null);
+        assertEquals(new BigDecimal("12.35"), cellValue.getNumber());
+        assertEquals("12.35", cellValue.getText());
+
+        cellValue = reportOutput.toPercentCellValue(BigDecimal.ONE, new BigDecimal(4));
+        assertEquals(0, new BigDecimal(25).compareTo(cellValue.getNumber()));
+        assertEquals("25.0%", cellValue.getText());
+
+        assertSame(CellValue.NOT_AVAILABLE, reportOutput.toPercentCellValue(BigDecimal.ONE, BigDecimal.ZERO));
+
+        cellValue = reportOutput.toSharesQuantityCellValue(new BigDecimal("1.5"));
+        assertEquals("1.5000", cellValue.getText());
+
+        // Income/expense sub-totals are negated.
+        reportOutput = new ReportOutput(ReportDefinition.fromStyle(ReportDefinition.Style.INCOME_EXPENSE));
+        cellValue = reportOutput.toMonetaryCellValue(new BigDecimal("10"), null);
+        assertEquals(new BigDecimal("-10.00"), cellValue.getNumber());
+        assertEquals("-10.00", cellValue.getText());
+    }
+
+
+    @Test
+    public void testRowEntries() {
+        System.out.println("rowEntries");
+
+        ReportOutput reportOutput = new ReportOutput(ReportDefinition.fromStyle(ReportDefinition.Style.SECURITIES));
+
+        RowEntry rowB = new RowEntry();
+        rowB.setRowTitle("B");
+        reportOutput.namedRowEntries.put("B", rowB);
+        RowEntry rowA = new RowEntry();
+        rowA.setRowTitle("A");
+        reportOutput.namedRowEntries.put("A", rowA);
+        reportOutput.grandTotalRowEntry = new RowEntry();
+
+        List<RowEntry> rowEntries = reportOutput.getRowEntries();
+        assertEquals(3, rowEntries.size());
+        assertSame(rowA, rowEntries.get(0));
+        assertSame(rowB, rowEntries.get(1));
+        assertSame(reportOutput.grandTotalRowEntry, rowEntries.get(2));
+
+        ColumnEntry columnEntry = new ColumnEntry();
+        columnEntry.columnIndex = 2;
+        CellEntry cellEntry = new CellEntry(rowA, reportOutput.toMonetaryCellValue(BigDecimal.TEN, null), CellEntry.Style.SUBTOTAL);
+        rowA.setNonExpandedColumnCellValue(columnEntry, cellEntry);
+
+        assertSame(cellEntry, rowA.getCellEntry(2, false));
+        assertNull(rowA.getCellEntry(1, false));
+        assertNull(rowA.getCellEntry(2, true));
+        assertEquals(new BigDecimal("10.00"), rowA.getCellEntry(2, false).getNumber());
+    }
+
+
+    static AccountEntry addAccountEntries(ReportOutput reportOutput, Account account, Account ... childAccounts) {
+        AccountEntry accountEntry = new AccountEntry(account, true, null);
+        for (Account childAccount : childAccounts) {
+            accountEntry.childAccountEntries.add(new AccountEntry(childAccount, true, accountEntry));
+        }
+        reportOutput.accountEntries.add(accountEntry);
+        return accountEntry;
+    }
+
+    static EngineChanges createEngineChanges(ChannelEvent event, MessageProperty property, StoredObject object) {
+        Message message = new Message(MessageChannel.TRANSACTION, event, null);
+        if (object != null) {
+            message.setObject(property, object);
+        }
+        EngineChanges engineChanges = new EngineChanges();
+        engineChanges.addMessage(message);
+        return engineChanges;
+    }
+
+
+    @Test
+    public void testMarkChangedAccountEntries() {
+        System.out.println("markChangedAccountEntries");
+
+        CurrencyNode currency = new CurrencyNode();
+        Account assetsAccount = new Account(AccountType.ASSET, currency);
+        Account bankAccount = new Account(AccountType.BANK, currency);
+        Account savingsAccount = new Account(AccountType.BANK, currency);
+        Account brokerageAccount = new Account(AccountType.INVEST, currency);
+        SecurityNode securityNode = SecurityTransactionTrackerTest.createSecurityNode("ABC");
+        brokerageAccount.addSecurity(securityNode);
+
+        ReportDefinition definition = ReportDefinition.fromStyle(ReportDefinition.Style.NET_WORTH);
+        ReportOutput previousOutput = new ReportOutput(definition);
+        ReportOutput reportOutput = new ReportOutput(definition);
+        AccountEntry assetsEntry = addAccountEntries(reportOutput, assetsAccount, bankAccount, savingsAccount);
+        AccountEntry bankEntry = assetsEntry.childAccountEntries.get(0);
+        AccountEntry savingsEntry = assetsEntry.childAccountEntries.get(1);
+        AccountEntry brokerageEntry = addAccountEntries(reportOutput, brokerageAccount);
+
+        // Without a previous update everything is changed.
+        reportOutput.markChangedAccountEntries();
+        assertTrue(assetsEntry.isChanged && bankEntry.isChanged && savingsEntry.isChanged && brokerageEntry.isChanged);
+
+        // A changed child account changes its parent, but not its siblings.
+        reportOutput.setPreviousUpdate(previousOutput, createEngineChanges(ChannelEvent.TRANSACTION_ADD, 
+                MessageProperty.ACCOUNT, savingsAccount));
+        reportOutput.markChangedAccountEntries();
+        assertTrue(assetsEntry.isChanged);
+        assertFalse(bankEntry.isChanged);
+        assertTrue(savingsEntry.isChanged);
+        assertFalse(brokerageEntry.isChanged);
+
+        // A price change only changes the accounts holding the security.
+        reportOutput.setPreviousUpdate(previousOutput, createEngineChanges(ChannelEvent.SECURITY_HISTORY_ADD, 
+                MessageProperty.COMMODITY, securityNode));
+        reportOutput.markChangedAccountEntries();
+        assertFalse(assetsEntry.isChanged || bankEntry.isChanged || savingsEntry.isChanged);
+        assertTrue(brokerageEntry.isChanged);
+
+        // An exchange rate change changes everything.
+        reportOutput.setPreviousUpdate(previousOutput, createEngineChanges(ChannelEvent.EXCHANGE_RATE_ADD, null, null));
+        reportOutput.markChangedAccountEntries();
+        assertTrue(assetsEntry.isChanged && bankEntry.isChanged && savingsEntry.isChanged && brokerageEntry.isChanged);
+    }
+
+
+    @Test
+    public void testCopyUnchangedPortfolioMetrics() {
+        System.out.println("copyUnchangedPortfolioMetrics");
+
+        CurrencyNode currency = new CurrencyNode();
+        Account [] accounts = new Account [3];
+        AccountSecuritiesTracker [] accountTrackers = new AccountSecuritiesTracker [accounts.length];
+        SecurityTransactionTracker.DateEntry [] trackerDateEntries = new SecurityTransactionTracker.DateEntry [accounts.length];
+        LocalDate date = SecurityTransactionTrackerTest.START_DATE.plusDays(SecurityTransactionTrackerTest.DAY_COUNT);
+        for (int i = 0; i < accounts.length; ++i) {
+            accounts[i] = new Account(AccountType.INVEST, currency);
+            SecurityNode securityNode = SecurityTransactionTrackerTest.createSecurityNode("S" + i);
+            SecurityTransactionTracker tracker = SecurityTransactionTrackerTest.createTracker(
+                    SecurityTransactionTrackerTest.buildSecurityHistory(securityNode), securityNode, 0, 0);
+            accountTrackers[i] = new AccountSecuritiesTracker(accounts[i]);
+            accountTrackers[i].getTransactionTrackers().put(securityNode, tracker);
+            trackerDateEntries[i] = tracker.getDateEntry(date);
+        }
+
+        ReportDefinition definition = ReportDefinition.fromStyle(ReportDefinition.Style.SECURITIES);
+        ReportOutput previousOutput = new ReportOutput(definition);
+        PortfolioMetrics [] previousMetrics = new PortfolioMetrics [accounts.length];
+        for (int i = 0; i < accounts.length; ++i) {
+            addAccountEntries(previousOutput, accounts[i]).accountSecuritiesTracker = accountTrackers[i];
+            previousMetrics[i] = previousOutput.getPortfolioMetrics(trackerDateEntries[i], date);
+        }
+
+        // The first account is unchanged, the second changed, and the third is unchanged but its
+        // tracker was rebuilt.
+        ReportOutput reportOutput = new ReportOutput(definition);
+        reportOutput.setPreviousUpdate(previousOutput, createEngineChanges(ChannelEvent.TRANSACTION_ADD, 
+                MessageProperty.ACCOUNT, accounts[1]));
+        for (int i = 0; i < accounts.length; ++i) {
+            addAccountEntries(reportOutput, accounts[i]);
+        }
+        reportOutput.markChangedAccountEntries();
+        reportOutput.accountEntries.get(0).accountSecuritiesTracker = accountTrackers[0];
+        reportOutput.accountEntries.get(1).accountSecuritiesTracker = accountTrackers[1];
+        reportOutput.accountEntries.get(2).accountSecuritiesTracker = new AccountSecuritiesTracker(accounts[2]);
+        reportOutput.accountEntries.get(2).accountSecuritiesTracker.getTransactionTrackers().putAll(accountTrackers[2].getTransactionTrackers());
+
+        assertEquals(1, reportOutput.copyUnchangedPortfolioMetrics());
+        assertSame(previousMetrics[0], reportOutput.getPortfolioMetrics(trackerDateEntries[0], date));
+        assertNotSame(previousMetrics[1], reportOutput.getPortfolioMetrics(trackerDateEntries[1], date));
+        assertNotSame(previousMetrics[2], reportOutput.getPortfolioMetrics(trackerDateEntries[2], date));
+
+        // Nothing is carried over without engine changes.
+        reportOutput = new ReportOutput(definition);
+        reportOutput.setPreviousUpdate(previousOutput, null);
+        addAccountEntries(reportOutput, accounts[0]).accountSecuritiesTracker = accountTrackers[0];
+        reportOutput.markChangedAccountEntries();
+        assertEquals(0, reportOutput.copyUnchangedPortfolioMetrics());
+    }
+
+
+    @Test
+    public void testPreparePortfolioMetrics() {
+        System.out.println("preparePortfolioMetrics");
+
+        SecurityNode securityNode = SecurityTransactionTrackerTest.createSecurityNode("ABC");
+        SecurityTransactionTracker tracker = SecurityTransactionTrackerTest.createTracker(
+                SecurityTransactionTrackerTest.buildSecurityHistory(securityNode), securityNode, 0, 0);
+
+        ReportOutput reportOutput = new ReportOutput(ReportDefinition.fromStyle(ReportDefinition.Style.SECURITIES));
+        reportOutput.requiredPortfolioMetrics.addAll(PortfolioMetrics.metrics(PortfolioMetrics.Metric.YEAR_AGO_VALUE_SUM, 
+                PortfolioMetrics.Metric.CASH_IN_YEAR_AGO_VALUE_SUM));
+
+        // The last few dates are all past the last transaction, so they share a tracker date entry.
+        LocalDate lastDate = SecurityTransactionTrackerTest.START_DATE.plusDays(SecurityTransactionTrackerTest.DAY_COUNT);
+        LocalDate [] dates = { 
+            SecurityTransactionTrackerTest.START_DATE.minusDays(10),
+            SecurityTransactionTrackerTest.START_DATE.plusDays(200),
+            SecurityTransactionTrackerTest.START_DATE.plusDays(400),
+            lastDate,
+            lastDate.plusDays(30),
+            lastDate.plusDays(400),
+        };
+        for (int i = 0; i < dates.length; ++i) {
+            reportOutput.dateEntries.add(new DateEntry(dates[i], dates[i], i));
+        }
+
+        reportOutput.preparePortfolioMetrics(Arrays.asList(tracker));
+
+        final int minDays = reportOutput.getMinDaysForRateOfReturn();
+        PortfolioMetrics [] metrics = new PortfolioMetrics [dates.length];
+        for (int i = 0; i < dates.length; ++i) {
+            SecurityTransactionTracker.DateEntry trackerDateEntry = tracker.getDateEntry(dates[i]);
+            metrics[i] = reportOutput.portfolioMetrics.get(trackerDateEntry).get(dates[i]);
+            assertNotNull(metrics[i]);
+            assertEquals(trackerDateEntry.getYearAgoValueSum(dates[i], minDays), metrics[i].getYearAgoValueSum());
+            assertEquals(trackerDateEntry.getCashInYearAgoValueSum(dates[i], minDays), metrics[i].getCashInYearAgoValueSum());
+        }
+        assertSame(metrics[3].getTrackerDateEntry(), metrics[5].getTrackerDateEntry());
+        assertNotEquals(metrics[3].getYearAgoValueSum(), metrics[5].getYearAgoValueSum());
+
+        // Existing metrics are left alone.
+        reportOutput.preparePortfolioMetrics(Arrays.asList(tracker));
+        for (int i = 0; i < dates.length; ++i) {
+            assertSame(metrics[i], reportOutput.getPortfolioMetrics(tracker.getDateEntry(dates[i]), dates[i]));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import lbjgnash.ui.ReportDefinition;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class ReportProfileTest {
+
+    public ReportProfileTest() {
+    }
+
+    @Test
+    public void testProfile() {
+        System.out.println("profile");
+
+        ReportOutput reportOutput = new ReportOutput(ReportDefinition.fromStyle(ReportDefinition.Style.NET_WORTH));
+        ReportProfile profile = reportOutput.getProfile();
+
+        reportOutput.startPhase(ReportOutput.UpdatePhase.CREATE_ACCOUNT_ENTRIES);
+        ReportProfile.Counter.LOT_ACTIONS_APPLIED.increment();
+        ReportProfile.Counter.LOT_ACTIONS_APPLIED.increment();
+        new SecurityLots(new SecurityLots().getSecurityLots());
+
+        reportOutput.startPhase(ReportOutput.UpdatePhase.CREATE_DATE_ENTRIES);
+        profile.finish(reportOutput);
+
+        profile.addPhaseNanos(ReportOutput.UpdatePhase.UPDATE_TREE_TABLE_VIEW, 1000);
+        profile.addPhaseNanos(ReportOutput.UpdatePhase.UPDATE_TREE_TABLE_VIEW, 500);
+
+        assertEquals(2, profile.getCount(ReportProfile.Counter.LOT_ACTIONS_APPLIED));
+        assertEquals(1, profile.getCount(ReportProfile.Counter.SECURITY_LOTS_COPIES));
+        assertEquals(0, profile.getCount(ReportProfile.Counter.PRICE_LOOKUPS));
+
+        assertEquals(1500, profile.getPhaseNanos(ReportOutput.UpdatePhase.UPDATE_TREE_TABLE_VIEW));
+        assertEquals(0, profile.getPhaseNanos(ReportOutput.UpdatePhase.UPDATE_CELL_VALUES));
+        long total = profile.getPhaseNanos(ReportOutput.UpdatePhase.CREATE_ACCOUNT_ENTRIES)
+                + profile.getPhaseNanos(ReportOutput.UpdatePhase.CREATE_DATE_ENTRIES) + 1500;
+        assertEquals(total, profile.getTotalNanos());
+
+        String text = profile.toText();
+        assertTrue(text.contains("LOT_ACTIONS_APPLIED"));
+        assertTrue(text.contains("UPDATE_TREE_TABLE_VIEW"));
+    }
+}
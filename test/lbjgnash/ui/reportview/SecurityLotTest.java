@@ -104,4 +104,38 @@ public class SecurityLotTest {
         assertEquals(0, result);
     }
     
+    @Test
+    public void testLotIds() {
+        System.out.println("lotIds");
+        LocalDate date = LocalDate.of(2018,2,3);
+        BigDecimal shares = new BigDecimal(100);
+        BigDecimal costBasis = new BigDecimal(1000);
+        
+        SecurityLot lotA = new SecurityLot("12", date, shares, costBasis, null, null);
+        SecurityLot lotB = new SecurityLot(12, date, shares, costBasis, null, null);
+        assertEquals(12, lotA.getLotNumber());
+        assertEquals("12", lotB.getLotId());
+        assertEquals(lotA, lotB);
+        assertEquals(lotA.hashCode(), lotB.hashCode());
+        
+        assertEquals(SecurityLot.NO_LOT_NUMBER, new SecurityLot("012", date, shares, costBasis, null, null).getLotNumber());
+        assertEquals("012", new SecurityLot("012", date, shares, costBasis, null, null).getLotId());
+        assertEquals(SecurityLot.NO_LOT_NUMBER, SecurityLot.lotNumberFromLotId("L12"));
+        assertEquals(0, SecurityLot.lotNumberFromLotId("0"));
+        
+        // Numeric lot ids still compare as their Strings.
+        long [] values = { 0, 1, 2, 9, 10, 11, 19, 100, 101, 999, 1000, 123456789L, 1234567890123L };
+        for (long a : values) {
+            for (long b : values) {
+                int expected = Integer.signum(Long.toString(a).compareTo(Long.toString(b)));
+                assertEquals(a + " " + b, expected, Integer.signum(SecurityLot.compareDecimalStrings(a, b)));
+            }
+        }
+        
+        SecurityLot lotC = new SecurityLot(9, date, shares, costBasis, null, null);
+        assertTrue(lotB.compareTo(lotC) < 0);
+        assertEquals(new BigDecimal(50), lotC.withShares(new BigDecimal(50)).getShares());
+        assertEquals("9", lotC.withShares(new BigDecimal(50)).getLotId());
+    }
+    
 }
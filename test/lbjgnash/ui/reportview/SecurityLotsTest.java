@@ -282,4 +282,147 @@ public class SecurityLotsTest {
         checkSecurityLots(refLotsF, securityLots);
         
     }
+    
+    @Test
+    public void testGetSecurityLotWithId() {
+        System.out.println("getSecurityLotWithId");
+        
+        SecurityLot.nextLotId = 1;
+        
+        SecurityLot refLotsA[] = {
+            new SecurityLot("A", LocalDate.of(2017,1,2), new BigDecimal(100), new BigDecimal(1000), LocalDate.of(2017,1,2), BigDecimal.ZERO),
+            new SecurityLot("B", LocalDate.of(2017,1,2), new BigDecimal(200), new BigDecimal(2000), LocalDate.of(2017,1,3), BigDecimal.ZERO),
+            new SecurityLot("C", LocalDate.of(2017,1,2), new BigDecimal(300), new BigDecimal(3000), LocalDate.of(2017,1,4), BigDecimal.ZERO),
+        };
+        SecurityLots securityLotsA = new SecurityLots(Arrays.asList(refLotsA));
+        assertSame(refLotsA[1], securityLotsA.getSecurityLotWithId("B"));
+        assertNull(securityLotsA.getSecurityLotWithId("D"));
+        
+        // The index is carried over to derived lots.
+        SecurityLots securityLots = securityLotsA.removeFIFOShares(LocalDate.of(2018,1,2), new BigDecimal(150));
+        assertNull(securityLots.getSecurityLotWithId("A"));
+        assertNull(securityLots.getSecurityLotWithId("B"));
+        assertEquals(new BigDecimal(150), securityLots.getSecurityLotWithId("1").getShares());
+        assertSame(refLotsA[2], securityLots.getSecurityLotWithId("C"));
+        
+        SecurityLot newLot = new SecurityLot("B", LocalDate.of(2018,1,3), new BigDecimal(10), new BigDecimal(100), null, BigDecimal.ZERO);
+        securityLots = securityLots.addLot(newLot);
+        assertSame(newLot, securityLots.getSecurityLotWithId("B"));
+        
+        // Multiple lots with the same id, the first one in lot order is returned.
+        securityLots = securityLotsA.addLot(newLot);
+        assertSame(refLotsA[1], securityLots.getSecurityLotWithId("B"));
+    }
+    
+    @Test
+    public void testMergeLotsBefore() {
+        System.out.println("mergeLotsBefore");
+        
+        SecurityLot.nextLotId = 1100;
+        
+        SecurityLot refLots[] = {
+            new SecurityLot(1001, LocalDate.of(2016,1,2), new BigDecimal("100.00"), new BigDecimal("100.00"), null, new BigDecimal("100.00")),
+            new SecurityLot(1002, LocalDate.of(2016,2,2), new BigDecimal("50.00"), new BigDecimal("50.00"), null, new BigDecimal("50.00")),
+            new SecurityLot(1003, LocalDate.of(2016,3,2), new BigDecimal("200.00"), new BigDecimal("200.00"), null, new BigDecimal("200.00")),
+            new SecurityLot("5", LocalDate.of(2016,4,2), new BigDecimal("300.00"), new BigDecimal("300.00"), null, new BigDecimal("300.00")),
+            new SecurityLot(1004, LocalDate.of(2016,5,2), new BigDecimal("400.00"), new BigDecimal("400.00"), null, new BigDecimal("400.00")),
+            new SecurityLot(1005, LocalDate.of(2017,1,2), new BigDecimal("500.00"), new BigDecimal("500.00"), null, new BigDecimal("500.00")),
+        };
+        SecurityLots securityLots = new SecurityLots(Arrays.asList(refLots));
+        
+        // Only one lot before the cutoff, nothing to merge.
+        assertSame(securityLots, securityLots.mergeLotsBefore(LocalDate.of(2017,1,3), LocalDate.of(2016,2,1), 1000));
+        
+        // None of the lots are from the block.
+        assertSame(securityLots, securityLots.mergeLotsBefore(LocalDate.of(2017,1,3), LocalDate.of(2016,12,1), 2000));
+        
+        // The lot named "5" stops the merge, it may be referred to by a later transaction.
+        SecurityLots mergedLots = securityLots.mergeLotsBefore(LocalDate.of(2017,1,3), LocalDate.of(2016,12,1), 1000);
+        assertEquals(securityLots.getTotalShares(), mergedLots.getTotalShares());
+        assertEquals(securityLots.getTotalCostBasis(), mergedLots.getTotalCostBasis());
+        assertEquals(securityLots.getTotalCashIn(), mergedLots.getTotalCashIn());
+        
+        SecurityLot [] lots = mergedLots.getSecurityLots().toArray(new SecurityLot [0]);
+        assertEquals(4, lots.length);
+        assertEquals(1100, lots[0].getLotNumber());
+        assertEquals(LocalDate.of(2016,3,2), lots[0].getCostBasisDate());
+        assertEquals(new BigDecimal("350.00"), lots[0].getShares());
+        assertEquals(new BigDecimal("350.00"), lots[0].getCostBasis());
+        assertEquals(new BigDecimal("350.00"), lots[0].getCashInBasis());
+        assertSame(refLots[3], lots[1]);
+        assertSame(refLots[4], lots[2]);
+        assertSame(refLots[5], lots[3]);
+        
+        // Lots whose shares differ from their bases can't be merged exactly, nor can lots
+        // with the cost basis date of the first lot not merged.
+        SecurityLot otherLots[] = {
+            new SecurityLot(1001, LocalDate.of(2016,1,2), new BigDecimal("100.00"), new BigDecimal("100.00"), null, new BigDecimal("100.00")),
+            new SecurityLot(1002, LocalDate.of(2016,2,2), new BigDecimal("50.00"), new BigDecimal("50.00"), null, new BigDecimal("50.00")),
+            new SecurityLot(1003, LocalDate.of(2016,2,2), new BigDecimal("200.00"), new BigDecimal("200.00"), null, new BigDecimal("200.00")),
+            new SecurityLot(1004, LocalDate.of(2016,2,2), new BigDecimal("300.50"), new BigDecimal("300.00"), null, new BigDecimal("300.00")),
+            new SecurityLot(1005, LocalDate.of(2016,3,2), new BigDecimal("400.00"), new BigDecimal("400.00"), null, new BigDecimal("400.00")),
+        };
+        securityLots = new SecurityLots(Arrays.asList(otherLots));
+        assertSame(securityLots, securityLots.mergeLotsBefore(LocalDate.of(2017,1,3), LocalDate.of(2016,12,1), 1000));
+        
+        otherLots[3] = new SecurityLot(1004, LocalDate.of(2016,2,2), new BigDecimal("300.00"), new BigDecimal("300.00"), null, BigDecimal.ZERO);
+        securityLots = new SecurityLots(Arrays.asList(otherLots));
+        assertSame(securityLots, securityLots.mergeLotsBefore(LocalDate.of(2017,1,3), LocalDate.of(2016,12,1), 1000));
+        
+        otherLots[3] = new SecurityLot(1004, LocalDate.of(2016,2,2), new BigDecimal("300.00"), new BigDecimal("300.00"), null, new BigDecimal("300.00"));
+        securityLots = new SecurityLots(Arrays.asList(otherLots));
+        mergedLots = securityLots.mergeLotsBefore(LocalDate.of(2017,1,3), LocalDate.of(2016,12,1), 1000);
+        lots = mergedLots.getSecurityLots().toArray(new SecurityLot [0]);
+        assertEquals(1, lots.length);
+        assertEquals(new BigDecimal("1050.00"), lots[0].getShares());
+        assertEquals(LocalDate.of(2016,3,2), lots[0].getCostBasisDate());
+    }
+    
+    @Test
+    public void testRemoveWithinDateThenFIFOShares() {
+        System.out.println("removeWithinDateThenFIFOShares");
+        
+        SecurityLot.nextLotId = 1;
+        
+        SecurityLot refLots[] = {
+            new SecurityLot("A", LocalDate.of(2017,1,2), new BigDecimal(100), new BigDecimal(1000), null, BigDecimal.ZERO),
+            new SecurityLot("B", LocalDate.of(2017,6,1), new BigDecimal(200), new BigDecimal(2000), null, BigDecimal.ZERO),
+            new SecurityLot("C", LocalDate.of(2017,12,1), new BigDecimal(50), new BigDecimal(500), null, BigDecimal.ZERO),
+            new SecurityLot("D", LocalDate.of(2017,12,15), new BigDecimal(30), new BigDecimal(300), null, BigDecimal.ZERO),
+        };
+        SecurityLots securityLots = new SecurityLots(Arrays.asList(refLots));
+        LocalDate date = LocalDate.of(2017,12,31);
+        LocalDate cutoffDate = LocalDate.of(2017,10,2);
+        
+        // All from within the cutoff, newest first.
+        SecurityLots result = securityLots.removeWithinDateThenFIFOShares(date, new BigDecimal(60), cutoffDate);
+        SecurityLot [] lots = result.getSecurityLots().toArray(new SecurityLot [0]);
+        assertEquals(3, lots.length);
+        assertSame(refLots[0], lots[0]);
+        assertSame(refLots[1], lots[1]);
+        assertEquals(new BigDecimal(20), lots[2].getShares());
+        assertEquals(LocalDate.of(2017,12,1), lots[2].getCostBasisDate());
+        assertEquals(new BigDecimal(320), result.getTotalShares());
+        
+        // Everything within the cutoff, then oldest first.
+        result = securityLots.removeWithinDateThenFIFOShares(date, new BigDecimal(120), cutoffDate);
+        lots = result.getSecurityLots().toArray(new SecurityLot [0]);
+        assertEquals(2, lots.length);
+        assertEquals(new BigDecimal(60), lots[0].getShares());
+        assertEquals(new BigDecimal(600), lots[0].getCostBasis());
+        assertEquals(LocalDate.of(2017,1,2), lots[0].getCostBasisDate());
+        assertSame(refLots[1], lots[1]);
+        
+        // Same result as the separate LIFO and FIFO removals.
+        SecurityLots expected = securityLots.removeLIFOShares(date, new BigDecimal(80)).removeFIFOShares(date, new BigDecimal(40));
+        assertEquals(expected.getTotalShares(), result.getTotalShares());
+        assertEquals(expected.getTotalCostBasis(), result.getTotalCostBasis());
+        
+        try {
+            securityLots.removeWithinDateThenFIFOShares(date, new BigDecimal(400), cutoffDate);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+        }
+    }
 }
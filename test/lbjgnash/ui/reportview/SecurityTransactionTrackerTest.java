@@ -0,0 +1,469 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.SecurityNode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class SecurityTransactionTrackerTest {
+
+    public SecurityTransactionTrackerTest() {
+    }
+
+    @Test
+    public void testMakeEventKey() {
+        System.out.println("makeEventKey");
+
+        // Epoch days before 1970 are negative.
+        int dayA = (int)LocalDate.of(1965, 3, 1).toEpochDay();
+        int dayB = (int)LocalDate.of(2018, 3, 1).toEpochDay();
+
+        // In recording order...
+        long [] keys = {
+            SecurityTransactionTracker.makeEventKey(dayB, InvestmentTransactionStore.PRIORITY_CASH_OUT, 0),
+            SecurityTransactionTracker.makeEventKey(dayB, InvestmentTransactionStore.PRIORITY_BUY, 1),
+            SecurityTransactionTracker.makeEventKey(dayA, InvestmentTransactionStore.PRIORITY_BUY, 2),
+            SecurityTransactionTracker.makeEventKey(dayB, InvestmentTransactionStore.PRIORITY_CASH_IN, 3),
+            SecurityTransactionTracker.makeEventKey(dayB, InvestmentTransactionStore.PRIORITY_BUY, 4),
+            SecurityTransactionTracker.makeEventKey(dayA, InvestmentTransactionStore.PRIORITY_SELL, 5),
+        };
+
+        Arrays.sort(keys);
+
+        int [] expectedSequences = { 5, 2, 3, 1, 4, 0 };
+        for (int i = 0; i < keys.length; ++i) {
+            assertEquals(expectedSequences[i], SecurityTransactionTracker.getEventSequence(keys[i]));
+        }
+    }
+
+    static final LocalDate START_DATE = LocalDate.of(2010, 1, 4);
+    static final int DAY_COUNT = 720;
+
+    static SecurityNode createSecurityNode(String symbol) {
+        return createSecurityNode(symbol, BigDecimal.TEN);
+    }
+
+    static SecurityNode createSecurityNode(String symbol, BigDecimal price) {
+        SecurityNode securityNode = new SecurityNode() {
+            @Override
+            public BigDecimal getMarketPrice(LocalDate date, CurrencyNode node) {
+                return price;
+            }
+        };
+        securityNode.setSymbol(symbol);
+        return securityNode;
+    }
+
+    static BigDecimal shares(long value) {
+        return BigDecimal.valueOf(value).setScale(4);
+    }
+
+    static BigDecimal cash(String value) {
+        return new BigDecimal(value);
+    }
+
+    /**
+     * Builds a DRIP style history: buys, some of them tagged with lot names, reinvested
+     * dividends, specific lot and FIFO sales, a split and a merge.
+     */
+    static InvestmentTransactionStore buildSecurityHistory(SecurityNode securityNode) {
+        InvestmentTransactionStore.Builder builder = new InvestmentTransactionStore.Builder();
+        Map<String, BigDecimal> namedLots = new LinkedHashMap<>();
+        BigDecimal totalShares = BigDecimal.ZERO;
+        int buyCount = 0;
+        for (int day = 0; day < DAY_COUNT; ++day) {
+            LocalDate date = START_DATE.plusDays(day);
+            if ((day % 7) == 0) {
+                BigDecimal quantity = shares(10 + (day % 13));
+                String [] lotNames = {};
+                if ((++buyCount % 3) == 0) {
+                    String lotName = "B" + day;
+                    namedLots.put(lotName, quantity);
+                    lotNames = new String [] { lotName };
+                }
+                builder.addRow(date, InvestmentTransactionStore.TYPE_BUY_SHARE, securityNode, quantity, 
+                        quantity.multiply(BigDecimal.TEN).setScale(2, RoundingMode.HALF_UP), true, lotNames);
+                totalShares = totalShares.add(quantity);
+            }
+            if ((day % 30) == 15) {
+                BigDecimal quantity = totalShares.multiply(new BigDecimal("0.005")).setScale(4, RoundingMode.HALF_UP);
+                if (quantity.signum() > 0) {
+                    builder.addRow(date, InvestmentTransactionStore.TYPE_REINVEST_DIVIDEND, securityNode, quantity, 
+                            quantity.multiply(BigDecimal.TEN).setScale(2, RoundingMode.HALF_UP), false);
+                    totalShares = totalShares.add(quantity);
+                }
+            }
+            if (((day % 45) == 20) && !namedLots.isEmpty()) {
+                Iterator<Map.Entry<String, BigDecimal>> iterator = namedLots.entrySet().iterator();
+                Map.Entry<String, BigDecimal> lot = iterator.next();
+                iterator.remove();
+                builder.addRow(date, InvestmentTransactionStore.TYPE_SELL_SHARE, securityNode, lot.getValue(), 
+                        lot.getValue().multiply(BigDecimal.TEN).setScale(2, RoundingMode.HALF_UP), false, lot.getKey());
+                totalShares = totalShares.subtract(lot.getValue());
+            }
+            if (((day % 60) == 40) && (totalShares.compareTo(shares(7)) >= 0)) {
+                builder.addRow(date, InvestmentTransactionStore.TYPE_SELL_SHARE, securityNode, shares(7), cash("70.00"), false);
+                totalShares = totalShares.subtract(shares(7));
+            }
+            if (day == 300) {
+                // 2:1 split, the split lots lose their names.
+                builder.addRow(date, InvestmentTransactionStore.TYPE_SPLIT_SHARE, securityNode, totalShares, BigDecimal.ZERO, false);
+                totalShares = totalShares.add(totalShares);
+                namedLots.clear();
+            }
+            if (day == 500) {
+                // 1:2 merge.
+                BigDecimal quantity = totalShares.divide(BigDecimal.valueOf(2), 4, RoundingMode.HALF_UP);
+                builder.addRow(date, InvestmentTransactionStore.TYPE_MERGE_SHARE, securityNode, quantity, BigDecimal.ZERO, false);
+                totalShares = totalShares.subtract(quantity);
+                namedLots.clear();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a cash history: deposits, interest, withdrawals, and a withdrawal that takes the
+     * cash negative.
+     */
+    static InvestmentTransactionStore buildCashHistory() {
+        InvestmentTransactionStore.Builder builder = new InvestmentTransactionStore.Builder();
+        for (int day = 0; day < DAY_COUNT; ++day) {
+            LocalDate date = START_DATE.plusDays(day);
+            if ((day % 14) == 0) {
+                builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_IN, null, cash("1000.00"), cash("1000.00"), true);
+            }
+            if ((day % 30) == 29) {
+                builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_IN, null, cash("12.34"), cash("12.34"), false);
+            }
+            if ((day % 10) == 5) {
+                builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_OUT, null, cash("-300.00"), cash("-300.00"), false);
+            }
+            if (day == 400) {
+                builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_OUT, null, cash("-100000.00"), cash("-100000.00"), false);
+            }
+            if (day == 410) {
+                builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_IN, null, cash("150000.00"), cash("150000.00"), true);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a long cash history, a few deposits a week with withdrawals and optionally income
+     * mixed in, the dates from {@link #START_DATE} through the returned store's last date.
+     */
+    static InvestmentTransactionStore buildLongCashHistory(int transactionCount, long seed, boolean isIncome) {
+        InvestmentTransactionStore.Builder builder = new InvestmentTransactionStore.Builder();
+        Random random = new Random(seed);
+        BigDecimal balance = BigDecimal.ZERO;
+        int day = 0;
+        for (int i = 0; i < transactionCount; ++i) {
+            day += random.nextInt(3);
+            LocalDate date = START_DATE.plusDays(day);
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                BigDecimal amount = BigDecimal.valueOf(10000 + random.nextInt(100000), 2);
+                builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_IN, null, amount, amount, true);
+                balance = balance.add(amount);
+            }
+            else if ((choice < 7) && isIncome) {
+                BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(2000), 2);
+                builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_IN, null, amount, amount, false);
+                balance = balance.add(amount);
+            }
+            else {
+                BigDecimal amount = BigDecimal.valueOf(5000 + random.nextInt(50000), 2).min(balance);
+                if (amount.signum() > 0) {
+                    builder.addRow(date, InvestmentTransactionStore.TYPE_CASH_OUT, null, amount.negate(), amount.negate(), false);
+                    balance = balance.subtract(amount);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    // The trackers all use the same lot ids so their lots can be compared.
+    static SecurityTransactionTracker recordTracker(InvestmentTransactionStore store, SecurityNode securityNode, 
+            int checkpointInterval, int cashLotCompactionDays, long firstLotId) {
+        SecurityTransactionTracker tracker = new SecurityTransactionTracker(securityNode, firstLotId);
+        tracker.setCheckpointInterval(checkpointInterval);
+        tracker.setCashLotCompactionDays(cashLotCompactionDays);
+        for (int row = 0; row < store.getRowCount(); ++row) {
+            tracker.recordTransaction(store, row);
+        }
+        return tracker;
+    }
+
+    static SecurityTransactionTracker createTracker(InvestmentTransactionStore store, SecurityNode securityNode, 
+            int checkpointInterval, int cashLotCompactionDays) {
+        SecurityTransactionTracker tracker = recordTracker(store, securityNode, checkpointInterval, cashLotCompactionDays, 
+                SecurityLot.LOT_ID_BLOCK_SIZE);
+        tracker.finalizeTransactions();
+        return tracker;
+    }
+
+    static void assertSameLots(String message, SecurityLots expected, SecurityLots actual) {
+        List<SecurityLot> expectedLots = new ArrayList<>(expected.getSecurityLots());
+        List<SecurityLot> actualLots = new ArrayList<>(actual.getSecurityLots());
+        assertEquals(message, expectedLots.size(), actualLots.size());
+        for (int i = 0; i < expectedLots.size(); ++i) {
+            SecurityLot expectedLot = expectedLots.get(i);
+            SecurityLot actualLot = actualLots.get(i);
+            assertEquals(message, expectedLot.getLotId(), actualLot.getLotId());
+            assertEquals(message, expectedLot.getDate(), actualLot.getDate());
+            assertEquals(message, expectedLot.getCostBasisDate(), actualLot.getCostBasisDate());
+            assertEquals(message, expectedLot.getShares(), actualLot.getShares());
+            assertEquals(message, expectedLot.getCostBasis(), actualLot.getCostBasis());
+            assertEquals(message, expectedLot.getCashInBasis(), actualLot.getCashInBasis());
+        }
+    }
+
+    static void assertSameHistory(SecurityTransactionTracker expected, SecurityTransactionTracker actual, List<LocalDate> dates) {
+        for (LocalDate date : dates) {
+            assertSameLots(date.toString(), expected.getDateEntry(date).getSecurityLots(), actual.getDateEntry(date).getSecurityLots());
+        }
+    }
+
+    static List<LocalDate> getHistoryDates() {
+        List<LocalDate> dates = new ArrayList<>();
+        for (int day = -1; day <= DAY_COUNT; ++day) {
+            dates.add(START_DATE.plusDays(day));
+        }
+        return dates;
+    }
+
+    @Test
+    public void testCompactHistory() {
+        System.out.println("compactHistory");
+
+        SecurityNode securityNode = createSecurityNode("SEC");
+        SecurityNode cashNode = createSecurityNode("CASH");
+        InvestmentTransactionStore securityStore = buildSecurityHistory(securityNode);
+        InvestmentTransactionStore cashStore = buildCashHistory();
+        List<LocalDate> dates = getHistoryDates();
+
+        SecurityTransactionTracker expectedSecurityTracker = createTracker(securityStore, securityNode, 0, 0);
+        SecurityTransactionTracker expectedCashTracker = createTracker(cashStore, cashNode, 0, 0);
+
+        for (int checkpointInterval : new int [] { 2, 5, 32 }) {
+            SecurityTransactionTracker securityTracker = createTracker(securityStore, securityNode, checkpointInterval, 0);
+            SecurityTransactionTracker cashTracker = createTracker(cashStore, cashNode, checkpointInterval, 0);
+
+            long actionsApplied = ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount();
+
+            // In order, then backwards and in random order, which have the trackers replay from
+            // their checkpoints and evict their recently rebuilt lots.
+            List<LocalDate> testDates = new ArrayList<>(dates);
+            assertSameHistory(expectedSecurityTracker, securityTracker, testDates);
+            assertSameHistory(expectedCashTracker, cashTracker, testDates);
+
+            Collections.reverse(testDates);
+            assertSameHistory(expectedSecurityTracker, securityTracker, testDates);
+            assertSameHistory(expectedCashTracker, cashTracker, testDates);
+
+            Collections.shuffle(testDates, new Random(checkpointInterval));
+            assertSameHistory(expectedSecurityTracker, securityTracker, testDates);
+            assertSameHistory(expectedCashTracker, cashTracker, testDates);
+
+            // Make sure the lots really were replayed.
+            assertTrue(ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount() > actionsApplied);
+        }
+    }
+
+    @Test
+    public void testCashInAllocation() {
+        System.out.println("cashInAllocation");
+
+        SecurityNode securityNode = createSecurityNode("SEC");
+        InvestmentTransactionStore securityStore = buildSecurityHistory(securityNode);
+        SecurityTransactionTracker tracker = createTracker(securityStore, securityNode, 5, 0);
+
+        // Report dates a week apart, the allocations of the later dates are normally extended
+        // from the allocations of the earlier dates.
+        int extendedCount = 0;
+        for (int day = 0; day < DAY_COUNT; day += 7) {
+            SecurityTransactionTracker.DateEntry dateEntry = tracker.getDateEntry(START_DATE.plusDays(day));
+            if (tracker.extendCashInAllocation(dateEntry) != null) {
+                ++extendedCount;
+            }
+
+            SecurityTransactionTracker.CashInAllocation allocation = dateEntry.getCashInAllocation();
+            SecurityTransactionTracker.CashInAllocation expectedAllocation 
+                    = SecurityTransactionTracker.CashInAllocation.fromSecurityLots(dateEntry.getSecurityLots());
+            assertSameLots(dateEntry.getDate().toString(), expectedAllocation.securityLots, allocation.securityLots);
+            assertEquals(expectedAllocation.totalShares, allocation.totalShares);
+        }
+
+        assertTrue(extendedCount > 0);
+    }
+
+    @Test
+    public void testCashInAllocationLookBack() {
+        System.out.println("cashInAllocationLookBack");
+
+        // Buys only, so each date entry's allocation can be extended from the one before it.
+        SecurityNode securityNode = createSecurityNode("SEC");
+        InvestmentTransactionStore.Builder builder = new InvestmentTransactionStore.Builder();
+        for (int day = 0; day < 400; ++day) {
+            builder.addRow(START_DATE.plusDays(day), InvestmentTransactionStore.TYPE_BUY_SHARE, securityNode, shares(10), cash("100.00"), true);
+        }
+        SecurityTransactionTracker tracker = createTracker(builder.build(), securityNode, 5, 0);
+
+        // Without a prior allocation nothing is rebuilt looking for one.
+        long actionsApplied = ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount();
+        assertNull(tracker.extendCashInAllocation(tracker.getDateEntry(START_DATE.plusDays(399))));
+        assertEquals(actionsApplied, ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount());
+
+        SecurityTransactionTracker.DateEntry dateEntry = tracker.getDateEntry(START_DATE.plusDays(100));
+        assertNotNull(dateEntry.getCashInAllocation());
+
+        dateEntry = tracker.getDateEntry(START_DATE.plusDays(100 + SecurityTransactionTracker.MAX_CASH_IN_ALLOCATION_EXTENSION));
+        SecurityTransactionTracker.CashInAllocation allocation = tracker.extendCashInAllocation(dateEntry);
+        assertNotNull(allocation);
+        SecurityTransactionTracker.CashInAllocation expectedAllocation 
+                = SecurityTransactionTracker.CashInAllocation.fromSecurityLots(dateEntry.getSecurityLots());
+        assertSameLots(dateEntry.getDate().toString(), expectedAllocation.securityLots, allocation.securityLots);
+        assertEquals(expectedAllocation.totalShares, allocation.totalShares);
+
+        // Too far back.
+        actionsApplied = ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount();
+        dateEntry = tracker.getDateEntry(START_DATE.plusDays(101 + SecurityTransactionTracker.MAX_CASH_IN_ALLOCATION_EXTENSION));
+        assertNull(tracker.extendCashInAllocation(dateEntry));
+        assertEquals(actionsApplied, ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount());
+    }
+
+    @Test
+    public void testParallelFinalize() {
+        System.out.println("parallelFinalize");
+
+        List<SecurityTransactionTracker> sequentialTrackers = new ArrayList<>();
+        List<SecurityTransactionTracker> parallelTrackers = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            SecurityNode securityNode = createSecurityNode("SEC" + i);
+            InvestmentTransactionStore store = ((i % 2) == 0) ? buildSecurityHistory(securityNode) : buildCashHistory();
+            int checkpointInterval = (i % 3) * 4;
+            long firstLotId = (i + 1) * SecurityLot.LOT_ID_BLOCK_SIZE;
+            sequentialTrackers.add(recordTracker(store, securityNode, checkpointInterval, 0, firstLotId));
+            parallelTrackers.add(recordTracker(store, securityNode, checkpointInterval, 0, firstLotId));
+        }
+
+        sequentialTrackers.forEach((tracker) -> {
+            tracker.finalizeTransactions();
+        });
+        parallelTrackers.parallelStream().forEach((tracker) -> {
+            tracker.finalizeTransactions();
+        });
+
+        List<LocalDate> dates = getHistoryDates();
+        for (int i = 0; i < sequentialTrackers.size(); ++i) {
+            assertSameHistory(sequentialTrackers.get(i), parallelTrackers.get(i), dates);
+        }
+    }
+
+    @Test
+    public void testNamedLots() {
+        System.out.println("namedLots");
+
+        // The lot named "2" must not be confused with the tracker's own lots.
+        SecurityNode securityNode = createSecurityNode("SEC");
+        InvestmentTransactionStore store = new InvestmentTransactionStore.Builder()
+                .addRow(START_DATE, InvestmentTransactionStore.TYPE_BUY_SHARE, securityNode, shares(10), cash("100.00"), true)
+                .addRow(START_DATE.plusDays(1), InvestmentTransactionStore.TYPE_BUY_SHARE, securityNode, shares(20), cash("200.00"), true)
+                .addRow(START_DATE.plusDays(2), InvestmentTransactionStore.TYPE_BUY_SHARE, securityNode, shares(30), cash("300.00"), true, "2")
+                .addRow(START_DATE.plusDays(3), InvestmentTransactionStore.TYPE_SELL_SHARE, securityNode, shares(30), cash("300.00"), false, "2")
+                .build();
+
+        SecurityTransactionTracker tracker = new SecurityTransactionTracker(securityNode);
+        for (int row = 0; row < store.getRowCount(); ++row) {
+            tracker.recordTransaction(store, row);
+        }
+        tracker.finalizeTransactions();
+
+        List<SecurityLot> lots = new ArrayList<>(tracker.getDateEntry(START_DATE.plusDays(3)).getSecurityLots().getSecurityLots());
+        assertEquals(2, lots.size());
+        assertEquals(shares(10), lots.get(0).getShares());
+        assertEquals(shares(20), lots.get(1).getShares());
+    }
+
+    @Test
+    public void testCashLotCompaction() {
+        System.out.println("cashLotCompaction");
+
+        SecurityNode cashNode = createSecurityNode("CASH", BigDecimal.ONE);
+        InvestmentTransactionStore cashStore = buildLongCashHistory(5000, 1, false);
+        int dayCount = (int)(cashStore.getEpochDay(cashStore.getRowCount() - 1) - START_DATE.toEpochDay());
+        List<LocalDate> dates = new ArrayList<>();
+        for (int day = -1; day <= dayCount + 1; ++day) {
+            dates.add(START_DATE.plusDays(day));
+        }
+
+        SecurityTransactionTracker fullTracker = createTracker(cashStore, cashNode, 0, 0);
+        SecurityTransactionTracker expectedTracker = createTracker(cashStore, cashNode, 0, 365);
+
+        // The merge is exact, but there are a lot fewer lots.
+        int maxFullLotCount = 0;
+        int maxLotCount = 0;
+        for (LocalDate date : dates) {
+            SecurityTransactionTracker.DateEntry fullDateEntry = fullTracker.getDateEntry(date);
+            SecurityTransactionTracker.DateEntry dateEntry = expectedTracker.getDateEntry(date);
+            SecurityLots fullLots = fullDateEntry.getSecurityLots();
+            SecurityLots securityLots = dateEntry.getSecurityLots();
+            assertEquals(date.toString(), fullLots.getTotalShares(), securityLots.getTotalShares());
+            assertEquals(date.toString(), fullLots.getTotalCostBasis(), securityLots.getTotalCostBasis());
+            assertEquals(date.toString(), fullLots.getTotalCashIn(), securityLots.getTotalCashIn());
+            for (int minDays : new int [] { 0, 365 }) {
+                assertEquals(date.toString(), new YearAgoValueCalculator(fullLots).calcYearAgoValueSum(date, minDays, BigDecimal.ONE), 
+                        new YearAgoValueCalculator(securityLots).calcYearAgoValueSum(date, minDays, BigDecimal.ONE));
+                assertEquals(date.toString(), fullDateEntry.getCashInYearAgoValueSum(date, minDays), 
+                        dateEntry.getCashInYearAgoValueSum(date, minDays));
+            }
+            maxFullLotCount = Math.max(maxFullLotCount, fullLots.getSecurityLots().size());
+            maxLotCount = Math.max(maxLotCount, securityLots.getSecurityLots().size());
+        }
+        assertTrue(maxFullLotCount + " " + maxLotCount, maxLotCount * 4 < maxFullLotCount);
+
+        // The merges are replayed from the checkpoints.
+        for (int checkpointInterval : new int [] { 5, 32 }) {
+            SecurityTransactionTracker cashTracker = createTracker(cashStore, cashNode, checkpointInterval, 365);
+            long actionsApplied = ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount();
+
+            List<LocalDate> testDates = new ArrayList<>(dates);
+            assertSameHistory(expectedTracker, cashTracker, testDates);
+            Collections.shuffle(testDates, new Random(checkpointInterval));
+            assertSameHistory(expectedTracker, cashTracker, testDates);
+
+            assertTrue(ReportProfile.Counter.LOT_ACTIONS_APPLIED.getCount() > actionsApplied);
+        }
+    }
+}
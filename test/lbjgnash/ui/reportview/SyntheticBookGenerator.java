@@ -0,0 +1,603 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import jgnash.engine.Account;
+import jgnash.engine.AccountType;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.DataStoreType;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+import jgnash.engine.SecurityHistoryNode;
+import jgnash.engine.SecurityNode;
+import jgnash.engine.Transaction;
+import jgnash.engine.TransactionFactory;
+
+/**
+ * Builds a synthetic book in a jGnash engine for benchmarking and stress testing. The book
+ * is completely determined by the generator's settings, including the seed, so the same
+ * settings always generate the same book.
+ * <p>
+ * The book has:
+ * <ul>
+ * <li>Bank, income, expense and investment accounts, grouped under parent accounts.
+ * <li>Securities with daily (weekday) prices following a random walk. A security is split
+ * 2:1 when its price gets too high and merged 1:2 when its price gets too low.
+ * <li>Income and expense transactions against the bank accounts.
+ * <li>[cash-in] transfers from the bank accounts to the investment accounts.
+ * <li>Buys, some with 'LOT:' tags, reinvested dividends, sales of tagged lots, FIFO sales,
+ * and split/merge transactions.
+ * </ul>
+ * <p>
+ * The generator keeps track of the lots it has created so sales never sell more shares
+ * than are held and the 'LOT:' tags of sales refer to lots that have not been sold.
+ * @author Albert Santos
+ */
+public class SyntheticBookGenerator {
+
+    /**
+     * Preset book sizes.
+     */
+    public static enum Scale {
+        SMALL(1000, 50, 20, 10),
+        MEDIUM(100000, 500, 100, 20),
+        LARGE(1000000, 2000, 250, 30),
+        HUGE(10000000, 5000, 500, 40),
+        ;
+
+        private final int transactionCount;
+        private final int accountCount;
+        private final int securityCount;
+        private final int yearCount;
+
+        private Scale(int transactionCount, int accountCount, int securityCount, int yearCount) {
+            this.transactionCount = transactionCount;
+            this.accountCount = accountCount;
+            this.securityCount = securityCount;
+            this.yearCount = yearCount;
+        }
+    }
+
+    // The most leaf accounts placed under one parent account.
+    private static final int CHILDREN_PER_PARENT = 25;
+
+    // Prices are in cents.
+    private static final long SPLIT_PRICE = 30000;
+    private static final long MERGE_PRICE = 300;
+
+    private static final int SHARES_SCALE = 4;
+
+    private long seed = 1;
+    private int accountCount = 20;
+    private int transactionCount = 1000;
+    private int securityCount = 10;
+    private LocalDate startDate = LocalDate.of(2000, 1, 1);
+    private LocalDate endDate = LocalDate.of(2017, 12, 31);
+
+    private Random random;
+    private CurrencyNode currency;
+    private final List<Account> bankAccounts = new ArrayList<>();
+    private final List<Account> incomeAccounts = new ArrayList<>();
+    private final List<Account> expenseAccounts = new ArrayList<>();
+    private final List<InvestmentAccount> investmentAccounts = new ArrayList<>();
+    private final List<Security> securities = new ArrayList<>();
+    private final List<ScaleEvent> scaleEvents = new ArrayList<>();
+    private int nextLotNumber;
+
+
+    static class Security {
+        final SecurityNode securityNode;
+        // Indexed by day from the start date.
+        final long [] dailyCents;
+        final List<Holding> holdings = new ArrayList<>();
+
+        Security(SecurityNode securityNode, int dayCount) {
+            this.securityNode = securityNode;
+            this.dailyCents = new long[dayCount];
+        }
+
+        BigDecimal getPrice(int dayIndex) {
+            return BigDecimal.valueOf(dailyCents[dayIndex], 2);
+        }
+    }
+
+    static class GeneratedLot {
+        // null if the lot can't be sold by 'LOT:' tag.
+        String lotId;
+        final LocalDate date;
+        BigDecimal shares;
+
+        GeneratedLot(String lotId, LocalDate date, BigDecimal shares) {
+            this.lotId = lotId;
+            this.date = date;
+            this.shares = shares;
+        }
+    }
+
+    static class Holding {
+        final InvestmentAccount investmentAccount;
+        final Security security;
+        final List<GeneratedLot> lots = new ArrayList<>();
+        BigDecimal totalShares = BigDecimal.ZERO.setScale(SHARES_SCALE);
+
+        Holding(InvestmentAccount investmentAccount, Security security) {
+            this.investmentAccount = investmentAccount;
+            this.security = security;
+        }
+    }
+
+    static class InvestmentAccount {
+        final Account account;
+        final List<Holding> holdings = new ArrayList<>();
+        BigDecimal cash = BigDecimal.ZERO;
+
+        InvestmentAccount(Account account) {
+            this.account = account;
+        }
+    }
+
+    static class ScaleEvent {
+        final int dayIndex;
+        final Security security;
+        final boolean isSplit;
+
+        ScaleEvent(int dayIndex, Security security, boolean isSplit) {
+            this.dayIndex = dayIndex;
+            this.security = security;
+            this.isSplit = isSplit;
+        }
+    }
+
+
+    public SyntheticBookGenerator() {
+    }
+
+    /**
+     * Creates a generator set up for one of the preset sizes. The book ends at the
+     * end of 2017.
+     * @param scale The size.
+     * @return The generator.
+     */
+    public static SyntheticBookGenerator fromScale(Scale scale) {
+        LocalDate endDate = LocalDate.of(2017, 12, 31);
+        return new SyntheticBookGenerator()
+                .setTransactionCount(scale.transactionCount)
+                .setAccountCount(scale.accountCount)
+                .setSecurityCount(scale.securityCount)
+                .setDateRange(endDate.minusYears(scale.yearCount).plusDays(1), endDate);
+    }
+
+    public final long getSeed() {
+        return seed;
+    }
+    public final SyntheticBookGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @return The number of leaf accounts generated, this does not include the root account
+     * or the parent accounts used to group the leaf accounts.
+     */
+    public final int getAccountCount() {
+        return accountCount;
+    }
+    public final SyntheticBookGenerator setAccountCount(int accountCount) {
+        this.accountCount = accountCount;
+        return this;
+    }
+
+    public final int getTransactionCount() {
+        return transactionCount;
+    }
+    public final SyntheticBookGenerator setTransactionCount(int transactionCount) {
+        this.transactionCount = transactionCount;
+        return this;
+    }
+
+    public final int getSecurityCount() {
+        return securityCount;
+    }
+    public final SyntheticBookGenerator setSecurityCount(int securityCount) {
+        this.securityCount = securityCount;
+        return this;
+    }
+
+    public final LocalDate getStartDate() {
+        return startDate;
+    }
+    public final LocalDate getEndDate() {
+        return endDate;
+    }
+    public final SyntheticBookGenerator setDateRange(LocalDate startDate, LocalDate endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        return this;
+    }
+
+
+    /**
+     * Boots a new local engine backed by an XML file in a directory. The XML data store
+     * is held in memory, the file is only written when the engine is closed.
+     * @param directory The directory for the engine's file.
+     * @param engineName    The name of the engine, this must be unique amongst the open engines.
+     * @return The engine.
+     * @throws IOException if the engine could not be created.
+     */
+    public static Engine bootEngine(File directory, String engineName) throws IOException {
+        File file = new File(directory, engineName + ".xml");
+        file.delete();
+        try {
+            Engine engine = EngineFactory.bootLocalEngine(file.getAbsolutePath(), engineName, EngineFactory.EMPTY_PASSWORD, DataStoreType.XML);
+            if (engine == null) {
+                throw new IOException("The engine " + engineName + " could not be booted.");
+            }
+            return engine;
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+
+    /**
+     * Generates the book into an engine, normally a newly booted one.
+     * @param engine    The engine.
+     */
+    public void generate(Engine engine) {
+        random = new Random(seed);
+        currency = engine.getDefaultCurrency();
+        nextLotNumber = 1;
+
+        bankAccounts.clear();
+        incomeAccounts.clear();
+        expenseAccounts.clear();
+        investmentAccounts.clear();
+        securities.clear();
+        scaleEvents.clear();
+
+        generateSecurities(engine);
+        generateAccounts(engine);
+        generateTransactions(engine);
+    }
+
+
+    protected final int getDayCount() {
+        return (int)(endDate.toEpochDay() - startDate.toEpochDay()) + 1;
+    }
+
+
+    protected void generateSecurities(Engine engine) {
+        final int dayCount = getDayCount();
+        for (int i = 0; i < securityCount; ++i) {
+            SecurityNode securityNode = new SecurityNode(currency);
+            securityNode.setSymbol("SYN" + i);
+            securityNode.setDescription("Synthetic Security " + i);
+            securityNode.setScale((byte)2);
+            engine.addSecurity(securityNode);
+
+            Security security = new Security(securityNode, dayCount);
+            securities.add(security);
+
+            // Weekday prices following a random walk, weekends carry the Friday price.
+            long cents = 1000 + random.nextInt(9000);
+            for (int day = 0; day < dayCount; ++day) {
+                LocalDate date = startDate.plusDays(day);
+                DayOfWeek dayOfWeek = date.getDayOfWeek();
+                if ((dayOfWeek != DayOfWeek.SATURDAY) && (dayOfWeek != DayOfWeek.SUNDAY)) {
+                    double change = 1. + (random.nextGaussian() * 0.012 + 0.0003);
+                    cents = Math.max(1, Math.round(cents * change));
+
+                    if (cents >= SPLIT_PRICE) {
+                        cents /= 2;
+                        scaleEvents.add(new ScaleEvent(day, security, true));
+                    }
+                    else if (cents <= MERGE_PRICE) {
+                        cents *= 2;
+                        scaleEvents.add(new ScaleEvent(day, security, false));
+                    }
+
+                    BigDecimal price = BigDecimal.valueOf(cents, 2);
+                    engine.addSecurityHistory(securityNode, new SecurityHistoryNode(date, price, 0, price, price));
+                }
+                security.dailyCents[day] = cents;
+            }
+        }
+
+        scaleEvents.sort((ScaleEvent o1, ScaleEvent o2) -> Integer.compare(o1.dayIndex, o2.dayIndex));
+    }
+
+
+    protected void generateAccounts(Engine engine) {
+        int investmentCount = (securityCount > 0) ? Math.max(1, accountCount / 10) : 0;
+        int incomeCount = Math.max(1, accountCount / 10);
+        int bankCount = Math.max(1, accountCount / 5);
+        int expenseCount = Math.max(1, accountCount - investmentCount - incomeCount - bankCount);
+
+        addAccounts(engine, AccountType.BANK, "Bank", bankCount, bankAccounts);
+        addAccounts(engine, AccountType.INCOME, "Income", incomeCount, incomeAccounts);
+        addAccounts(engine, AccountType.EXPENSE, "Expense", expenseCount, expenseAccounts);
+
+        List<Account> accounts = new ArrayList<>();
+        addAccounts(engine, AccountType.INVEST, "Investment", investmentCount, accounts);
+        for (int i = 0; i < investmentCount; ++i) {
+            InvestmentAccount investmentAccount = new InvestmentAccount(accounts.get(i));
+            investmentAccounts.add(investmentAccount);
+
+            // The securities are spread across the investment accounts, the first few
+            // are held by all the investment accounts.
+            List<SecurityNode> accountSecurities = new ArrayList<>();
+            for (int s = 0; s < securities.size(); ++s) {
+                if ((s < 3) || ((s % investmentCount) == i)) {
+                    Security security = securities.get(s);
+                    Holding holding = new Holding(investmentAccount, security);
+                    investmentAccount.holdings.add(holding);
+                    security.holdings.add(holding);
+                    accountSecurities.add(security.securityNode);
+                }
+            }
+            engine.updateAccountSecurities(investmentAccount.account, accountSecurities);
+        }
+    }
+
+    protected void addAccounts(Engine engine, AccountType accountType, String name, int count, List<Account> accounts) {
+        Account rootAccount = engine.getRootAccount();
+        if (count <= CHILDREN_PER_PARENT) {
+            for (int i = 0; i < count; ++i) {
+                accounts.add(addAccount(engine, rootAccount, accountType, name + " " + i));
+            }
+            return;
+        }
+
+        Account parentAccount = null;
+        for (int i = 0; i < count; ++i) {
+            if ((i % CHILDREN_PER_PARENT) == 0) {
+                parentAccount = addAccount(engine, rootAccount, accountType, name + " Group " + (i / CHILDREN_PER_PARENT));
+            }
+            accounts.add(addAccount(engine, parentAccount, accountType, name + " " + i));
+        }
+    }
+
+    protected Account addAccount(Engine engine, Account parentAccount, AccountType accountType, String name) {
+        Account account = new Account(accountType, currency);
+        account.setName(name);
+        engine.addAccount(parentAccount, account);
+        return account;
+    }
+
+
+    protected void generateTransactions(Engine engine) {
+        final int dayCount = getDayCount();
+        int scaleEventIndex = 0;
+
+        for (int i = 0; i < transactionCount; ++i) {
+            // The transactions are spread evenly over the date range so they're generated in date order.
+            int dayIndex = (int)(((long)i * dayCount) / transactionCount);
+            LocalDate date = startDate.plusDays(dayIndex);
+
+            while ((scaleEventIndex < scaleEvents.size()) && (scaleEvents.get(scaleEventIndex).dayIndex <= dayIndex)) {
+                generateScaleTransactions(engine, scaleEvents.get(scaleEventIndex));
+                ++scaleEventIndex;
+            }
+
+            Transaction transaction;
+            int type = random.nextInt(10);
+            if ((type < 3) && !investmentAccounts.isEmpty()) {
+                transaction = generateInvestmentTransaction(date, dayIndex);
+            }
+            else if (type < 5) {
+                transaction = TransactionFactory.generateDoubleEntryTransaction(pick(bankAccounts), pick(incomeAccounts),
+                        randomAmount(500, 5000), date, "Income", "", "");
+            }
+            else {
+                transaction = TransactionFactory.generateDoubleEntryTransaction(pick(expenseAccounts), pick(bankAccounts),
+                        randomAmount(5, 500), date, "Expense", "", "");
+            }
+
+            if (transaction != null) {
+                engine.addTransaction(transaction);
+            }
+        }
+    }
+
+
+    protected Transaction generateInvestmentTransaction(LocalDate date, int dayIndex) {
+        InvestmentAccount investmentAccount = pick(investmentAccounts);
+        if (investmentAccount.holdings.isEmpty()) {
+            return generateCashInTransaction(investmentAccount, date);
+        }
+
+        Holding holding = pick(investmentAccount.holdings);
+        BigDecimal price = holding.security.getPrice(dayIndex);
+
+        int type = random.nextInt(20);
+        if (holding.totalShares.signum() > 0) {
+            if (type < 4) {
+                return generateReinvestDividendTransaction(holding, price, date);
+            }
+            else if (type < 9) {
+                return generateSellTransaction(holding, price, date);
+            }
+        }
+
+        if (type < 12) {
+            return generateCashInTransaction(investmentAccount, date);
+        }
+        return generateBuyTransaction(holding, price, date);
+    }
+
+
+    protected Transaction generateCashInTransaction(InvestmentAccount investmentAccount, LocalDate date) {
+        BigDecimal amount = randomAmount(1000, 10000);
+        investmentAccount.cash = investmentAccount.cash.add(amount);
+        return TransactionFactory.generateDoubleEntryTransaction(investmentAccount.account, pick(bankAccounts),
+                amount, date, "Transfer [cash-in]", "", "");
+    }
+
+
+    protected Transaction generateBuyTransaction(Holding holding, BigDecimal price, LocalDate date) {
+        InvestmentAccount investmentAccount = holding.investmentAccount;
+        BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(100)).setScale(SHARES_SCALE);
+        BigDecimal cost = price.multiply(quantity).setScale(2, RoundingMode.HALF_UP);
+
+        String lotId = null;
+        String memo = "Buy";
+        if (random.nextBoolean()) {
+            lotId = "L" + nextLotNumber++;
+            memo = "Buy LOT:" + lotId;
+        }
+
+        addLot(holding, new GeneratedLot(lotId, date, quantity));
+
+        // Paid for with the investment account's cash if there's enough, otherwise from a bank account.
+        Account cashAccount;
+        if (investmentAccount.cash.compareTo(cost) >= 0) {
+            investmentAccount.cash = investmentAccount.cash.subtract(cost);
+            cashAccount = investmentAccount.account;
+        }
+        else {
+            cashAccount = pick(bankAccounts);
+        }
+
+        return TransactionFactory.generateBuyXTransaction(cashAccount, investmentAccount.account, holding.security.securityNode,
+                price, quantity, BigDecimal.ONE, date, memo, Collections.emptyList());
+    }
+
+
+    protected Transaction generateReinvestDividendTransaction(Holding holding, BigDecimal price, LocalDate date) {
+        // Roughly a quarterly dividend of 0.5%.
+        BigDecimal dividend = holding.totalShares.multiply(price).multiply(new BigDecimal("0.005"));
+        BigDecimal quantity = dividend.divide(price, SHARES_SCALE, RoundingMode.HALF_UP);
+        if (quantity.signum() <= 0) {
+            return null;
+        }
+
+        addLot(holding, new GeneratedLot(null, date, quantity));
+
+        return TransactionFactory.generateReinvestDividendXTransaction(holding.investmentAccount.account, holding.security.securityNode,
+                price, quantity, date, "Reinvested dividend", Collections.emptyList());
+    }
+
+
+    protected Transaction generateSellTransaction(Holding holding, BigDecimal price, LocalDate date) {
+        List<GeneratedLot> tagged = new ArrayList<>();
+        for (GeneratedLot lot : holding.lots) {
+            if (lot.lotId != null) {
+                tagged.add(lot);
+            }
+        }
+
+        BigDecimal quantity = BigDecimal.ZERO.setScale(SHARES_SCALE);
+        String memo;
+        if (!tagged.isEmpty() && random.nextBoolean()) {
+            // Sell one or two entire tagged lots.
+            StringBuilder memoBuilder = new StringBuilder("Sell");
+            int lotCount = Math.min(tagged.size(), 1 + random.nextInt(2));
+            for (int i = 0; i < lotCount; ++i) {
+                GeneratedLot lot = tagged.remove(random.nextInt(tagged.size()));
+                quantity = quantity.add(lot.shares);
+                memoBuilder.append((i == 0) ? " " : "; ").append("LOT:").append(lot.lotId);
+                holding.lots.remove(lot);
+            }
+            memo = memoBuilder.toString();
+        }
+        else {
+            // FIFO sale of the oldest lots, always including all the lots of the last date sold
+            // so the lots sold don't depend upon the order of lots with the same date.
+            int lotCount = 1 + random.nextInt(Math.min(3, holding.lots.size()));
+            LocalDate lastDate = holding.lots.get(lotCount - 1).date;
+            while ((lotCount < holding.lots.size()) && holding.lots.get(lotCount).date.equals(lastDate)) {
+                ++lotCount;
+            }
+            for (int i = 0; i < lotCount; ++i) {
+                quantity = quantity.add(holding.lots.remove(0).shares);
+            }
+            memo = "Sell";
+        }
+
+        holding.totalShares = holding.totalShares.subtract(quantity);
+
+        BigDecimal proceeds = price.multiply(quantity).setScale(2, RoundingMode.HALF_UP);
+        InvestmentAccount investmentAccount = holding.investmentAccount;
+        investmentAccount.cash = investmentAccount.cash.add(proceeds);
+
+        return TransactionFactory.generateSellXTransaction(investmentAccount.account, investmentAccount.account, holding.security.securityNode,
+                price, quantity, BigDecimal.ONE, date, memo, Collections.emptyList(), Collections.emptyList());
+    }
+
+
+    protected void generateScaleTransactions(Engine engine, ScaleEvent scaleEvent) {
+        LocalDate date = startDate.plusDays(scaleEvent.dayIndex);
+        BigDecimal price = scaleEvent.security.getPrice(scaleEvent.dayIndex);
+
+        for (Holding holding : scaleEvent.security.holdings) {
+            BigDecimal oldShares = holding.totalShares;
+            if (oldShares.signum() <= 0) {
+                continue;
+            }
+
+            BigDecimal newShares;
+            Transaction transaction;
+            if (scaleEvent.isSplit) {
+                newShares = oldShares.multiply(BigDecimal.valueOf(2));
+                transaction = TransactionFactory.generateSplitXTransaction(holding.investmentAccount.account, holding.security.securityNode,
+                        price, newShares.subtract(oldShares), date, "2:1 Split");
+            }
+            else {
+                newShares = oldShares.divide(BigDecimal.valueOf(2), SHARES_SCALE, RoundingMode.HALF_UP);
+                transaction = TransactionFactory.generateMergeXTransaction(holding.investmentAccount.account, holding.security.securityNode,
+                        price, oldShares.subtract(newShares), date, "1:2 Merge");
+            }
+
+            // This mirrors SecurityLot.scaleShares(), which also gives the lots new ids.
+            BigDecimal totalShares = BigDecimal.ZERO.setScale(SHARES_SCALE);
+            for (GeneratedLot lot : holding.lots) {
+                lot.shares = lot.shares.multiply(newShares).divide(oldShares, lot.shares.scale(), RoundingMode.HALF_UP);
+                lot.lotId = null;
+                totalShares = totalShares.add(lot.shares);
+            }
+            holding.totalShares = totalShares;
+
+            engine.addTransaction(transaction);
+        }
+    }
+
+
+    protected void addLot(Holding holding, GeneratedLot lot) {
+        holding.lots.add(lot);
+        holding.totalShares = holding.totalShares.add(lot.shares);
+    }
+
+    protected <T> T pick(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    protected BigDecimal randomAmount(int min, int max) {
+        long cents = min * 100L + (long)random.nextInt((max - min) * 100);
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import jgnash.engine.Account;
+import jgnash.engine.AccountType;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+import jgnash.engine.Transaction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class SyntheticBookGeneratorTest {
+
+    public SyntheticBookGeneratorTest() {
+    }
+
+    private static SyntheticBookGenerator createGenerator(long seed) {
+        return new SyntheticBookGenerator()
+                .setSeed(seed)
+                .setAccountCount(20)
+                .setTransactionCount(500)
+                .setSecurityCount(5)
+                .setDateRange(LocalDate.of(2015, 1, 1), LocalDate.of(2016, 12, 31));
+    }
+
+    // The transactions of each account, by account name, as text.
+    private static TreeMap<String, List<String>> getBookText(Engine engine) {
+        TreeMap<String, List<String>> bookText = new TreeMap<>();
+        for (Account account : engine.getAccountList()) {
+            List<String> transactionTexts = new ArrayList<>();
+            for (Transaction transaction : account.getSortedTransactionList()) {
+                transactionTexts.add(transaction.getLocalDate() + "\t" + transaction.getAmount(account) + "\t" + transaction.getMemo());
+            }
+            bookText.put(account.getName(), transactionTexts);
+        }
+        return bookText;
+    }
+
+    private static void deleteDirectory(File directory) {
+        File [] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testGenerate() throws Exception {
+        System.out.println("generate");
+
+        File directory = Files.createTempDirectory("lbjgnash-test").toFile();
+        try {
+            Engine engineA = SyntheticBookGenerator.bootEngine(directory, "syntheticA");
+            Engine engineB = SyntheticBookGenerator.bootEngine(directory, "syntheticB");
+            Engine engineC = SyntheticBookGenerator.bootEngine(directory, "syntheticC");
+            try {
+                SyntheticBookGenerator generator = createGenerator(1);
+                generator.generate(engineA);
+                createGenerator(1).generate(engineB);
+                createGenerator(2).generate(engineC);
+
+                // Size...
+                int leafAccountCount = 0;
+                for (Account account : engineA.getAccountList()) {
+                    if ((account.getAccountType() != AccountType.ROOT) && account.getChildren().isEmpty()) {
+                        ++leafAccountCount;
+                    }
+                }
+                assertEquals(generator.getAccountCount(), leafAccountCount);
+                assertEquals(generator.getSecurityCount(), engineA.getSecurities().size());
+
+                // Splits and merges add transactions.
+                assertTrue(engineA.getTransactions().size() >= generator.getTransactionCount());
+
+                // Same seed, same book...
+                assertEquals(getBookText(engineA), getBookText(engineB));
+                assertEquals(engineA.getTransactions().size(), engineB.getTransactions().size());
+
+                // Different seed, different book.
+                assertNotEquals(getBookText(engineA), getBookText(engineC));
+            }
+            finally {
+                EngineFactory.closeEngine("syntheticA");
+                EngineFactory.closeEngine("syntheticB");
+                EngineFactory.closeEngine("syntheticC");
+            }
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+    }
+}
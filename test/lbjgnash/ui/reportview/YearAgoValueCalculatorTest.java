@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Albert Santos.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package lbjgnash.ui.reportview;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Albert Santos
+ */
+public class YearAgoValueCalculatorTest {
+    
+    public YearAgoValueCalculatorTest() {
+    }
+
+    @Test
+    public void testCalcYearAgoValueSum() {
+        System.out.println("calcYearAgoValueSum");
+        
+        SecurityLot lots[] = {
+            // Doubled in two years, a year ago it should have been worth 1000 * sqrt(2).
+            new SecurityLot("A", LocalDate.of(2016,1,1), new BigDecimal(100), new BigDecimal("1000.00"), null, BigDecimal.ZERO),
+            // Too new, the cost basis is used.
+            new SecurityLot("B", LocalDate.of(2017,12,1), new BigDecimal(10), new BigDecimal("150.00"), null, BigDecimal.ZERO),
+            // No cost basis, ignored.
+            new SecurityLot("C", LocalDate.of(2016,1,1), new BigDecimal(10), BigDecimal.ZERO, null, BigDecimal.ZERO),
+        };
+        YearAgoValueCalculator calculator = new YearAgoValueCalculator(new SecurityLots(Arrays.asList(lots)));
+        
+        // 2016-01-01 to 2017-12-31 is 730 days, not quite two years at 365.25 days per year.
+        LocalDate date = LocalDate.of(2017,12,31);
+        BigDecimal price = new BigDecimal(20);
+        double years = 730 / 365.25;
+        double expected = 2000. / Math.pow(2., 1. / years) + 150.;
+        BigDecimal sum = calculator.calcYearAgoValueSum(date, 90, price);
+        assertEquals(2, sum.scale());
+        assertEquals(expected, sum.doubleValue(), 0.005);
+        
+        assertEquals(BigDecimal.ZERO, calculator.calcYearAgoValueSum(date, 90, BigDecimal.ZERO));
+        
+        BigDecimal [] sums = calculator.calcYearAgoValueSums(new LocalDate [] { date, date }, 90, 
+                new BigDecimal [] { price, BigDecimal.ZERO });
+        assertEquals(sum, sums[0]);
+        assertEquals(BigDecimal.ZERO, sums[1]);
+        
+        // Each date gets its own elapsed time.
+        LocalDate [] dates = { date, date.plusDays(100), date.plusDays(400) };
+        BigDecimal [] prices = { price, new BigDecimal(21), new BigDecimal(25) };
+        sums = calculator.calcYearAgoValueSums(dates, 90, prices);
+        for (int i = 0; i < dates.length; ++i) {
+            assertEquals(calculator.calcYearAgoValueSum(dates[i], 90, prices[i]), sums[i]);
+        }
+        
+        // With minDays covering both lots only the cost bases are summed.
+        assertEquals(new BigDecimal("1150.00"), calculator.calcYearAgoValueSum(date, 1000, price));
+    }
+    
+}